@@ -0,0 +1,117 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.benchmark.search;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.elasticsearch.action.search.type.TransportSearchCache;
+import org.elasticsearch.common.StopWatch;
+import org.elasticsearch.common.trove.ExtTIntArrayList;
+import org.elasticsearch.search.SearchShardTarget;
+import org.elasticsearch.search.controller.SearchPhaseController;
+import org.elasticsearch.search.controller.ShardDoc;
+import org.elasticsearch.search.facet.FacetProcessor;
+import org.elasticsearch.search.facet.FacetProcessors;
+import org.elasticsearch.search.fetch.FetchSearchResult;
+import org.elasticsearch.search.internal.InternalSearchHit;
+import org.elasticsearch.search.internal.InternalSearchHits;
+import org.elasticsearch.search.query.QuerySearchResult;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import static org.elasticsearch.common.settings.ImmutableSettings.Builder.EMPTY_SETTINGS;
+
+/**
+ * Measures the time and the bytes allocated by the coordinating node when sorting the shard results
+ * and merging the fetched hits of a search into the response, with the doc ids to load collected into a
+ * new map per search or into one recycled through the {@link TransportSearchCache}.
+ */
+public class SearchPhaseControllerBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int numberOfShards = 30;
+        int size = 50;
+        int iterations = 100000;
+
+        SearchPhaseController controller = new SearchPhaseController(EMPTY_SETTINGS, new FacetProcessors(Sets.<FacetProcessor>newHashSet()));
+
+        Map<SearchShardTarget, QuerySearchResult> queryResults = Maps.newHashMap();
+        Map<SearchShardTarget, FetchSearchResult> fetchResults = Maps.newHashMap();
+        for (int shard = 0; shard < numberOfShards; shard++) {
+            SearchShardTarget shardTarget = new SearchShardTarget("node" + (shard % 5), "index", shard);
+            ScoreDoc[] scoreDocs = new ScoreDoc[size];
+            InternalSearchHit[] hits = new InternalSearchHit[size];
+            for (int i = 0; i < size; i++) {
+                scoreDocs[i] = new ScoreDoc(i, (float) (size - i) / (shard + 1));
+                hits[i] = new InternalSearchHit(i, Integer.toString(i), "type", null, null);
+            }
+            QuerySearchResult queryResult = new QuerySearchResult(shard, shardTarget);
+            queryResult.topDocs(new TopDocs(size, scoreDocs, scoreDocs[0].score));
+            queryResult.from(0).size(size);
+            queryResults.put(shardTarget, queryResult);
+            FetchSearchResult fetchResult = new FetchSearchResult(shard, shardTarget);
+            fetchResult.hits(new InternalSearchHits(hits, size, scoreDocs[0].score));
+            fetchResults.put(shardTarget, fetchResult);
+        }
+
+        TransportSearchCache searchCache = new TransportSearchCache();
+        for (boolean recycle : new boolean[]{false, true}) {
+            // warm up
+            for (int i = 0; i < iterations; i++) {
+                merge(controller, recycle ? searchCache : null, queryResults, fetchResults);
+            }
+
+            com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            long threadId = Thread.currentThread().getId();
+            long allocatedBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+            StopWatch stopWatch = new StopWatch().start();
+            for (int i = 0; i < iterations; i++) {
+                merge(controller, recycle ? searchCache : null, queryResults, fetchResults);
+            }
+            stopWatch.stop();
+            long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+            System.out.println("[" + (recycle ? "recycled" : "new") + "] Merged [" + numberOfShards + "] shards of [" + size + "] hits [" + iterations + "] times, took " + stopWatch.totalTime()
+                    + ", " + (stopWatch.totalTime().nanos() / iterations) + "ns and " + (allocated / iterations) + " bytes allocated per search");
+        }
+    }
+
+    private static void merge(SearchPhaseController controller, TransportSearchCache searchCache, Map<SearchShardTarget, QuerySearchResult> queryResults,
+                              Map<SearchShardTarget, FetchSearchResult> fetchResults) {
+        ShardDoc[] sortedDocs = controller.sortDocs(queryResults.values());
+        Map<SearchShardTarget, ExtTIntArrayList> docIdsToLoad;
+        if (searchCache == null) {
+            docIdsToLoad = controller.docIdsToLoad(sortedDocs);
+        } else {
+            docIdsToLoad = controller.docIdsToLoad(sortedDocs, searchCache.obtainDocIdsToLoad());
+        }
+        if (docIdsToLoad.isEmpty()) {
+            throw new IllegalStateException("no docs to load");
+        }
+        controller.merge(sortedDocs, queryResults, fetchResults);
+        if (searchCache != null) {
+            searchCache.releaseDocIdsToLoad(docIdsToLoad);
+        }
+    }
+}
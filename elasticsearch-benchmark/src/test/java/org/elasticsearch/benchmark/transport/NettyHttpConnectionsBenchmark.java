@@ -0,0 +1,181 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.benchmark.transport;
+
+import com.google.common.base.Charsets;
+import org.elasticsearch.common.StopWatch;
+import org.elasticsearch.common.transport.InetSocketTransportAddress;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.http.HttpServerTransport;
+import org.elasticsearch.node.Node;
+import org.elasticsearch.node.internal.InternalNode;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.elasticsearch.common.settings.ImmutableSettings.settingsBuilder;
+import static org.elasticsearch.node.NodeBuilder.nodeBuilder;
+
+/**
+ * Measures how the (nio) HTTP transport copes with many client connections: opens a number of keep alive connections
+ * to a node, then sends requests over all of them for a while, printing the connections held open and the requests
+ * per second. The worker counts to run with are given as arguments (the default worker count when none is given).
+ */
+public class NettyHttpConnectionsBenchmark {
+
+    private static final byte[] REQUEST = "GET / HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(Charsets.US_ASCII);
+
+    public static void main(String[] args) throws Exception {
+        int connections = Integer.getInteger("connections", 1000);
+        int threads = Integer.getInteger("threads", 8);
+        TimeValue duration = TimeValue.parseTimeValue(System.getProperty("duration"), TimeValue.timeValueSeconds(30));
+        String[] workerCounts = args.length > 0 ? args : new String[]{Integer.toString(Runtime.getRuntime().availableProcessors() * 2)};
+
+        for (String workerCount : workerCounts) {
+            run(Integer.parseInt(workerCount), connections, threads, duration);
+        }
+    }
+
+    private static void run(int workerCount, int connections, int threads, TimeValue duration) throws Exception {
+        Node node = nodeBuilder().settings(settingsBuilder()
+                .put("node.local", true)
+                .put("gateway.type", "none")
+                .put("http.netty.worker_count", workerCount)
+                .put("http.pipelining", false))
+                .node();
+        String run = "workers " + workerCount;
+        try {
+            HttpServerTransport httpServerTransport = ((InternalNode) node).injector().getInstance(HttpServerTransport.class);
+            InetSocketAddress address = ((InetSocketTransportAddress) httpServerTransport.boundAddress().boundAddress()).address();
+
+            StopWatch stopWatch = new StopWatch().start();
+            final Connection[] clients = new Connection[connections];
+            for (int i = 0; i < clients.length; i++) {
+                clients[i] = new Connection(address);
+            }
+            stopWatch.stop();
+            System.out.println("[" + run + "] opened [" + connections + "] connections in " + stopWatch.totalTime()
+                    + ", open on the server [" + httpServerTransport.stats().serverOpen() + "]");
+
+            final long end = System.currentTimeMillis() + duration.millis();
+            final AtomicLong requests = new AtomicLong();
+            final AtomicLong failures = new AtomicLong();
+            final CountDownLatch latch = new CountDownLatch(threads);
+            for (int t = 0; t < threads; t++) {
+                final int thread = t;
+                final int numberOfThreads = threads;
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            // each thread round robins over its own share of the connections
+                            while (System.currentTimeMillis() < end) {
+                                for (int i = thread; i < clients.length; i += numberOfThreads) {
+                                    try {
+                                        clients[i].request();
+                                        requests.incrementAndGet();
+                                    } catch (IOException e) {
+                                        failures.incrementAndGet();
+                                    }
+                                }
+                            }
+                        } finally {
+                            latch.countDown();
+                        }
+                    }
+                }, "benchmark_client_" + t).start();
+            }
+            latch.await();
+
+            System.out.println("[" + run + "] [" + requests.get() + "] requests, [" + failures.get() + "] failures in " + duration
+                    + ", " + (requests.get() * 1000 / duration.millis()) + " requests/s over [" + connections + "] connections");
+
+            for (Connection client : clients) {
+                client.close();
+            }
+        } finally {
+            node.close();
+        }
+    }
+
+    static class Connection {
+
+        private final Socket socket;
+
+        private final OutputStream out;
+
+        private final InputStream in;
+
+        Connection(InetSocketAddress address) throws IOException {
+            socket = new Socket(address.getAddress(), address.getPort());
+            socket.setTcpNoDelay(true);
+            socket.setKeepAlive(true);
+            out = socket.getOutputStream();
+            in = new BufferedInputStream(socket.getInputStream());
+        }
+
+        /**
+         * Sends a request and reads its response.
+         */
+        void request() throws IOException {
+            out.write(REQUEST);
+            out.flush();
+            int contentLength = 0;
+            StringBuilder line = new StringBuilder();
+            while (true) {
+                int b = in.read();
+                if (b == -1) {
+                    throw new IOException("connection closed");
+                }
+                if (b == '\n') {
+                    if (line.length() == 0) {
+                        break;
+                    }
+                    String header = line.toString();
+                    if (header.regionMatches(true, 0, "Content-Length:", 0, "Content-Length:".length())) {
+                        contentLength = Integer.parseInt(header.substring("Content-Length:".length()).trim());
+                    }
+                    line.setLength(0);
+                } else if (b != '\r') {
+                    line.append((char) b);
+                }
+            }
+            for (int i = 0; i < contentLength; i++) {
+                if (in.read() == -1) {
+                    throw new IOException("connection closed");
+                }
+            }
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+}
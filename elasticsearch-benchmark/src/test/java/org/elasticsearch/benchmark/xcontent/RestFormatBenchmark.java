@@ -0,0 +1,138 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.benchmark.xcontent;
+
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.common.StopWatch;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+
+import java.io.IOException;
+
+/**
+ * Compares JSON with SMILE for the REST layer: the size and parse time of a bulk request body, and the size, render
+ * time and (client side) parse time of a search response with 100 hits.
+ */
+public class RestFormatBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int bulkSize = 1000;
+        int iterations = 2000;
+
+        for (XContentType type : new XContentType[]{XContentType.JSON, XContentType.SMILE}) {
+            BytesReference bulk = bulkBody(type, bulkSize);
+            // warm up
+            for (int i = 0; i < iterations; i++) {
+                new BulkRequest().add(bulk, false, null, null);
+            }
+            StopWatch stopWatch = new StopWatch().start();
+            for (int i = 0; i < iterations; i++) {
+                new BulkRequest().add(bulk, false, null, null);
+            }
+            stopWatch.stop();
+            System.out.println("[" + type + "] bulk of [" + bulkSize + "] docs, [" + bulk.length() + "] bytes, parsed in "
+                    + (stopWatch.totalTime().micros() / iterations) + "micros");
+        }
+
+        for (XContentType type : new XContentType[]{XContentType.JSON, XContentType.SMILE}) {
+            // warm up
+            for (int i = 0; i < iterations; i++) {
+                searchResponse(type);
+            }
+            StopWatch stopWatch = new StopWatch().start();
+            BytesReference response = null;
+            for (int i = 0; i < iterations; i++) {
+                response = searchResponse(type);
+            }
+            stopWatch.stop();
+            long renderMicros = stopWatch.totalTime().micros() / iterations;
+
+            for (int i = 0; i < iterations; i++) {
+                parse(type, response);
+            }
+            stopWatch = new StopWatch().start();
+            for (int i = 0; i < iterations; i++) {
+                parse(type, response);
+            }
+            stopWatch.stop();
+            System.out.println("[" + type + "] search response, [" + response.length() + "] bytes, rendered in " + renderMicros
+                    + "micros, parsed in " + (stopWatch.totalTime().micros() / iterations) + "micros");
+        }
+    }
+
+    private static BytesReference bulkBody(XContentType type, int size) throws IOException {
+        byte separator = XContentFactory.xContent(type).streamSeparator();
+        BytesStreamOutput out = new BytesStreamOutput();
+        for (int i = 0; i < size; i++) {
+            XContentBuilder action = XContentFactory.contentBuilder(type).startObject()
+                    .startObject("index").field("_index", "test").field("_type", "type").field("_id", Integer.toString(i)).endObject()
+                    .endObject();
+            write(out, action.bytes());
+            out.writeByte(separator);
+            write(out, source(XContentFactory.contentBuilder(type), i).bytes());
+            out.writeByte(separator);
+        }
+        return out.bytes();
+    }
+
+    private static void write(BytesStreamOutput out, BytesReference bytes) throws IOException {
+        out.writeBytes(bytes.array(), bytes.arrayOffset(), bytes.length());
+    }
+
+    private static XContentBuilder source(XContentBuilder builder, int i) throws IOException {
+        return builder.startObject()
+                .field("title", "document number " + i)
+                .field("count", i)
+                .field("price", i * 1.5)
+                .field("published", true)
+                .array("tags", "red", "green", "blue")
+                .field("body", "the quick brown fox jumps over the lazy dog, the quick brown fox jumps over the lazy dog")
+                .endObject();
+    }
+
+    private static BytesReference searchResponse(XContentType type) throws IOException {
+        XContentBuilder builder = XContentFactory.contentBuilder(type);
+        builder.startObject().field("took", 10).field("timed_out", false);
+        builder.startObject("_shards").field("total", 5).field("successful", 5).field("failed", 0).endObject();
+        builder.startObject("hits").field("total", 1000).field("max_score", 1.0f);
+        builder.startArray("hits");
+        for (int i = 0; i < 100; i++) {
+            builder.startObject().field("_index", "test").field("_type", "type").field("_id", Integer.toString(i)).field("_score", 1.0f);
+            builder.field("_source");
+            source(builder, i);
+            builder.endObject();
+        }
+        builder.endArray().endObject().endObject();
+        return builder.bytes();
+    }
+
+    private static void parse(XContentType type, BytesReference bytes) throws IOException {
+        XContentParser parser = XContentFactory.xContent(type).createParser(bytes.array(), bytes.arrayOffset(), bytes.length());
+        try {
+            parser.map();
+        } finally {
+            parser.close();
+        }
+    }
+}
@@ -147,6 +147,14 @@ public class MurmurHash {
         return ((v << n) | (v >>> (64 - n)));
     }
 
+    /**
+     * Hashes a single long value using the MurmurHash 3.0 finalization mix, which spreads every input
+     * bit across the whole result.
+     */
+    public static long hash64(long value) {
+        return fmix(value);
+    }
+
     protected static long fmix(long k) {
         k ^= k >>> 33;
         k *= 0xff51afd7ed558ccdL;
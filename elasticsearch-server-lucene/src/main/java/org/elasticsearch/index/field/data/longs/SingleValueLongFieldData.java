@@ -67,6 +67,13 @@ public class SingleValueLongFieldData extends LongFieldData {
                 RamUsage.NUM_BYTES_INT * ordinals.length + RamUsage.NUM_BYTES_ARRAY_HEADER;
     }
 
+    /**
+     * The ordinal of the value of each doc, <tt>0</tt> for docs without a value.
+     */
+    public int[] ordinals() {
+        return ordinals;
+    }
+
     @Override
     public boolean multiValued() {
         return false;
@@ -0,0 +1,403 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.action.bulk;
+
+import com.google.common.collect.Lists;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.WriteConsistencyLevel;
+import org.elasticsearch.action.support.replication.ReplicationType;
+import org.elasticsearch.client.IngestClient;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.xcontent.XContent;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentParser;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Parses a bulk body as it arrives, in parts, and executes it in batches of complete actions, so arbitrarily
+ * large bulk bodies can be indexed without buffering them fully. At most <tt>maxInFlight</tt> batches are
+ * executed concurrently, when reached, {@link #add(byte[], int, int)} returns <tt>false</tt> and the caller
+ * should stop providing data until {@link Listener#onResume()} is called. A line (an action or its source)
+ * longer than <tt>maxLineSize</tt> fails the stream with a {@link BulkStreamLineTooLongException}, so the
+ * trailing bytes of an unterminated line are never buffered beyond it.
+ * <p/>
+ * Note, operations of different batches that are executed concurrently (<tt>maxInFlight</tt> above 1) can be
+ * applied out of order.
+ */
+public class BulkStream {
+
+    public static interface Listener {
+
+        /**
+         * Called when data can be added again after {@link BulkStream#add(byte[], int, int)} returned <tt>false</tt>.
+         */
+        void onResume();
+
+        /**
+         * Called once the stream was closed and all its batches were executed.
+         */
+        void onResponse(BulkStream stream);
+
+        void onFailure(Throwable e);
+    }
+
+    /**
+     * A failed action of the stream.
+     */
+    public static class Failure {
+
+        private final String opType;
+        private final String index;
+        private final String type;
+        private final String id;
+        private final String message;
+
+        Failure(BulkItemResponse item) {
+            this.opType = item.opType();
+            this.index = item.index();
+            this.type = item.type();
+            this.id = item.id();
+            this.message = item.failure().message();
+        }
+
+        public String opType() {
+            return opType;
+        }
+
+        public String index() {
+            return index;
+        }
+
+        public String type() {
+            return type;
+        }
+
+        public String id() {
+            return id;
+        }
+
+        public String message() {
+            return message;
+        }
+    }
+
+    private final IngestClient client;
+
+    private final String defaultIndex;
+
+    private final String defaultType;
+
+    private final ReplicationType replicationType;
+
+    private final WriteConsistencyLevel consistencyLevel;
+
+    private final boolean refresh;
+
+    private final long batchSize;
+
+    private final long maxLineSize;
+
+    private final int maxInFlight;
+
+    private final int maxFailures;
+
+    private final Listener listener;
+
+    private final long startTime = System.currentTimeMillis();
+
+    // the trailing bytes of the stream that don't make up a complete action yet
+    private BytesStreamOutput pending = new BytesStreamOutput();
+
+    // the complete actions of the next batch
+    private BytesStreamOutput batch = new BytesStreamOutput();
+
+    private byte marker;
+
+    private XContent xContent;
+
+    // set when the next line is the source of an action
+    private boolean expectSource;
+
+    private int inFlight;
+
+    private boolean paused;
+
+    private boolean closed;
+
+    private boolean done;
+
+    private long items;
+
+    private long failed;
+
+    private long batches;
+
+    private final List<Failure> failures = Lists.newArrayList();
+
+    public BulkStream(IngestClient client, String defaultIndex, String defaultType, ReplicationType replicationType,
+                      WriteConsistencyLevel consistencyLevel, boolean refresh, long batchSize, long maxLineSize, int maxInFlight,
+                      int maxFailures, Listener listener) {
+        this.client = client;
+        this.defaultIndex = defaultIndex;
+        this.defaultType = defaultType;
+        this.replicationType = replicationType;
+        this.consistencyLevel = consistencyLevel;
+        this.refresh = refresh;
+        this.batchSize = batchSize;
+        this.maxLineSize = maxLineSize;
+        this.maxInFlight = maxInFlight;
+        this.maxFailures = maxFailures;
+        this.listener = listener;
+    }
+
+    /**
+     * Adds the next part of the bulk body, executing the batches it completes. Returns <tt>false</tt> if there
+     * are too many batches in flight, in which case no more data should be added until {@link Listener#onResume()}.
+     */
+    public synchronized boolean add(byte[] data, int offset, int length) throws Exception {
+        if (closed) {
+            throw new IllegalStateException("bulk stream already closed");
+        }
+        if (done) {
+            // failed, the listener was notified already
+            return true;
+        }
+        int from = offset;
+        int end = offset + length;
+        if (xContent == null) {
+            if (length == 0) {
+                return true;
+            }
+            xContent = XContentFactory.xContent(data, offset, length);
+            marker = xContent.streamSeparator();
+        }
+        for (int i = offset; i < end; i++) {
+            if (data[i] != marker) {
+                continue;
+            }
+            if (pending.size() > 0) {
+                checkLineSize(pending.size() + i - from);
+                pending.writeBytes(data, from, i - from);
+                byte[] line = pending.bytes().toBytes();
+                pending = new BytesStreamOutput();
+                line(line, 0, line.length);
+            } else {
+                line(data, from, i - from);
+            }
+            from = i + 1;
+        }
+        if (from < end) {
+            checkLineSize(pending.size() + end - from);
+            pending.writeBytes(data, from, end - from);
+        }
+        if (inFlight >= maxInFlight) {
+            paused = true;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Marks the end of the bulk body, executing the last batch. The listener is notified once all the batches
+     * were executed.
+     */
+    public void close() throws Exception {
+        boolean respond;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            if (pending.size() > 0) {
+                byte[] line = pending.bytes().toBytes();
+                pending = new BytesStreamOutput();
+                line(line, 0, line.length);
+            }
+            if (expectSource) {
+                throw new IllegalArgumentException("bulk body ended without the source of its last action");
+            }
+            closed = true;
+            if (batch.size() > 0) {
+                execute();
+            }
+            respond = inFlight == 0 && !done;
+            if (respond) {
+                done = true;
+            }
+        }
+        if (respond) {
+            listener.onResponse(this);
+        }
+    }
+
+    private void checkLineSize(long size) {
+        if (size > maxLineSize) {
+            throw new BulkStreamLineTooLongException("bulk line is longer than [" + maxLineSize + "] bytes");
+        }
+    }
+
+    private void line(byte[] data, int offset, int length) throws Exception {
+        checkLineSize(length);
+        if (expectSource) {
+            expectSource = false;
+        } else {
+            if (isBlank(data, offset, length)) {
+                return;
+            }
+            // make sure the current batch ends on a complete action
+            if (batch.size() >= batchSize) {
+                execute();
+            }
+            expectSource = !"delete".equals(action(data, offset, length));
+        }
+        batch.writeBytes(data, offset, length);
+        batch.writeByte(marker);
+    }
+
+    private String action(byte[] data, int offset, int length) throws IOException {
+        XContentParser parser = xContent.createParser(data, offset, length);
+        try {
+            // move pointers
+            // Move to START_OBJECT
+            XContentParser.Token token = parser.nextToken();
+            if (token == null) {
+                throw new IllegalArgumentException("malformed bulk action, expected an object");
+            }
+            // Move to FIELD_NAME, that's the action
+            token = parser.nextToken();
+            if (token != XContentParser.Token.FIELD_NAME) {
+                throw new IllegalArgumentException("malformed bulk action, expected the action name");
+            }
+            return parser.currentName();
+        } finally {
+            parser.close();
+        }
+    }
+
+    private static boolean isBlank(byte[] data, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            if (!Character.isWhitespace(data[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void execute() throws Exception {
+        BulkRequest bulkRequest = new BulkRequest();
+        bulkRequest.listenerThreaded(false);
+        if (replicationType != null) {
+            bulkRequest.replicationType(replicationType);
+        }
+        if (consistencyLevel != null) {
+            bulkRequest.consistencyLevel(consistencyLevel);
+        }
+        // refresh once, with the last batch (batches are only executed once the next action starts, so the
+        // last one is never empty)
+        bulkRequest.refresh(refresh && closed);
+        // the batch buffer is not reused, so the requests can point into it
+        bulkRequest.add(batch.bytes(), false, defaultIndex, defaultType);
+        batch = new BytesStreamOutput();
+        inFlight++;
+        batches++;
+        client.bulk(bulkRequest, new ActionListener<BulkResponse>() {
+            @Override
+            public void onResponse(BulkResponse response) {
+                synchronized (BulkStream.this) {
+                    for (BulkItemResponse item : response) {
+                        items++;
+                        if (item.failed()) {
+                            failed++;
+                            if (failures.size() < maxFailures) {
+                                failures.add(new Failure(item));
+                            }
+                        }
+                    }
+                }
+                onBatchDone(null);
+            }
+
+            @Override
+            public void onFailure(Throwable e) {
+                onBatchDone(e);
+            }
+        });
+    }
+
+    private void onBatchDone(Throwable failure) {
+        boolean resume = false;
+        boolean respond = false;
+        synchronized (this) {
+            inFlight--;
+            if (done) {
+                return;
+            }
+            if (failure != null) {
+                done = true;
+            } else if (closed) {
+                respond = done = inFlight == 0;
+            } else if (paused && inFlight < maxInFlight) {
+                paused = false;
+                resume = true;
+            }
+        }
+        if (failure != null) {
+            listener.onFailure(failure);
+        } else if (respond) {
+            listener.onResponse(this);
+        } else if (resume) {
+            listener.onResume();
+        }
+    }
+
+    public long tookInMillis() {
+        return System.currentTimeMillis() - startTime;
+    }
+
+    /**
+     * The number of executed actions.
+     */
+    public synchronized long items() {
+        return items;
+    }
+
+    /**
+     * The number of executed actions that failed.
+     */
+    public synchronized long failed() {
+        return failed;
+    }
+
+    /**
+     * The number of batches the stream was executed in.
+     */
+    public synchronized long batches() {
+        return batches;
+    }
+
+    /**
+     * The failed actions, up to <tt>maxFailures</tt> of them.
+     */
+    public synchronized List<Failure> failures() {
+        return Lists.newArrayList(failures);
+    }
+}
@@ -28,6 +28,7 @@ import org.elasticsearch.cluster.ClusterState;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.indices.IndexMissingException;
+import org.elasticsearch.indices.rollup.RollupSearchRewriter;
 import org.elasticsearch.threadpool.ThreadPool;
 import org.elasticsearch.transport.BaseTransportRequestHandler;
 import org.elasticsearch.transport.TransportChannel;
@@ -59,6 +60,8 @@ public class TransportSearchAction extends TransportAction<SearchRequest, Search
 
     private final boolean optimizeSingleShard;
 
+    private final boolean rollup;
+
     @Inject
     public TransportSearchAction(Settings settings, ThreadPool threadPool,
                                  TransportService transportService, ClusterService clusterService,
@@ -78,12 +81,23 @@ public class TransportSearchAction extends TransportAction<SearchRequest, Search
         this.countAction = countAction;
 
         this.optimizeSingleShard = componentSettings.getAsBoolean("optimize_single_shard", true);
+        this.rollup = componentSettings.getAsBoolean("rollup", true);
 
         transportService.registerHandler(SearchAction.NAME, new TransportHandler());
     }
 
     @Override
     protected void doExecute(SearchRequest searchRequest, ActionListener<SearchResponse> listener) {
+        // answer facets over coarse intervals from the rollup index, when the index has one
+        if (rollup) {
+            try {
+                if (RollupSearchRewriter.rewrite(searchRequest, clusterService.state())) {
+                    logger.trace("rewrote search to rollup index {}", searchRequest.indices());
+                }
+            } catch (Exception e) {
+                logger.debug("failed to rewrite search to its rollup index, continue as normal", e);
+            }
+        }
         // optimize search type for cases where there is only one shard group to search on
         if (optimizeSingleShard && searchRequest.searchType() != SCAN && searchRequest.searchType() != COUNT) {
             try {
@@ -19,6 +19,7 @@
 
 package org.elasticsearch.action.search.type;
 
+import org.elasticsearch.common.trove.ExtTIntArrayList;
 import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
 import org.elasticsearch.search.SearchShardTarget;
 import org.elasticsearch.search.dfs.DfsSearchResult;
@@ -27,6 +28,7 @@ import org.elasticsearch.search.fetch.QueryFetchSearchResult;
 import org.elasticsearch.search.query.QuerySearchResultProvider;
 
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Queue;
 
@@ -43,6 +45,7 @@ public class TransportSearchCache {
 
     private final Queue<Map<SearchShardTarget, QueryFetchSearchResult>> cacheQueryFetchResults = ConcurrentCollections.newQueue();
 
+    private final Queue<Map<SearchShardTarget, ExtTIntArrayList>> cacheDocIdsToLoad = ConcurrentCollections.newQueue();
 
     public Collection<DfsSearchResult> obtainDfsResults() {
         Collection<DfsSearchResult> dfsSearchResults;
@@ -96,4 +99,24 @@ public class TransportSearchCache {
         fetchResults.clear();
         cacheQueryFetchResults.offer(fetchResults);
     }
+
+    public Map<SearchShardTarget, ExtTIntArrayList> obtainDocIdsToLoad() {
+        Map<SearchShardTarget, ExtTIntArrayList> docIdsToLoad;
+        while ((docIdsToLoad = cacheDocIdsToLoad.poll()) == null) {
+            // only accessed by a single thread while building it, no need for a concurrent map
+            cacheDocIdsToLoad.offer(new HashMap<SearchShardTarget, ExtTIntArrayList>());
+        }
+        return docIdsToLoad;
+    }
+
+    /**
+     * Releases the doc ids map, the lists it holds are dropped, since they are handed over to the fetch requests.
+     */
+    public void releaseDocIdsToLoad(Map<SearchShardTarget, ExtTIntArrayList> docIdsToLoad) {
+        if (docIdsToLoad == null) {
+            return;
+        }
+        docIdsToLoad.clear();
+        cacheDocIdsToLoad.offer(docIdsToLoad);
+    }
 }
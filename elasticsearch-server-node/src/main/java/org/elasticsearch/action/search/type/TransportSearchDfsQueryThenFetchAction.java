@@ -179,7 +179,7 @@ public class TransportSearchDfsQueryThenFetchAction extends TransportSearchTypeA
 
         void innerExecuteFetchPhase() {
             sortedShardList = searchPhaseController.sortDocs(queryResults.values());
-            final Map<SearchShardTarget, ExtTIntArrayList> docIdsToLoad = searchPhaseController.docIdsToLoad(sortedShardList);
+            final Map<SearchShardTarget, ExtTIntArrayList> docIdsToLoad = searchPhaseController.docIdsToLoad(sortedShardList, searchCache.obtainDocIdsToLoad());
             this.docIdsToLoad = docIdsToLoad;
 
             if (docIdsToLoad.isEmpty()) {
@@ -271,6 +271,7 @@ public class TransportSearchDfsQueryThenFetchAction extends TransportSearchTypeA
                 listener.onFailure(failure);
             } finally {
                 releaseIrrelevantSearchContexts(queryResults, docIdsToLoad);
+                searchCache.releaseDocIdsToLoad(docIdsToLoad);
                 searchCache.releaseDfsResults(dfsResults);
                 searchCache.releaseQueryResults(queryResults);
                 searchCache.releaseFetchResults(fetchResults);
@@ -39,6 +39,7 @@ import org.elasticsearch.search.query.QuerySearchResult;
 import org.elasticsearch.search.query.QuerySearchResultProvider;
 import org.elasticsearch.threadpool.ThreadPool;
 
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -80,6 +81,11 @@ public class TransportSearchQueryThenFetchAction extends TransportSearchTypeActi
             searchService.sendExecuteQuery(node, request, listener);
         }
 
+        @Override
+        protected void sendExecuteFirstPhase(DiscoveryNode node, List<ShardSearchRequest> requests, List<SearchServiceListener<QuerySearchResult>> listeners) {
+            searchService.sendExecuteQuery(node, request, requests, listeners);
+        }
+
         @Override
         protected void processFirstPhaseResult(ShardRouting shard, QuerySearchResult result) {
             queryResults.put(result.shardTarget(), result);
@@ -88,7 +94,7 @@ public class TransportSearchQueryThenFetchAction extends TransportSearchTypeActi
         @Override
         protected void moveToSecondPhase() {
             sortedShardList = searchPhaseController.sortDocs(queryResults.values());
-            final Map<SearchShardTarget, ExtTIntArrayList> docIdsToLoad = searchPhaseController.docIdsToLoad(sortedShardList);
+            final Map<SearchShardTarget, ExtTIntArrayList> docIdsToLoad = searchPhaseController.docIdsToLoad(sortedShardList, searchCache.obtainDocIdsToLoad());
             this.docIdsToLoad = docIdsToLoad;
 
             if (docIdsToLoad.isEmpty()) {
@@ -181,6 +187,7 @@ public class TransportSearchQueryThenFetchAction extends TransportSearchTypeActi
                 listener.onFailure(failure);
             } finally {
                 releaseIrrelevantSearchContexts(queryResults, docIdsToLoad);
+                searchCache.releaseDocIdsToLoad(docIdsToLoad);
                 searchCache.releaseQueryResults(queryResults);
                 searchCache.releaseFetchResults(fetchResults);
             }
@@ -33,22 +33,31 @@ import org.elasticsearch.cluster.routing.ShardRouting;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.trove.ExtTIntArrayList;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.search.SearchPhaseResult;
 import org.elasticsearch.search.SearchShardTarget;
 import org.elasticsearch.search.action.SearchServiceListener;
 import org.elasticsearch.search.action.SearchServiceTransportAction;
+import org.elasticsearch.search.canmatch.CanMatchSearchResult;
 import org.elasticsearch.search.controller.SearchPhaseController;
 import org.elasticsearch.search.controller.ShardDoc;
 import org.elasticsearch.search.internal.ShardSearchRequest;
 import org.elasticsearch.search.query.QuerySearchResultProvider;
 import org.elasticsearch.threadpool.ThreadPool;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.elasticsearch.action.search.type.TransportSearchHelper.internalSearchRequest;
 
@@ -65,6 +74,14 @@ public abstract class TransportSearchTypeAction extends TransportAction<SearchRe
 
     protected final TransportSearchCache searchCache;
 
+    protected final boolean batchShardRequests;
+
+    protected final int preFilterShardSize;
+
+    protected final TimeValue coordinatorTimeout;
+
+    private final AtomicLong searchIdGenerator = new AtomicLong();
+
     public TransportSearchTypeAction(Settings settings, ThreadPool threadPool, ClusterService clusterService,
                                      TransportSearchCache searchCache, SearchServiceTransportAction searchService, SearchPhaseController searchPhaseController) {
         super(settings, threadPool);
@@ -72,6 +89,9 @@ public abstract class TransportSearchTypeAction extends TransportAction<SearchRe
         this.searchCache = searchCache;
         this.searchService = searchService;
         this.searchPhaseController = searchPhaseController;
+        this.batchShardRequests = settings.getAsBoolean("action.search.batch_shard_requests", true);
+        this.preFilterShardSize = settings.getAsInt("action.search.pre_filter_shard_size", 128);
+        this.coordinatorTimeout = settings.getAsTime("action.search.coordinator_timeout", null);
     }
 
     protected abstract class BaseAsyncAction<FirstResult extends SearchPhaseResult> {
@@ -99,12 +119,19 @@ public abstract class TransportSearchTypeAction extends TransportAction<SearchRe
 
         protected final long startTime = System.currentTimeMillis();
 
+        // sent with every shard request, so the shards can be asked to cancel the search
+        protected final String searchId;
+
+        // the nodes shard requests were sent to, and that are asked to cancel the search if it fails
+        private final Set<String> searchedNodes = ConcurrentCollections.newConcurrentSet();
+
         protected BaseAsyncAction(SearchRequest request, ActionListener<SearchResponse> listener) {
             this.request = request;
-            this.listener = listener;
+            this.listener = new CancellingListener(listener);
 
             this.clusterState = clusterService.state();
             nodes = clusterState.nodes();
+            searchId = nodes.localNodeId() + ":" + searchIdGenerator.incrementAndGet();
 
             clusterState.blocks().globalBlockedRaiseException(ClusterBlockLevel.READ);
 
@@ -129,13 +156,106 @@ public abstract class TransportSearchTypeAction extends TransportAction<SearchRe
 
         public void start() {
             request.beforeStart();
+            if (coordinatorTimeout != null) {
+                ((CancellingListener) listener).scheduleTimeout(coordinatorTimeout);
+            }
+            if (shardsIts.size() > preFilterShardSize) {
+                performCanMatchPhase();
+            } else {
+                executeFirstPhase(shardsIts);
+            }
+        }
+
+        /**
+         * Asks each shard (its first active copy) if it can possibly match the request, and then executes the
+         * first phase only on the shards that can. Shards that fail to answer are searched.
+         */
+        void performCanMatchPhase() {
+            final Set<ShardId> skippedShards = ConcurrentCollections.newConcurrentSet();
+            final AtomicInteger counter = new AtomicInteger(shardsIts.size());
+            for (final ShardIterator shardIt : shardsIts) {
+                final ShardRouting shard = shardIt.firstOrNull();
+                DiscoveryNode node = shard == null ? null : nodes.get(shard.currentNodeId());
+                if (node == null) {
+                    // let the first phase handle it
+                    if (counter.decrementAndGet() == 0) {
+                        moveToFirstPhase(skippedShards);
+                    }
+                    continue;
+                }
+                searchService.sendExecuteCanMatch(node, shardSearchRequest(shard), new SearchServiceListener<CanMatchSearchResult>() {
+                    @Override
+                    public void onResult(CanMatchSearchResult result) {
+                        if (!result.canMatch()) {
+                            skippedShards.add(shardIt.shardId());
+                        }
+                        if (counter.decrementAndGet() == 0) {
+                            moveToFirstPhase(skippedShards);
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(Throwable t) {
+                        if (logger.isTraceEnabled()) {
+                            logger.trace(shard.shortSummary() + ": Failed to execute can match phase for [" + request + "]", t);
+                        }
+                        if (counter.decrementAndGet() == 0) {
+                            moveToFirstPhase(skippedShards);
+                        }
+                    }
+                });
+            }
+        }
+
+        void moveToFirstPhase(Set<ShardId> skippedShards) {
+            final List<ShardIterator> targetShardsIts = new ArrayList<ShardIterator>(shardsIts.size());
+            for (ShardIterator shardIt : shardsIts) {
+                if (!skippedShards.contains(shardIt.shardId())) {
+                    targetShardsIts.add(shardIt);
+                }
+            }
+            if (targetShardsIts.isEmpty()) {
+                // search at least one shard, so we get back a properly formed (empty) response
+                ShardIterator shardIt = shardsIts.iterator().next();
+                skippedShards.remove(shardIt.shardId());
+                targetShardsIts.add(shardIt);
+            }
+            // skipped shards count as successful, account for all their copies
+            for (ShardIterator shardIt : shardsIts) {
+                if (skippedShards.contains(shardIt.shardId())) {
+                    successulOps.incrementAndGet();
+                    totalOps.addAndGet(shardIt.remaining());
+                }
+            }
+            if (logger.isDebugEnabled() && !skippedShards.isEmpty()) {
+                logger.debug("skipping [{}] out of [{}] shards that can't match [{}]", skippedShards.size(), shardsIts.size(), request);
+            }
+            // we are called back on a network thread when all shards responded
+            threadPool.executor(ThreadPool.Names.SEARCH).execute(new Runnable() {
+                @Override
+                public void run() {
+                    executeFirstPhase(targetShardsIts);
+                }
+            });
+        }
+
+        void executeFirstPhase(final Iterable<ShardIterator> shardsIts) {
             // count the local operations, and perform the non local ones
             int localOperations = 0;
+            Map<String, List<ShardIterator>> remoteOperations = batchShardRequests ? new HashMap<String, List<ShardIterator>>() : null;
             for (final ShardIterator shardIt : shardsIts) {
                 final ShardRouting shard = shardIt.firstOrNull();
                 if (shard != null) {
                     if (shard.currentNodeId().equals(nodes.localNodeId())) {
                         localOperations++;
+                    } else if (remoteOperations != null) {
+                        // group the remote operations by node, and send them once all shards are known
+                        List<ShardIterator> nodeShardsIts = remoteOperations.get(shard.currentNodeId());
+                        if (nodeShardsIts == null) {
+                            nodeShardsIts = new ArrayList<ShardIterator>();
+                            remoteOperations.put(shard.currentNodeId(), nodeShardsIts);
+                        }
+                        nodeShardsIts.add(shardIt);
                     } else {
                         // do the remote operation here, the localAsync flag is not relevant
                         performFirstPhase(shardIt);
@@ -145,6 +265,11 @@ public abstract class TransportSearchTypeAction extends TransportAction<SearchRe
                     onFirstPhaseResult(null, shardIt, null);
                 }
             }
+            if (remoteOperations != null) {
+                for (Map.Entry<String, List<ShardIterator>> entry : remoteOperations.entrySet()) {
+                    performFirstPhase(entry.getKey(), entry.getValue());
+                }
+            }
             // we have local operations, perform them now
             if (localOperations > 0) {
                 if (request.operationThreading() == SearchOperationThreading.SINGLE_THREAD) {
@@ -201,8 +326,7 @@ public abstract class TransportSearchTypeAction extends TransportAction<SearchRe
                 if (node == null) {
                     onFirstPhaseResult(shard, shardIt, null);
                 } else {
-                    String[] filteringAliases = clusterState.metaData().filteringAliases(shard.index(), request.indices());
-                    sendExecuteFirstPhase(node, internalSearchRequest(shard, shardsIts.size(), request, filteringAliases, startTime), new SearchServiceListener<FirstResult>() {
+                    sendExecuteFirstPhase(node, shardSearchRequest(shard), new SearchServiceListener<FirstResult>() {
                         @Override
                         public void onResult(FirstResult result) {
                             onFirstPhaseResult(shard, result, shardIt);
@@ -217,6 +341,38 @@ public abstract class TransportSearchTypeAction extends TransportAction<SearchRe
             }
         }
 
+        /**
+         * Performs the first phase of all the shard iterators whose first shard is allocated on the given
+         * node with a single request. Failed shards fall back to be retried one by one on their next replica.
+         */
+        void performFirstPhase(String nodeId, List<ShardIterator> nodeShardsIts) {
+            DiscoveryNode node = nodes.get(nodeId);
+            if (node == null || nodeShardsIts.size() == 1) {
+                for (ShardIterator shardIt : nodeShardsIts) {
+                    performFirstPhase(shardIt);
+                }
+                return;
+            }
+            List<ShardSearchRequest> shardRequests = new ArrayList<ShardSearchRequest>(nodeShardsIts.size());
+            List<SearchServiceListener<FirstResult>> listeners = new ArrayList<SearchServiceListener<FirstResult>>(nodeShardsIts.size());
+            for (final ShardIterator shardIt : nodeShardsIts) {
+                final ShardRouting shard = shardIt.nextOrNull();
+                shardRequests.add(shardSearchRequest(shard));
+                listeners.add(new SearchServiceListener<FirstResult>() {
+                    @Override
+                    public void onResult(FirstResult result) {
+                        onFirstPhaseResult(shard, result, shardIt);
+                    }
+
+                    @Override
+                    public void onFailure(Throwable t) {
+                        onFirstPhaseResult(shard, shardIt, t);
+                    }
+                });
+            }
+            sendExecuteFirstPhase(node, shardRequests, listeners);
+        }
+
         void onFirstPhaseResult(ShardRouting shard, FirstResult result, ShardIterator shardIt) {
             result.shardTarget(new SearchShardTarget(shard.currentNodeId(), shard.index(), shard.id()));
             processFirstPhaseResult(shard, result);
@@ -301,6 +457,79 @@ public abstract class TransportSearchTypeAction extends TransportAction<SearchRe
             }
         }
 
+        /**
+         * Builds the request of the shard, tagged with the search id, and remembers its node in case the
+         * search has to be cancelled.
+         */
+        ShardSearchRequest shardSearchRequest(ShardRouting shard) {
+            searchedNodes.add(shard.currentNodeId());
+            String[] filteringAliases = clusterState.metaData().filteringAliases(shard.index(), request.indices());
+            return internalSearchRequest(shard, shardsIts.size(), request, filteringAliases, startTime).searchId(searchId);
+        }
+
+        /**
+         * Asks all the nodes the search was sent to to cancel it, so shards still executing it stop at their
+         * next timeout check instead of running to completion for a response nobody waits for.
+         */
+        void cancelSearch() {
+            for (String nodeId : searchedNodes) {
+                DiscoveryNode node = nodes.get(nodeId);
+                if (node != null) {
+                    searchService.sendCancelSearch(node, searchId, request);
+                }
+            }
+        }
+
+        /**
+         * Notifies the listener only once, and cancels the search on the shards when it fails (or the
+         * coordinating node gives up waiting on it).
+         */
+        class CancellingListener implements ActionListener<SearchResponse> {
+
+            private final ActionListener<SearchResponse> delegate;
+
+            private final AtomicBoolean done = new AtomicBoolean();
+
+            private volatile ScheduledFuture timeoutFuture;
+
+            CancellingListener(ActionListener<SearchResponse> delegate) {
+                this.delegate = delegate;
+            }
+
+            void scheduleTimeout(final TimeValue timeout) {
+                timeoutFuture = threadPool.schedule(timeout, ThreadPool.Names.GENERIC, new Runnable() {
+                    @Override
+                    public void run() {
+                        onFailure(new SearchPhaseExecutionException(firstPhaseName(), "coordinating node timed out after [" + timeout + "]", buildShardFailures()));
+                    }
+                });
+            }
+
+            @Override
+            public void onResponse(SearchResponse response) {
+                if (done.compareAndSet(false, true)) {
+                    cancelTimeout();
+                    delegate.onResponse(response);
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable e) {
+                if (done.compareAndSet(false, true)) {
+                    cancelTimeout();
+                    cancelSearch();
+                    delegate.onFailure(e);
+                }
+            }
+
+            private void cancelTimeout() {
+                ScheduledFuture timeoutFuture = this.timeoutFuture;
+                if (timeoutFuture != null) {
+                    timeoutFuture.cancel(false);
+                }
+            }
+        }
+
         /**
          * Builds how long it took to execute the search.
          */
@@ -348,6 +577,16 @@ public abstract class TransportSearchTypeAction extends TransportAction<SearchRe
 
         protected abstract void sendExecuteFirstPhase(DiscoveryNode node, ShardSearchRequest request, SearchServiceListener<FirstResult> listener);
 
+        /**
+         * Sends the first phase of several shards allocated on the same node. Search types that support
+         * batching the first phase override this, by default each shard request is sent on its own.
+         */
+        protected void sendExecuteFirstPhase(DiscoveryNode node, List<ShardSearchRequest> requests, List<SearchServiceListener<FirstResult>> listeners) {
+            for (int i = 0; i < requests.size(); i++) {
+                sendExecuteFirstPhase(node, requests.get(i), listeners.get(i));
+            }
+        }
+
         protected abstract void processFirstPhaseResult(ShardRouting shard, FirstResult result);
 
         protected abstract void moveToSecondPhase() throws Exception;
@@ -0,0 +1,127 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.http.netty;
+
+import org.jboss.netty.channel.*;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.PriorityQueue;
+
+/**
+ * Supports HTTP/1.1 pipelining: the requests of a connection are numbered in the order they arrive and are
+ * executed concurrently, while their responses (written as {@link OrderedHttpResponse}) are held back until all
+ * the responses before them were written, so they go out in the order of the requests.
+ * <p/>
+ * Reading from the connection is suspended while it has <tt>maxInFlight</tt> requests without a written
+ * response.
+ * <p/>
+ * Not sharable, one is created per channel.
+ */
+public class HttpPipeliningHandler extends SimpleChannelHandler {
+
+    private final NettyHttpServerTransport transport;
+
+    private final int maxInFlight;
+
+    private final PriorityQueue<OrderedHttpResponse> pending = new PriorityQueue<OrderedHttpResponse>();
+
+    // the sequence of the next request
+    private int sequence;
+
+    // the sequence of the next response to write
+    private int nextToWrite;
+
+    private boolean suspended;
+
+    public HttpPipeliningHandler(NettyHttpServerTransport transport, int maxInFlight) {
+        this.transport = transport;
+        this.maxInFlight = maxInFlight;
+    }
+
+    @Override
+    public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+        if (e.getMessage() instanceof HttpRequest) {
+            int sequence = nextSequence(e.getChannel());
+            ctx.sendUpstream(new OrderedUpstreamMessageEvent(sequence, e.getChannel(), e.getMessage(), e.getRemoteAddress()));
+        } else {
+            ctx.sendUpstream(e);
+        }
+    }
+
+    /**
+     * Numbers the next request of the connection, the response to it should be written as an
+     * {@link OrderedHttpResponse} with this sequence.
+     */
+    public int nextSequence(Channel channel) {
+        int requestSequence;
+        int inFlight;
+        synchronized (this) {
+            requestSequence = sequence++;
+            inFlight = sequence - nextToWrite;
+            if (inFlight >= maxInFlight && !suspended) {
+                suspended = true;
+                channel.setReadable(false);
+            }
+        }
+        transport.pipelineDepth.inc(inFlight);
+        if (inFlight > 1) {
+            transport.pipelinedRequests.inc();
+        }
+        if (inFlight >= maxInFlight) {
+            transport.pipelineSuspensions.inc();
+        }
+        return requestSequence;
+    }
+
+    @Override
+    public void writeRequested(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+        if (!(e.getMessage() instanceof OrderedHttpResponse)) {
+            ctx.sendDownstream(e);
+            return;
+        }
+        OrderedHttpResponse response = (OrderedHttpResponse) e.getMessage();
+        response.event(e);
+        synchronized (this) {
+            pending.add(response);
+            // write under the lock, so responses completed concurrently still go out in order
+            while (!pending.isEmpty() && pending.peek().sequence() == nextToWrite) {
+                OrderedHttpResponse next = pending.poll();
+                nextToWrite++;
+                Channels.write(ctx, next.event().getFuture(), next.response(), next.event().getRemoteAddress());
+            }
+            if (suspended && sequence - nextToWrite < maxInFlight) {
+                suspended = false;
+                ctx.getChannel().setReadable(true);
+            }
+        }
+    }
+
+    @Override
+    public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+        synchronized (this) {
+            // responses still waiting for earlier ones will never be written
+            while (!pending.isEmpty()) {
+                pending.poll().event().getFuture().setFailure(new ClosedChannelException());
+            }
+        }
+        ctx.sendUpstream(e);
+    }
+}
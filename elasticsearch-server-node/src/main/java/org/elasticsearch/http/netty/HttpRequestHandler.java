@@ -40,7 +40,8 @@ public class HttpRequestHandler extends SimpleChannelUpstreamHandler {
         HttpRequest request = (HttpRequest) e.getMessage();
         // the netty HTTP handling always copy over the buffer to its own buffer, either in NioWorker internally
         // when reading, or using a cumalation buffer
-        serverTransport.dispatchRequest(new NettyHttpRequest(request), new NettyHttpChannel(serverTransport, e.getChannel(), request));
+        int sequence = e instanceof OrderedUpstreamMessageEvent ? ((OrderedUpstreamMessageEvent) e).sequence() : -1;
+        serverTransport.dispatchRequest(new NettyHttpRequest(request), new NettyHttpChannel(serverTransport, e.getChannel(), request, sequence));
         super.messageReceived(ctx, e);
     }
 
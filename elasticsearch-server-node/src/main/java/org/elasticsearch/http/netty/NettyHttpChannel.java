@@ -46,11 +46,20 @@ public class NettyHttpChannel implements HttpChannel {
     private final NettyHttpServerTransport transport;
     private final Channel channel;
     private final org.jboss.netty.handler.codec.http.HttpRequest request;
+    private final int sequence;
 
     public NettyHttpChannel(NettyHttpServerTransport transport, Channel channel, org.jboss.netty.handler.codec.http.HttpRequest request) {
+        this(transport, channel, request, -1);
+    }
+
+    /**
+     * @param sequence the sequence of the request on a pipelining connection, <tt>-1</tt> if not pipelined
+     */
+    public NettyHttpChannel(NettyHttpServerTransport transport, Channel channel, org.jboss.netty.handler.codec.http.HttpRequest request, int sequence) {
         this.transport = transport;
         this.channel = channel;
         this.request = request;
+        this.sequence = sequence;
     }
 
     @Override
@@ -130,6 +139,10 @@ public class NettyHttpChannel implements HttpChannel {
         }
         resp.setContent(buf);
         resp.setHeader(HttpHeaders.Names.CONTENT_TYPE, response.contentType());
+        if (response instanceof XContentRestResponse) {
+            // the format of x-content responses is negotiated with the Accept header
+            resp.addHeader(HttpHeaders.Names.VARY, HttpHeaders.Names.ACCEPT);
+        }
 
         resp.setHeader(HttpHeaders.Names.CONTENT_LENGTH, String.valueOf(buf.readableBytes()));
 
@@ -150,7 +163,8 @@ public class NettyHttpChannel implements HttpChannel {
         }
 
         // Write the response.
-        ChannelFuture future = channel.write(resp);
+        // Pipelined responses are written in the order of their requests.
+        ChannelFuture future = channel.write(sequence == -1 ? resp : new OrderedHttpResponse(sequence, resp));
         if (releaseContentListener != null) {
             future.addListener(releaseContentListener);
         }
@@ -20,8 +20,11 @@
 package org.elasticsearch.http.netty;
 
 import org.elasticsearch.ElasticSearchException;
+import org.elasticsearch.client.IngestClient;
 import org.elasticsearch.common.component.AbstractLifecycleComponent;
 import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.metrics.CounterMetric;
+import org.elasticsearch.common.metrics.MeanMetric;
 import org.elasticsearch.common.netty.NettyStaticSetup;
 import org.elasticsearch.common.netty.OpenChannelsHandler;
 import org.elasticsearch.common.network.NetworkService;
@@ -64,6 +67,8 @@ public class NettyHttpServerTransport extends AbstractLifecycleComponent<HttpSer
 
     private final NetworkService networkService;
 
+    final IngestClient client;
+
     final ByteSizeValue maxContentLength;
     final ByteSizeValue maxInitialLineLength;
     final ByteSizeValue maxHeaderSize;
@@ -98,6 +103,22 @@ public class NettyHttpServerTransport extends AbstractLifecycleComponent<HttpSer
     final ByteSizeValue maxCumulationBufferCapacity;
     final int maxCompositeBufferComponents;
 
+    final boolean bulkStream;
+    final ByteSizeValue bulkStreamBatchSize;
+    final ByteSizeValue bulkStreamMaxLineSize;
+    final int bulkStreamMaxInFlight;
+    final int bulkStreamMaxFailures;
+
+    final boolean pipelining;
+    final int pipeliningMaxInFlight;
+
+    // the number of requests in flight on their connection when received (including them)
+    final MeanMetric pipelineDepth = new MeanMetric();
+    // requests received while others were in flight on their connection
+    final CounterMetric pipelinedRequests = new CounterMetric();
+    // the times reading from a connection was suspended for having too many requests in flight
+    final CounterMetric pipelineSuspensions = new CounterMetric();
+
     private volatile ServerBootstrap serverBootstrap;
 
     private volatile BoundTransportAddress boundAddress;
@@ -109,9 +130,10 @@ public class NettyHttpServerTransport extends AbstractLifecycleComponent<HttpSer
     private volatile HttpServerAdapter httpServerAdapter;
 
     @Inject
-    public NettyHttpServerTransport(Settings settings, NetworkService networkService) {
+    public NettyHttpServerTransport(Settings settings, NetworkService networkService, IngestClient client) {
         super(settings);
         this.networkService = networkService;
+        this.client = client;
 
         if (settings.getAsBoolean("netty.epollBugWorkaround", false)) {
             System.setProperty("org.jboss.netty.epollBugWorkaround", "true");
@@ -153,6 +175,20 @@ public class NettyHttpServerTransport extends AbstractLifecycleComponent<HttpSer
             receiveBufferSizePredictorFactory = new AdaptiveReceiveBufferSizePredictorFactory((int) receivePredictorMin.bytes(), (int) receivePredictorMin.bytes(), (int) receivePredictorMax.bytes());
         }
 
+        // _bulk/stream requests are not aggregated (and not bound by max_content_length), they are executed in
+        // batches of batch_size as they arrive, with at most max_in_flight batches executing at a time (a request
+        // can ask for smaller batches or fewer batches in flight, but not for more). A single action or source line
+        // is bound by max_line_size, which defaults to max_content_length
+        this.bulkStream = settings.getAsBoolean("http.bulk_stream.enabled", true);
+        this.bulkStreamBatchSize = settings.getAsBytesSize("http.bulk_stream.batch_size", new ByteSizeValue(5, ByteSizeUnit.MB));
+        this.bulkStreamMaxInFlight = settings.getAsInt("http.bulk_stream.max_in_flight", 1);
+        this.bulkStreamMaxFailures = settings.getAsInt("http.bulk_stream.max_failures", 100);
+
+        // requests of a connection are executed concurrently, with their responses written in order, and
+        // reading from the connection suspended while it has max_in_flight requests without a response
+        this.pipelining = settings.getAsBoolean("http.pipelining", true);
+        this.pipeliningMaxInFlight = settings.getAsInt("http.pipelining.max_in_flight", 100);
+
         this.compression = settings.getAsBoolean("http.compression", false);
         this.compressionLevel = settings.getAsInt("http.compression_level", 6);
 
@@ -162,6 +198,7 @@ public class NettyHttpServerTransport extends AbstractLifecycleComponent<HttpSer
             maxContentLength = new ByteSizeValue(100, ByteSizeUnit.MB);
         }
         this.maxContentLength = maxContentLength;
+        this.bulkStreamMaxLineSize = settings.getAsBytesSize("http.bulk_stream.max_line_size", maxContentLength);
 
         logger.debug("using max_chunk_size[{}], max_header_size[{}], max_initial_line_length[{}], max_content_length[{}], receive_predictor[{}->{}]",
                 maxChunkSize, maxHeaderSize, maxInitialLineLength, this.maxContentLength, receivePredictorMin, receivePredictorMax);
@@ -340,14 +377,22 @@ public class NettyHttpServerTransport extends AbstractLifecycleComponent<HttpSer
             if (transport.compression) {
                 pipeline.addLast("decoder_compress", new HttpContentDecompressor());
             }
+            // the encoders come before the streamed bulk and aggregator handlers, so the compressor sees every
+            // request, including streamed ones, and every response, including 100 continue ones
+            pipeline.addLast("encoder", new HttpResponseEncoder());
+            if (transport.compression) {
+                pipeline.addLast("encoder_compress", new HttpContentCompressor(transport.compressionLevel));
+            }
+            if (transport.bulkStream) {
+                pipeline.addLast("bulk_stream", new StreamingBulkHandler(transport));
+            }
             HttpChunkAggregator httpChunkAggregator = new HttpChunkAggregator((int) transport.maxContentLength.bytes());
             if (transport.maxCompositeBufferComponents != -1) {
                 httpChunkAggregator.setMaxCumulationBufferComponents(transport.maxCompositeBufferComponents);
             }
             pipeline.addLast("aggregator", httpChunkAggregator);
-            pipeline.addLast("encoder", new HttpResponseEncoder());
-            if (transport.compression) {
-                pipeline.addLast("encoder_compress", new HttpContentCompressor(transport.compressionLevel));
+            if (transport.pipelining) {
+                pipeline.addLast("pipelining", new HttpPipeliningHandler(transport, transport.pipeliningMaxInFlight));
             }
             pipeline.addLast("handler", requestHandler);
             return pipeline;
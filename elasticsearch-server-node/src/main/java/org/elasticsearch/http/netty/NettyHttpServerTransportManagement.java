@@ -0,0 +1,64 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.http.netty;
+
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.http.HttpServerTransport;
+import org.elasticsearch.jmx.MBean;
+import org.elasticsearch.jmx.ManagedAttribute;
+
+/**
+ *
+ */
+@MBean(objectName = "service=http,httpType=netty", description = "Netty HTTP")
+public class NettyHttpServerTransportManagement {
+
+    private final NettyHttpServerTransport transport;
+
+    @Inject
+    public NettyHttpServerTransportManagement(HttpServerTransport transport) {
+        this.transport = (NettyHttpServerTransport) transport;
+    }
+
+    @ManagedAttribute(description = "Whether requests can be pipelined")
+    public boolean getPipelining() {
+        return transport.pipelining;
+    }
+
+    @ManagedAttribute(description = "Maximum number of requests in flight per connection")
+    public int getPipeliningMaxInFlight() {
+        return transport.pipeliningMaxInFlight;
+    }
+
+    @ManagedAttribute(description = "Number of requests received while others were in flight on their connection")
+    public long getPipelinedRequests() {
+        return transport.pipelinedRequests.count();
+    }
+
+    @ManagedAttribute(description = "Mean number of requests in flight on a connection when receiving a request")
+    public double getMeanPipelineDepth() {
+        return transport.pipelineDepth.mean();
+    }
+
+    @ManagedAttribute(description = "Number of times reading from a connection was suspended for having too many requests in flight")
+    public long getPipelineSuspensions() {
+        return transport.pipelineSuspensions.count();
+    }
+}
@@ -20,15 +20,26 @@
 package org.elasticsearch.http.netty;
 
 import org.elasticsearch.common.inject.AbstractModule;
+import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.http.HttpServerTransport;
+import org.elasticsearch.jmx.JmxService;
 
 /**
  *
  */
 public class NettyHttpServerTransportModule extends AbstractModule {
 
+    private final Settings settings;
+
+    public NettyHttpServerTransportModule(Settings settings) {
+        this.settings = settings;
+    }
+
     @Override
     protected void configure() {
         bind(HttpServerTransport.class).to(NettyHttpServerTransport.class).asEagerSingleton();
+        if (JmxService.shouldExport(settings)) {
+            bind(NettyHttpServerTransportManagement.class).asEagerSingleton();
+        }
     }
 }
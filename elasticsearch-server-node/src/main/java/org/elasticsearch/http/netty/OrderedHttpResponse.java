@@ -0,0 +1,64 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.http.netty;
+
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+
+/**
+ * A response to the request with the given sequence on the connection, written once the responses to the
+ * requests before it were.
+ *
+ * @see HttpPipeliningHandler
+ */
+public class OrderedHttpResponse implements Comparable<OrderedHttpResponse> {
+
+    private final int sequence;
+
+    private final HttpResponse response;
+
+    private MessageEvent event;
+
+    public OrderedHttpResponse(int sequence, HttpResponse response) {
+        this.sequence = sequence;
+        this.response = response;
+    }
+
+    public int sequence() {
+        return sequence;
+    }
+
+    public HttpResponse response() {
+        return response;
+    }
+
+    MessageEvent event() {
+        return event;
+    }
+
+    void event(MessageEvent event) {
+        this.event = event;
+    }
+
+    @Override
+    public int compareTo(OrderedHttpResponse o) {
+        return sequence < o.sequence ? -1 : (sequence == o.sequence ? 0 : 1);
+    }
+}
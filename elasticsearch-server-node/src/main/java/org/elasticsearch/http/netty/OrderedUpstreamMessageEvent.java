@@ -0,0 +1,44 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.http.netty;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.UpstreamMessageEvent;
+
+import java.net.SocketAddress;
+
+/**
+ * A received request, along with its sequence on the connection.
+ *
+ * @see HttpPipeliningHandler
+ */
+public class OrderedUpstreamMessageEvent extends UpstreamMessageEvent {
+
+    private final int sequence;
+
+    public OrderedUpstreamMessageEvent(int sequence, Channel channel, Object msg, SocketAddress remoteAddress) {
+        super(channel, msg, remoteAddress);
+        this.sequence = sequence;
+    }
+
+    public int sequence() {
+        return sequence;
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.http.netty;
+
+import org.elasticsearch.ElasticSearchException;
+import org.elasticsearch.action.WriteConsistencyLevel;
+import org.elasticsearch.action.bulk.BulkStream;
+import org.elasticsearch.action.support.replication.ReplicationType;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentBuilderString;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.rest.XContentRestResponse;
+import org.elasticsearch.rest.XContentThrowableRestResponse;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.*;
+import org.jboss.netty.handler.codec.http.*;
+import org.jboss.netty.util.CharsetUtil;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+import static org.elasticsearch.rest.RestStatus.BAD_REQUEST;
+import static org.elasticsearch.rest.RestStatus.OK;
+import static org.elasticsearch.rest.action.support.RestXContentBuilder.restContentBuilder;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.is100ContinueExpected;
+
+/**
+ * Handles <tt>_bulk/stream</tt> requests before their content gets aggregated, feeding the content chunks to a
+ * {@link BulkStream} as they arrive. Reading from the channel is suspended while the stream has too many batches
+ * in flight, so the client is slowed down by TCP flow control instead of the content being buffered. Messages
+ * already read from the socket when reading got suspended are held back until the stream resumes.
+ * <p/>
+ * Not sharable, one is created per channel.
+ */
+public class StreamingBulkHandler extends SimpleChannelUpstreamHandler {
+
+    private static final ChannelBuffer CONTINUE = ChannelBuffers.copiedBuffer("HTTP/1.1 100 Continue\r\n\r\n", CharsetUtil.US_ASCII);
+
+    private final NettyHttpServerTransport transport;
+
+    private ChannelHandlerContext ctx;
+
+    private Channel nettyChannel;
+
+    private NettyHttpRequest request;
+
+    private NettyHttpChannel channel;
+
+    private BulkStream stream;
+
+    // set when the stream failed, the rest of its content is then ignored
+    private boolean failed;
+
+    // set while the stream has too many batches in flight, messages received meanwhile are deferred
+    private boolean paused;
+
+    private final Queue<MessageEvent> deferred = new ArrayDeque<MessageEvent>();
+
+    public StreamingBulkHandler(NettyHttpServerTransport transport) {
+        this.transport = transport;
+    }
+
+    @Override
+    public synchronized void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+        this.ctx = ctx;
+        if (paused) {
+            deferred.add(e);
+            return;
+        }
+        handle(ctx, e);
+    }
+
+    private void handle(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+        Object msg = e.getMessage();
+        if (request == null) {
+            if (msg instanceof HttpRequest && isStreamingBulk((HttpRequest) msg)) {
+                start(ctx, (HttpRequest) msg);
+            } else {
+                ctx.sendUpstream(e);
+            }
+            return;
+        }
+        HttpChunk chunk = (HttpChunk) msg;
+        add(ctx, chunk.getContent());
+        if (chunk.isLast()) {
+            end();
+        }
+    }
+
+    /**
+     * Called once the stream can take more content, handles the deferred messages (until the stream pauses
+     * again) and resumes reading from the channel.
+     */
+    synchronized void resume() {
+        if (!paused) {
+            return;
+        }
+        paused = false;
+        MessageEvent e;
+        while (!paused && (e = deferred.poll()) != null) {
+            try {
+                handle(ctx, e);
+            } catch (Exception ex) {
+                Channels.fireExceptionCaught(ctx, ex);
+                return;
+            }
+        }
+        if (!paused) {
+            ctx.getChannel().setReadable(true);
+        }
+    }
+
+    static boolean isStreamingBulk(HttpRequest request) {
+        if (request.getMethod() != HttpMethod.POST && request.getMethod() != HttpMethod.PUT) {
+            return false;
+        }
+        String uri = request.getUri();
+        int pathEndPos = uri.indexOf('?');
+        String path = pathEndPos < 0 ? uri : uri.substring(0, pathEndPos);
+        return path.endsWith("/_bulk/stream") || path.endsWith("/_bulk/stream/");
+    }
+
+    private void start(final ChannelHandlerContext ctx, HttpRequest httpRequest) throws Exception {
+        nettyChannel = ctx.getChannel();
+        request = new NettyHttpRequest(httpRequest);
+        HttpPipeliningHandler pipelining = ctx.getPipeline().get(HttpPipeliningHandler.class);
+        channel = new NettyHttpChannel(transport, nettyChannel, httpRequest, pipelining == null ? -1 : pipelining.nextSequence(nettyChannel));
+        failed = false;
+        if (httpRequest.isChunked() && is100ContinueExpected(httpRequest)) {
+            Channels.write(ctx, Channels.succeededFuture(nettyChannel), CONTINUE.duplicate());
+        }
+
+        // the path is /_bulk/stream, /{index}/_bulk/stream or /{index}/{type}/_bulk/stream
+        String[] parts = Strings.splitStringToArray(request.rawPath(), '/');
+        String defaultIndex = parts.length > 2 ? parts[0] : null;
+        String defaultType = parts.length > 3 ? parts[1] : null;
+        String replicationType = request.param("replication");
+        String consistencyLevel = request.param("consistency");
+        stream = new BulkStream(transport.client, defaultIndex, defaultType,
+                replicationType == null ? null : ReplicationType.fromString(replicationType),
+                consistencyLevel == null ? null : WriteConsistencyLevel.fromString(consistencyLevel),
+                request.paramAsBoolean("refresh", false),
+                // the node settings are upper bounds, a request can only ask for less
+                Math.min(request.paramAsLong("batch_size", transport.bulkStreamBatchSize.bytes()), transport.bulkStreamBatchSize.bytes()),
+                transport.bulkStreamMaxLineSize.bytes(),
+                Math.max(1, Math.min(request.paramAsInt("max_in_flight", transport.bulkStreamMaxInFlight), transport.bulkStreamMaxInFlight)),
+                transport.bulkStreamMaxFailures, new StreamListener(this, nettyChannel, request, channel));
+
+        add(ctx, httpRequest.getContent());
+        if (!httpRequest.isChunked()) {
+            end();
+        }
+    }
+
+    private void add(ChannelHandlerContext ctx, ChannelBuffer content) {
+        if (failed || !content.readable()) {
+            return;
+        }
+        try {
+            boolean more;
+            if (content.hasArray()) {
+                more = stream.add(content.array(), content.arrayOffset() + content.readerIndex(), content.readableBytes());
+            } else {
+                byte[] bytes = new byte[content.readableBytes()];
+                content.getBytes(content.readerIndex(), bytes);
+                more = stream.add(bytes, 0, bytes.length);
+            }
+            if (!more) {
+                // resumed by the stream listener once a batch is done
+                paused = true;
+                ctx.getChannel().setReadable(false);
+            }
+        } catch (Exception e) {
+            fail(e);
+        }
+    }
+
+    private void end() {
+        // the stream is closed, its pending batches don't hold back the next messages anymore
+        paused = false;
+        if (!failed) {
+            try {
+                stream.close();
+            } catch (Exception e) {
+                fail(e);
+            }
+        }
+        nettyChannel = null;
+        request = null;
+        channel = null;
+        stream = null;
+    }
+
+    private void fail(Exception e) {
+        failed = true;
+        paused = false;
+        deferred.clear();
+        try {
+            XContentBuilder builder = restContentBuilder(request);
+            RestStatus status = e instanceof ElasticSearchException ? ((ElasticSearchException) e).status() : BAD_REQUEST;
+            channel.sendResponse(new XContentRestResponse(request, status, builder.startObject().field("error", e.getMessage()).endObject()));
+        } catch (IOException e1) {
+            // ignore, the channel is closed below
+        }
+        // the rest of the content can't be parsed anymore
+        nettyChannel.close();
+    }
+
+    static class StreamListener implements BulkStream.Listener {
+
+        private final StreamingBulkHandler handler;
+
+        private final Channel nettyChannel;
+
+        private final NettyHttpRequest request;
+
+        private final NettyHttpChannel channel;
+
+        StreamListener(StreamingBulkHandler handler, Channel nettyChannel, NettyHttpRequest request, NettyHttpChannel channel) {
+            this.handler = handler;
+            this.nettyChannel = nettyChannel;
+            this.request = request;
+            this.channel = channel;
+        }
+
+        @Override
+        public void onResume() {
+            handler.resume();
+        }
+
+        @Override
+        public void onResponse(BulkStream stream) {
+            nettyChannel.setReadable(true);
+            try {
+                XContentBuilder builder = restContentBuilder(request);
+                builder.startObject();
+                builder.field(Fields.TOOK, stream.tookInMillis());
+                builder.field(Fields.ITEMS, stream.items());
+                builder.field(Fields.FAILED, stream.failed());
+                builder.field(Fields.BATCHES, stream.batches());
+                builder.startArray(Fields.FAILURES);
+                for (BulkStream.Failure failure : stream.failures()) {
+                    builder.startObject();
+                    builder.startObject(failure.opType());
+                    builder.field(Fields._INDEX, failure.index());
+                    builder.field(Fields._TYPE, failure.type());
+                    builder.field(Fields._ID, failure.id());
+                    builder.field(Fields.ERROR, failure.message());
+                    builder.endObject();
+                    builder.endObject();
+                }
+                builder.endArray();
+                builder.endObject();
+                channel.sendResponse(new XContentRestResponse(request, OK, builder));
+            } catch (Exception e) {
+                onFailure(e);
+            }
+        }
+
+        @Override
+        public void onFailure(Throwable e) {
+            nettyChannel.setReadable(true);
+            try {
+                channel.sendResponse(new XContentThrowableRestResponse(request, e));
+            } catch (IOException e1) {
+                // ignore, the channel is closed below
+            }
+            // the rest of the content won't be executed, don't let the client keep sending it
+            nettyChannel.close();
+        }
+    }
+
+    static final class Fields {
+        static final XContentBuilderString TOOK = new XContentBuilderString("took");
+        static final XContentBuilderString ITEMS = new XContentBuilderString("items");
+        static final XContentBuilderString FAILED = new XContentBuilderString("failed");
+        static final XContentBuilderString BATCHES = new XContentBuilderString("batches");
+        static final XContentBuilderString FAILURES = new XContentBuilderString("failures");
+        static final XContentBuilderString _INDEX = new XContentBuilderString("_index");
+        static final XContentBuilderString _TYPE = new XContentBuilderString("_type");
+        static final XContentBuilderString _ID = new XContentBuilderString("_id");
+        static final XContentBuilderString ERROR = new XContentBuilderString("error");
+    }
+}
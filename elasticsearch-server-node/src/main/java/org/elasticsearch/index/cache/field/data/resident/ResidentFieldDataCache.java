@@ -96,6 +96,7 @@ public class ResidentFieldDataCache extends AbstractConcurrentMapFieldDataCache
     public void onRemoval(RemovalNotification<String, FieldData> removalNotification) {
         if (removalNotification.wasEvicted()) {
             evictions.inc();
+            clearTopLevel(removalNotification.getKey());
         }
     }
 
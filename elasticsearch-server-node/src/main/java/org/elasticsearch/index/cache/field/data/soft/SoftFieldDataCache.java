@@ -63,6 +63,7 @@ public class SoftFieldDataCache extends AbstractConcurrentMapFieldDataCache impl
     public void onRemoval(RemovalNotification<String, FieldData> removalNotification) {
         if (removalNotification.wasEvicted()) {
             evictions.inc();
+            clearTopLevel(removalNotification.getKey());
         }
     }
 }
@@ -20,6 +20,7 @@
 package org.elasticsearch.index.cache.field.data.support;
 
 import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.SegmentReader;
 import org.elasticsearch.ElasticSearchException;
@@ -47,6 +48,9 @@ public abstract class AbstractConcurrentMapFieldDataCache extends AbstractIndexC
 
     private final Object creationMutex = new Object();
 
+    // values built from the field data of all the segments of a top level reader (for example, global ordinals)
+    private final Cache<IndexReader, TopLevelEntry> topLevelCache = CacheBuilder.newBuilder().weakKeys().build();
+
     protected AbstractConcurrentMapFieldDataCache(Index index, @IndexSettings Settings indexSettings) {
         super(index, indexSettings);
         this.cache = ConcurrentCollections.newConcurrentMap();
@@ -63,12 +67,14 @@ public abstract class AbstractConcurrentMapFieldDataCache extends AbstractIndexC
         for (Map.Entry<Object, Cache<String, FieldData>> entry : cache.entrySet()) {
             entry.getValue().invalidate(fieldName);
         }
+        clearTopLevel(fieldName);
     }
 
     @Override
     public void clear(String reason) {
         logger.debug("full cache clear, reason [{}]", reason);
         cache.clear();
+        topLevelCache.invalidateAll();
     }
 
     @Override
@@ -79,6 +85,86 @@ public abstract class AbstractConcurrentMapFieldDataCache extends AbstractIndexC
     @Override
     public void clear(IndexReader reader) {
         cache.remove(reader.getCoreCacheKey());
+        for (Map.Entry<IndexReader, TopLevelEntry> entry : topLevelCache.asMap().entrySet()) {
+            if (entry.getValue().hasSegment(reader.getCoreCacheKey())) {
+                topLevelCache.invalidate(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Clears the top level values of the field, called by the implementations when field data of the field got
+     * evicted, since the top level values were built from it.
+     */
+    protected void clearTopLevel(String fieldName) {
+        for (TopLevelEntry entry : topLevelCache.asMap().values()) {
+            entry.values.remove(fieldName);
+        }
+    }
+
+    /**
+     * Returns a value built from the field data of all the segments of a top level reader, loading it if needed. It
+     * is cached until the top level reader is no longer referenced, or the field data it was built from is cleared
+     * or evicted.
+     */
+    @SuppressWarnings({"unchecked"})
+    public <T> T cacheTopLevel(IndexReader topLevelReader, IndexReader[] subReaders, String fieldName, TopLevelLoader<T> loader) throws IOException {
+        TopLevelEntry entry = topLevelCache.getIfPresent(topLevelReader);
+        if (entry == null) {
+            synchronized (creationMutex) {
+                entry = topLevelCache.getIfPresent(topLevelReader);
+                if (entry == null) {
+                    entry = new TopLevelEntry(subReaders);
+                    topLevelCache.put(topLevelReader, entry);
+                }
+            }
+        }
+        Object value = entry.values.get(fieldName);
+        if (value == null) {
+            synchronized (entry) {
+                value = entry.values.get(fieldName);
+                if (value == null) {
+                    long time = System.nanoTime();
+                    value = loader.load();
+                    entry.values.put(fieldName, value);
+                    if (logger.isTraceEnabled()) {
+                        logger.trace("loaded top level field [{}] for reader [{}], took [{}]", fieldName, topLevelReader, TimeValue.timeValueNanos(System.nanoTime() - time));
+                    }
+                }
+            }
+        }
+        return (T) value;
+    }
+
+    /**
+     * Builds a value from the field data of the segments of a top level reader.
+     */
+    public static interface TopLevelLoader<T> {
+
+        T load() throws IOException;
+    }
+
+    static class TopLevelEntry {
+
+        final Object[] segments;
+
+        final ConcurrentMap<String, Object> values = ConcurrentCollections.newConcurrentMap();
+
+        TopLevelEntry(IndexReader[] subReaders) {
+            segments = new Object[subReaders.length];
+            for (int i = 0; i < subReaders.length; i++) {
+                segments[i] = subReaders[i].getCoreCacheKey();
+            }
+        }
+
+        boolean hasSegment(Object coreCacheKey) {
+            for (Object segment : segments) {
+                if (segment == coreCacheKey) {
+                    return true;
+                }
+            }
+            return false;
+        }
     }
 
     @Override
@@ -69,7 +69,7 @@ public interface CacheKeyFilter {
         }
     }
 
-    public static class Wrapper extends Filter implements CacheKeyFilter {
+    public static class Wrapper extends Filter implements CacheKeyFilter, WrappedFilter {
 
         private final Filter filter;
 
@@ -85,6 +85,11 @@ public interface CacheKeyFilter {
             return key;
         }
 
+        @Override
+        public Filter wrappedFilter() {
+            return filter;
+        }
+
         @Override
         public DocIdSet getDocIdSet(IndexReader reader) throws IOException {
             return filter.getDocIdSet(reader);
@@ -40,6 +40,7 @@ import org.elasticsearch.index.AbstractIndexComponent;
 import org.elasticsearch.index.Index;
 import org.elasticsearch.index.cache.filter.FilterCache;
 import org.elasticsearch.index.cache.filter.support.CacheKeyFilter;
+import org.elasticsearch.index.cache.filter.support.WrappedFilter;
 import org.elasticsearch.index.settings.IndexSettings;
 import org.elasticsearch.indices.cache.filter.IndicesFilterCache;
 
@@ -131,7 +132,7 @@ public class WeightedFilterCache extends AbstractIndexComponent implements Filte
         return filter instanceof FilterCacheFilterWrapper;
     }
 
-    static class FilterCacheFilterWrapper extends Filter {
+    static class FilterCacheFilterWrapper extends Filter implements WrappedFilter {
 
         private final Filter filter;
 
@@ -142,6 +143,11 @@ public class WeightedFilterCache extends AbstractIndexComponent implements Filte
             this.cache = cache;
         }
 
+        @Override
+        public Filter wrappedFilter() {
+            return filter;
+        }
+
         @Override
         public DocIdSet getDocIdSet(IndexReader reader) throws IOException {
             Object filterKey = filter;
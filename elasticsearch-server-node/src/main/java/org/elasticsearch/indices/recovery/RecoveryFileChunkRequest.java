@@ -25,6 +25,7 @@ import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.transport.PayloadStreamable;
 import org.elasticsearch.transport.TransportRequest;
 
 import java.io.IOException;
@@ -32,7 +33,7 @@ import java.io.IOException;
 /**
  *
  */
-class RecoveryFileChunkRequest extends TransportRequest {
+public class RecoveryFileChunkRequest extends TransportRequest implements PayloadStreamable {
 
     private long recoveryId;
     private ShardId shardId;
@@ -42,10 +43,10 @@ class RecoveryFileChunkRequest extends TransportRequest {
     private String checksum;
     private BytesReference content;
 
-    RecoveryFileChunkRequest() {
+    public RecoveryFileChunkRequest() {
     }
 
-    RecoveryFileChunkRequest(long recoveryId, ShardId shardId, String name, long position, long length, String checksum, BytesArray content) {
+    public RecoveryFileChunkRequest(long recoveryId, ShardId shardId, String name, long position, long length, String checksum, BytesArray content) {
         this.recoveryId = recoveryId;
         this.shardId = shardId;
         this.name = name;
@@ -102,8 +103,19 @@ class RecoveryFileChunkRequest extends TransportRequest {
         content = in.readBytesReference();
     }
 
+    @Override
+    public BytesReference payload() {
+        return content;
+    }
+
     @Override
     public void writeTo(StreamOutput out) throws IOException {
+        writeToPayload(out);
+        out.writeBytesReference(content);
+    }
+
+    @Override
+    public void writeToPayload(StreamOutput out) throws IOException {
         super.writeTo(out);
         out.writeLong(recoveryId);
         shardId.writeTo(out);
@@ -111,7 +123,6 @@ class RecoveryFileChunkRequest extends TransportRequest {
         out.writeVLong(position);
         out.writeVLong(length);
         out.writeOptionalString(checksum);
-        out.writeBytesReference(content);
     }
 
     @Override
@@ -0,0 +1,356 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.indices.rollup;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.elasticsearch.ElasticSearchException;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.common.component.AbstractLifecycleComponent;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.index.query.FilterBuilder;
+import org.elasticsearch.node.settings.NodeSettingsService;
+import org.elasticsearch.search.facet.Facets;
+import org.elasticsearch.search.facet.datehistogram.DateHistogramFacet;
+import org.elasticsearch.search.facet.datehistogram.DateHistogramFacetBuilder;
+import org.elasticsearch.search.facet.statistical.StatisticalFacet;
+import org.elasticsearch.search.facet.terms.TermsFacet;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+import static org.elasticsearch.index.query.FilterBuilders.missingFilter;
+import static org.elasticsearch.index.query.FilterBuilders.termFilter;
+import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
+import static org.elasticsearch.index.query.QueryBuilders.rangeQuery;
+import static org.elasticsearch.search.facet.FacetBuilders.dateHistogramFacet;
+import static org.elasticsearch.search.facet.FacetBuilders.statisticalFacet;
+import static org.elasticsearch.search.facet.FacetBuilders.termsFacet;
+
+/**
+ * A node level service that periodically rolls up the indices with a {@link RollupConfig rollup} into their
+ * rollup index, using facets over the buckets that ended since the last run. Only the elected master runs it.
+ * The end of the rolled up buckets is kept in the <tt>index.rollup.watermark</tt> setting of the index, moved
+ * once the rollup docs are indexed and refreshed, so searches can be {@link RollupSearchRewriter rewritten}
+ * to the rollup index up to it.
+ */
+public class IndicesRollupService extends AbstractLifecycleComponent<IndicesRollupService> {
+
+    static {
+        MetaData.addDynamicSettings(
+                "indices.rollup.interval"
+        );
+
+        IndexMetaData.addDynamicSettings(
+                "index.rollup.timestamp_field",
+                "index.rollup.target",
+                "index.rollup.interval",
+                "index.rollup.dimensions",
+                "index.rollup.metrics",
+                "index.rollup.max_terms",
+                "index.rollup.delay",
+                "index.rollup.watermark",
+                "index.rollup.partial_dimensions"
+        );
+    }
+
+    private final ClusterService clusterService;
+    private final Client client;
+
+    private volatile TimeValue interval;
+    private final int maxBuckets;
+    private RollupThread rollupThread;
+
+    @Inject
+    public IndicesRollupService(Settings settings, ClusterService clusterService, NodeSettingsService nodeSettingsService, Client client) {
+        super(settings);
+        this.clusterService = clusterService;
+        this.client = client;
+        this.interval = componentSettings.getAsTime("interval", TimeValue.timeValueMinutes(1));
+        this.maxBuckets = componentSettings.getAsInt("max_buckets", 1000);
+
+        nodeSettingsService.addListener(new ApplySettings());
+    }
+
+    @Override
+    protected void doStart() throws ElasticSearchException {
+        this.rollupThread = new RollupThread(EsExecutors.threadName(settings, "[rollup]"));
+        this.rollupThread.start();
+    }
+
+    @Override
+    protected void doStop() throws ElasticSearchException {
+        this.rollupThread.doStop();
+        this.rollupThread.interrupt();
+    }
+
+    @Override
+    protected void doClose() throws ElasticSearchException {
+    }
+
+    private class RollupThread extends Thread {
+        volatile boolean running = true;
+
+        public RollupThread(String name) {
+            super(name);
+            setDaemon(true);
+        }
+
+        public void doStop() {
+            running = false;
+        }
+
+        public void run() {
+            while (running) {
+                ClusterState clusterState = clusterService.state();
+                if (clusterState.nodes().localNodeMaster()) {
+                    for (IndexMetaData indexMetaData : clusterState.metaData()) {
+                        RollupConfig config = RollupConfig.fromSettings(indexMetaData.index(), indexMetaData.settings());
+                        if (config == null) {
+                            continue;
+                        }
+                        try {
+                            rollup(config, clusterState);
+                        } catch (Throwable e) {
+                            if (running) {
+                                logger.warn("[{}] failed to roll up into [{}]", e, config.index(), config.target());
+                            }
+                        }
+                    }
+                }
+                try {
+                    Thread.sleep(interval.millis());
+                } catch (InterruptedException e) {
+                    // ignore, if we are interrupted because we are shutting down, running will be false
+                }
+            }
+        }
+    }
+
+    private void rollup(RollupConfig config, ClusterState clusterState) throws IOException {
+        long from = config.watermark();
+        if (from == -1) {
+            // nothing rolled up yet, start with the bucket of the oldest doc
+            SearchResponse response = client.prepareSearch(config.index()).setSearchType(SearchType.COUNT)
+                    .setQuery(matchAllQuery())
+                    .addFacet(statisticalFacet("oldest").field(config.timestampField()))
+                    .execute().actionGet();
+            StatisticalFacet oldest = response.facets().facet("oldest");
+            if (oldest.count() == 0) {
+                return;
+            }
+            from = floor((long) oldest.min(), config.interval());
+        }
+        long to = floor(System.currentTimeMillis() - config.delay(), config.interval());
+        to = Math.min(to, from + maxBuckets * config.interval());
+        if (to <= from) {
+            return;
+        }
+        logger.debug("[{}] rolling up [{}] to [{}] into [{}]", config.index(), from, to, config.target());
+
+        if (!clusterState.metaData().hasIndex(config.target())) {
+            client.admin().indices().prepareCreate(config.target()).addMapping(RollupConfig.TYPE, mapping(config)).execute().actionGet();
+        }
+
+        SearchRequestBuilder search = client.prepareSearch(config.index()).setSearchType(SearchType.COUNT)
+                .setQuery(rangeQuery(config.timestampField()).from(from).to(to).includeLower(true).includeUpper(false));
+        addBucketFacets(search, RollupConfig.ALL_DIMENSIONS, null, config);
+        for (String dimension : config.dimensions()) {
+            search.addFacet(termsFacet("terms_" + dimension).field(dimension).size(config.maxTerms()));
+        }
+        Facets facets = search.execute().actionGet().facets();
+
+        BulkRequestBuilder bulk = client.prepareBulk();
+        addRollupDocs(bulk, facets, RollupConfig.ALL_DIMENSIONS, null, null, config);
+
+        Set<String> partialDimensions = Sets.newLinkedHashSet(Arrays.asList(config.partialDimensions()));
+        if (config.dimensions().length > 0) {
+            // the stats per term of each dimension, the facets of a term are filtered by the term, and the
+            // ones of the docs missing the dimension by a missing filter
+            List<String[]> terms = Lists.newArrayList();
+            search = client.prepareSearch(config.index()).setSearchType(SearchType.COUNT)
+                    .setQuery(rangeQuery(config.timestampField()).from(from).to(to).includeLower(true).includeUpper(false));
+            for (String dimension : config.dimensions()) {
+                TermsFacet termsFacet = facets.facet("terms_" + dimension);
+                if (termsFacet.otherCount() > 0) {
+                    // more terms than max_terms, searches on the dimension can't be answered from the rollup anymore
+                    partialDimensions.add(dimension);
+                }
+                for (TermsFacet.Entry entry : termsFacet) {
+                    String term = entry.term();
+                    addBucketFacets(search, "term_" + terms.size(), termFilter(dimension, term), config);
+                    terms.add(new String[]{dimension, term});
+                }
+                if (termsFacet.missingCount() > 0) {
+                    addBucketFacets(search, "term_" + terms.size(), missingFilter(dimension), config);
+                    terms.add(new String[]{dimension, null});
+                }
+            }
+            if (!terms.isEmpty()) {
+                Facets termFacets = search.execute().actionGet().facets();
+                for (int i = 0; i < terms.size(); i++) {
+                    addRollupDocs(bulk, termFacets, "term_" + i, terms.get(i)[0], terms.get(i)[1], config);
+                }
+            }
+        }
+
+        if (bulk.numberOfActions() > 0) {
+            BulkResponse bulkResponse = bulk.execute().actionGet();
+            if (bulkResponse.hasFailures()) {
+                // keep the watermark, the next run indexes the same (deterministic) docs again
+                logger.warn("[{}] failed to index rollup docs into [{}]: {}", config.index(), config.target(), bulkResponse.buildFailureMessage());
+                return;
+            }
+            client.admin().indices().prepareRefresh(config.target()).execute().actionGet();
+        }
+        ImmutableSettings.Builder indexSettings = ImmutableSettings.settingsBuilder().put("index.rollup.watermark", to);
+        if (partialDimensions.size() > config.partialDimensions().length) {
+            indexSettings.putArray("index.rollup.partial_dimensions", partialDimensions.toArray(new String[partialDimensions.size()]));
+        }
+        client.admin().indices().prepareUpdateSettings(config.index()).setSettings(indexSettings).execute().actionGet();
+    }
+
+    private void addBucketFacets(SearchRequestBuilder search, String name, FilterBuilder filter, RollupConfig config) {
+        String interval = config.interval() + "ms";
+        if (config.metrics().length == 0) {
+            DateHistogramFacetBuilder facet = dateHistogramFacet(name).field(config.timestampField()).interval(interval);
+            if (filter != null) {
+                facet.facetFilter(filter);
+            }
+            search.addFacet(facet);
+            return;
+        }
+        for (int i = 0; i < config.metrics().length; i++) {
+            DateHistogramFacetBuilder facet = dateHistogramFacet(name + "_" + i).keyField(config.timestampField())
+                    .valueField(config.metrics()[i]).interval(interval);
+            if (filter != null) {
+                facet.facetFilter(filter);
+            }
+            search.addFacet(facet);
+        }
+    }
+
+    private void addRollupDocs(BulkRequestBuilder bulk, Facets facets, String name, String dimension, String term, RollupConfig config) {
+        Map<Long, Map<String, Object>> docs = Maps.newTreeMap();
+        if (config.metrics().length == 0) {
+            DateHistogramFacet facet = facets.facet(name);
+            for (DateHistogramFacet.Entry entry : facet) {
+                rollupDoc(docs, entry.time(), dimension, term, config).put(RollupConfig.COUNT_FIELD, entry.count());
+            }
+        }
+        for (int i = 0; i < config.metrics().length; i++) {
+            String metric = config.metrics()[i];
+            DateHistogramFacet facet = facets.facet(name + "_" + i);
+            for (DateHistogramFacet.Entry entry : facet) {
+                Map<String, Object> doc = rollupDoc(docs, entry.time(), dimension, term, config);
+                doc.put(RollupConfig.COUNT_FIELD, entry.count());
+                if (entry.totalCount() > 0) {
+                    doc.put(RollupConfig.valueCountField(metric), entry.totalCount());
+                    doc.put(RollupConfig.sumField(metric), entry.total());
+                    doc.put(RollupConfig.minField(metric), entry.min());
+                    doc.put(RollupConfig.maxField(metric), entry.max());
+                }
+            }
+        }
+        for (Map.Entry<Long, Map<String, Object>> doc : docs.entrySet()) {
+            // the ids are derived from the bucket, so rolling up a bucket again overrides its docs
+            String id;
+            if (dimension == null) {
+                id = RollupConfig.ALL_DIMENSIONS + "_" + doc.getKey();
+            } else if (term == null) {
+                id = dimension + "_" + doc.getKey();
+            } else {
+                id = dimension + "_" + term + "_" + doc.getKey();
+            }
+            bulk.add(client.prepareIndex(config.target(), RollupConfig.TYPE, id).setSource(doc.getValue()));
+        }
+    }
+
+    private Map<String, Object> rollupDoc(Map<Long, Map<String, Object>> docs, long time, String dimension, String term, RollupConfig config) {
+        Map<String, Object> doc = docs.get(time);
+        if (doc == null) {
+            doc = Maps.newHashMap();
+            doc.put(config.timestampField(), time);
+            if (dimension == null) {
+                doc.put(RollupConfig.DIMENSION_FIELD, RollupConfig.ALL_DIMENSIONS);
+            } else {
+                doc.put(RollupConfig.DIMENSION_FIELD, dimension);
+                if (term != null) {
+                    doc.put(dimension, term);
+                }
+            }
+            docs.put(time, doc);
+        }
+        return doc;
+    }
+
+    private XContentBuilder mapping(RollupConfig config) throws IOException {
+        XContentBuilder mapping = jsonBuilder().startObject().startObject(RollupConfig.TYPE).startObject("properties");
+        mapping.startObject(config.timestampField()).field("type", "date").endObject();
+        mapping.startObject(RollupConfig.DIMENSION_FIELD).field("type", "string").field("index", "not_analyzed").endObject();
+        mapping.startObject(RollupConfig.COUNT_FIELD).field("type", "long").endObject();
+        for (String dimension : config.dimensions()) {
+            mapping.startObject(dimension).field("type", "string").field("index", "not_analyzed").endObject();
+        }
+        for (String metric : config.metrics()) {
+            mapping.startObject(RollupConfig.valueCountField(metric)).field("type", "long").endObject();
+            mapping.startObject(RollupConfig.sumField(metric)).field("type", "double").endObject();
+            mapping.startObject(RollupConfig.minField(metric)).field("type", "double").endObject();
+            mapping.startObject(RollupConfig.maxField(metric)).field("type", "double").endObject();
+        }
+        return mapping.endObject().endObject().endObject();
+    }
+
+    static long floor(long time, long interval) {
+        long remainder = time % interval;
+        return remainder < 0 ? time - remainder - interval : time - remainder;
+    }
+
+    class ApplySettings implements NodeSettingsService.Listener {
+        @Override
+        public void onRefreshSettings(Settings settings) {
+            TimeValue interval = settings.getAsTime("indices.rollup.interval", IndicesRollupService.this.interval);
+            if (!interval.equals(IndicesRollupService.this.interval)) {
+                logger.info("updating indices.rollup.interval from [{}] to [{}]", IndicesRollupService.this.interval, interval);
+                IndicesRollupService.this.interval = interval;
+            }
+        }
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.indices.rollup;
+
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+
+/**
+ * The rollup of an index, configured with the <tt>index.rollup.*</tt> settings of the (raw) index. The rollup
+ * index holds a doc per <tt>interval</tt> bucket of the timestamp field with the doc count, and the value count, sum,
+ * min and max of each metric field, and a doc per bucket and term of each dimension field, with the same stats.
+ * The raw docs missing a dimension are rolled up into a doc per bucket of the dimension without a term.
+ */
+public class RollupConfig {
+
+    /**
+     * The type of the docs in the rollup index.
+     */
+    public static final String TYPE = "rollup";
+
+    /**
+     * The number of raw docs rolled up into a doc.
+     */
+    public static final String COUNT_FIELD = "rollup_count";
+
+    /**
+     * The dimension a rollup doc is for, {@link #ALL_DIMENSIONS} for the docs over all the raw docs of a bucket.
+     */
+    public static final String DIMENSION_FIELD = "rollup_dimension";
+
+    public static final String ALL_DIMENSIONS = "_all";
+
+    /**
+     * The facet added to a search rewritten to the rollup index, summing the rolled up counts of the
+     * {@link #ALL_DIMENSIONS} docs. It replaces the hits total when the shard results are merged, so the total
+     * counts the raw docs and not the rollup docs.
+     */
+    public static final String TOTAL_FACET = "_rollup_total";
+
+    public static String valueCountField(String metric) {
+        return metric + "_count";
+    }
+
+    public static String sumField(String metric) {
+        return metric + "_sum";
+    }
+
+    public static String minField(String metric) {
+        return metric + "_min";
+    }
+
+    public static String maxField(String metric) {
+        return metric + "_max";
+    }
+
+    /**
+     * Returns the rollup of the index, <tt>null</tt> if it has none.
+     */
+    @Nullable
+    public static RollupConfig fromSettings(String index, Settings settings) {
+        String timestampField = settings.get("index.rollup.timestamp_field");
+        if (timestampField == null) {
+            return null;
+        }
+        return new RollupConfig(
+                index,
+                settings.get("index.rollup.target", index + "_rollup"),
+                timestampField,
+                settings.getAsTime("index.rollup.interval", TimeValue.timeValueHours(1)).millis(),
+                settings.getAsArray("index.rollup.dimensions"),
+                settings.getAsArray("index.rollup.metrics"),
+                settings.getAsInt("index.rollup.max_terms", 100),
+                settings.getAsTime("index.rollup.delay", TimeValue.timeValueMinutes(5)).millis(),
+                settings.getAsLong("index.rollup.watermark", -1l),
+                settings.getAsArray("index.rollup.partial_dimensions")
+        );
+    }
+
+    private final String index;
+
+    private final String target;
+
+    private final String timestampField;
+
+    private final long interval;
+
+    private final String[] dimensions;
+
+    private final String[] metrics;
+
+    private final int maxTerms;
+
+    private final long delay;
+
+    private final long watermark;
+
+    private final String[] partialDimensions;
+
+    public RollupConfig(String index, String target, String timestampField, long interval, String[] dimensions, String[] metrics,
+                        int maxTerms, long delay, long watermark, String[] partialDimensions) {
+        this.index = index;
+        this.target = target;
+        this.timestampField = timestampField;
+        this.interval = interval;
+        this.dimensions = dimensions;
+        this.metrics = metrics;
+        this.maxTerms = maxTerms;
+        this.delay = delay;
+        this.watermark = watermark;
+        this.partialDimensions = partialDimensions;
+    }
+
+    /**
+     * The (raw) index rolled up.
+     */
+    public String index() {
+        return index;
+    }
+
+    /**
+     * The rollup index, defaults to <tt>[index]_rollup</tt>.
+     */
+    public String target() {
+        return target;
+    }
+
+    public String timestampField() {
+        return timestampField;
+    }
+
+    /**
+     * The length of a bucket in millis, defaults to <tt>1h</tt>.
+     */
+    public long interval() {
+        return interval;
+    }
+
+    /**
+     * The (string) fields rolled up per term.
+     */
+    public String[] dimensions() {
+        return dimensions;
+    }
+
+    /**
+     * The numeric fields rolled up into a value count, sum, min and max.
+     */
+    public String[] metrics() {
+        return metrics;
+    }
+
+    /**
+     * The number of terms of a dimension rolled up per run, the terms with the most docs win.
+     */
+    public int maxTerms() {
+        return maxTerms;
+    }
+
+    /**
+     * How long to wait after a bucket ends before rolling it up, so late docs make it into the rollup. Defaults
+     * to <tt>5m</tt>.
+     */
+    public long delay() {
+        return delay;
+    }
+
+    /**
+     * The end (exclusive) of the rolled up buckets, <tt>-1</tt> if nothing was rolled up yet.
+     */
+    public long watermark() {
+        return watermark;
+    }
+
+    /**
+     * The dimensions that had more than {@link #maxTerms()} terms in a run, so only part of their terms are
+     * rolled up, kept in the <tt>index.rollup.partial_dimensions</tt> setting.
+     */
+    public String[] partialDimensions() {
+        return partialDimensions;
+    }
+
+    public boolean hasDimension(String field) {
+        for (String dimension : dimensions) {
+            if (dimension.equals(field)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Is the dimension rolled up with all its terms, up to the watermark?
+     */
+    public boolean hasFullDimension(String field) {
+        if (!hasDimension(field)) {
+            return false;
+        }
+        for (String dimension : partialDimensions) {
+            if (dimension.equals(field)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean hasMetric(String field) {
+        for (String metric : metrics) {
+            if (metric.equals(field)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
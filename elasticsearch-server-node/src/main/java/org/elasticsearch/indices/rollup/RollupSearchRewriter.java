@@ -0,0 +1,323 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.indices.rollup;
+
+import com.google.common.collect.Maps;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+
+/**
+ * Rewrites a search over an index with a {@link RollupConfig rollup} to run against its rollup index, when the
+ * rollup holds the same answer: no hits are asked for, the query is a range on the timestamp field aligned on
+ * the rollup buckets and ending before the watermark, and the facets are <tt>date_histogram</tt> facets on the
+ * timestamp field with an interval made of whole rollup buckets, or <tt>terms_stats</tt> facets on a dimension
+ * rolled up with all its terms, both optionally with the value of a metric. The facets are marked with <tt>rollup</tt> so they read the rolled
+ * up counts and stats, and filtered to the rollup docs of their dimension. The hits total is rebuilt from the
+ * rolled up counts through the {@link RollupConfig#TOTAL_FACET} facet.
+ */
+public class RollupSearchRewriter {
+
+    private static final long DAY = TimeValue.timeValueHours(24).millis();
+
+    private static final DateTimeFormatter DATE_PARSER = ISODateTimeFormat.dateOptionalTimeParser().withZone(DateTimeZone.UTC);
+
+    /**
+     * Rewrites the request to search the rollup index of its index, returns <tt>false</tt> (and leaves the
+     * request untouched) if it can't be answered from the rollup.
+     */
+    @SuppressWarnings({"unchecked"})
+    public static boolean rewrite(SearchRequest request, ClusterState clusterState) throws IOException {
+        if (request.searchType() == SearchType.SCAN || request.scroll() != null || request.routing() != null) {
+            return false;
+        }
+        if (request.indices() == null || request.indices().length != 1 || (request.types() != null && request.types().length > 0)) {
+            return false;
+        }
+        if (request.extraSource() != null && request.extraSource().length() > 0) {
+            return false;
+        }
+        BytesReference source = request.source();
+        if (source == null || source.length() == 0) {
+            return false;
+        }
+        // aliases are not resolved on purpose, they may filter the docs
+        IndexMetaData indexMetaData = clusterState.metaData().index(request.indices()[0]);
+        if (indexMetaData == null) {
+            return false;
+        }
+        RollupConfig config = RollupConfig.fromSettings(indexMetaData.index(), indexMetaData.settings());
+        if (config == null || config.watermark() == -1 || !clusterState.metaData().hasIndex(config.target())) {
+            return false;
+        }
+
+        Map<String, Object> map = XContentHelper.convertToMap(source, true).v2();
+        boolean noHits = request.searchType() == SearchType.COUNT;
+        boolean bounded = false;
+        Map<String, Object> facets = null;
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            String name = entry.getKey();
+            if ("size".equals(name)) {
+                noHits = entry.getValue() instanceof Number && ((Number) entry.getValue()).intValue() == 0;
+            } else if ("query".equals(name)) {
+                bounded = entry.getValue() instanceof Map && bounded((Map<String, Object>) entry.getValue(), config);
+            } else if ("facets".equals(name)) {
+                if (!(entry.getValue() instanceof Map)) {
+                    return false;
+                }
+                facets = rewriteFacets((Map<String, Object>) entry.getValue(), config);
+            } else if (!"from".equals(name) && !"timeout".equals(name)) {
+                return false;
+            }
+        }
+        if (!noHits || !bounded || facets == null) {
+            return false;
+        }
+
+        Map<String, Object> total = Maps.newLinkedHashMap();
+        total.put("statistical", Collections.singletonMap("field", RollupConfig.COUNT_FIELD));
+        total.put("facet_filter", termFilter(RollupConfig.DIMENSION_FIELD, RollupConfig.ALL_DIMENSIONS));
+        facets.put(RollupConfig.TOTAL_FACET, total);
+        map.put("facets", facets);
+        request.indices(config.target());
+        request.source(jsonBuilder().map(map).bytes(), false);
+        return true;
+    }
+
+    /**
+     * Is the query a range on the timestamp field covering whole rollup buckets, before the watermark?
+     */
+    @SuppressWarnings({"unchecked"})
+    private static boolean bounded(Map<String, Object> query, RollupConfig config) {
+        if (query.size() != 1) {
+            return false;
+        }
+        Map.Entry<String, Object> entry = query.entrySet().iterator().next();
+        if (!(entry.getValue() instanceof Map)) {
+            return false;
+        }
+        Map<String, Object> body = (Map<String, Object>) entry.getValue();
+        if ("range".equals(entry.getKey())) {
+            return alignedRange(body, config);
+        } else if ("constant_score".equals(entry.getKey()) || "constantScore".equals(entry.getKey())) {
+            return body.size() == 1 && body.get("filter") instanceof Map && bounded((Map<String, Object>) body.get("filter"), config);
+        } else if ("filtered".equals(entry.getKey())) {
+            Object innerQuery = body.get("query");
+            boolean matchAll = innerQuery == null || (innerQuery instanceof Map && ((Map) innerQuery).size() == 1 && ((Map) innerQuery).containsKey("match_all"));
+            return matchAll && body.get("filter") instanceof Map && bounded((Map<String, Object>) body.get("filter"), config);
+        }
+        return false;
+    }
+
+    @SuppressWarnings({"unchecked"})
+    private static boolean alignedRange(Map<String, Object> range, RollupConfig config) {
+        if (range.size() != 1 || !(range.get(config.timestampField()) instanceof Map)) {
+            return false;
+        }
+        long from = Long.MIN_VALUE;
+        long to = Long.MIN_VALUE;
+        // a "to" bound is inclusive unless include_upper is set to false
+        boolean includeUpper = false;
+        for (Map.Entry<String, Object> entry : ((Map<String, Object>) range.get(config.timestampField())).entrySet()) {
+            String name = entry.getKey();
+            if ("from".equals(name) || "gte".equals(name)) {
+                from = time(entry.getValue());
+            } else if ("to".equals(name)) {
+                to = time(entry.getValue());
+                includeUpper = true;
+            } else if ("lt".equals(name)) {
+                to = time(entry.getValue());
+            } else if ("include_lower".equals(name) || "includeLower".equals(name)) {
+                if (!Boolean.TRUE.equals(entry.getValue())) {
+                    return false;
+                }
+            } else if ("include_upper".equals(name) || "includeUpper".equals(name)) {
+                if (!Boolean.FALSE.equals(entry.getValue())) {
+                    return false;
+                }
+            } else {
+                return false;
+            }
+        }
+        Map<String, Object> params = (Map<String, Object>) range.get(config.timestampField());
+        if (params.containsKey("include_upper") || params.containsKey("includeUpper")) {
+            includeUpper = false;
+        }
+        if (from == Long.MIN_VALUE || to == Long.MIN_VALUE || includeUpper) {
+            return false;
+        }
+        return from % config.interval() == 0 && to % config.interval() == 0 && to <= config.watermark();
+    }
+
+    private static long time(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof String) {
+            try {
+                return DATE_PARSER.parseMillis((String) value);
+            } catch (IllegalArgumentException e) {
+                // not a date we can align
+            }
+        }
+        return Long.MIN_VALUE;
+    }
+
+    /**
+     * Returns the facets marked to read the rollup, <tt>null</tt> if one of them can't be answered from it.
+     */
+    @SuppressWarnings({"unchecked"})
+    private static Map<String, Object> rewriteFacets(Map<String, Object> facets, RollupConfig config) {
+        Map<String, Object> rewritten = Maps.newLinkedHashMap();
+        for (Map.Entry<String, Object> facet : facets.entrySet()) {
+            if (RollupConfig.TOTAL_FACET.equals(facet.getKey())) {
+                return null;
+            }
+            if (!(facet.getValue() instanceof Map) || ((Map) facet.getValue()).size() != 1) {
+                // facet filters, global and nested scopes are not rolled up
+                return null;
+            }
+            Map.Entry<String, Object> definition = ((Map<String, Object>) facet.getValue()).entrySet().iterator().next();
+            if (!(definition.getValue() instanceof Map)) {
+                return null;
+            }
+            Map<String, Object> params = (Map<String, Object>) definition.getValue();
+            String dimension;
+            if ("date_histogram".equals(definition.getKey()) || "dateHistogram".equals(definition.getKey())) {
+                if (!rollupDateHistogram(params, config)) {
+                    return null;
+                }
+                dimension = RollupConfig.ALL_DIMENSIONS;
+            } else if ("terms_stats".equals(definition.getKey()) || "termsStats".equals(definition.getKey())) {
+                dimension = rollupTermsStats(params, config);
+                if (dimension == null) {
+                    return null;
+                }
+            } else {
+                return null;
+            }
+            Map<String, Object> rollupParams = Maps.newLinkedHashMap(params);
+            rollupParams.put("rollup", true);
+            Map<String, Object> rollupFacet = Maps.newLinkedHashMap();
+            rollupFacet.put(definition.getKey(), rollupParams);
+            rollupFacet.put("facet_filter", termFilter(RollupConfig.DIMENSION_FIELD, dimension));
+            rewritten.put(facet.getKey(), rollupFacet);
+        }
+        return rewritten;
+    }
+
+    private static boolean rollupDateHistogram(Map<String, Object> params, RollupConfig config) {
+        String interval = null;
+        for (Map.Entry<String, Object> entry : params.entrySet()) {
+            String name = entry.getKey();
+            Object value = entry.getValue();
+            if ("field".equals(name) || "key_field".equals(name) || "keyField".equals(name)) {
+                if (!config.timestampField().equals(value)) {
+                    return false;
+                }
+            } else if ("value_field".equals(name) || "valueField".equals(name)) {
+                if (!(value instanceof String) || !config.hasMetric((String) value)) {
+                    return false;
+                }
+            } else if ("interval".equals(name)) {
+                interval = value == null ? null : value.toString();
+            } else if (!"order".equals(name) && !"comparator".equals(name)) {
+                // time zones, offsets, factors and scripts are not rolled up
+                return false;
+            }
+        }
+        if (interval == null) {
+            return false;
+        }
+        if ("year".equals(interval) || "1y".equals(interval) || "quarter".equals(interval) || "month".equals(interval)
+                || "week".equals(interval)) {
+            // calendar buckets are made of whole days, weeks start on mondays so they are not aligned on 7 days from the epoch
+            return DAY % config.interval() == 0;
+        }
+        long millis;
+        if ("day".equals(interval)) {
+            millis = DAY;
+        } else if ("hour".equals(interval)) {
+            millis = TimeValue.timeValueHours(1).millis();
+        } else if ("minute".equals(interval)) {
+            millis = TimeValue.timeValueMinutes(1).millis();
+        } else if ("second".equals(interval)) {
+            millis = TimeValue.timeValueSeconds(1).millis();
+        } else {
+            try {
+                millis = TimeValue.parseTimeValue(interval, null).millis();
+            } catch (Exception e) {
+                return false;
+            }
+        }
+        return millis % config.interval() == 0;
+    }
+
+    /**
+     * Returns the dimension of the facet, <tt>null</tt> if it can't be answered from the rollup.
+     */
+    private static String rollupTermsStats(Map<String, Object> params, RollupConfig config) {
+        String dimension = null;
+        boolean hasValue = false;
+        for (Map.Entry<String, Object> entry : params.entrySet()) {
+            String name = entry.getKey();
+            Object value = entry.getValue();
+            if ("key_field".equals(name) || "keyField".equals(name)) {
+                // a dimension that had more terms than max_terms only has its top terms rolled up
+                if (!(value instanceof String) || !config.hasFullDimension((String) value)) {
+                    return null;
+                }
+                dimension = (String) value;
+            } else if ("value_field".equals(name) || "valueField".equals(name)) {
+                if (!(value instanceof String) || !config.hasMetric((String) value)) {
+                    return null;
+                }
+                hasValue = true;
+            } else if (!"size".equals(name) && !"all_terms".equals(name) && !"allTerms".equals(name)
+                    && !"order".equals(name) && !"comparator".equals(name)) {
+                // scripts are not rolled up
+                return null;
+            }
+        }
+        return hasValue ? dimension : null;
+    }
+
+    private static Map<String, Object> termFilter(String field, String value) {
+        Map<String, Object> term = Maps.newHashMap();
+        term.put(field, value);
+        Map<String, Object> filter = Maps.newHashMap();
+        filter.put("term", term);
+        return filter;
+    }
+}
@@ -24,6 +24,7 @@ import org.elasticsearch.common.inject.AbstractModule;
 import org.elasticsearch.common.inject.Module;
 import org.elasticsearch.common.inject.SpawnModules;
 import org.elasticsearch.search.action.SearchServiceTransportAction;
+import org.elasticsearch.search.canmatch.CanMatchPhase;
 import org.elasticsearch.search.controller.SearchPhaseController;
 import org.elasticsearch.search.dfs.DfsPhase;
 import org.elasticsearch.search.facet.FacetModule;
@@ -48,6 +49,7 @@ public class SearchModule extends AbstractModule implements SpawnModules {
 
     @Override
     protected void configure() {
+        bind(CanMatchPhase.class).asEagerSingleton();
         bind(DfsPhase.class).asEagerSingleton();
         bind(QueryPhase.class).asEagerSingleton();
         bind(SearchService.class).asEagerSingleton();
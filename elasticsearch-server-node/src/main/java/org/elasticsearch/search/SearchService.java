@@ -46,6 +46,8 @@ import org.elasticsearch.indices.IndicesLifecycle;
 import org.elasticsearch.indices.IndicesService;
 import org.elasticsearch.indices.warmer.IndicesWarmer;
 import org.elasticsearch.script.ScriptService;
+import org.elasticsearch.search.canmatch.CanMatchPhase;
+import org.elasticsearch.search.canmatch.CanMatchSearchResult;
 import org.elasticsearch.search.dfs.CachedDfSource;
 import org.elasticsearch.search.dfs.DfsPhase;
 import org.elasticsearch.search.dfs.DfsSearchResult;
@@ -59,7 +61,9 @@ import org.elasticsearch.threadpool.ThreadPool;
 
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -80,6 +84,8 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> {
 
     private final ScriptService scriptService;
 
+    private final CanMatchPhase canMatchPhase;
+
     private final DfsPhase dfsPhase;
 
     private final QueryPhase queryPhase;
@@ -98,17 +104,22 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> {
 
     private final ConcurrentMapLong<SearchContext> activeContexts = ConcurrentCollections.newConcurrentMapLong();
 
+    // the ids of the searches cancelled by their coordinating node, with the time they were cancelled at, so
+    // contexts of the search created after the cancellation are cancelled too (until the keep alive passes)
+    private final ConcurrentMap<String, Long> cancelledSearches = ConcurrentCollections.newConcurrentMap();
+
     private final ImmutableMap<String, SearchParseElement> elementParsers;
 
     @Inject
     public SearchService(Settings settings, ClusterService clusterService, IndicesService indicesService, IndicesLifecycle indicesLifecycle, IndicesWarmer indicesWarmer, ThreadPool threadPool,
-                         ScriptService scriptService, DfsPhase dfsPhase, QueryPhase queryPhase, FetchPhase fetchPhase) {
+                         ScriptService scriptService, CanMatchPhase canMatchPhase, DfsPhase dfsPhase, QueryPhase queryPhase, FetchPhase fetchPhase) {
         super(settings);
         this.threadPool = threadPool;
         this.clusterService = clusterService;
         this.indicesService = indicesService;
         this.indicesWarmer = indicesWarmer;
         this.scriptService = scriptService;
+        this.canMatchPhase = canMatchPhase;
         this.dfsPhase = dfsPhase;
         this.queryPhase = queryPhase;
         this.fetchPhase = fetchPhase;
@@ -164,6 +175,22 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> {
         }
     }
 
+    /**
+     * Checks if the shard can possibly match the request. The context is only used to parse the request,
+     * and is released right away.
+     */
+    public CanMatchSearchResult executeCanMatchPhase(ShardSearchRequest request) throws ElasticSearchException {
+        SearchContext context = createContext(request);
+        try {
+            return new CanMatchSearchResult(canMatchPhase.canMatch(context));
+        } catch (IOException e) {
+            throw new SearchContextException(context, "Failed to execute can match phase", e);
+        } finally {
+            context.release();
+            cleanContext(context);
+        }
+    }
+
     public DfsSearchResult executeDfsPhase(ShardSearchRequest request) throws ElasticSearchException {
         SearchContext context = createContext(request);
         activeContexts.put(context.id(), context);
@@ -508,6 +535,21 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> {
         return context;
     }
 
+    /**
+     * Cancels the contexts of the search with the given coordinating node assigned id, their executing phase
+     * stops at its next timeout check and returns what it gathered so far.
+     */
+    public void cancelSearch(String searchId) {
+        // recorded before looking at the active contexts, so a context that becomes active meanwhile is
+        // cancelled when it starts being processed
+        cancelledSearches.put(searchId, threadPool.estimatedTimeInMillis());
+        for (SearchContext context : activeContexts.values()) {
+            if (searchId.equals(context.searchId())) {
+                context.cancel();
+            }
+        }
+    }
+
     public void freeContext(long id) {
         SearchContext context = activeContexts.remove(id);
         if (context == null) {
@@ -524,6 +566,9 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> {
     private void contextProcessing(SearchContext context) {
         // disable timeout while executing a search
         context.accessed(-1);
+        if (context.searchId() != null && cancelledSearches.containsKey(context.searchId())) {
+            context.cancel();
+        }
     }
 
     private void contextProcessedSuccessfully(SearchContext context) {
@@ -685,6 +730,11 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> {
                     freeContext(context);
                 }
             }
+            for (Iterator<Long> it = cancelledSearches.values().iterator(); it.hasNext(); ) {
+                if (time - it.next() > defaultKeepAlive) {
+                    it.remove();
+                }
+            }
         }
     }
 }
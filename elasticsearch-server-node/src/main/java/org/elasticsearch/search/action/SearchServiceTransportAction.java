@@ -19,6 +19,7 @@
 
 package org.elasticsearch.search.action;
 
+import org.elasticsearch.ExceptionsHelper;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.cluster.ClusterService;
 import org.elasticsearch.cluster.node.DiscoveryNode;
@@ -28,14 +29,19 @@ import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.logging.ESLogger;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.search.SearchException;
 import org.elasticsearch.search.SearchService;
+import org.elasticsearch.search.SearchShardTarget;
+import org.elasticsearch.search.canmatch.CanMatchSearchResult;
 import org.elasticsearch.search.dfs.DfsSearchResult;
 import org.elasticsearch.search.fetch.FetchSearchRequest;
 import org.elasticsearch.search.fetch.FetchSearchResult;
 import org.elasticsearch.search.fetch.QueryFetchSearchResult;
 import org.elasticsearch.search.fetch.ScrollQueryFetchSearchResult;
 import org.elasticsearch.search.internal.InternalScrollSearchRequest;
+import org.elasticsearch.search.internal.MultiShardSearchRequest;
 import org.elasticsearch.search.internal.ShardSearchRequest;
+import org.elasticsearch.search.query.MultiShardQuerySearchResult;
 import org.elasticsearch.search.query.QuerySearchRequest;
 import org.elasticsearch.search.query.QuerySearchResult;
 import org.elasticsearch.search.query.ScrollQuerySearchResult;
@@ -43,6 +49,8 @@ import org.elasticsearch.threadpool.ThreadPool;
 import org.elasticsearch.transport.*;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * An encapsulation of {@link org.elasticsearch.search.SearchService} operations exposed through
@@ -65,6 +73,8 @@ public class SearchServiceTransportAction extends AbstractComponent {
         }
     }
 
+    private final ThreadPool threadPool;
+
     private final TransportService transportService;
 
     private final ClusterService clusterService;
@@ -73,16 +83,27 @@ public class SearchServiceTransportAction extends AbstractComponent {
 
     private final FreeContextResponseHandler freeContextResponseHandler = new FreeContextResponseHandler(logger);
 
+    private final EmptyTransportResponseHandler cancelSearchResponseHandler = new EmptyTransportResponseHandler(ThreadPool.Names.SAME) {
+        @Override
+        public void handleException(TransportException exp) {
+            logger.debug("Failed to send search cancellation", exp);
+        }
+    };
+
     @Inject
-    public SearchServiceTransportAction(Settings settings, TransportService transportService, ClusterService clusterService, SearchService searchService) {
+    public SearchServiceTransportAction(Settings settings, ThreadPool threadPool, TransportService transportService, ClusterService clusterService, SearchService searchService) {
         super(settings);
+        this.threadPool = threadPool;
         this.transportService = transportService;
         this.clusterService = clusterService;
         this.searchService = searchService;
 
         transportService.registerHandler(SearchFreeContextTransportHandler.ACTION, new SearchFreeContextTransportHandler());
+        transportService.registerHandler(SearchCancelTransportHandler.ACTION, new SearchCancelTransportHandler());
+        transportService.registerHandler(SearchCanMatchTransportHandler.ACTION, new SearchCanMatchTransportHandler());
         transportService.registerHandler(SearchDfsTransportHandler.ACTION, new SearchDfsTransportHandler());
         transportService.registerHandler(SearchQueryTransportHandler.ACTION, new SearchQueryTransportHandler());
+        transportService.registerHandler(SearchMultiShardQueryTransportHandler.ACTION, new SearchMultiShardQueryTransportHandler());
         transportService.registerHandler(SearchQueryByIdTransportHandler.ACTION, new SearchQueryByIdTransportHandler());
         transportService.registerHandler(SearchQueryScrollTransportHandler.ACTION, new SearchQueryScrollTransportHandler());
         transportService.registerHandler(SearchQueryFetchTransportHandler.ACTION, new SearchQueryFetchTransportHandler());
@@ -101,6 +122,51 @@ public class SearchServiceTransportAction extends AbstractComponent {
         }
     }
 
+    /**
+     * Cancels the contexts the node executes for the search with the given (coordinating node assigned) id.
+     */
+    public void sendCancelSearch(DiscoveryNode node, String searchId, SearchRequest request) {
+        if (clusterService.state().nodes().localNodeId().equals(node.id())) {
+            searchService.cancelSearch(searchId);
+        } else {
+            transportService.sendRequest(node, SearchCancelTransportHandler.ACTION, new SearchCancelRequest(request, searchId), cancelSearchResponseHandler);
+        }
+    }
+
+    public void sendExecuteCanMatch(DiscoveryNode node, final ShardSearchRequest request, final SearchServiceListener<CanMatchSearchResult> listener) {
+        if (clusterService.state().nodes().localNodeId().equals(node.id())) {
+            try {
+                CanMatchSearchResult result = searchService.executeCanMatchPhase(request);
+                listener.onResult(result);
+            } catch (Exception e) {
+                listener.onFailure(e);
+            }
+        } else {
+            transportService.sendRequest(node, SearchCanMatchTransportHandler.ACTION, request, new BaseTransportResponseHandler<CanMatchSearchResult>() {
+
+                @Override
+                public CanMatchSearchResult newInstance() {
+                    return new CanMatchSearchResult();
+                }
+
+                @Override
+                public void handleResponse(CanMatchSearchResult response) {
+                    listener.onResult(response);
+                }
+
+                @Override
+                public void handleException(TransportException exp) {
+                    listener.onFailure(exp);
+                }
+
+                @Override
+                public String executor() {
+                    return ThreadPool.Names.SAME;
+                }
+            });
+        }
+    }
+
     public void sendExecuteDfs(DiscoveryNode node, final ShardSearchRequest request, final SearchServiceListener<DfsSearchResult> listener) {
         if (clusterService.state().nodes().localNodeId().equals(node.id())) {
             try {
@@ -169,6 +235,61 @@ public class SearchServiceTransportAction extends AbstractComponent {
         }
     }
 
+    /**
+     * Executes the query phase of several shards allocated on the same node using a single transport
+     * message. Each listener is notified with the result (or failure) of the shard request at the same index.
+     */
+    public void sendExecuteQuery(DiscoveryNode node, SearchRequest searchRequest, final List<ShardSearchRequest> requests, final List<SearchServiceListener<QuerySearchResult>> listeners) {
+        if (clusterService.state().nodes().localNodeId().equals(node.id())) {
+            for (int i = 0; i < requests.size(); i++) {
+                try {
+                    QuerySearchResult result = searchService.executeQueryPhase(requests.get(i));
+                    listeners.get(i).onResult(result);
+                } catch (Exception e) {
+                    listeners.get(i).onFailure(e);
+                }
+            }
+        } else {
+            final String nodeId = node.id();
+            transportService.sendRequest(node, SearchMultiShardQueryTransportHandler.ACTION, new MultiShardSearchRequest(searchRequest, requests), new BaseTransportResponseHandler<MultiShardQuerySearchResult>() {
+
+                @Override
+                public MultiShardQuerySearchResult newInstance() {
+                    return new MultiShardQuerySearchResult();
+                }
+
+                @Override
+                public void handleResponse(MultiShardQuerySearchResult response) {
+                    for (int i = 0; i < response.size(); i++) {
+                        QuerySearchResult result = response.result(i);
+                        if (result != null) {
+                            listeners.get(i).onResult(result);
+                        } else {
+                            Throwable failure = response.failure(i);
+                            if (!(failure instanceof SearchException)) {
+                                ShardSearchRequest request = requests.get(i);
+                                failure = new SearchException(new SearchShardTarget(nodeId, request.index(), request.shardId()), ExceptionsHelper.detailedMessage(failure), failure);
+                            }
+                            listeners.get(i).onFailure(failure);
+                        }
+                    }
+                }
+
+                @Override
+                public void handleException(TransportException exp) {
+                    for (SearchServiceListener<QuerySearchResult> listener : listeners) {
+                        listener.onFailure(exp);
+                    }
+                }
+
+                @Override
+                public String executor() {
+                    return ThreadPool.Names.SAME;
+                }
+            });
+        }
+    }
+
     public void sendExecuteQuery(DiscoveryNode node, final QuerySearchRequest request, final SearchServiceListener<QuerySearchResult> listener) {
         if (clusterService.state().nodes().localNodeId().equals(node.id())) {
             try {
@@ -494,6 +615,78 @@ public class SearchServiceTransportAction extends AbstractComponent {
     }
 
 
+    class SearchCancelRequest extends TransportRequest {
+
+        private String searchId;
+
+        SearchCancelRequest() {
+        }
+
+        SearchCancelRequest(SearchRequest request, String searchId) {
+            super(request);
+            this.searchId = searchId;
+        }
+
+        public String searchId() {
+            return this.searchId;
+        }
+
+        @Override
+        public void readFrom(StreamInput in) throws IOException {
+            super.readFrom(in);
+            searchId = in.readString();
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            super.writeTo(out);
+            out.writeString(searchId);
+        }
+    }
+
+    class SearchCancelTransportHandler extends BaseTransportRequestHandler<SearchCancelRequest> {
+
+        static final String ACTION = "search/cancel";
+
+        @Override
+        public SearchCancelRequest newInstance() {
+            return new SearchCancelRequest();
+        }
+
+        @Override
+        public void messageReceived(SearchCancelRequest request, TransportChannel channel) throws Exception {
+            searchService.cancelSearch(request.searchId());
+            channel.sendResponse(TransportResponse.Empty.INSTANCE);
+        }
+
+        @Override
+        public String executor() {
+            // only flags the contexts, and must not queue behind the searches it cancels
+            return ThreadPool.Names.SAME;
+        }
+    }
+
+    private class SearchCanMatchTransportHandler extends BaseTransportRequestHandler<ShardSearchRequest> {
+
+        static final String ACTION = "search/phase/can_match";
+
+        @Override
+        public ShardSearchRequest newInstance() {
+            return new ShardSearchRequest();
+        }
+
+        @Override
+        public void messageReceived(ShardSearchRequest request, TransportChannel channel) throws Exception {
+            CanMatchSearchResult result = searchService.executeCanMatchPhase(request);
+            channel.sendResponse(result);
+        }
+
+        @Override
+        public String executor() {
+            return ThreadPool.Names.SEARCH;
+        }
+    }
+
     private class SearchDfsTransportHandler extends BaseTransportRequestHandler<ShardSearchRequest> {
 
         static final String ACTION = "search/phase/dfs";
@@ -536,6 +729,62 @@ public class SearchServiceTransportAction extends AbstractComponent {
         }
     }
 
+    private class SearchMultiShardQueryTransportHandler extends BaseTransportRequestHandler<MultiShardSearchRequest> {
+
+        static final String ACTION = "search/phase/query/multi";
+
+        @Override
+        public MultiShardSearchRequest newInstance() {
+            return new MultiShardSearchRequest();
+        }
+
+        @Override
+        public void messageReceived(final MultiShardSearchRequest request, final TransportChannel channel) throws Exception {
+            final MultiShardQuerySearchResult response = new MultiShardQuerySearchResult(request.size());
+            final AtomicInteger counter = new AtomicInteger(request.size());
+            for (int i = 0; i < request.size(); i++) {
+                final int index = i;
+                final ShardSearchRequest shardRequest = request.requests().get(i);
+                Runnable shardQuery = new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            response.result(index, searchService.executeQueryPhase(shardRequest));
+                        } catch (Throwable t) {
+                            response.failure(index, t);
+                        }
+                        if (counter.decrementAndGet() == 0) {
+                            try {
+                                channel.sendResponse(response);
+                            } catch (Throwable t) {
+                                logger.warn("failed to send response for multi shard query", t);
+                            }
+                        }
+                    }
+                };
+                if (i == request.size() - 1) {
+                    // execute the last shard on the current search thread, no need to fork it
+                    shardQuery.run();
+                } else {
+                    try {
+                        threadPool.executor(ThreadPool.Names.SEARCH).execute(shardQuery);
+                    } catch (Throwable t) {
+                        // rejected by the search pool, fail this shard only so the coordinator can retry it on a replica
+                        response.failure(index, t);
+                        if (counter.decrementAndGet() == 0) {
+                            channel.sendResponse(response);
+                        }
+                    }
+                }
+            }
+        }
+
+        @Override
+        public String executor() {
+            return ThreadPool.Names.SEARCH;
+        }
+    }
+
     private class SearchQueryByIdTransportHandler extends BaseTransportRequestHandler<QuerySearchRequest> {
 
         static final String ACTION = "search/phase/query/id";
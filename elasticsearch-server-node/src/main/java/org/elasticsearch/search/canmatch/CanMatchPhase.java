@@ -0,0 +1,225 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.search.canmatch;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.search.*;
+import org.apache.lucene.util.NumericUtils;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.lucene.search.AndFilter;
+import org.elasticsearch.index.cache.filter.support.WrappedFilter;
+import org.elasticsearch.search.internal.ContextIndexSearcher;
+import org.elasticsearch.search.internal.SearchContext;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A cheap check executed before the query phase, telling if a shard can possibly match the search. It
+ * extracts the numeric ranges (for example, a <tt>range</tt> filter on a timestamp) that every matching
+ * doc must fall into, and checks against the term dictionary of each segment whether it holds any value
+ * within them. Only a single term seek per range and segment is needed.
+ */
+public class CanMatchPhase {
+
+    public boolean canMatch(SearchContext context) throws IOException {
+        if (context.searcher().hasCollectors(ContextIndexSearcher.Scopes.GLOBAL)) {
+            // global facets are computed on all docs, regardless of the query
+            return true;
+        }
+        // the top level filter only applies to the hits, not to the facets
+        Filter filter = context.facets() == null ? context.parsedFilter() : null;
+        return canMatch(context.searcher().subReaders(), context.query(), filter);
+    }
+
+    /**
+     * Returns <tt>false</tt> if none of the segments can match the numeric ranges required by the query and
+     * the (optional) filter.
+     */
+    public boolean canMatch(IndexReader[] readers, Query query, @Nullable Filter filter) throws IOException {
+        List<NumericRange> ranges = new ArrayList<NumericRange>();
+        extractRanges(query, ranges);
+        if (filter != null) {
+            extractRanges(filter, ranges);
+        }
+        if (ranges.isEmpty()) {
+            return true;
+        }
+        for (IndexReader reader : readers) {
+            if (canMatch(reader, ranges)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean canMatch(IndexReader reader, List<NumericRange> ranges) throws IOException {
+        for (NumericRange range : ranges) {
+            if (!range.hasValue(reader)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Extracts the ranges that are required to match, walking only over clauses that must match.
+     */
+    private void extractRanges(Query query, List<NumericRange> ranges) {
+        if (query instanceof NumericRangeQuery) {
+            NumericRangeQuery rangeQuery = (NumericRangeQuery) query;
+            addRange(rangeQuery.getField(), rangeQuery.getMin(), rangeQuery.getMax(), rangeQuery.includesMin(), rangeQuery.includesMax(), ranges);
+        } else if (query instanceof FilteredQuery) {
+            extractRanges(((FilteredQuery) query).getQuery(), ranges);
+            extractRanges(((FilteredQuery) query).getFilter(), ranges);
+        } else if (query instanceof ConstantScoreQuery) {
+            ConstantScoreQuery constantScoreQuery = (ConstantScoreQuery) query;
+            if (constantScoreQuery.getFilter() != null) {
+                extractRanges(constantScoreQuery.getFilter(), ranges);
+            } else {
+                extractRanges(constantScoreQuery.getQuery(), ranges);
+            }
+        } else if (query instanceof BooleanQuery) {
+            for (BooleanClause clause : ((BooleanQuery) query).getClauses()) {
+                if (clause.getOccur() == BooleanClause.Occur.MUST) {
+                    extractRanges(clause.getQuery(), ranges);
+                }
+            }
+        }
+    }
+
+    private void extractRanges(Filter filter, List<NumericRange> ranges) {
+        if (filter instanceof WrappedFilter) {
+            extractRanges(((WrappedFilter) filter).wrappedFilter(), ranges);
+        } else if (filter instanceof NumericRangeFilter) {
+            NumericRangeFilter rangeFilter = (NumericRangeFilter) filter;
+            addRange(rangeFilter.getField(), rangeFilter.getMin(), rangeFilter.getMax(), rangeFilter.includesMin(), rangeFilter.includesMax(), ranges);
+        } else if (filter instanceof AndFilter) {
+            for (Filter andFilter : ((AndFilter) filter).filters()) {
+                extractRanges(andFilter, ranges);
+            }
+        }
+    }
+
+    private void addRange(String field, Number min, Number max, boolean includesMin, boolean includesMax, List<NumericRange> ranges) {
+        Number type = min != null ? min : max;
+        if (type == null) {
+            // open on both ends, matches all docs with a value
+            return;
+        }
+        if (type instanceof Long || type instanceof Double) {
+            long lower = min == null ? Long.MIN_VALUE : sortableLong(min);
+            long upper = max == null ? Long.MAX_VALUE : sortableLong(max);
+            if (!includesMin) {
+                if (lower == Long.MAX_VALUE) {
+                    ranges.add(NumericRange.EMPTY);
+                    return;
+                }
+                lower++;
+            }
+            if (!includesMax) {
+                if (upper == Long.MIN_VALUE) {
+                    ranges.add(NumericRange.EMPTY);
+                    return;
+                }
+                upper--;
+            }
+            ranges.add(new NumericRange(field, true, lower, upper));
+        } else if (type instanceof Integer || type instanceof Float) {
+            long lower = min == null ? Integer.MIN_VALUE : sortableInt(min);
+            long upper = max == null ? Integer.MAX_VALUE : sortableInt(max);
+            if (!includesMin) {
+                lower++;
+            }
+            if (!includesMax) {
+                upper--;
+            }
+            ranges.add(new NumericRange(field, false, lower, upper));
+        }
+    }
+
+    private static long sortableLong(Number value) {
+        if (value instanceof Double) {
+            return NumericUtils.doubleToSortableLong(value.doubleValue());
+        }
+        return value.longValue();
+    }
+
+    private static int sortableInt(Number value) {
+        if (value instanceof Float) {
+            return NumericUtils.floatToSortableInt(value.floatValue());
+        }
+        return value.intValue();
+    }
+
+    /**
+     * A range over the sortable long (or int) full precision terms of a numeric field.
+     */
+    static class NumericRange {
+
+        static final NumericRange EMPTY = new NumericRange(null, true, 1, 0);
+
+        private final String field;
+
+        private final boolean longValues;
+
+        private final long lower;
+
+        private final long upper;
+
+        NumericRange(String field, boolean longValues, long lower, long upper) {
+            this.field = field;
+            this.longValues = longValues;
+            this.lower = lower;
+            this.upper = upper;
+        }
+
+        /**
+         * Seeks to the smallest full precision term that is greater or equal to the lower bound, and checks that
+         * it is within the upper bound. Full precision terms (shift 0) sort before all the lower precision ones.
+         */
+        boolean hasValue(IndexReader reader) throws IOException {
+            if (lower > upper) {
+                return false;
+            }
+            String lowerTerm = longValues ? NumericUtils.longToPrefixCoded(lower) : NumericUtils.intToPrefixCoded((int) lower);
+            char fullPrecision = (char) (longValues ? NumericUtils.SHIFT_START_LONG : NumericUtils.SHIFT_START_INT);
+            TermEnum termEnum = reader.terms(new Term(field, lowerTerm));
+            try {
+                Term term = termEnum.term();
+                if (term == null || !field.equals(term.field())) {
+                    return false;
+                }
+                String text = term.text();
+                if (text.length() == 0 || text.charAt(0) != fullPrecision) {
+                    return false;
+                }
+                long value = longValues ? NumericUtils.prefixCodedToLong(text) : NumericUtils.prefixCodedToInt(text);
+                return value <= upper;
+            } finally {
+                termEnum.close();
+            }
+        }
+    }
+}
@@ -34,12 +34,14 @@ import org.elasticsearch.common.component.AbstractComponent;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.trove.ExtTIntArrayList;
+import org.elasticsearch.indices.rollup.RollupConfig;
 import org.elasticsearch.search.SearchShardTarget;
 import org.elasticsearch.search.dfs.AggregatedDfs;
 import org.elasticsearch.search.dfs.DfsSearchResult;
 import org.elasticsearch.search.facet.Facet;
 import org.elasticsearch.search.facet.FacetProcessors;
 import org.elasticsearch.search.facet.InternalFacets;
+import org.elasticsearch.search.facet.statistical.StatisticalFacet;
 import org.elasticsearch.search.fetch.FetchSearchResult;
 import org.elasticsearch.search.fetch.FetchSearchResultProvider;
 import org.elasticsearch.search.internal.InternalSearchHit;
@@ -48,7 +50,6 @@ import org.elasticsearch.search.internal.InternalSearchResponse;
 import org.elasticsearch.search.query.QuerySearchResult;
 import org.elasticsearch.search.query.QuerySearchResultProvider;
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -243,7 +244,13 @@ public class SearchPhaseController extends AbstractComponent {
     }
 
     public Map<SearchShardTarget, ExtTIntArrayList> docIdsToLoad(ShardDoc[] shardDocs) {
-        Map<SearchShardTarget, ExtTIntArrayList> result = Maps.newHashMap();
+        return docIdsToLoad(shardDocs, Maps.<SearchShardTarget, ExtTIntArrayList>newHashMap());
+    }
+
+    /**
+     * Same as {@link #docIdsToLoad(ShardDoc[])}, but fills the provided (possibly recycled) map.
+     */
+    public Map<SearchShardTarget, ExtTIntArrayList> docIdsToLoad(ShardDoc[] shardDocs, Map<SearchShardTarget, ExtTIntArrayList> result) {
         for (ShardDoc shardDoc : shardDocs) {
             ExtTIntArrayList list = result.get(shardDoc.shardTarget());
             if (list == null) {
@@ -279,6 +286,7 @@ public class SearchPhaseController extends AbstractComponent {
 
         // merge facets
         InternalFacets facets = null;
+        StatisticalFacet rollupTotal = null;
         if (!queryResults.isEmpty()) {
             // we rely on the fact that the order of facets is the same on all query results
             if (querySearchResult.facets() != null && querySearchResult.facets().facets() != null && !querySearchResult.facets().facets().isEmpty()) {
@@ -295,9 +303,16 @@ public class SearchPhaseController extends AbstractComponent {
                         }
                     }
                     Facet aggregatedFacet = facetProcessors.processor(facet.type()).reduce(facet.name(), namedFacets);
+                    if (RollupConfig.TOTAL_FACET.equals(facet.name()) && aggregatedFacet instanceof StatisticalFacet) {
+                        // a search rewritten to a rollup index, the facet holds the raw docs total
+                        rollupTotal = (StatisticalFacet) aggregatedFacet;
+                        continue;
+                    }
                     aggregatedFacets.add(aggregatedFacet);
                 }
-                facets = new InternalFacets(aggregatedFacets);
+                if (!aggregatedFacets.isEmpty()) {
+                    facets = new InternalFacets(aggregatedFacets);
+                }
             }
         }
 
@@ -317,14 +332,21 @@ public class SearchPhaseController extends AbstractComponent {
         if (Float.isInfinite(maxScore)) {
             maxScore = Float.NaN;
         }
+        if (rollupTotal != null) {
+            totalHits = (long) rollupTotal.total();
+        }
 
         // clean the fetch counter
         for (FetchSearchResultProvider fetchSearchResultProvider : fetchResults.values()) {
             fetchSearchResultProvider.fetchResult().initCounter();
+            if (fetchSearchResultProvider.fetchResult().searchTimedOut()) {
+                timedOut = true;
+            }
         }
 
-        // merge hits
-        List<InternalSearchHit> hits = new ArrayList<InternalSearchHit>();
+        // merge hits, directly into an array sized by the sorted docs, we trim it only if some hits are missing
+        InternalSearchHit[] hits = new InternalSearchHit[fetchResults.isEmpty() ? 0 : sortedDocs.length];
+        int hitsSize = 0;
         if (!fetchResults.isEmpty()) {
             for (ShardDoc shardDoc : sortedDocs) {
                 FetchSearchResultProvider fetchResultProvider = fetchResults.get(shardDoc.shardTarget());
@@ -346,12 +368,17 @@ public class SearchPhaseController extends AbstractComponent {
                         }
                     }
 
-                    hits.add(searchHit);
+                    hits[hitsSize++] = searchHit;
                 }
             }
         }
+        if (hitsSize < hits.length) {
+            InternalSearchHit[] trimmedHits = new InternalSearchHit[hitsSize];
+            System.arraycopy(hits, 0, trimmedHits, 0, hitsSize);
+            hits = trimmedHits;
+        }
 
-        InternalSearchHits searchHits = new InternalSearchHits(hits.toArray(new InternalSearchHit[hits.size()]), totalHits, maxScore);
+        InternalSearchHits searchHits = new InternalSearchHits(hits, totalHits, maxScore);
         return new InternalSearchResponse(searchHits, facets, timedOut);
     }
 }
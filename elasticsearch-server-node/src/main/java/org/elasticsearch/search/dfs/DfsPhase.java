@@ -26,6 +26,7 @@ import org.elasticsearch.common.util.concurrent.ThreadLocals;
 import org.elasticsearch.search.SearchParseElement;
 import org.elasticsearch.search.SearchPhase;
 import org.elasticsearch.search.internal.SearchContext;
+import org.elasticsearch.search.internal.SearchTimeExceededException;
 
 import java.util.Map;
 
@@ -51,9 +52,15 @@ public class DfsPhase implements SearchPhase {
     }
 
     public void execute(SearchContext context) {
+        context.executionStarted(System.currentTimeMillis());
         try {
             if (!context.queryRewritten()) {
-                context.updateRewriteQuery(context.searcher().rewrite(context.query()));
+                try {
+                    context.updateRewriteQuery(context.searcher().rewrite(context.query()));
+                } catch (SearchTimeExceededException e) {
+                    // the term statistics can't be partial, the rewritten query was kept, and the query phase
+                    // checks the timeout again
+                }
             }
 
             THashSet<Term> termsSet = cachedTermsSet.get().get();
@@ -0,0 +1,257 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.search.facet;
+
+import com.google.common.base.Charsets;
+import gnu.trove.map.hash.TLongLongHashMap;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.UnicodeUtil;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.compress.Compressor;
+import org.elasticsearch.common.compress.CompressorFactory;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Compact encodings of facet entries sent from the shards to the coordinating node. Terms are written sorted,
+ * each sharing the UTF-8 prefix of the term before it, and histogram keys are written sorted, as deltas from the
+ * key before them, all numbers as var ints. Term blocks larger than {@link #COMPRESS_THRESHOLD} are compressed
+ * with the default {@link Compressor}.
+ */
+public class CompactFacetStreams {
+
+    /**
+     * The size (in bytes) of a terms block above which it gets compressed.
+     */
+    public static final int COMPRESS_THRESHOLD = 16 * 1024;
+
+    private static final byte HAS_EXTRA = 0x01;
+    private static final byte COMPRESSED = 0x02;
+
+    /**
+     * Writes the counts of a histogram, keyed by their (sorted) keys.
+     */
+    public static void writeCounts(StreamOutput out, TLongLongHashMap counts) throws IOException {
+        long[] keys = counts.keys();
+        Arrays.sort(keys);
+        out.writeVInt(keys.length);
+        long previous = 0;
+        for (int i = 0; i < keys.length; i++) {
+            writeKey(out, i, keys[i], previous);
+            previous = keys[i];
+            out.writeVLong(counts.get(keys[i]));
+        }
+    }
+
+    /**
+     * Reads the counts written with {@link #writeCounts(StreamOutput, TLongLongHashMap)} into the map.
+     */
+    public static void readCounts(StreamInput in, TLongLongHashMap counts) throws IOException {
+        int size = in.readVInt();
+        long key = 0;
+        for (int i = 0; i < size; i++) {
+            key = readKey(in, i, key);
+            counts.put(key, in.readVLong());
+        }
+    }
+
+    /**
+     * Writes the sorted keys of histogram entries, the first one as is and the others as deltas.
+     */
+    public static void writeKey(StreamOutput out, int index, long key, long previousKey) throws IOException {
+        if (index == 0) {
+            out.writeLong(key);
+        } else {
+            out.writeVLong(key - previousKey);
+        }
+    }
+
+    /**
+     * Reads a key written with {@link #writeKey(StreamOutput, int, long, long)}.
+     */
+    public static long readKey(StreamInput in, int index, long previousKey) throws IOException {
+        return index == 0 ? in.readLong() : previousKey + in.readVLong();
+    }
+
+    /**
+     * Buffers terms, added in sorted order, along with their count and an optional extra (non negative) number,
+     * then writes them as a single block.
+     */
+    public static class TermsWriter {
+
+        private final boolean hasExtra;
+
+        private final BytesStreamOutput block = new BytesStreamOutput();
+
+        private final UnicodeUtil.UTF8Result previous = new UnicodeUtil.UTF8Result();
+
+        private UnicodeUtil.UTF8Result current = new UnicodeUtil.UTF8Result();
+
+        private int size;
+
+        public TermsWriter(boolean hasExtra) {
+            this.hasExtra = hasExtra;
+        }
+
+        public void add(String term, long count) throws IOException {
+            add(term, count, 0);
+        }
+
+        public void add(String term, long count, long extra) throws IOException {
+            UnicodeUtil.UTF16toUTF8(term, 0, term.length(), current);
+            int prefix = 0;
+            int maxPrefix = Math.min(previous.length, current.length);
+            while (prefix < maxPrefix && previous.result[prefix] == current.result[prefix]) {
+                prefix++;
+            }
+            block.writeVInt(prefix);
+            block.writeVInt(current.length - prefix);
+            block.writeBytes(current.result, prefix, current.length - prefix);
+            block.writeVLong(count);
+            if (hasExtra) {
+                block.writeVLong(extra);
+            }
+            previous.result = ArrayUtil.grow(previous.result, current.length);
+            System.arraycopy(current.result, 0, previous.result, 0, current.length);
+            previous.length = current.length;
+            size++;
+        }
+
+        public void writeTo(StreamOutput out) throws IOException {
+            out.writeVInt(size);
+            BytesReference bytes = block.bytes();
+            byte flags = hasExtra ? HAS_EXTRA : 0;
+            if (bytes.length() > COMPRESS_THRESHOLD) {
+                byte[] compressed = CompressorFactory.defaultCompressor().compress(bytes.array(), bytes.arrayOffset(), bytes.length());
+                out.writeByte((byte) (flags | COMPRESSED));
+                out.writeVInt(compressed.length);
+                out.writeBytes(compressed);
+            } else {
+                out.writeByte(flags);
+                out.writeVInt(bytes.length());
+                out.writeBytes(bytes.array(), bytes.arrayOffset(), bytes.length());
+            }
+        }
+    }
+
+    /**
+     * Reads a block of terms written by a {@link TermsWriter}, one term at a time, so the block can be consumed
+     * without creating an entry (or a string) per term. A compressed block is decompressed as the terms are read.
+     */
+    public static class TermsReader {
+
+        private final int size;
+
+        private final boolean hasExtra;
+
+        private final StreamInput block;
+
+        private byte[] termBytes = new byte[32];
+
+        private int termLength;
+
+        private String term;
+
+        private long count;
+
+        private long extra;
+
+        private int read;
+
+        public static TermsReader readFrom(StreamInput in) throws IOException {
+            int size = in.readVInt();
+            byte flags = in.readByte();
+            BytesReference bytes = in.readBytesReference();
+            StreamInput block = bytes.streamInput();
+            if ((flags & COMPRESSED) != 0) {
+                Compressor compressor = CompressorFactory.compressor(bytes);
+                if (compressor == null) {
+                    throw new IOException("failed to find the compressor of a compressed terms block");
+                }
+                block = compressor.streamInput(block);
+            }
+            return new TermsReader(size, (flags & HAS_EXTRA) != 0, block);
+        }
+
+        private TermsReader(int size, boolean hasExtra, StreamInput block) {
+            this.size = size;
+            this.hasExtra = hasExtra;
+            this.block = block;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Moves to the next term, returns <tt>false</tt> when all the terms were read.
+         */
+        public boolean next() throws IOException {
+            if (read == size) {
+                block.close();
+                return false;
+            }
+            int prefix = block.readVInt();
+            int suffix = block.readVInt();
+            termLength = prefix + suffix;
+            if (termBytes.length < termLength) {
+                termBytes = Arrays.copyOf(termBytes, ArrayUtil.oversize(termLength, 1));
+            }
+            block.readBytes(termBytes, prefix, suffix);
+            term = null;
+            count = block.readVLong();
+            extra = hasExtra ? block.readVLong() : 0;
+            read++;
+            return true;
+        }
+
+        public String term() {
+            if (term == null) {
+                term = new String(termBytes, 0, termLength, Charsets.UTF_8);
+            }
+            return term;
+        }
+
+        /**
+         * Points the scratch ref at the UTF-8 bytes of the current term, without creating a string for it. The
+         * bytes are only valid until the next call to {@link #next()}.
+         */
+        public BytesRef termBytes(BytesRef scratch) {
+            scratch.bytes = termBytes;
+            scratch.offset = 0;
+            scratch.length = termLength;
+            return scratch;
+        }
+
+        public long count() {
+            return count;
+        }
+
+        public long extra() {
+            return extra;
+        }
+    }
+}
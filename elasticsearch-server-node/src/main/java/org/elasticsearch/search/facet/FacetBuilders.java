@@ -21,11 +21,14 @@ package org.elasticsearch.search.facet;
 
 import org.elasticsearch.index.query.FilterBuilder;
 import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.search.facet.buckets.BucketsFacetBuilder;
+import org.elasticsearch.search.facet.cardinality.CardinalityFacetBuilder;
 import org.elasticsearch.search.facet.datehistogram.DateHistogramFacetBuilder;
 import org.elasticsearch.search.facet.filter.FilterFacetBuilder;
 import org.elasticsearch.search.facet.geodistance.GeoDistanceFacetBuilder;
 import org.elasticsearch.search.facet.histogram.HistogramFacetBuilder;
 import org.elasticsearch.search.facet.histogram.HistogramScriptFacetBuilder;
+import org.elasticsearch.search.facet.percentiles.PercentilesFacetBuilder;
 import org.elasticsearch.search.facet.query.QueryFacetBuilder;
 import org.elasticsearch.search.facet.range.RangeFacetBuilder;
 import org.elasticsearch.search.facet.range.RangeScriptFacetBuilder;
@@ -33,6 +36,7 @@ import org.elasticsearch.search.facet.statistical.StatisticalFacetBuilder;
 import org.elasticsearch.search.facet.statistical.StatisticalScriptFacetBuilder;
 import org.elasticsearch.search.facet.terms.TermsFacetBuilder;
 import org.elasticsearch.search.facet.termsstats.TermsStatsFacetBuilder;
+import org.elasticsearch.search.facet.tophits.TopHitsFacetBuilder;
 
 /**
  *
@@ -94,4 +98,20 @@ public class FacetBuilders {
     public static GeoDistanceFacetBuilder geoDistanceFacet(String facetName) {
         return new GeoDistanceFacetBuilder(facetName);
     }
+
+    public static CardinalityFacetBuilder cardinalityFacet(String facetName) {
+        return new CardinalityFacetBuilder(facetName);
+    }
+
+    public static PercentilesFacetBuilder percentilesFacet(String facetName) {
+        return new PercentilesFacetBuilder(facetName);
+    }
+
+    public static BucketsFacetBuilder bucketsFacet(String facetName) {
+        return new BucketsFacetBuilder(facetName);
+    }
+
+    public static TopHitsFacetBuilder topHitsFacet(String facetName) {
+        return new TopHitsFacetBuilder(facetName);
+    }
 }
@@ -22,15 +22,19 @@ package org.elasticsearch.search.facet;
 import com.google.common.collect.Lists;
 import org.elasticsearch.common.inject.AbstractModule;
 import org.elasticsearch.common.inject.multibindings.Multibinder;
+import org.elasticsearch.search.facet.buckets.BucketsFacetProcessor;
+import org.elasticsearch.search.facet.cardinality.CardinalityFacetProcessor;
 import org.elasticsearch.search.facet.datehistogram.DateHistogramFacetProcessor;
 import org.elasticsearch.search.facet.filter.FilterFacetProcessor;
 import org.elasticsearch.search.facet.geodistance.GeoDistanceFacetProcessor;
 import org.elasticsearch.search.facet.histogram.HistogramFacetProcessor;
+import org.elasticsearch.search.facet.percentiles.PercentilesFacetProcessor;
 import org.elasticsearch.search.facet.query.QueryFacetProcessor;
 import org.elasticsearch.search.facet.range.RangeFacetProcessor;
 import org.elasticsearch.search.facet.statistical.StatisticalFacetProcessor;
 import org.elasticsearch.search.facet.terms.TermsFacetProcessor;
 import org.elasticsearch.search.facet.termsstats.TermsStatsFacetProcessor;
+import org.elasticsearch.search.facet.tophits.TopHitsFacetProcessor;
 
 import java.util.List;
 
@@ -51,6 +55,10 @@ public class FacetModule extends AbstractModule {
         processors.add(StatisticalFacetProcessor.class);
         processors.add(TermsFacetProcessor.class);
         processors.add(TermsStatsFacetProcessor.class);
+        processors.add(CardinalityFacetProcessor.class);
+        processors.add(PercentilesFacetProcessor.class);
+        processors.add(BucketsFacetProcessor.class);
+        processors.add(TopHitsFacetProcessor.class);
     }
 
     public void addFacetProcessor(Class<? extends FacetProcessor> facetProcessor) {
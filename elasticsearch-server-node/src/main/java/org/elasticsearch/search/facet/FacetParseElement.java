@@ -46,7 +46,8 @@ import java.util.List;
  *          name : "myfield",
  *          size : 12
  *      },
- *      global : false
+ *      global : false,
+ *      sample : 0.1
  *  }
  * }
  * </pre>
@@ -79,6 +80,9 @@ public class FacetParseElement implements SearchParseElement {
                 Filter filter = null;
                 boolean cacheFilter = true;
                 String nestedPath = null;
+                double sampleRate = 1;
+                String facetType = null;
+                boolean sampleable = false;
                 while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
                     if (token == XContentParser.Token.FIELD_NAME) {
                         facetFieldName = parser.currentName();
@@ -91,6 +95,8 @@ public class FacetParseElement implements SearchParseElement {
                                 throw new SearchParseException(context, "No facet type found for [" + facetFieldName + "]");
                             }
                             facet = facetProcessor.parse(topLevelFieldName, parser, context);
+                            facetType = facetFieldName;
+                            sampleable = facet instanceof SampleableFacetCollector;
                         }
                     } else if (token.isValue()) {
                         if ("global".equals(facetFieldName)) {
@@ -103,6 +109,8 @@ public class FacetParseElement implements SearchParseElement {
                             cacheFilter = parser.booleanValue();
                         } else if ("nested".equals(facetFieldName)) {
                             nestedPath = parser.text();
+                        } else if ("sample".equals(facetFieldName)) {
+                            sampleRate = parser.doubleValue();
                         }
                     }
                 }
@@ -133,6 +141,16 @@ public class FacetParseElement implements SearchParseElement {
                     throw new SearchParseException(context, "no facet type found for facet named [" + topLevelFieldName + "]");
                 }
 
+                if (sampleRate <= 0 || sampleRate > 1) {
+                    throw new SearchParseException(context, "facet [" + topLevelFieldName + "] sample must be greater than 0 and at most 1, got [" + sampleRate + "]");
+                }
+                if (sampleRate < 1) {
+                    if (!sampleable) {
+                        throw new SearchParseException(context, "facet [" + topLevelFieldName + "] of type [" + facetType + "] does not support [sample], only string terms, count histogram and count date histogram facets do");
+                    }
+                    facet = new SampledFacetCollector(facet, sampleRate);
+                }
+
                 if (facetCollectors == null) {
                     facetCollectors = Lists.newArrayList();
                 }
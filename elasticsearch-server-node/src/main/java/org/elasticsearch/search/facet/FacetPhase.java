@@ -31,6 +31,7 @@ import org.elasticsearch.search.SearchParseElement;
 import org.elasticsearch.search.SearchPhase;
 import org.elasticsearch.search.internal.ContextIndexSearcher;
 import org.elasticsearch.search.internal.SearchContext;
+import org.elasticsearch.search.internal.SearchTimeExceededException;
 import org.elasticsearch.search.query.QueryPhaseExecutionException;
 
 import java.io.IOException;
@@ -126,6 +127,9 @@ public class FacetPhase implements SearchPhase {
                 }
                 try {
                     context.searcher().search(query, MultiCollector.wrap(entry.getValue().toArray(new Collector[entry.getValue().size()])));
+                } catch (SearchTimeExceededException e) {
+                    // return the facets collected so far
+                    context.queryResult().searchTimedOut(true);
                 } catch (IOException e) {
                     throw new QueryPhaseExecutionException(context, "Failed to execute global facets", e);
                 }
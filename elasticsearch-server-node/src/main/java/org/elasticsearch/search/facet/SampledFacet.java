@@ -0,0 +1,38 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.search.facet;
+
+/**
+ * A facet that can be computed over a sample of the docs, its counts then being scaled back up to
+ * estimates over all the docs.
+ */
+public interface SampledFacet {
+
+    /**
+     * Scales the counts, collected over the docs sampled at the given rate, back up.
+     */
+    void sample(double sampleRate);
+
+    /**
+     * The rate the docs were sampled at, <tt>1</tt> when all the docs were collected.
+     */
+    double sampleRate();
+}
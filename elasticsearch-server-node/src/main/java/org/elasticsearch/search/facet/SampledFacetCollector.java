@@ -0,0 +1,108 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.search.facet;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.Scorer;
+
+import java.io.IOException;
+
+/**
+ * Only passes a deterministic sample of the docs to the wrapped collector, picked by hashing the doc id
+ * within its segment, so the same docs are sampled for the same segment across requests. The counts of
+ * the resulting {@link SampledFacet} are then scaled back up by the sample rate. Only wraps collectors that
+ * are {@link SampleableFacetCollector}s.
+ */
+public class SampledFacetCollector extends FacetCollector {
+
+    private final FacetCollector collector;
+
+    private final double sampleRate;
+
+    private final int threshold;
+
+    public SampledFacetCollector(FacetCollector collector, double sampleRate) {
+        this.collector = collector;
+        this.sampleRate = sampleRate;
+        this.threshold = (int) (sampleRate * Integer.MAX_VALUE);
+    }
+
+    @Override
+    public Facet facet() {
+        // only wraps a SampleableFacetCollector, checked when parsing
+        Facet facet = collector.facet();
+        ((SampledFacet) facet).sample(sampleRate);
+        return facet;
+    }
+
+    @Override
+    public void setFilter(Filter filter) {
+        collector.setFilter(filter);
+    }
+
+    @Override
+    public void setScorer(Scorer scorer) throws IOException {
+        collector.setScorer(scorer);
+    }
+
+    @Override
+    public void setNextReader(IndexReader reader, int docBase) throws IOException {
+        collector.setNextReader(reader, docBase);
+    }
+
+    @Override
+    public void collect(int doc) throws IOException {
+        if (sampled(doc)) {
+            collector.collect(doc);
+        }
+    }
+
+    @Override
+    public boolean acceptsDocsOutOfOrder() {
+        return collector.acceptsDocsOutOfOrder();
+    }
+
+    private boolean sampled(int doc) {
+        // the murmur3 finalizer, spreading consecutive doc ids uniformly, seeded so doc 0 is not always in
+        int h = doc + 0x9e3779b9;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return (h & Integer.MAX_VALUE) < threshold;
+    }
+
+    /**
+     * The estimate of a count, collected over docs sampled at the given rate, over all the docs.
+     */
+    public static long scale(long count, double sampleRate) {
+        return Math.round(count / sampleRate);
+    }
+
+    /**
+     * The standard error of a (scaled) count estimate, with docs sampled at the given rate.
+     */
+    public static long countError(long count, double sampleRate) {
+        return Math.round(Math.sqrt(count * (1 - sampleRate) / sampleRate));
+    }
+}
@@ -20,15 +20,19 @@
 package org.elasticsearch.search.facet;
 
 import org.elasticsearch.common.inject.AbstractModule;
+import org.elasticsearch.search.facet.buckets.InternalBucketsFacet;
+import org.elasticsearch.search.facet.cardinality.InternalCardinalityFacet;
 import org.elasticsearch.search.facet.datehistogram.InternalDateHistogramFacet;
 import org.elasticsearch.search.facet.filter.InternalFilterFacet;
 import org.elasticsearch.search.facet.geodistance.InternalGeoDistanceFacet;
 import org.elasticsearch.search.facet.histogram.InternalHistogramFacet;
+import org.elasticsearch.search.facet.percentiles.InternalPercentilesFacet;
 import org.elasticsearch.search.facet.query.InternalQueryFacet;
 import org.elasticsearch.search.facet.range.InternalRangeFacet;
 import org.elasticsearch.search.facet.statistical.InternalStatisticalFacet;
 import org.elasticsearch.search.facet.terms.InternalTermsFacet;
 import org.elasticsearch.search.facet.termsstats.InternalTermsStatsFacet;
+import org.elasticsearch.search.facet.tophits.InternalTopHitsFacet;
 
 /**
  *
@@ -46,5 +50,9 @@ public class TransportFacetModule extends AbstractModule {
         InternalStatisticalFacet.registerStreams();
         InternalTermsFacet.registerStreams();
         InternalTermsStatsFacet.registerStreams();
+        InternalCardinalityFacet.registerStreams();
+        InternalPercentilesFacet.registerStreams();
+        InternalBucketsFacet.registerStreams();
+        InternalTopHitsFacet.registerStreams();
     }
 }
@@ -0,0 +1,68 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.search.facet.buckets;
+
+import org.apache.lucene.index.IndexReader;
+import org.elasticsearch.index.mapper.MapperService;
+import org.elasticsearch.search.facet.Facet;
+import org.elasticsearch.search.facet.FacetPhaseExecutionException;
+import org.elasticsearch.search.internal.SearchContext;
+
+import java.io.IOException;
+
+/**
+ * Computes a sub facet for each one of the buckets of a {@link BucketsFacetCollector}. Docs are collected
+ * along with the (dense, zero based) ordinal of the bucket they fell into, and the values are accumulated
+ * into arrays indexed by that ordinal, so all the buckets are computed in a single pass over the docs.
+ */
+public abstract class BucketCollector {
+
+    protected final String facetName;
+
+    protected BucketCollector(String facetName) {
+        this.facetName = facetName;
+    }
+
+    public String facetName() {
+        return facetName;
+    }
+
+    public abstract void setNextReader(IndexReader reader, int docBase) throws IOException;
+
+    /**
+     * Collects the doc (of the current reader) into the given bucket. A doc is collected at most once
+     * per bucket.
+     */
+    public abstract void collect(int doc, int bucket);
+
+    /**
+     * The sub facet of the given bucket.
+     */
+    public abstract Facet facet(int bucket);
+
+    static MapperService.SmartNameFieldMappers smartMappers(String facetName, String fieldName, SearchContext context) {
+        MapperService.SmartNameFieldMappers smartMappers = context.smartFieldMappers(fieldName);
+        if (smartMappers == null || !smartMappers.hasMapper()) {
+            throw new FacetPhaseExecutionException(facetName, "No mapping found for field [" + fieldName + "]");
+        }
+        return smartMappers;
+    }
+}
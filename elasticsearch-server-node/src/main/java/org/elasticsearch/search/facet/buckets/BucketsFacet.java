@@ -0,0 +1,93 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.search.facet.buckets;
+
+import org.elasticsearch.search.facet.Facet;
+
+import java.util.List;
+
+/**
+ * Splits the docs into buckets (by term, histogram interval or range), and computes a set of sub facets
+ * for each one of the buckets.
+ */
+public interface BucketsFacet extends Facet, Iterable<BucketsFacet.Bucket> {
+
+    /**
+     * The type of the buckets facet.
+     */
+    public static final String TYPE = "buckets";
+
+    /**
+     * The buckets of the facet.
+     */
+    List<? extends Bucket> buckets();
+
+    /**
+     * The buckets of the facet.
+     */
+    List<? extends Bucket> getBuckets();
+
+    public interface Bucket {
+
+        /**
+         * The key of the bucket, the term for terms buckets, the (lower bound) value of the interval for
+         * (date) histogram buckets, and the <tt>from-to</tt> for range buckets.
+         */
+        String key();
+
+        String getKey();
+
+        /**
+         * The lower bound of a histogram or range bucket, <tt>Double.NEGATIVE_INFINITY</tt> when unbounded
+         * and <tt>NaN</tt> for terms buckets.
+         */
+        double from();
+
+        double getFrom();
+
+        /**
+         * The (exclusive) upper bound of a histogram or range bucket, <tt>Double.POSITIVE_INFINITY</tt> when
+         * unbounded and <tt>NaN</tt> for terms buckets.
+         */
+        double to();
+
+        double getTo();
+
+        /**
+         * The number of docs that fell into the bucket.
+         */
+        long docCount();
+
+        long getDocCount();
+
+        /**
+         * The sub facets computed on the docs of the bucket.
+         */
+        List<Facet> facets();
+
+        List<Facet> getFacets();
+
+        /**
+         * The sub facet with the given name, <tt>null</tt> if there is none.
+         */
+        <T extends Facet> T facet(String name);
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.search.facet.buckets;
+
+import com.google.common.collect.Lists;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.index.query.FilterBuilder;
+import org.elasticsearch.search.builder.SearchSourceBuilderException;
+import org.elasticsearch.search.facet.AbstractFacetBuilder;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Builds a buckets facet, splitting the docs by one of {@link #terms(String, int)},
+ * {@link #histogram(String, long)}, {@link #dateHistogram(String, String)} or {@link #range(String)}, and
+ * computing the {@link #subFacet(AbstractFacetBuilder) sub facets} for each bucket. Sub facets can be
+ * statistical, (string) terms or cardinality facets on a field.
+ */
+public class BucketsFacetBuilder extends AbstractFacetBuilder {
+
+    private String bucketsType;
+    private String fieldName;
+    private int size = -1;
+    private long interval = -1;
+    private String dateInterval;
+    private List<Double> from = Lists.newArrayList();
+    private List<Double> to = Lists.newArrayList();
+    private List<AbstractFacetBuilder> subFacets = Lists.newArrayList();
+
+    public BucketsFacetBuilder(String name) {
+        super(name);
+    }
+
+    /**
+     * A bucket per term of the (string) field, keeping the <tt>size</tt> buckets with the most docs.
+     */
+    public BucketsFacetBuilder terms(String field, int size) {
+        this.bucketsType = "terms";
+        this.fieldName = field;
+        this.size = size;
+        return this;
+    }
+
+    /**
+     * A bucket per <tt>interval</tt> of the numeric field.
+     */
+    public BucketsFacetBuilder histogram(String field, long interval) {
+        this.bucketsType = "histogram";
+        this.fieldName = field;
+        this.interval = interval;
+        return this;
+    }
+
+    /**
+     * A bucket per <tt>interval</tt> of the date field, the interval being a fixed length time value
+     * (<tt>1h</tt>, <tt>30m</tt>) or one of <tt>week</tt>, <tt>day</tt>, <tt>hour</tt>, <tt>minute</tt>
+     * and <tt>second</tt>.
+     */
+    public BucketsFacetBuilder dateHistogram(String field, String interval) {
+        this.bucketsType = "date_histogram";
+        this.fieldName = field;
+        this.dateInterval = interval;
+        return this;
+    }
+
+    /**
+     * A bucket per range of the numeric field, the ranges being added with {@link #addRange(double, double)},
+     * {@link #addUnboundedFrom(double)} and {@link #addUnboundedTo(double)}.
+     */
+    public BucketsFacetBuilder range(String field) {
+        this.bucketsType = "range";
+        this.fieldName = field;
+        return this;
+    }
+
+    /**
+     * Adds a range bucket, <tt>from</tt> inclusive, <tt>to</tt> exclusive.
+     */
+    public BucketsFacetBuilder addRange(double from, double to) {
+        this.from.add(from);
+        this.to.add(to);
+        return this;
+    }
+
+    /**
+     * Adds a range bucket of the values lower than <tt>to</tt>.
+     */
+    public BucketsFacetBuilder addUnboundedTo(double to) {
+        return addRange(Double.NEGATIVE_INFINITY, to);
+    }
+
+    /**
+     * Adds a range bucket of the values greater or equal to <tt>from</tt>.
+     */
+    public BucketsFacetBuilder addUnboundedFrom(double from) {
+        return addRange(from, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Adds a facet to compute for each bucket. Only statistical, terms and cardinality facets on a field
+     * are supported, without a facet filter, scope or nested path.
+     */
+    public BucketsFacetBuilder subFacet(AbstractFacetBuilder subFacet) {
+        this.subFacets.add(subFacet);
+        return this;
+    }
+
+    /**
+     * Marks the facet to run in a global scope, not bounded by any query.
+     */
+    public BucketsFacetBuilder global(boolean global) {
+        super.global(global);
+        return this;
+    }
+
+    /**
+     * Marks the facet to run in a specific scope.
+     */
+    @Override
+    public BucketsFacetBuilder scope(String scope) {
+        super.scope(scope);
+        return this;
+    }
+
+    public BucketsFacetBuilder facetFilter(FilterBuilder filter) {
+        this.facetFilter = filter;
+        return this;
+    }
+
+    /**
+     * Sets the nested path the facet will execute on. A match (root object) will then cause all the
+     * nested objects matching the path to be computed into the facet.
+     */
+    public BucketsFacetBuilder nested(String nested) {
+        this.nested = nested;
+        return this;
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        if (bucketsType == null) {
+            throw new SearchSourceBuilderException("one of terms, histogram, date_histogram or range must be set on buckets facet for facet [" + name + "]");
+        }
+        if ("range".equals(bucketsType) && from.isEmpty()) {
+            throw new SearchSourceBuilderException("at least one range must be added on buckets facet for facet [" + name + "]");
+        }
+        builder.startObject(name);
+
+        builder.startObject(BucketsFacet.TYPE);
+        builder.startObject(bucketsType);
+        builder.field("field", fieldName);
+        if (size != -1) {
+            builder.field("size", size);
+        }
+        if (interval != -1) {
+            builder.field("interval", interval);
+        }
+        if (dateInterval != null) {
+            builder.field("interval", dateInterval);
+        }
+        if (!from.isEmpty()) {
+            builder.startArray("ranges");
+            for (int i = 0; i < from.size(); i++) {
+                builder.startObject();
+                if (!Double.isInfinite(from.get(i))) {
+                    builder.field("from", from.get(i));
+                }
+                if (!Double.isInfinite(to.get(i))) {
+                    builder.field("to", to.get(i));
+                }
+                builder.endObject();
+            }
+            builder.endArray();
+        }
+        builder.endObject();
+
+        if (!subFacets.isEmpty()) {
+            builder.startObject("facets");
+            for (AbstractFacetBuilder subFacet : subFacets) {
+                subFacet.toXContent(builder, params);
+            }
+            builder.endObject();
+        }
+        builder.endObject();
+
+        addFilterFacetAndGlobal(builder, params);
+
+        builder.endObject();
+        return builder;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.search.facet.buckets;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.util.ArrayUtil;
+import org.elasticsearch.search.facet.AbstractFacetCollector;
+import org.elasticsearch.search.facet.Facet;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits the collected docs into buckets, identified by a dense (zero based) ordinal, and feeds each doc
+ * along with its bucket to the {@link BucketCollector}s computing the sub facets. A doc with several
+ * values falling into the same bucket is only counted (and collected by the sub facets) once.
+ */
+public abstract class BucketsFacetCollector extends AbstractFacetCollector {
+
+    protected final BucketCollector[] subCollectors;
+
+    protected long[] docCounts = new long[0];
+
+    private int[] lastDocs = new int[0];
+
+    private int docBase;
+
+    protected BucketsFacetCollector(String facetName, List<BucketCollector> subCollectors) {
+        super(facetName);
+        this.subCollectors = subCollectors.toArray(new BucketCollector[subCollectors.size()]);
+    }
+
+    @Override
+    protected void doSetNextReader(IndexReader reader, int docBase) throws IOException {
+        this.docBase = docBase;
+        for (BucketCollector subCollector : subCollectors) {
+            subCollector.setNextReader(reader, docBase);
+        }
+        setBucketsReader(reader);
+    }
+
+    /**
+     * Loads whatever is needed to compute the buckets of the docs of the reader.
+     */
+    protected abstract void setBucketsReader(IndexReader reader) throws IOException;
+
+    /**
+     * Collects the doc (of the current reader) into the bucket.
+     */
+    protected final void collectBucket(int doc, int bucket) {
+        if (bucket >= docCounts.length) {
+            docCounts = ArrayUtil.grow(docCounts, bucket + 1);
+            lastDocs = ArrayUtil.grow(lastDocs, docCounts.length);
+        }
+        // offset by one, so the first doc of the first segment is not mistaken for an already collected one
+        int globalDoc = docBase + doc + 1;
+        if (lastDocs[bucket] == globalDoc) {
+            return;
+        }
+        lastDocs[bucket] = globalDoc;
+        docCounts[bucket]++;
+        for (BucketCollector subCollector : subCollectors) {
+            subCollector.collect(doc, bucket);
+        }
+    }
+
+    protected final long docCount(int bucket) {
+        return bucket < docCounts.length ? docCounts[bucket] : 0;
+    }
+
+    /**
+     * The sub facets of the bucket.
+     */
+    protected final List<Facet> subFacets(int bucket) {
+        List<Facet> facets = new ArrayList<Facet>(subCollectors.length);
+        for (BucketCollector subCollector : subCollectors) {
+            facets.add(subCollector.facet(bucket));
+        }
+        return facets;
+    }
+}
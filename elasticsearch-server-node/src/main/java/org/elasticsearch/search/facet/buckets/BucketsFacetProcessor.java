@@ -0,0 +1,389 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.search.facet.buckets;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import org.elasticsearch.common.collect.MapBuilder;
+import org.elasticsearch.common.component.AbstractComponent;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.search.facet.Facet;
+import org.elasticsearch.search.facet.FacetCollector;
+import org.elasticsearch.search.facet.FacetPhaseExecutionException;
+import org.elasticsearch.search.facet.FacetProcessor;
+import org.elasticsearch.search.facet.cardinality.CardinalityFacet;
+import org.elasticsearch.search.facet.cardinality.CardinalityFacetProcessor;
+import org.elasticsearch.search.facet.cardinality.HyperLogLog;
+import org.elasticsearch.search.facet.statistical.StatisticalFacet;
+import org.elasticsearch.search.facet.statistical.StatisticalFacetProcessor;
+import org.elasticsearch.search.facet.terms.TermsFacet;
+import org.elasticsearch.search.facet.terms.TermsFacetProcessor;
+import org.elasticsearch.search.internal.SearchContext;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses and reduces the buckets facet, for example:
+ * <pre>
+ * "by_host" : {
+ *     "buckets" : {
+ *         "terms" : { "field" : "host", "size" : 10 },
+ *         "facets" : {
+ *             "latency" : { "statistical" : { "field" : "took" } },
+ *             "users" : { "cardinality" : { "field" : "user" } }
+ *         }
+ *     }
+ * }
+ * </pre>
+ * The docs can be split by <tt>terms</tt> (string fields), <tt>histogram</tt>, <tt>date_histogram</tt> or
+ * <tt>range</tt>, and the sub facets can be <tt>statistical</tt>, <tt>terms</tt> (string fields) or
+ * <tt>cardinality</tt> facets on a field. Sub facets can't be nested further. Unknown parameters are rejected.
+ * <p/>
+ * The <tt>terms</tt> sub facets count every (bucket, term) pair seen on the shard, the number of such pairs
+ * is bounded by the <tt>search.facet.buckets.max_term_entries</tt> setting (defaults to <tt>1000000</tt>), going
+ * above it fails the facet instead of growing the counts further.
+ */
+public class BucketsFacetProcessor extends AbstractComponent implements FacetProcessor {
+
+    private static final ImmutableMap<String, TimeValue> namedIntervals = MapBuilder.<String, TimeValue>newMapBuilder()
+            .put("week", TimeValue.timeValueMillis(TimeUnit.DAYS.toMillis(7)))
+            .put("day", TimeValue.timeValueMillis(TimeUnit.DAYS.toMillis(1)))
+            .put("hour", TimeValue.timeValueHours(1))
+            .put("minute", TimeValue.timeValueMinutes(1))
+            .put("second", TimeValue.timeValueSeconds(1))
+            .immutableMap();
+
+    private final ImmutableMap<String, FacetProcessor> subProcessors;
+
+    private final int maxTermEntries;
+
+    @Inject
+    public BucketsFacetProcessor(Settings settings, StatisticalFacetProcessor statisticalFacetProcessor, TermsFacetProcessor termsFacetProcessor,
+                                 CardinalityFacetProcessor cardinalityFacetProcessor) {
+        super(settings);
+        InternalBucketsFacet.registerStreams();
+        this.subProcessors = MapBuilder.<String, FacetProcessor>newMapBuilder()
+                .put(StatisticalFacet.TYPE, statisticalFacetProcessor)
+                .put(TermsFacet.TYPE, termsFacetProcessor)
+                .put(CardinalityFacet.TYPE, cardinalityFacetProcessor)
+                .immutableMap();
+        this.maxTermEntries = componentSettings.getAsInt("max_term_entries", 1000000);
+    }
+
+    @Override
+    public String[] types() {
+        return new String[]{BucketsFacet.TYPE};
+    }
+
+    @Override
+    public FacetCollector parse(String facetName, XContentParser parser, SearchContext context) throws IOException {
+        String bucketsType = null;
+        String field = null;
+        int size = 10;
+        long interval = 0;
+        List<Double> from = Lists.newArrayList();
+        List<Double> to = Lists.newArrayList();
+        List<BucketCollector> subCollectors = Lists.newArrayList();
+
+        String currentFieldName = null;
+        XContentParser.Token token;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                currentFieldName = parser.currentName();
+            } else if (token == XContentParser.Token.START_OBJECT) {
+                if ("facets".equals(currentFieldName)) {
+                    parseSubFacets(facetName, parser, context, subCollectors);
+                    continue;
+                }
+                if (bucketsType != null) {
+                    throw new FacetPhaseExecutionException(facetName, "buckets facet can only split docs one way, got both [" + bucketsType + "] and [" + currentFieldName + "]");
+                }
+                if (!"terms".equals(currentFieldName) && !"histogram".equals(currentFieldName)
+                        && !"date_histogram".equals(currentFieldName) && !"range".equals(currentFieldName)) {
+                    throw new FacetPhaseExecutionException(facetName, "buckets facet does not support splitting docs by [" + currentFieldName + "]");
+                }
+                bucketsType = currentFieldName;
+                String bucketsFieldName = null;
+                while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+                    if (token == XContentParser.Token.FIELD_NAME) {
+                        bucketsFieldName = parser.currentName();
+                    } else if (token == XContentParser.Token.START_ARRAY) {
+                        if ("ranges".equals(bucketsFieldName) && "range".equals(bucketsType)) {
+                            parseRanges(facetName, parser, from, to);
+                        } else {
+                            throw new FacetPhaseExecutionException(facetName, "buckets facet does not support [" + bucketsFieldName + "] on [" + bucketsType + "]");
+                        }
+                    } else if (token.isValue()) {
+                        if ("field".equals(bucketsFieldName)) {
+                            field = parser.text();
+                        } else if ("size".equals(bucketsFieldName) && "terms".equals(bucketsType)) {
+                            size = parser.intValue();
+                        } else if ("interval".equals(bucketsFieldName) && "date_histogram".equals(bucketsType)) {
+                            interval = parseDateInterval(facetName, parser.text());
+                        } else if ("interval".equals(bucketsFieldName) && "histogram".equals(bucketsType)) {
+                            interval = parser.longValue();
+                        } else {
+                            throw new FacetPhaseExecutionException(facetName, "buckets facet does not support [" + bucketsFieldName + "] on [" + bucketsType + "]");
+                        }
+                    } else {
+                        throw new FacetPhaseExecutionException(facetName, "buckets facet does not support [" + bucketsFieldName + "] on [" + bucketsType + "]");
+                    }
+                }
+            } else {
+                throw new FacetPhaseExecutionException(facetName, "buckets facet does not support [" + currentFieldName + "]");
+            }
+        }
+
+        if (bucketsType == null) {
+            throw new FacetPhaseExecutionException(facetName, "buckets facet requires one of [terms], [histogram], [date_histogram] or [range] to be set");
+        }
+        if (field == null) {
+            throw new FacetPhaseExecutionException(facetName, "buckets facet requires [field] to be set on [" + bucketsType + "]");
+        }
+        if ("terms".equals(bucketsType)) {
+            return new TermsBucketsFacetCollector(facetName, field, size, subCollectors, context);
+        } else if ("range".equals(bucketsType)) {
+            if (from.isEmpty()) {
+                throw new FacetPhaseExecutionException(facetName, "buckets facet requires [ranges] to be set on [range]");
+            }
+            double[] fromArray = new double[from.size()];
+            double[] toArray = new double[to.size()];
+            for (int i = 0; i < fromArray.length; i++) {
+                fromArray[i] = from.get(i);
+                toArray[i] = to.get(i);
+            }
+            return new RangeBucketsFacetCollector(facetName, field, fromArray, toArray, subCollectors, context);
+        }
+        if (interval <= 0) {
+            throw new FacetPhaseExecutionException(facetName, "buckets facet requires a positive [interval] to be set on [" + bucketsType + "]");
+        }
+        return new HistogramBucketsFacetCollector(facetName, field, interval, subCollectors, context);
+    }
+
+    private void parseRanges(String facetName, XContentParser parser, List<Double> from, List<Double> to) throws IOException {
+        XContentParser.Token token;
+        String currentFieldName = null;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_ARRAY) {
+            double rangeFrom = Double.NEGATIVE_INFINITY;
+            double rangeTo = Double.POSITIVE_INFINITY;
+            while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+                if (token == XContentParser.Token.FIELD_NAME) {
+                    currentFieldName = parser.currentName();
+                } else if (token.isValue()) {
+                    if ("from".equals(currentFieldName)) {
+                        rangeFrom = parser.doubleValue();
+                    } else if ("to".equals(currentFieldName)) {
+                        rangeTo = parser.doubleValue();
+                    } else {
+                        throw new FacetPhaseExecutionException(facetName, "buckets facet does not support [" + currentFieldName + "] on a range");
+                    }
+                } else {
+                    throw new FacetPhaseExecutionException(facetName, "buckets facet does not support [" + currentFieldName + "] on a range");
+                }
+            }
+            from.add(rangeFrom);
+            to.add(rangeTo);
+        }
+    }
+
+    private long parseDateInterval(String facetName, String interval) {
+        TimeValue namedInterval = namedIntervals.get(interval);
+        if (namedInterval != null) {
+            return namedInterval.millis();
+        }
+        try {
+            return TimeValue.parseTimeValue(interval, null).millis();
+        } catch (Exception e) {
+            throw new FacetPhaseExecutionException(facetName, "buckets facet only supports fixed length [interval] on [date_histogram], got [" + interval + "]", e);
+        }
+    }
+
+    private void parseSubFacets(String facetName, XContentParser parser, SearchContext context, List<BucketCollector> subCollectors) throws IOException {
+        XContentParser.Token token;
+        String subFacetName = null;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                subFacetName = parser.currentName();
+            } else if (token == XContentParser.Token.START_OBJECT) {
+                String subFacetType = null;
+                while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+                    if (token == XContentParser.Token.FIELD_NAME) {
+                        subFacetType = parser.currentName();
+                    } else if (token == XContentParser.Token.START_OBJECT) {
+                        subCollectors.add(parseSubFacet(facetName, subFacetName, subFacetType, parser, context));
+                    } else {
+                        throw new FacetPhaseExecutionException(facetName, "sub facet [" + subFacetName + "] does not support [" + subFacetType + "]");
+                    }
+                }
+            }
+        }
+    }
+
+    private BucketCollector parseSubFacet(String facetName, String subFacetName, String subFacetType, XContentParser parser, SearchContext context) throws IOException {
+        String field = null;
+        int size = 10;
+        int precision = HyperLogLog.DEFAULT_PRECISION;
+
+        XContentParser.Token token;
+        String currentFieldName = null;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                currentFieldName = parser.currentName();
+            } else if (token.isValue()) {
+                if ("field".equals(currentFieldName)) {
+                    field = parser.text();
+                } else if ("size".equals(currentFieldName) && TermsFacet.TYPE.equals(subFacetType)) {
+                    size = parser.intValue();
+                } else if ("precision".equals(currentFieldName) && CardinalityFacet.TYPE.equals(subFacetType)) {
+                    precision = parser.intValue();
+                } else {
+                    throw new FacetPhaseExecutionException(facetName, "sub facet [" + subFacetName + "] does not support [" + currentFieldName + "]");
+                }
+            } else {
+                throw new FacetPhaseExecutionException(facetName, "sub facet [" + subFacetName + "] does not support [" + currentFieldName + "]");
+            }
+        }
+        if (field == null) {
+            throw new FacetPhaseExecutionException(facetName, "sub facet [" + subFacetName + "] requires [field] to be set");
+        }
+        if (StatisticalFacet.TYPE.equals(subFacetType)) {
+            return new StatsBucketCollector(subFacetName, field, context);
+        } else if (TermsFacet.TYPE.equals(subFacetType)) {
+            return new TermsBucketCollector(subFacetName, field, size, maxTermEntries, context);
+        } else if (CardinalityFacet.TYPE.equals(subFacetType)) {
+            if (precision < HyperLogLog.MIN_PRECISION || precision > HyperLogLog.MAX_PRECISION) {
+                throw new FacetPhaseExecutionException(facetName, "sub facet [" + subFacetName + "] [precision] must be between [" + HyperLogLog.MIN_PRECISION + "] and [" + HyperLogLog.MAX_PRECISION + "]");
+            }
+            return new CardinalityBucketCollector(subFacetName, field, precision, context);
+        }
+        throw new FacetPhaseExecutionException(facetName, "sub facet [" + subFacetName + "] of type [" + subFacetType + "] is not supported, only [statistical], [terms] and [cardinality] are");
+    }
+
+    @Override
+    public Facet reduce(String name, List<Facet> facets) {
+        if (facets.size() == 1) {
+            return facets.get(0);
+        }
+        InternalBucketsFacet first = null;
+        Map<String, MergedBucket> merged = new LinkedHashMap<String, MergedBucket>();
+        for (Facet facet : facets) {
+            if (!facet.name().equals(name)) {
+                continue;
+            }
+            InternalBucketsFacet bucketsFacet = (InternalBucketsFacet) facet;
+            if (first == null) {
+                first = bucketsFacet;
+            }
+            for (InternalBucketsFacet.InternalBucket bucket : bucketsFacet.buckets()) {
+                MergedBucket mergedBucket = merged.get(bucket.key());
+                if (mergedBucket == null) {
+                    mergedBucket = new MergedBucket(bucket);
+                    merged.put(bucket.key(), mergedBucket);
+                }
+                mergedBucket.add(bucket);
+            }
+        }
+
+        List<InternalBucketsFacet.InternalBucket> buckets = new ArrayList<InternalBucketsFacet.InternalBucket>(merged.size());
+        for (MergedBucket mergedBucket : merged.values()) {
+            buckets.add(mergedBucket.reduce());
+        }
+        if (first.bucketType() == InternalBucketsFacet.BucketType.TERMS) {
+            Collections.sort(buckets, TERMS_ORDER);
+            if (buckets.size() > first.requiredSize()) {
+                buckets = new ArrayList<InternalBucketsFacet.InternalBucket>(buckets.subList(0, first.requiredSize()));
+            }
+        } else if (first.bucketType() == InternalBucketsFacet.BucketType.HISTOGRAM) {
+            Collections.sort(buckets, HISTOGRAM_ORDER);
+        }
+        return new InternalBucketsFacet(name, first.bucketType(), first.requiredSize(), buckets);
+    }
+
+    static final Comparator<InternalBucketsFacet.InternalBucket> TERMS_ORDER = new Comparator<InternalBucketsFacet.InternalBucket>() {
+        @Override
+        public int compare(InternalBucketsFacet.InternalBucket o1, InternalBucketsFacet.InternalBucket o2) {
+            if (o1.docCount() != o2.docCount()) {
+                return o1.docCount() > o2.docCount() ? -1 : 1;
+            }
+            return o1.key().compareTo(o2.key());
+        }
+    };
+
+    static final Comparator<InternalBucketsFacet.InternalBucket> HISTOGRAM_ORDER = new Comparator<InternalBucketsFacet.InternalBucket>() {
+        @Override
+        public int compare(InternalBucketsFacet.InternalBucket o1, InternalBucketsFacet.InternalBucket o2) {
+            return Double.compare(o1.from(), o2.from());
+        }
+    };
+
+    /**
+     * The same bucket across the shards, with its sub facets grouped by name.
+     */
+    class MergedBucket {
+
+        final String key;
+
+        final double from;
+
+        final double to;
+
+        long docCount;
+
+        final Map<String, List<Facet>> facets = new LinkedHashMap<String, List<Facet>>();
+
+        MergedBucket(InternalBucketsFacet.InternalBucket bucket) {
+            this.key = bucket.key();
+            this.from = bucket.from();
+            this.to = bucket.to();
+        }
+
+        void add(InternalBucketsFacet.InternalBucket bucket) {
+            docCount += bucket.docCount();
+            for (Facet facet : bucket.facets()) {
+                List<Facet> sameFacets = facets.get(facet.name());
+                if (sameFacets == null) {
+                    sameFacets = new ArrayList<Facet>();
+                    facets.put(facet.name(), sameFacets);
+                }
+                sameFacets.add(facet);
+            }
+        }
+
+        InternalBucketsFacet.InternalBucket reduce() {
+            List<Facet> reduced = new ArrayList<Facet>(facets.size());
+            for (Map.Entry<String, List<Facet>> entry : facets.entrySet()) {
+                FacetProcessor subProcessor = subProcessors.get(entry.getValue().get(0).type());
+                reduced.add(subProcessor.reduce(entry.getKey(), entry.getValue()));
+            }
+            return new InternalBucketsFacet.InternalBucket(key, from, to, docCount, reduced);
+        }
+    }
+}
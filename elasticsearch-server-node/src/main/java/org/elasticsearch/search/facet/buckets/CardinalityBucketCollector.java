@@ -0,0 +1,165 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.search.facet.buckets;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.UnicodeUtil;
+import org.elasticsearch.common.MurmurHash;
+import org.elasticsearch.index.cache.field.data.FieldDataCache;
+import org.elasticsearch.index.field.data.FieldData;
+import org.elasticsearch.index.field.data.FieldDataType;
+import org.elasticsearch.index.field.data.NumericFieldData;
+import org.elasticsearch.index.field.data.strings.StringFieldData;
+import org.elasticsearch.index.mapper.MapperService;
+import org.elasticsearch.search.facet.Facet;
+import org.elasticsearch.search.facet.cardinality.CardinalityFacetCollector;
+import org.elasticsearch.search.facet.cardinality.HyperLogLog;
+import org.elasticsearch.search.facet.cardinality.InternalCardinalityFacet;
+import org.elasticsearch.search.internal.SearchContext;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A cardinality sub facet, with a {@link HyperLogLog} sketch per bucket. The hashes of string
+ * terms are computed once per segment ordinal.
+ */
+public class CardinalityBucketCollector extends BucketCollector {
+
+    private final String indexFieldName;
+
+    private final FieldDataCache fieldDataCache;
+
+    private final FieldDataType fieldDataType;
+
+    private final int precision;
+
+    private final boolean floatingPoint;
+
+    private final HashProc hashProc = new HashProc();
+
+    private final UnicodeUtil.UTF8Result utf8 = new UnicodeUtil.UTF8Result();
+
+    private NumericFieldData numericFieldData;
+
+    private StringFieldData stringFieldData;
+
+    public CardinalityBucketCollector(String facetName, String fieldName, int precision, SearchContext context) {
+        super(facetName);
+        this.fieldDataCache = context.fieldDataCache();
+        this.precision = precision;
+
+        MapperService.SmartNameFieldMappers smartMappers = smartMappers(facetName, fieldName, context);
+        indexFieldName = smartMappers.mapper().names().indexName();
+        fieldDataType = smartMappers.mapper().fieldDataType();
+        floatingPoint = fieldDataType == FieldDataType.DefaultTypes.DOUBLE || fieldDataType == FieldDataType.DefaultTypes.FLOAT;
+    }
+
+    @Override
+    public void setNextReader(IndexReader reader, int docBase) throws IOException {
+        FieldData fieldData = fieldDataCache.cache(fieldDataType, reader, indexFieldName);
+        if (fieldData instanceof NumericFieldData) {
+            numericFieldData = (NumericFieldData) fieldData;
+            stringFieldData = null;
+        } else {
+            numericFieldData = null;
+            stringFieldData = (StringFieldData) fieldData;
+            hashProc.reset(stringFieldData.values().length);
+        }
+    }
+
+    @Override
+    public void collect(int doc, int bucket) {
+        hashProc.sketch = sketch(bucket);
+        if (numericFieldData != null) {
+            if (floatingPoint) {
+                numericFieldData.forEachValueInDoc(doc, (NumericFieldData.DoubleValueInDocProc) hashProc);
+            } else {
+                numericFieldData.forEachValueInDoc(doc, (NumericFieldData.LongValueInDocProc) hashProc);
+            }
+        } else {
+            stringFieldData.forEachOrdinalInDoc(doc, hashProc);
+        }
+    }
+
+    private HyperLogLog sketch(int bucket) {
+        if (bucket >= hashProc.sketches.length) {
+            hashProc.sketches = Arrays.copyOf(hashProc.sketches, ArrayUtil.oversize(bucket + 1, RamUsageEstimator.NUM_BYTES_OBJECT_REF));
+        }
+        HyperLogLog sketch = hashProc.sketches[bucket];
+        if (sketch == null) {
+            sketch = new HyperLogLog(precision);
+            hashProc.sketches[bucket] = sketch;
+        }
+        return sketch;
+    }
+
+    @Override
+    public Facet facet(int bucket) {
+        return new InternalCardinalityFacet(facetName, sketch(bucket));
+    }
+
+    class HashProc implements FieldData.OrdinalInDocProc, NumericFieldData.LongValueInDocProc, NumericFieldData.DoubleValueInDocProc {
+
+        HyperLogLog[] sketches = new HyperLogLog[0];
+
+        HyperLogLog sketch;
+
+        long[] ordinalHashes;
+
+        FixedBitSet hashedOrdinals;
+
+        void reset(int numberOfOrdinals) {
+            if (hashedOrdinals == null || hashedOrdinals.length() < numberOfOrdinals) {
+                ordinalHashes = new long[numberOfOrdinals];
+                hashedOrdinals = new FixedBitSet(numberOfOrdinals);
+            } else {
+                hashedOrdinals.clear(0, hashedOrdinals.length());
+            }
+        }
+
+        @Override
+        public void onOrdinal(int docId, int ordinal) {
+            // ordinal 0 marks a doc without a value
+            if (ordinal == 0) {
+                return;
+            }
+            if (!hashedOrdinals.get(ordinal)) {
+                ordinalHashes[ordinal] = CardinalityFacetCollector.hash(stringFieldData.values()[ordinal], utf8);
+                hashedOrdinals.set(ordinal);
+            }
+            sketch.collect(ordinalHashes[ordinal]);
+        }
+
+        @Override
+        public void onValue(int docId, long value) {
+            sketch.collect(MurmurHash.hash64(value));
+        }
+
+        @Override
+        public void onValue(int docId, double value) {
+            sketch.collect(MurmurHash.hash64(Double.doubleToLongBits(value)));
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.search.facet.buckets;
+
+import gnu.trove.map.hash.TLongIntHashMap;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.util.ArrayUtil;
+import org.elasticsearch.index.cache.field.data.FieldDataCache;
+import org.elasticsearch.index.field.data.FieldDataType;
+import org.elasticsearch.index.field.data.NumericFieldData;
+import org.elasticsearch.index.mapper.MapperService;
+import org.elasticsearch.search.facet.Facet;
+import org.elasticsearch.search.facet.FacetPhaseExecutionException;
+import org.elasticsearch.search.facet.histogram.unbounded.CountHistogramFacetCollector;
+import org.elasticsearch.search.internal.SearchContext;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A bucket per interval of a numeric (or date) field, the bucket ordinals are assigned to the interval
+ * keys as they are first seen. All the buckets are returned, ordered by key.
+ */
+public class HistogramBucketsFacetCollector extends BucketsFacetCollector {
+
+    private final String indexFieldName;
+
+    private final FieldDataCache fieldDataCache;
+
+    private final FieldDataType fieldDataType;
+
+    private final long interval;
+
+    private final BucketsProc bucketsProc = new BucketsProc();
+
+    private NumericFieldData fieldData;
+
+    public HistogramBucketsFacetCollector(String facetName, String fieldName, long interval, List<BucketCollector> subCollectors, SearchContext context) {
+        super(facetName, subCollectors);
+        this.fieldDataCache = context.fieldDataCache();
+        this.interval = interval;
+
+        MapperService.SmartNameFieldMappers smartMappers = context.smartFieldMappers(fieldName);
+        if (smartMappers == null || !smartMappers.hasMapper()) {
+            throw new FacetPhaseExecutionException(facetName, "No mapping found for field [" + fieldName + "]");
+        }
+        // add type filter if there is exact doc mapper associated with it
+        if (smartMappers.explicitTypeInNameWithDocMapper()) {
+            setFilter(context.filterCache().cache(smartMappers.docMapper().typeFilter()));
+        }
+
+        indexFieldName = smartMappers.mapper().names().indexName();
+        fieldDataType = smartMappers.mapper().fieldDataType();
+    }
+
+    @Override
+    protected void setBucketsReader(IndexReader reader) throws IOException {
+        fieldData = (NumericFieldData) fieldDataCache.cache(fieldDataType, reader, indexFieldName);
+    }
+
+    @Override
+    protected void doCollect(int doc) throws IOException {
+        fieldData.forEachValueInDoc(doc, bucketsProc);
+    }
+
+    @Override
+    public Facet facet() {
+        long[] keys = Arrays.copyOf(bucketsProc.bucketKeys, bucketsProc.keyBuckets.size());
+        Arrays.sort(keys);
+        List<InternalBucketsFacet.InternalBucket> buckets = new ArrayList<InternalBucketsFacet.InternalBucket>(keys.length);
+        for (long key : keys) {
+            int bucket = bucketsProc.keyBuckets.get(key) - 1;
+            buckets.add(new InternalBucketsFacet.InternalBucket(Long.toString(key), key, key + interval, docCount(bucket), subFacets(bucket)));
+        }
+        return new InternalBucketsFacet(facetName, InternalBucketsFacet.BucketType.HISTOGRAM, 0, buckets);
+    }
+
+    class BucketsProc implements NumericFieldData.DoubleValueInDocProc {
+
+        final TLongIntHashMap keyBuckets = new TLongIntHashMap();
+
+        long[] bucketKeys = new long[16];
+
+        @Override
+        public void onValue(int docId, double value) {
+            long key = CountHistogramFacetCollector.bucket(value, interval);
+            int numberOfBuckets = keyBuckets.size();
+            // the no entry value of the map is 0, so the buckets are stored offset by one
+            int bucket = keyBuckets.putIfAbsent(key, numberOfBuckets + 1) - 1;
+            if (bucket == -1) {
+                bucket = numberOfBuckets;
+                bucketKeys = ArrayUtil.grow(bucketKeys, numberOfBuckets + 1);
+                bucketKeys[bucket] = key;
+            }
+            collectBucket(docId, bucket);
+        }
+    }
+}
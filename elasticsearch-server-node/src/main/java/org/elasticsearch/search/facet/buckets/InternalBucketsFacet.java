@@ -0,0 +1,319 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.search.facet.buckets;
+
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentBuilderString;
+import org.elasticsearch.search.facet.Facet;
+import org.elasticsearch.search.facet.InternalFacet;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ *
+ */
+public class InternalBucketsFacet implements BucketsFacet, InternalFacet {
+
+    private static final String STREAM_TYPE = "buckets";
+
+    public static void registerStreams() {
+        Streams.registerStream(STREAM, STREAM_TYPE);
+    }
+
+    static Stream STREAM = new Stream() {
+        @Override
+        public Facet readFacet(String type, StreamInput in) throws IOException {
+            return readBucketsFacet(in);
+        }
+    };
+
+    @Override
+    public String streamType() {
+        return STREAM_TYPE;
+    }
+
+    /**
+     * How the docs were split into buckets, which drives how the buckets of the shards are reduced and
+     * ordered.
+     */
+    public static enum BucketType {
+        TERMS((byte) 0),
+        HISTOGRAM((byte) 1),
+        RANGE((byte) 2);
+
+        private final byte id;
+
+        BucketType(byte id) {
+            this.id = id;
+        }
+
+        public byte id() {
+            return id;
+        }
+
+        public static BucketType fromId(byte id) {
+            if (id == 0) {
+                return TERMS;
+            } else if (id == 1) {
+                return HISTOGRAM;
+            } else if (id == 2) {
+                return RANGE;
+            }
+            throw new IllegalArgumentException("No bucket type for id [" + id + "]");
+        }
+    }
+
+    public static class InternalBucket implements Bucket {
+
+        String key;
+
+        double from;
+
+        double to;
+
+        long docCount;
+
+        List<Facet> facets;
+
+        InternalBucket() {
+        }
+
+        public InternalBucket(String key, double from, double to, long docCount, List<Facet> facets) {
+            this.key = key;
+            this.from = from;
+            this.to = to;
+            this.docCount = docCount;
+            this.facets = facets;
+        }
+
+        @Override
+        public String key() {
+            return key;
+        }
+
+        @Override
+        public String getKey() {
+            return key();
+        }
+
+        @Override
+        public double from() {
+            return from;
+        }
+
+        @Override
+        public double getFrom() {
+            return from();
+        }
+
+        @Override
+        public double to() {
+            return to;
+        }
+
+        @Override
+        public double getTo() {
+            return to();
+        }
+
+        @Override
+        public long docCount() {
+            return docCount;
+        }
+
+        @Override
+        public long getDocCount() {
+            return docCount();
+        }
+
+        @Override
+        public List<Facet> facets() {
+            return facets;
+        }
+
+        @Override
+        public List<Facet> getFacets() {
+            return facets();
+        }
+
+        @SuppressWarnings({"unchecked"})
+        @Override
+        public <T extends Facet> T facet(String name) {
+            for (Facet facet : facets) {
+                if (facet.name().equals(name)) {
+                    return (T) facet;
+                }
+            }
+            return null;
+        }
+    }
+
+    private String name;
+
+    private BucketType bucketType;
+
+    private int requiredSize;
+
+    private List<InternalBucket> buckets;
+
+    private InternalBucketsFacet() {
+    }
+
+    public InternalBucketsFacet(String name, BucketType bucketType, int requiredSize, List<InternalBucket> buckets) {
+        this.name = name;
+        this.bucketType = bucketType;
+        this.requiredSize = requiredSize;
+        this.buckets = buckets;
+    }
+
+    @Override
+    public String name() {
+        return this.name;
+    }
+
+    @Override
+    public String getName() {
+        return name();
+    }
+
+    @Override
+    public String type() {
+        return TYPE;
+    }
+
+    @Override
+    public String getType() {
+        return TYPE;
+    }
+
+    public BucketType bucketType() {
+        return bucketType;
+    }
+
+    public int requiredSize() {
+        return requiredSize;
+    }
+
+    @Override
+    public List<InternalBucket> buckets() {
+        return buckets;
+    }
+
+    @Override
+    public List<InternalBucket> getBuckets() {
+        return buckets();
+    }
+
+    @SuppressWarnings({"unchecked"})
+    @Override
+    public Iterator<Bucket> iterator() {
+        return (Iterator) buckets.iterator();
+    }
+
+    static final class Fields {
+        static final XContentBuilderString _TYPE = new XContentBuilderString("_type");
+        static final XContentBuilderString BUCKETS = new XContentBuilderString("buckets");
+        static final XContentBuilderString KEY = new XContentBuilderString("key");
+        static final XContentBuilderString FROM = new XContentBuilderString("from");
+        static final XContentBuilderString TO = new XContentBuilderString("to");
+        static final XContentBuilderString DOC_COUNT = new XContentBuilderString("doc_count");
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject(name);
+        builder.field(Fields._TYPE, BucketsFacet.TYPE);
+        builder.startArray(Fields.BUCKETS);
+        for (InternalBucket bucket : buckets) {
+            builder.startObject();
+            builder.field(Fields.KEY, bucket.key());
+            if (!Double.isInfinite(bucket.from()) && !Double.isNaN(bucket.from())) {
+                builder.field(Fields.FROM, bucket.from());
+            }
+            if (!Double.isInfinite(bucket.to()) && !Double.isNaN(bucket.to())) {
+                builder.field(Fields.TO, bucket.to());
+            }
+            builder.field(Fields.DOC_COUNT, bucket.docCount());
+            for (Facet facet : bucket.facets()) {
+                ((InternalFacet) facet).toXContent(builder, params);
+            }
+            builder.endObject();
+        }
+        builder.endArray();
+        builder.endObject();
+        return builder;
+    }
+
+    public static BucketsFacet readBucketsFacet(StreamInput in) throws IOException {
+        InternalBucketsFacet facet = new InternalBucketsFacet();
+        facet.readFrom(in);
+        return facet;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        name = in.readUTF();
+        bucketType = BucketType.fromId(in.readByte());
+        requiredSize = in.readVInt();
+        int size = in.readVInt();
+        buckets = new ArrayList<InternalBucket>(size);
+        for (int i = 0; i < size; i++) {
+            InternalBucket bucket = new InternalBucket();
+            bucket.key = in.readUTF();
+            bucket.from = in.readDouble();
+            bucket.to = in.readDouble();
+            bucket.docCount = in.readVLong();
+            int numberOfFacets = in.readVInt();
+            List<Facet> facets = new ArrayList<Facet>(numberOfFacets);
+            for (int j = 0; j < numberOfFacets; j++) {
+                String type = in.readUTF();
+                facets.add(Streams.stream(type).readFacet(type, in));
+            }
+            bucket.facets = facets;
+            buckets.add(bucket);
+        }
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeUTF(name);
+        out.writeByte(bucketType.id());
+        out.writeVInt(requiredSize);
+        out.writeVInt(buckets.size());
+        for (InternalBucket bucket : buckets) {
+            out.writeUTF(bucket.key);
+            out.writeDouble(bucket.from);
+            out.writeDouble(bucket.to);
+            out.writeVLong(bucket.docCount);
+            out.writeVInt(bucket.facets.size());
+            for (Facet facet : bucket.facets) {
+                InternalFacet internalFacet = (InternalFacet) facet;
+                out.writeUTF(internalFacet.streamType());
+                internalFacet.writeTo(out);
+            }
+        }
+    }
+}
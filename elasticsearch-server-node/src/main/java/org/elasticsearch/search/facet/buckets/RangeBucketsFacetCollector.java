@@ -0,0 +1,109 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.search.facet.buckets;
+
+import org.apache.lucene.index.IndexReader;
+import org.elasticsearch.index.cache.field.data.FieldDataCache;
+import org.elasticsearch.index.field.data.FieldDataType;
+import org.elasticsearch.index.field.data.NumericFieldData;
+import org.elasticsearch.index.mapper.MapperService;
+import org.elasticsearch.search.facet.Facet;
+import org.elasticsearch.search.facet.FacetPhaseExecutionException;
+import org.elasticsearch.search.internal.SearchContext;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A bucket per (<tt>from</tt> inclusive, <tt>to</tt> exclusive) range of a numeric field, the bucket
+ * ordinal being the index of the range. All the ranges are returned, in the order they were defined.
+ */
+public class RangeBucketsFacetCollector extends BucketsFacetCollector {
+
+    private final String indexFieldName;
+
+    private final FieldDataCache fieldDataCache;
+
+    private final FieldDataType fieldDataType;
+
+    private final double[] from;
+
+    private final double[] to;
+
+    private final RangeProc rangeProc = new RangeProc();
+
+    private NumericFieldData fieldData;
+
+    public RangeBucketsFacetCollector(String facetName, String fieldName, double[] from, double[] to, List<BucketCollector> subCollectors, SearchContext context) {
+        super(facetName, subCollectors);
+        this.fieldDataCache = context.fieldDataCache();
+        this.from = from;
+        this.to = to;
+
+        MapperService.SmartNameFieldMappers smartMappers = context.smartFieldMappers(fieldName);
+        if (smartMappers == null || !smartMappers.hasMapper()) {
+            throw new FacetPhaseExecutionException(facetName, "No mapping found for field [" + fieldName + "]");
+        }
+        // add type filter if there is exact doc mapper associated with it
+        if (smartMappers.explicitTypeInNameWithDocMapper()) {
+            setFilter(context.filterCache().cache(smartMappers.docMapper().typeFilter()));
+        }
+
+        indexFieldName = smartMappers.mapper().names().indexName();
+        fieldDataType = smartMappers.mapper().fieldDataType();
+    }
+
+    @Override
+    protected void setBucketsReader(IndexReader reader) throws IOException {
+        fieldData = (NumericFieldData) fieldDataCache.cache(fieldDataType, reader, indexFieldName);
+    }
+
+    @Override
+    protected void doCollect(int doc) throws IOException {
+        fieldData.forEachValueInDoc(doc, rangeProc);
+    }
+
+    @Override
+    public Facet facet() {
+        List<InternalBucketsFacet.InternalBucket> buckets = new ArrayList<InternalBucketsFacet.InternalBucket>(from.length);
+        for (int bucket = 0; bucket < from.length; bucket++) {
+            buckets.add(new InternalBucketsFacet.InternalBucket(rangeKey(from[bucket], to[bucket]), from[bucket], to[bucket], docCount(bucket), subFacets(bucket)));
+        }
+        return new InternalBucketsFacet(facetName, InternalBucketsFacet.BucketType.RANGE, 0, buckets);
+    }
+
+    static String rangeKey(double from, double to) {
+        return (Double.isInfinite(from) ? "*" : Double.toString(from)) + "-" + (Double.isInfinite(to) ? "*" : Double.toString(to));
+    }
+
+    class RangeProc implements NumericFieldData.DoubleValueInDocProc {
+
+        @Override
+        public void onValue(int docId, double value) {
+            for (int bucket = 0; bucket < from.length; bucket++) {
+                if (value >= from[bucket] && value < to[bucket]) {
+                    collectBucket(docId, bucket);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.search.facet.buckets;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.elasticsearch.index.cache.field.data.FieldDataCache;
+import org.elasticsearch.index.field.data.FieldDataType;
+import org.elasticsearch.index.field.data.NumericFieldData;
+import org.elasticsearch.index.mapper.MapperService;
+import org.elasticsearch.search.facet.Facet;
+import org.elasticsearch.search.facet.statistical.InternalStatisticalFacet;
+import org.elasticsearch.search.internal.SearchContext;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A statistical sub facet, keeping the stats of all the buckets in parallel arrays.
+ */
+public class StatsBucketCollector extends BucketCollector {
+
+    private final String indexFieldName;
+
+    private final FieldDataCache fieldDataCache;
+
+    private final FieldDataType fieldDataType;
+
+    private NumericFieldData fieldData;
+
+    private final StatsProc statsProc = new StatsProc();
+
+    public StatsBucketCollector(String facetName, String fieldName, SearchContext context) {
+        super(facetName);
+        this.fieldDataCache = context.fieldDataCache();
+        MapperService.SmartNameFieldMappers smartMappers = smartMappers(facetName, fieldName, context);
+        indexFieldName = smartMappers.mapper().names().indexName();
+        fieldDataType = smartMappers.mapper().fieldDataType();
+    }
+
+    @Override
+    public void setNextReader(IndexReader reader, int docBase) throws IOException {
+        fieldData = (NumericFieldData) fieldDataCache.cache(fieldDataType, reader, indexFieldName);
+    }
+
+    @Override
+    public void collect(int doc, int bucket) {
+        statsProc.ensureCapacity(bucket + 1);
+        statsProc.bucket = bucket;
+        fieldData.forEachValueInDoc(doc, statsProc);
+    }
+
+    @Override
+    public Facet facet(int bucket) {
+        if (bucket >= statsProc.count.length) {
+            return new InternalStatisticalFacet(facetName, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 0, 0, 0);
+        }
+        return new InternalStatisticalFacet(facetName, statsProc.min[bucket], statsProc.max[bucket], statsProc.total[bucket],
+                statsProc.sumOfSquares[bucket], statsProc.count[bucket]);
+    }
+
+    static class StatsProc implements NumericFieldData.DoubleValueInDocProc {
+
+        double[] min = new double[0];
+
+        double[] max = new double[0];
+
+        double[] total = new double[0];
+
+        double[] sumOfSquares = new double[0];
+
+        long[] count = new long[0];
+
+        int bucket;
+
+        void ensureCapacity(int size) {
+            if (size <= count.length) {
+                return;
+            }
+            int previous = count.length;
+            int length = ArrayUtil.oversize(size, RamUsageEstimator.NUM_BYTES_LONG);
+            count = Arrays.copyOf(count, length);
+            total = Arrays.copyOf(total, length);
+            sumOfSquares = Arrays.copyOf(sumOfSquares, length);
+            min = Arrays.copyOf(min, length);
+            max = Arrays.copyOf(max, length);
+            Arrays.fill(min, previous, length, Double.POSITIVE_INFINITY);
+            Arrays.fill(max, previous, length, Double.NEGATIVE_INFINITY);
+        }
+
+        @Override
+        public void onValue(int docId, double value) {
+            if (value < min[bucket]) {
+                min[bucket] = value;
+            }
+            if (value > max[bucket]) {
+                max[bucket] = value;
+            }
+            sumOfSquares[bucket] += value * value;
+            total[bucket] += value;
+            count[bucket]++;
+        }
+    }
+}
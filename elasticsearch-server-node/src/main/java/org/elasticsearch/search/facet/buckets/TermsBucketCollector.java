@@ -0,0 +1,171 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.search.facet.buckets;
+
+import gnu.trove.iterator.TLongIntIterator;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.map.hash.TLongIntHashMap;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.util.ArrayUtil;
+import org.elasticsearch.common.collect.BoundedTreeSet;
+import org.elasticsearch.index.cache.field.data.FieldDataCache;
+import org.elasticsearch.index.field.data.FieldData;
+import org.elasticsearch.index.field.data.FieldDataType;
+import org.elasticsearch.index.mapper.MapperService;
+import org.elasticsearch.search.facet.Facet;
+import org.elasticsearch.search.facet.FacetPhaseExecutionException;
+import org.elasticsearch.search.facet.terms.TermsFacet;
+import org.elasticsearch.search.facet.terms.strings.GlobalOrdinals;
+import org.elasticsearch.search.facet.terms.strings.InternalStringTermsFacet;
+import org.elasticsearch.search.internal.SearchContext;
+
+import java.io.IOException;
+import java.util.Collections;
+
+/**
+ * A (string) terms sub facet. The counts of all the buckets are kept in a single map keyed by the bucket
+ * and the {@link GlobalOrdinals global ordinal} of the term, and only grouped by bucket once the facets
+ * are built. The number of (bucket, term) pairs is bounded by <tt>maxEntries</tt>, going above it fails the
+ * facet rather than letting the map grow with the product of the buckets and the terms.
+ */
+public class TermsBucketCollector extends BucketCollector {
+
+    private final FieldDataCache fieldDataCache;
+
+    private final String indexFieldName;
+
+    private final FieldDataType fieldDataType;
+
+    private final int size;
+
+    private final GlobalOrdinals globalOrdinals;
+
+    private final OrdinalsProc ordinalsProc = new OrdinalsProc();
+
+    private FieldData fieldData;
+
+    private TIntObjectHashMap<BoundedTreeSet<InternalStringTermsFacet.StringEntry>> entries;
+
+    public TermsBucketCollector(String facetName, String fieldName, int size, int maxEntries, SearchContext context) {
+        super(facetName);
+        this.fieldDataCache = context.fieldDataCache();
+        this.size = size;
+        this.ordinalsProc.facetName = facetName;
+        this.ordinalsProc.maxEntries = maxEntries;
+
+        MapperService.SmartNameFieldMappers smartMappers = smartMappers(facetName, fieldName, context);
+        if (smartMappers.mapper().fieldDataType() != FieldDataType.DefaultTypes.STRING) {
+            throw new FacetPhaseExecutionException(facetName, "Field [" + fieldName + "] is not of string type, only string terms are supported as a sub facet");
+        }
+        this.indexFieldName = smartMappers.mapper().names().indexName();
+        this.fieldDataType = smartMappers.mapper().fieldDataType();
+
+        try {
+            this.globalOrdinals = GlobalOrdinals.load(fieldDataCache, fieldDataType, indexFieldName, context.searcher().getIndexReader(), context.searcher().subReaders());
+        } catch (IOException e) {
+            throw new FacetPhaseExecutionException(facetName, "failed to load global ordinals for [" + fieldName + "]", e);
+        }
+    }
+
+    @Override
+    public void setNextReader(IndexReader reader, int docBase) throws IOException {
+        fieldData = fieldDataCache.cache(fieldDataType, reader, indexFieldName);
+        ordinalsProc.segmentOrdinals = globalOrdinals.segmentOrdinals(reader);
+    }
+
+    @Override
+    public void collect(int doc, int bucket) {
+        ordinalsProc.ensureCapacity(bucket + 1);
+        ordinalsProc.bucket = bucket;
+        fieldData.forEachOrdinalInDoc(doc, ordinalsProc);
+    }
+
+    @Override
+    public Facet facet(int bucket) {
+        if (entries == null) {
+            entries = groupByBucket();
+        }
+        long missing = 0;
+        long total = 0;
+        if (bucket < ordinalsProc.missing.length) {
+            missing = ordinalsProc.missing[bucket];
+            total = ordinalsProc.total[bucket];
+        }
+        BoundedTreeSet<InternalStringTermsFacet.StringEntry> ordered = entries.get(bucket);
+        if (ordered == null) {
+            return new InternalStringTermsFacet(facetName, TermsFacet.ComparatorType.COUNT, size, Collections.<InternalStringTermsFacet.StringEntry>emptyList(), missing, total);
+        }
+        return new InternalStringTermsFacet(facetName, TermsFacet.ComparatorType.COUNT, size, ordered, missing, total);
+    }
+
+    private TIntObjectHashMap<BoundedTreeSet<InternalStringTermsFacet.StringEntry>> groupByBucket() {
+        String[] values = globalOrdinals.values();
+        TIntObjectHashMap<BoundedTreeSet<InternalStringTermsFacet.StringEntry>> entries = new TIntObjectHashMap<BoundedTreeSet<InternalStringTermsFacet.StringEntry>>();
+        for (TLongIntIterator it = ordinalsProc.counts.iterator(); it.hasNext(); ) {
+            it.advance();
+            int bucket = (int) (it.key() >>> 32);
+            int ord = (int) it.key();
+            BoundedTreeSet<InternalStringTermsFacet.StringEntry> ordered = entries.get(bucket);
+            if (ordered == null) {
+                ordered = new BoundedTreeSet<InternalStringTermsFacet.StringEntry>(TermsFacet.ComparatorType.COUNT.comparator(), size);
+                entries.put(bucket, ordered);
+            }
+            ordered.add(new InternalStringTermsFacet.StringEntry(values[ord], it.value()));
+        }
+        return entries;
+    }
+
+    static class OrdinalsProc implements FieldData.OrdinalInDocProc {
+
+        final TLongIntHashMap counts = new TLongIntHashMap();
+
+        String facetName;
+
+        int maxEntries;
+
+        long[] missing = new long[0];
+
+        long[] total = new long[0];
+
+        int[] segmentOrdinals;
+
+        int bucket;
+
+        void ensureCapacity(int size) {
+            if (size > missing.length) {
+                missing = ArrayUtil.grow(missing, size);
+                total = ArrayUtil.grow(total, missing.length);
+            }
+        }
+
+        @Override
+        public void onOrdinal(int docId, int ordinal) {
+            if (ordinal == 0) {
+                missing[bucket]++;
+                return;
+            }
+            if (counts.adjustOrPutValue(((long) bucket << 32) | segmentOrdinals[ordinal], 1, 1) == 1 && counts.size() > maxEntries) {
+                throw new FacetPhaseExecutionException(facetName, "too many (bucket, term) pairs to count, the limit is [" + maxEntries + "]");
+            }
+            total[bucket]++;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.search.facet.buckets;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.PriorityQueue;
+import org.elasticsearch.index.field.data.FieldData;
+import org.elasticsearch.index.cache.field.data.FieldDataCache;
+import org.elasticsearch.index.field.data.FieldDataType;
+import org.elasticsearch.index.mapper.MapperService;
+import org.elasticsearch.search.facet.Facet;
+import org.elasticsearch.search.facet.FacetPhaseExecutionException;
+import org.elasticsearch.search.facet.terms.strings.GlobalOrdinals;
+import org.elasticsearch.search.internal.SearchContext;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A bucket per (string) term, the bucket ordinals are assigned to the {@link GlobalOrdinals global
+ * ordinals} of the terms as they are first seen. The top <tt>size</tt> buckets by doc count are returned.
+ */
+public class TermsBucketsFacetCollector extends BucketsFacetCollector {
+
+    private final FieldDataCache fieldDataCache;
+
+    private final String indexFieldName;
+
+    private final FieldDataType fieldDataType;
+
+    private final int size;
+
+    private final GlobalOrdinals globalOrdinals;
+
+    private final BucketsProc bucketsProc;
+
+    private FieldData fieldData;
+
+    public TermsBucketsFacetCollector(String facetName, String fieldName, int size, List<BucketCollector> subCollectors, SearchContext context) {
+        super(facetName, subCollectors);
+        this.fieldDataCache = context.fieldDataCache();
+        this.size = size;
+
+        MapperService.SmartNameFieldMappers smartMappers = context.smartFieldMappers(fieldName);
+        if (smartMappers == null || !smartMappers.hasMapper()) {
+            throw new FacetPhaseExecutionException(facetName, "No mapping found for field [" + fieldName + "]");
+        }
+        // add type filter if there is exact doc mapper associated with it
+        if (smartMappers.explicitTypeInNameWithDocMapper()) {
+            setFilter(context.filterCache().cache(smartMappers.docMapper().typeFilter()));
+        }
+        if (smartMappers.mapper().fieldDataType() != FieldDataType.DefaultTypes.STRING) {
+            throw new FacetPhaseExecutionException(facetName, "Field [" + fieldName + "] is not of string type, can't split it into terms buckets");
+        }
+
+        this.indexFieldName = smartMappers.mapper().names().indexName();
+        this.fieldDataType = smartMappers.mapper().fieldDataType();
+
+        try {
+            this.globalOrdinals = GlobalOrdinals.load(fieldDataCache, fieldDataType, indexFieldName, context.searcher().getIndexReader(), context.searcher().subReaders());
+        } catch (IOException e) {
+            throw new FacetPhaseExecutionException(facetName, "failed to load global ordinals for [" + fieldName + "]", e);
+        }
+        this.bucketsProc = new BucketsProc(globalOrdinals.values().length);
+    }
+
+    @Override
+    protected void setBucketsReader(IndexReader reader) throws IOException {
+        fieldData = fieldDataCache.cache(fieldDataType, reader, indexFieldName);
+        bucketsProc.segmentOrdinals = globalOrdinals.segmentOrdinals(reader);
+    }
+
+    @Override
+    protected void doCollect(int doc) throws IOException {
+        fieldData.forEachOrdinalInDoc(doc, bucketsProc);
+    }
+
+    @Override
+    public Facet facet() {
+        String[] values = globalOrdinals.values();
+        BucketQueue queue = new BucketQueue(Math.min(size, bucketsProc.numberOfBuckets), values);
+        for (int bucket = 0; bucket < bucketsProc.numberOfBuckets; bucket++) {
+            queue.insertWithOverflow(bucket);
+        }
+        InternalBucketsFacet.InternalBucket[] buckets = new InternalBucketsFacet.InternalBucket[queue.size()];
+        for (int i = queue.size() - 1; i >= 0; i--) {
+            int bucket = queue.pop();
+            buckets[i] = new InternalBucketsFacet.InternalBucket(values[bucketsProc.bucketOrdinals[bucket]], Double.NaN, Double.NaN,
+                    docCount(bucket), subFacets(bucket));
+        }
+        return new InternalBucketsFacet(facetName, InternalBucketsFacet.BucketType.TERMS, size, new ArrayList<InternalBucketsFacet.InternalBucket>(Arrays.asList(buckets)));
+    }
+
+    class BucketQueue extends PriorityQueue<Integer> {
+
+        private final String[] values;
+
+        BucketQueue(int size, String[] values) {
+            this.values = values;
+            initialize(size);
+        }
+
+        @Override
+        protected boolean lessThan(Integer a, Integer b) {
+            long countA = docCount(a);
+            long countB = docCount(b);
+            if (countA != countB) {
+                return countA < countB;
+            }
+            // on equal counts, the smaller term ranks first
+            return values[bucketsProc.bucketOrdinals[a]].compareTo(values[bucketsProc.bucketOrdinals[b]]) > 0;
+        }
+    }
+
+    class BucketsProc implements FieldData.OrdinalInDocProc {
+
+        // the bucket of each global ordinal, offset by one so 0 marks a term without a bucket yet
+        final int[] ordinalBuckets;
+
+        int[] bucketOrdinals = new int[16];
+
+        int numberOfBuckets;
+
+        int[] segmentOrdinals;
+
+        BucketsProc(int numberOfOrdinals) {
+            this.ordinalBuckets = new int[numberOfOrdinals];
+        }
+
+        @Override
+        public void onOrdinal(int docId, int ordinal) {
+            // ordinal 0 marks a doc without a value
+            if (ordinal == 0) {
+                return;
+            }
+            int globalOrdinal = segmentOrdinals[ordinal];
+            int bucket = ordinalBuckets[globalOrdinal] - 1;
+            if (bucket == -1) {
+                bucket = numberOfBuckets++;
+                ordinalBuckets[globalOrdinal] = bucket + 1;
+                bucketOrdinals = ArrayUtil.grow(bucketOrdinals, numberOfBuckets);
+                bucketOrdinals[bucket] = globalOrdinal;
+            }
+            collectBucket(docId, bucket);
+        }
+    }
+}
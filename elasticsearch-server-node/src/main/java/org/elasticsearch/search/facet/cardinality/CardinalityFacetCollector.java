@@ -0,0 +1,177 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.search.facet.cardinality;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.UnicodeUtil;
+import org.elasticsearch.common.MurmurHash;
+import org.elasticsearch.index.cache.field.data.FieldDataCache;
+import org.elasticsearch.index.field.data.FieldData;
+import org.elasticsearch.index.field.data.FieldDataType;
+import org.elasticsearch.index.field.data.NumericFieldData;
+import org.elasticsearch.index.field.data.strings.StringFieldData;
+import org.elasticsearch.index.mapper.MapperService;
+import org.elasticsearch.search.facet.AbstractFacetCollector;
+import org.elasticsearch.search.facet.Facet;
+import org.elasticsearch.search.facet.FacetPhaseExecutionException;
+import org.elasticsearch.search.internal.SearchContext;
+
+import java.io.IOException;
+
+/**
+ * Counts the distinct values of a field. String values are collected as ordinals per segment, and each
+ * distinct term of a segment is hashed once when moving to the next one.
+ */
+public class CardinalityFacetCollector extends AbstractFacetCollector {
+
+    private final String indexFieldName;
+
+    private final FieldDataCache fieldDataCache;
+
+    private final FieldDataType fieldDataType;
+
+    private final HyperLogLog sketch;
+
+    private final boolean floatingPoint;
+
+    private final LongHashProc longProc = new LongHashProc();
+
+    private final DoubleHashProc doubleProc = new DoubleHashProc();
+
+    private final OrdinalProc ordinalProc = new OrdinalProc();
+
+    private NumericFieldData numericFieldData;
+
+    private StringFieldData stringFieldData;
+
+    private final UnicodeUtil.UTF8Result utf8 = new UnicodeUtil.UTF8Result();
+
+    public CardinalityFacetCollector(String facetName, String fieldName, int precision, SearchContext context) {
+        super(facetName);
+        this.fieldDataCache = context.fieldDataCache();
+        this.sketch = new HyperLogLog(precision);
+
+        MapperService.SmartNameFieldMappers smartMappers = context.smartFieldMappers(fieldName);
+        if (smartMappers == null || !smartMappers.hasMapper()) {
+            throw new FacetPhaseExecutionException(facetName, "No mapping found for field [" + fieldName + "]");
+        }
+
+        // add type filter if there is exact doc mapper associated with it
+        if (smartMappers.explicitTypeInNameWithDocMapper()) {
+            setFilter(context.filterCache().cache(smartMappers.docMapper().typeFilter()));
+        }
+
+        indexFieldName = smartMappers.mapper().names().indexName();
+        fieldDataType = smartMappers.mapper().fieldDataType();
+        floatingPoint = fieldDataType == FieldDataType.DefaultTypes.DOUBLE || fieldDataType == FieldDataType.DefaultTypes.FLOAT;
+    }
+
+    @Override
+    protected void doSetNextReader(IndexReader reader, int docBase) throws IOException {
+        collectOrdinals();
+        FieldData fieldData = fieldDataCache.cache(fieldDataType, reader, indexFieldName);
+        if (fieldData instanceof NumericFieldData) {
+            numericFieldData = (NumericFieldData) fieldData;
+            stringFieldData = null;
+        } else {
+            numericFieldData = null;
+            stringFieldData = (StringFieldData) fieldData;
+            ordinalProc.reset(stringFieldData.values().length);
+        }
+    }
+
+    @Override
+    protected void doCollect(int doc) throws IOException {
+        if (numericFieldData != null) {
+            if (floatingPoint) {
+                numericFieldData.forEachValueInDoc(doc, doubleProc);
+            } else {
+                numericFieldData.forEachValueInDoc(doc, longProc);
+            }
+        } else {
+            stringFieldData.forEachOrdinalInDoc(doc, ordinalProc);
+        }
+    }
+
+    /**
+     * Hashes the terms of the ordinals seen on the current segment.
+     */
+    private void collectOrdinals() {
+        if (stringFieldData == null) {
+            return;
+        }
+        String[] values = stringFieldData.values();
+        FixedBitSet ordinals = ordinalProc.ordinals;
+        // ordinal 0 marks a doc without a value
+        for (int ord = 1; ord < values.length; ord++) {
+            ord = ordinals.nextSetBit(ord);
+            if (ord == -1) {
+                break;
+            }
+            sketch.collect(hash(values[ord], utf8));
+        }
+        stringFieldData = null;
+    }
+
+    @Override
+    public Facet facet() {
+        collectOrdinals();
+        return new InternalCardinalityFacet(facetName, sketch);
+    }
+
+    public static long hash(String value, UnicodeUtil.UTF8Result utf8) {
+        UnicodeUtil.UTF16toUTF8(value, 0, value.length(), utf8);
+        return MurmurHash.hash2_64(utf8.result, 0, utf8.length, 0);
+    }
+
+    class LongHashProc implements NumericFieldData.LongValueInDocProc {
+        @Override
+        public void onValue(int docId, long value) {
+            sketch.collect(MurmurHash.hash64(value));
+        }
+    }
+
+    class DoubleHashProc implements NumericFieldData.DoubleValueInDocProc {
+        @Override
+        public void onValue(int docId, double value) {
+            sketch.collect(MurmurHash.hash64(Double.doubleToLongBits(value)));
+        }
+    }
+
+    static class OrdinalProc implements FieldData.OrdinalInDocProc {
+
+        FixedBitSet ordinals;
+
+        void reset(int numberOfOrdinals) {
+            if (ordinals == null || ordinals.length() < numberOfOrdinals) {
+                ordinals = new FixedBitSet(numberOfOrdinals);
+            } else {
+                ordinals.clear(0, ordinals.length());
+            }
+        }
+
+        @Override
+        public void onOrdinal(int docId, int ordinal) {
+            ordinals.set(ordinal);
+        }
+    }
+}
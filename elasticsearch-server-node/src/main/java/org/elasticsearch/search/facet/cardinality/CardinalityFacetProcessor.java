@@ -0,0 +1,115 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.search.facet.cardinality;
+
+import org.elasticsearch.common.component.AbstractComponent;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.search.facet.Facet;
+import org.elasticsearch.search.facet.FacetCollector;
+import org.elasticsearch.search.facet.FacetPhaseExecutionException;
+import org.elasticsearch.search.facet.FacetProcessor;
+import org.elasticsearch.search.internal.SearchContext;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *
+ */
+public class CardinalityFacetProcessor extends AbstractComponent implements FacetProcessor {
+
+    @Inject
+    public CardinalityFacetProcessor(Settings settings) {
+        super(settings);
+        InternalCardinalityFacet.registerStreams();
+    }
+
+    @Override
+    public String[] types() {
+        return new String[]{CardinalityFacet.TYPE};
+    }
+
+    @Override
+    public FacetCollector parse(String facetName, XContentParser parser, SearchContext context) throws IOException {
+        String field = null;
+        int precision = HyperLogLog.DEFAULT_PRECISION;
+
+        String script = null;
+        String scriptLang = null;
+        Map<String, Object> params = null;
+
+        String currentFieldName = null;
+        XContentParser.Token token;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                currentFieldName = parser.currentName();
+            } else if (token == XContentParser.Token.START_OBJECT) {
+                if ("params".equals(currentFieldName)) {
+                    params = parser.map();
+                }
+            } else if (token.isValue()) {
+                if ("field".equals(currentFieldName)) {
+                    field = parser.text();
+                } else if ("script".equals(currentFieldName)) {
+                    script = parser.text();
+                } else if ("lang".equals(currentFieldName)) {
+                    scriptLang = parser.text();
+                } else if ("precision".equals(currentFieldName)) {
+                    precision = parser.intValue();
+                }
+            }
+        }
+        if (script == null && field == null) {
+            throw new FacetPhaseExecutionException(facetName, "cardinality facet requires either [script] or [field] to be set");
+        }
+        if (precision < HyperLogLog.MIN_PRECISION || precision > HyperLogLog.MAX_PRECISION) {
+            throw new FacetPhaseExecutionException(facetName, "cardinality facet [precision] must be between [" + HyperLogLog.MIN_PRECISION + "] and [" + HyperLogLog.MAX_PRECISION + "]");
+        }
+        if (field != null) {
+            return new CardinalityFacetCollector(facetName, field, precision, context);
+        } else {
+            return new ScriptCardinalityFacetCollector(facetName, scriptLang, script, params, precision, context);
+        }
+    }
+
+    @Override
+    public Facet reduce(String name, List<Facet> facets) {
+        if (facets.size() == 1) {
+            return facets.get(0);
+        }
+        HyperLogLog sketch = null;
+        for (Facet facet : facets) {
+            if (!facet.name().equals(name)) {
+                continue;
+            }
+            InternalCardinalityFacet cardinalityFacet = (InternalCardinalityFacet) facet;
+            if (sketch == null) {
+                sketch = cardinalityFacet.sketch();
+            } else {
+                sketch.merge(cardinalityFacet.sketch());
+            }
+        }
+        return new InternalCardinalityFacet(name, sketch);
+    }
+}
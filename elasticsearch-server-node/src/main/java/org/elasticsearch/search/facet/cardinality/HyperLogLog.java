@@ -0,0 +1,192 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.search.facet.cardinality;
+
+import gnu.trove.iterator.TLongIterator;
+import gnu.trove.set.hash.TLongHashSet;
+import org.elasticsearch.ElasticSearchIllegalArgumentException;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+import java.io.IOException;
+
+/**
+ * A HyperLogLog sketch over 64 bit hashes. Small cardinalities are kept in a sparse set of the hashes
+ * themselves (and counted exactly), once the set grows past the size of the registers it is converted to
+ * the dense registers, which bounds the memory (and wire size) to <tt>2^precision</tt> bytes.
+ * <p/>
+ * Like HyperLogLog++, it uses 64 bit hashes (so needs no large range correction) and starts sparse, but it
+ * does not apply the HyperLogLog++ empirical bias correction: the dense estimate falls back to linear
+ * counting up to <tt>2.5 * 2^precision</tt>, and is the raw HyperLogLog estimate above it, which is biased
+ * (by a few percent) up to about <tt>5 * 2^precision</tt>. The relative standard error is about
+ * <tt>1.04 / sqrt(2^precision)</tt> elsewhere.
+ */
+public class HyperLogLog {
+
+    public static final int MIN_PRECISION = 4;
+    public static final int MAX_PRECISION = 18;
+    public static final int DEFAULT_PRECISION = 14;
+
+    private int precision;
+
+    private TLongHashSet sparse;
+
+    private byte[] registers;
+
+    HyperLogLog() {
+    }
+
+    public HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new ElasticSearchIllegalArgumentException("precision must be between [" + MIN_PRECISION + "] and [" + MAX_PRECISION + "], got [" + precision + "]");
+        }
+        this.precision = precision;
+        this.sparse = new TLongHashSet();
+    }
+
+    public int precision() {
+        return precision;
+    }
+
+    private int sparseThreshold() {
+        // a hash takes 8 bytes, so beyond this point the registers take less memory
+        return (1 << precision) >>> 3;
+    }
+
+    public void collect(long hash) {
+        if (sparse != null) {
+            sparse.add(hash);
+            if (sparse.size() > sparseThreshold()) {
+                toDense();
+            }
+        } else {
+            collectDense(hash);
+        }
+    }
+
+    private void collectDense(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        // make sure we stop counting at the precision bits, in case the rest are all zeros
+        long w = (hash << precision) | (1L << (precision - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(w) + 1);
+        if (rank > registers[index]) {
+            registers[index] = rank;
+        }
+    }
+
+    private void toDense() {
+        registers = new byte[1 << precision];
+        for (TLongIterator it = sparse.iterator(); it.hasNext(); ) {
+            collectDense(it.next());
+        }
+        sparse = null;
+    }
+
+    /**
+     * Merges the other sketch into this one, both must have the same precision.
+     */
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new ElasticSearchIllegalArgumentException("can't merge sketches with different precisions [" + precision + "] and [" + other.precision + "]");
+        }
+        if (other.sparse != null) {
+            for (TLongIterator it = other.sparse.iterator(); it.hasNext(); ) {
+                collect(it.next());
+            }
+            return;
+        }
+        if (sparse != null) {
+            toDense();
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    /**
+     * The (approximate, once dense) number of distinct hashes collected.
+     */
+    public long cardinality() {
+        if (sparse != null) {
+            return sparse.size();
+        }
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double estimate = alpha(m) * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            // small range correction, linear counting over the empty registers
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    private static double alpha(int m) {
+        switch (m) {
+            case 16:
+                return 0.673;
+            case 32:
+                return 0.697;
+            case 64:
+                return 0.709;
+            default:
+                return 0.7213 / (1 + 1.079 / m);
+        }
+    }
+
+    public static HyperLogLog readFrom(StreamInput in) throws IOException {
+        HyperLogLog sketch = new HyperLogLog();
+        sketch.precision = in.readVInt();
+        if (in.readBoolean()) {
+            int size = in.readVInt();
+            sketch.sparse = new TLongHashSet(size);
+            for (int i = 0; i < size; i++) {
+                sketch.sparse.add(in.readLong());
+            }
+        } else {
+            sketch.registers = new byte[1 << sketch.precision];
+            in.readBytes(sketch.registers, 0, sketch.registers.length);
+        }
+        return sketch;
+    }
+
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeVInt(precision);
+        if (sparse != null) {
+            out.writeBoolean(true);
+            out.writeVInt(sparse.size());
+            for (TLongIterator it = sparse.iterator(); it.hasNext(); ) {
+                out.writeLong(it.next());
+            }
+        } else {
+            out.writeBoolean(false);
+            out.writeBytes(registers, 0, registers.length);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.search.facet.cardinality;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.util.UnicodeUtil;
+import org.elasticsearch.common.MurmurHash;
+import org.elasticsearch.script.SearchScript;
+import org.elasticsearch.search.facet.AbstractFacetCollector;
+import org.elasticsearch.search.facet.Facet;
+import org.elasticsearch.search.internal.SearchContext;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ *
+ */
+public class ScriptCardinalityFacetCollector extends AbstractFacetCollector {
+
+    private final SearchScript script;
+
+    private final HyperLogLog sketch;
+
+    private final UnicodeUtil.UTF8Result utf8 = new UnicodeUtil.UTF8Result();
+
+    public ScriptCardinalityFacetCollector(String facetName, String scriptLang, String script, Map<String, Object> params, int precision, SearchContext context) {
+        super(facetName);
+        this.script = context.scriptService().search(context.lookup(), scriptLang, script, params);
+        this.sketch = new HyperLogLog(precision);
+    }
+
+    @Override
+    protected void doCollect(int doc) throws IOException {
+        script.setNextDocId(doc);
+        Object value = script.run();
+        if (value instanceof Collection) {
+            for (Object o : (Collection) value) {
+                collect(o);
+            }
+        } else if (value instanceof Object[]) {
+            for (Object o : (Object[]) value) {
+                collect(o);
+            }
+        } else {
+            collect(value);
+        }
+    }
+
+    private void collect(Object value) {
+        if (value == null) {
+            return;
+        }
+        if (value instanceof Double || value instanceof Float) {
+            sketch.collect(MurmurHash.hash64(Double.doubleToLongBits(((Number) value).doubleValue())));
+        } else if (value instanceof Number) {
+            sketch.collect(MurmurHash.hash64(((Number) value).longValue()));
+        } else {
+            sketch.collect(CardinalityFacetCollector.hash(value.toString(), utf8));
+        }
+    }
+
+    @Override
+    public void setScorer(Scorer scorer) throws IOException {
+        script.setScorer(scorer);
+    }
+
+    @Override
+    protected void doSetNextReader(IndexReader reader, int docBase) throws IOException {
+        script.setNextReader(reader);
+    }
+
+    @Override
+    public Facet facet() {
+        return new InternalCardinalityFacet(facetName, sketch);
+    }
+}
@@ -21,25 +21,29 @@ package org.elasticsearch.search.facet.datehistogram;
 
 import gnu.trove.map.hash.TLongLongHashMap;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.util.ArrayUtil;
 import org.elasticsearch.common.CacheRecycler;
 import org.elasticsearch.common.joda.TimeZoneRounding;
 import org.elasticsearch.index.cache.field.data.FieldDataCache;
+import org.elasticsearch.index.field.data.FieldData;
 import org.elasticsearch.index.field.data.FieldDataType;
 import org.elasticsearch.index.field.data.longs.LongFieldData;
+import org.elasticsearch.index.field.data.longs.SingleValueLongFieldData;
 import org.elasticsearch.index.mapper.FieldMapper;
 import org.elasticsearch.index.mapper.MapperService;
 import org.elasticsearch.search.facet.AbstractFacetCollector;
 import org.elasticsearch.search.facet.Facet;
 import org.elasticsearch.search.facet.FacetPhaseExecutionException;
+import org.elasticsearch.search.facet.SampleableFacetCollector;
 import org.elasticsearch.search.internal.SearchContext;
 
 import java.io.IOException;
 
 /**
  * A date histogram facet collector that uses the same field as the key as well as the
- * value.
+ * value. Counts are kept in a dense array indexed by {@link DateHistogramBuckets bucket}.
  */
-public class CountDateHistogramFacetCollector extends AbstractFacetCollector {
+public class CountDateHistogramFacetCollector extends AbstractFacetCollector implements SampleableFacetCollector {
 
     private final String indexFieldName;
 
@@ -53,6 +57,17 @@ public class CountDateHistogramFacetCollector extends AbstractFacetCollector {
 
     private final DateHistogramProc histoProc;
 
+    // single valued segments are collected in blocks of docs
+    private static final int BLOCK_SIZE = 256;
+
+    private final int[] docBuffer = new int[BLOCK_SIZE];
+
+    private final int[] bucketBuffer = new int[BLOCK_SIZE];
+
+    private int bufferedDocs;
+
+    private int[] docOrdinals;
+
     public CountDateHistogramFacetCollector(String facetName, String fieldName, TimeZoneRounding tzRounding, DateHistogramFacet.ComparatorType comparatorType, SearchContext context) {
         super(facetName);
         this.comparatorType = comparatorType;
@@ -77,36 +92,89 @@ public class CountDateHistogramFacetCollector extends AbstractFacetCollector {
 
     @Override
     protected void doCollect(int doc) throws IOException {
-        fieldData.forEachValueInDoc(doc, histoProc);
+        if (docOrdinals != null) {
+            docBuffer[bufferedDocs++] = doc;
+            if (bufferedDocs == BLOCK_SIZE) {
+                flush();
+            }
+        } else {
+            fieldData.forEachOrdinalInDoc(doc, histoProc);
+        }
     }
 
     @Override
     protected void doSetNextReader(IndexReader reader, int docBase) throws IOException {
+        flush();
         fieldData = (LongFieldData) fieldDataCache.cache(fieldDataType, reader, indexFieldName);
+        histoProc.buckets.setNextReader(fieldData);
+        if (fieldData instanceof SingleValueLongFieldData) {
+            docOrdinals = ((SingleValueLongFieldData) fieldData).ordinals();
+        } else {
+            docOrdinals = null;
+        }
+    }
+
+    /**
+     * Counts the buffered docs of a single valued segment, first resolving their buckets and then
+     * incrementing the counts, in two tight loops.
+     */
+    private void flush() {
+        if (bufferedDocs == 0) {
+            return;
+        }
+        DateHistogramBuckets buckets = histoProc.buckets;
+        for (int i = 0; i < bufferedDocs; i++) {
+            bucketBuffer[i] = buckets.bucket(docOrdinals[docBuffer[i]]);
+        }
+        histoProc.ensureCapacity(buckets.numberOfBuckets());
+        long[] counts = histoProc.counts;
+        for (int i = 0; i < bufferedDocs; i++) {
+            counts[bucketBuffer[i]]++;
+        }
+        bufferedDocs = 0;
     }
 
     @Override
     public Facet facet() {
+        flush();
         return new InternalCountDateHistogramFacet(facetName, comparatorType, histoProc.counts(), true);
     }
 
-    public static class DateHistogramProc implements LongFieldData.LongValueInDocProc {
+    /**
+     * Counts the values of multi valued docs into dense, bucket indexed, counts.
+     */
+    public static class DateHistogramProc implements FieldData.OrdinalInDocProc {
 
-        private final TLongLongHashMap counts = CacheRecycler.popLongLongMap();
+        final DateHistogramBuckets buckets;
 
-        private final TimeZoneRounding tzRounding;
+        long[] counts = new long[16];
 
         public DateHistogramProc(TimeZoneRounding tzRounding) {
-            this.tzRounding = tzRounding;
+            this.buckets = new DateHistogramBuckets(tzRounding);
+        }
+
+        void ensureCapacity(int numberOfBuckets) {
+            if (numberOfBuckets > counts.length) {
+                counts = ArrayUtil.grow(counts, numberOfBuckets);
+            }
         }
 
         @Override
-        public void onValue(int docId, long value) {
-            counts.adjustOrPutValue(tzRounding.calc(value), 1, 1);
+        public void onOrdinal(int docId, int ordinal) {
+            int bucket = buckets.bucket(ordinal);
+            ensureCapacity(bucket + 1);
+            counts[bucket]++;
         }
 
         public TLongLongHashMap counts() {
+            TLongLongHashMap counts = CacheRecycler.popLongLongMap();
+            // bucket 0 holds the docs without a value
+            for (int bucket = 1; bucket < buckets.numberOfBuckets(); bucket++) {
+                if (this.counts[bucket] > 0) {
+                    counts.put(buckets.key(bucket), this.counts[bucket]);
+                }
+            }
             return counts;
         }
     }
-}
\ No newline at end of file
+}
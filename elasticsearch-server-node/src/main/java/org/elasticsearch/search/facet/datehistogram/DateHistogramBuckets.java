@@ -0,0 +1,177 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.search.facet.datehistogram;
+
+import gnu.trove.map.hash.TLongIntHashMap;
+import org.apache.lucene.util.ArrayUtil;
+import org.elasticsearch.common.joda.TimeZoneRounding;
+import org.elasticsearch.index.field.data.longs.LongFieldData;
+
+/**
+ * Maps the values of a date field to dense bucket ordinals, so the counts (or entries) of a date histogram
+ * can be kept in plain arrays indexed by the bucket. The values of a segment's field data are sorted, so the
+ * values of a bucket are a contiguous range of ordinals: the ranges are found by walking the bucket boundaries
+ * over the values once per segment (rounding a few values per bucket, not every value), and an ordinal is then
+ * mapped to its bucket by looking up its range.
+ * <p/>
+ * Bucket <tt>0</tt> is where the docs without a value go (ordinal <tt>0</tt>), so collecting does not need
+ * to branch on missing values.
+ */
+public class DateHistogramBuckets {
+
+    private static final int UNRESOLVED = -1;
+
+    private final TimeZoneRounding tzRounding;
+
+    // the no entry value is 0, which is never a bucket of a key
+    private final TLongIntHashMap keyBuckets = new TLongIntHashMap();
+
+    private long[] keys = new long[16];
+
+    private int numberOfBuckets = 1;
+
+    // the first ordinal, key and bucket of each range of ordinals of the current segment
+    private int[] rangeStarts = new int[16];
+
+    private long[] rangeKeys = new long[16];
+
+    private int[] rangeBuckets = new int[16];
+
+    private int numberOfRanges;
+
+    public DateHistogramBuckets(TimeZoneRounding tzRounding) {
+        this.tzRounding = tzRounding;
+    }
+
+    /**
+     * Starts mapping the ordinals of the field data of the next segment.
+     */
+    public void setNextReader(LongFieldData fieldData) {
+        long[] values = fieldData.values();
+        numberOfRanges = 0;
+        int ordinal = 1;
+        while (ordinal < values.length) {
+            long key = tzRounding.calc(values[ordinal]);
+            addRange(ordinal, key);
+            ordinal = lastOrdinal(values, ordinal, key) + 1;
+        }
+    }
+
+    /**
+     * The last ordinal, starting from <tt>from</tt> (which rounds to <tt>key</tt>), that rounds to <tt>key</tt>.
+     * Gallops forward and then binary searches, so a range costs a logarithm of its length in roundings.
+     */
+    private int lastOrdinal(long[] values, int from, long key) {
+        int lo = from;
+        int hi = from + 1;
+        int step = 1;
+        while (hi < values.length && tzRounding.calc(values[hi]) == key) {
+            lo = hi;
+            step <<= 1;
+            hi = lo + step;
+        }
+        if (hi > values.length) {
+            hi = values.length;
+        }
+        // lo rounds to the key, hi is past the end or rounds to a later key
+        while (hi - lo > 1) {
+            int mid = (lo + hi) >>> 1;
+            if (tzRounding.calc(values[mid]) == key) {
+                lo = mid;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private void addRange(int start, long key) {
+        if (numberOfRanges == rangeStarts.length) {
+            rangeStarts = ArrayUtil.grow(rangeStarts, numberOfRanges + 1);
+            rangeKeys = ArrayUtil.grow(rangeKeys, rangeStarts.length);
+            rangeBuckets = ArrayUtil.grow(rangeBuckets, rangeStarts.length);
+        }
+        rangeStarts[numberOfRanges] = start;
+        rangeKeys[numberOfRanges] = key;
+        // resolved lazily, only the ranges of the collected docs get a bucket
+        rangeBuckets[numberOfRanges] = UNRESOLVED;
+        numberOfRanges++;
+    }
+
+    /**
+     * The bucket of the ordinal of the current segment.
+     */
+    public int bucket(int ordinal) {
+        if (ordinal == 0) {
+            return 0;
+        }
+        int range = range(ordinal);
+        int bucket = rangeBuckets[range];
+        if (bucket == UNRESOLVED) {
+            bucket = resolve(range);
+        }
+        return bucket;
+    }
+
+    /**
+     * The (last) range starting at or before the ordinal.
+     */
+    private int range(int ordinal) {
+        int lo = 0;
+        int hi = numberOfRanges - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (rangeStarts[mid] <= ordinal) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    private int resolve(int range) {
+        long key = rangeKeys[range];
+        int bucket = keyBuckets.get(key);
+        if (bucket == 0) {
+            bucket = numberOfBuckets++;
+            keyBuckets.put(key, bucket);
+            if (bucket >= keys.length) {
+                keys = ArrayUtil.grow(keys, numberOfBuckets);
+            }
+            keys[bucket] = key;
+        }
+        rangeBuckets[range] = bucket;
+        return bucket;
+    }
+
+    /**
+     * The number of buckets, including the bucket <tt>0</tt> of the docs without a value.
+     */
+    public int numberOfBuckets() {
+        return numberOfBuckets;
+    }
+
+    /**
+     * The (rounded) time of the bucket.
+     */
+    public long key(int bucket) {
+        return keys[bucket];
+    }
+}
@@ -47,6 +47,7 @@ public class DateHistogramFacetBuilder extends AbstractFacetBuilder {
     private String valueScript;
     private Map<String, Object> params;
     private String lang;
+    private double sample = -1;
 
     /**
      * Constructs a new date histogram facet with the provided facet logical name.
@@ -214,6 +215,15 @@ public class DateHistogramFacetBuilder extends AbstractFacetBuilder {
         return this;
     }
 
+    /**
+     * Computes the facet over a (deterministic) sample of the docs, taken at the given rate between
+     * <tt>0</tt> (exclusive) and <tt>1</tt>, with the counts scaled back up to estimates over all the docs.
+     */
+    public DateHistogramFacetBuilder sample(double sample) {
+        this.sample = sample;
+        return this;
+    }
+
 
     @Override
     public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
@@ -266,6 +276,9 @@ public class DateHistogramFacetBuilder extends AbstractFacetBuilder {
         builder.endObject();
 
         addFilterFacetAndGlobal(builder, params);
+        if (sample != -1) {
+            builder.field("sample", sample);
+        }
 
         builder.endObject();
         return builder;
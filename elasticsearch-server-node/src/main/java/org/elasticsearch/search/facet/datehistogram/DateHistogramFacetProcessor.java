@@ -96,6 +96,7 @@ public class DateHistogramFacetProcessor extends AbstractComponent implements Fa
         float factor = 1.0f;
         Chronology chronology = ISOChronology.getInstanceUTC();
         DateHistogramFacet.ComparatorType comparatorType = DateHistogramFacet.ComparatorType.TIME;
+        boolean rollup = false;
         XContentParser.Token token;
         String fieldName = null;
         while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
@@ -134,6 +135,8 @@ public class DateHistogramFacetProcessor extends AbstractComponent implements Fa
                     comparatorType = DateHistogramFacet.ComparatorType.fromString(parser.text());
                 } else if ("lang".equals(fieldName)) {
                     scriptLang = parser.text();
+                } else if ("rollup".equals(fieldName)) {
+                    rollup = parser.booleanValue();
                 }
             }
         }
@@ -170,7 +173,12 @@ public class DateHistogramFacetProcessor extends AbstractComponent implements Fa
                 .factor(factor)
                 .build();
 
-        if (valueScript != null) {
+        if (rollup) {
+            if (valueScript != null) {
+                throw new FacetPhaseExecutionException(facetName, "[value_script] is not supported over a rollup index");
+            }
+            return new RollupDateHistogramFacetCollector(facetName, keyField, valueField, tzRounding, comparatorType, context);
+        } else if (valueScript != null) {
             return new ValueScriptDateHistogramFacetCollector(facetName, keyField, scriptLang, valueScript, params, tzRounding, comparatorType, context);
         } else if (valueField == null) {
             return new CountDateHistogramFacetCollector(facetName, keyField, tzRounding, comparatorType, context);
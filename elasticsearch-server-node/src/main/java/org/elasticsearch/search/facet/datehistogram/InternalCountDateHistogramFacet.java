@@ -26,7 +26,10 @@ import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentBuilderString;
+import org.elasticsearch.search.facet.CompactFacetStreams;
 import org.elasticsearch.search.facet.Facet;
+import org.elasticsearch.search.facet.SampledFacet;
+import org.elasticsearch.search.facet.SampledFacetCollector;
 
 import java.io.IOException;
 import java.util.Arrays;
@@ -36,7 +39,7 @@ import java.util.List;
 /**
  *
  */
-public class InternalCountDateHistogramFacet extends InternalDateHistogramFacet {
+public class InternalCountDateHistogramFacet extends InternalDateHistogramFacet implements SampledFacet {
 
     private static final String STREAM_TYPE = "cdHistogram";
 
@@ -147,6 +150,8 @@ public class InternalCountDateHistogramFacet extends InternalDateHistogramFacet
     TLongLongHashMap counts;
     boolean cachedCounts;
 
+    double sampleRate = 1;
+
     CountEntry[] entries = null;
 
     private InternalCountDateHistogramFacet() {
@@ -217,6 +222,20 @@ public class InternalCountDateHistogramFacet extends InternalDateHistogramFacet
         return entries;
     }
 
+    @Override
+    public void sample(double sampleRate) {
+        this.sampleRate = sampleRate;
+        for (TLongLongIterator it = counts.iterator(); it.hasNext(); ) {
+            it.advance();
+            it.setValue(SampledFacetCollector.scale(it.value(), sampleRate));
+        }
+    }
+
+    @Override
+    public double sampleRate() {
+        return sampleRate;
+    }
+
     @Override
     public Facet reduce(String name, List<Facet> facets) {
         if (facets.size() == 1) {
@@ -234,7 +253,9 @@ public class InternalCountDateHistogramFacet extends InternalDateHistogramFacet
 
         }
 
-        return new InternalCountDateHistogramFacet(name, comparatorType, counts, true);
+        InternalCountDateHistogramFacet reduced = new InternalCountDateHistogramFacet(name, comparatorType, counts, true);
+        reduced.sampleRate = ((InternalCountDateHistogramFacet) facets.get(0)).sampleRate;
+        return reduced;
     }
 
     static final class Fields {
@@ -242,17 +263,25 @@ public class InternalCountDateHistogramFacet extends InternalDateHistogramFacet
         static final XContentBuilderString ENTRIES = new XContentBuilderString("entries");
         static final XContentBuilderString TIME = new XContentBuilderString("time");
         static final XContentBuilderString COUNT = new XContentBuilderString("count");
+        static final XContentBuilderString SAMPLE_RATE = new XContentBuilderString("sample_rate");
+        static final XContentBuilderString COUNT_ERROR = new XContentBuilderString("count_error");
     }
 
     @Override
     public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
         builder.startObject(name);
         builder.field(Fields._TYPE, TYPE);
+        if (sampleRate < 1) {
+            builder.field(Fields.SAMPLE_RATE, sampleRate);
+        }
         builder.startArray(Fields.ENTRIES);
         for (Entry entry : computeEntries()) {
             builder.startObject();
             builder.field(Fields.TIME, entry.time());
             builder.field(Fields.COUNT, entry.count());
+            if (sampleRate < 1) {
+                builder.field(Fields.COUNT_ERROR, SampledFacetCollector.countError(entry.count(), sampleRate));
+            }
             builder.endObject();
         }
         builder.endArray();
@@ -270,26 +299,19 @@ public class InternalCountDateHistogramFacet extends InternalDateHistogramFacet
     public void readFrom(StreamInput in) throws IOException {
         name = in.readUTF();
         comparatorType = ComparatorType.fromId(in.readByte());
+        sampleRate = in.readDouble();
 
-        int size = in.readVInt();
         counts = CacheRecycler.popLongLongMap();
         cachedCounts = true;
-        for (int i = 0; i < size; i++) {
-            long key = in.readLong();
-            counts.put(key, in.readVLong());
-        }
+        CompactFacetStreams.readCounts(in, counts);
     }
 
     @Override
     public void writeTo(StreamOutput out) throws IOException {
         out.writeUTF(name);
         out.writeByte(comparatorType.id());
-        out.writeVInt(counts.size());
-        for (TLongLongIterator it = counts.iterator(); it.hasNext(); ) {
-            it.advance();
-            out.writeLong(it.key());
-            out.writeVLong(it.value());
-        }
+        out.writeDouble(sampleRate);
+        CompactFacetStreams.writeCounts(out, counts);
         releaseCache();
     }
 }
\ No newline at end of file
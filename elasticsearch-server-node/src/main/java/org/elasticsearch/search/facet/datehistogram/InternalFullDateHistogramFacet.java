@@ -25,6 +25,7 @@ import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.trove.ExtTLongObjectHashMap;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentBuilderString;
+import org.elasticsearch.search.facet.CompactFacetStreams;
 import org.elasticsearch.search.facet.Facet;
 
 import java.io.IOException;
@@ -316,8 +317,10 @@ public class InternalFullDateHistogramFacet extends InternalDateHistogramFacet {
         cachedEntries = false;
         int size = in.readVInt();
         entries = new ArrayList<FullEntry>(size);
+        long time = 0;
         for (int i = 0; i < size; i++) {
-            entries.add(new FullEntry(in.readLong(), in.readVLong(), in.readDouble(), in.readDouble(), in.readVLong(), in.readDouble()));
+            time = CompactFacetStreams.readKey(in, i, time);
+            entries.add(new FullEntry(time, in.readVLong(), in.readDouble(), in.readDouble(), in.readVLong(), in.readDouble()));
         }
     }
 
@@ -325,9 +328,15 @@ public class InternalFullDateHistogramFacet extends InternalDateHistogramFacet {
     public void writeTo(StreamOutput out) throws IOException {
         out.writeUTF(name);
         out.writeByte(comparatorType.id());
-        out.writeVInt(entries.size());
-        for (FullEntry entry : entries) {
-            out.writeLong(entry.time);
+        // the entries are written sorted by time, so the times can be written as deltas
+        FullEntry[] sorted = entries.toArray(new FullEntry[entries.size()]);
+        Arrays.sort(sorted, ComparatorType.TIME.comparator());
+        out.writeVInt(sorted.length);
+        long previousTime = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            FullEntry entry = sorted[i];
+            CompactFacetStreams.writeKey(out, i, entry.time, previousTime);
+            previousTime = entry.time;
             out.writeVLong(entry.count);
             out.writeDouble(entry.min);
             out.writeDouble(entry.max);
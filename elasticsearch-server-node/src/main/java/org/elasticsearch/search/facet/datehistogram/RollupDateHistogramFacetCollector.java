@@ -0,0 +1,223 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.search.facet.datehistogram;
+
+import gnu.trove.map.hash.TLongLongHashMap;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.elasticsearch.common.CacheRecycler;
+import org.elasticsearch.common.joda.TimeZoneRounding;
+import org.elasticsearch.common.trove.ExtTLongObjectHashMap;
+import org.elasticsearch.index.cache.field.data.FieldDataCache;
+import org.elasticsearch.index.field.data.FieldData;
+import org.elasticsearch.index.field.data.FieldDataType;
+import org.elasticsearch.index.field.data.NumericFieldData;
+import org.elasticsearch.index.field.data.longs.LongFieldData;
+import org.elasticsearch.index.mapper.FieldMapper;
+import org.elasticsearch.index.mapper.MapperService;
+import org.elasticsearch.indices.rollup.RollupConfig;
+import org.elasticsearch.search.facet.AbstractFacetCollector;
+import org.elasticsearch.search.facet.Facet;
+import org.elasticsearch.search.facet.FacetPhaseExecutionException;
+import org.elasticsearch.search.internal.SearchContext;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A date histogram facet collector over the docs of a {@link RollupConfig rollup} index, each doc standing for
+ * {@link RollupConfig#COUNT_FIELD its count} raw docs, with the value count, sum, min and max of the value field rolled up
+ * into their own fields. Builds the same facets as the collectors over the raw docs.
+ */
+public class RollupDateHistogramFacetCollector extends AbstractFacetCollector {
+
+    private final DateHistogramFacet.ComparatorType comparatorType;
+
+    private final FieldDataCache fieldDataCache;
+
+    private final String keyIndexFieldName;
+    private final FieldDataType keyFieldDataType;
+
+    private final FieldMapper countMapper;
+    private final FieldMapper valueCountMapper;
+    private final FieldMapper sumMapper;
+    private final FieldMapper minMapper;
+    private final FieldMapper maxMapper;
+
+    private final RollupProc rollupProc;
+
+    public RollupDateHistogramFacetCollector(String facetName, String keyFieldName, String valueFieldName, TimeZoneRounding tzRounding,
+                                             DateHistogramFacet.ComparatorType comparatorType, SearchContext context) {
+        super(facetName);
+        this.comparatorType = comparatorType;
+        this.fieldDataCache = context.fieldDataCache();
+
+        MapperService.SmartNameFieldMappers smartMappers = context.smartFieldMappers(keyFieldName);
+        if (smartMappers == null || !smartMappers.hasMapper()) {
+            throw new FacetPhaseExecutionException(facetName, "No mapping found for field [" + keyFieldName + "]");
+        }
+
+        // add type filter if there is exact doc mapper associated with it
+        if (smartMappers.explicitTypeInNameWithDocMapper()) {
+            setFilter(context.filterCache().cache(smartMappers.docMapper().typeFilter()));
+        }
+
+        keyIndexFieldName = smartMappers.mapper().names().indexName();
+        keyFieldDataType = smartMappers.mapper().fieldDataType();
+
+        countMapper = rollupMapper(facetName, RollupConfig.COUNT_FIELD, context);
+        if (valueFieldName != null) {
+            valueCountMapper = rollupMapper(facetName, RollupConfig.valueCountField(valueFieldName), context);
+            sumMapper = rollupMapper(facetName, RollupConfig.sumField(valueFieldName), context);
+            minMapper = rollupMapper(facetName, RollupConfig.minField(valueFieldName), context);
+            maxMapper = rollupMapper(facetName, RollupConfig.maxField(valueFieldName), context);
+        } else {
+            valueCountMapper = null;
+            sumMapper = null;
+            minMapper = null;
+            maxMapper = null;
+        }
+
+        this.rollupProc = new RollupProc(tzRounding, valueFieldName != null);
+    }
+
+    static FieldMapper rollupMapper(String facetName, String fieldName, SearchContext context) {
+        FieldMapper mapper = context.smartNameFieldMapper(fieldName);
+        if (mapper == null) {
+            throw new FacetPhaseExecutionException(facetName, "No mapping found for rollup field [" + fieldName + "], is it a rollup index?");
+        }
+        return mapper;
+    }
+
+    static NumericFieldData rollupFieldData(FieldDataCache fieldDataCache, IndexReader reader, FieldMapper mapper) throws IOException {
+        return (NumericFieldData) fieldDataCache.cache(mapper.fieldDataType(), reader, mapper.names().indexName());
+    }
+
+    @Override
+    protected void doCollect(int doc) throws IOException {
+        rollupProc.keyFieldData.forEachOrdinalInDoc(doc, rollupProc);
+    }
+
+    @Override
+    protected void doSetNextReader(IndexReader reader, int docBase) throws IOException {
+        rollupProc.keyFieldData = (LongFieldData) fieldDataCache.cache(keyFieldDataType, reader, keyIndexFieldName);
+        rollupProc.buckets.setNextReader(rollupProc.keyFieldData);
+        rollupProc.countFieldData = rollupFieldData(fieldDataCache, reader, countMapper);
+        if (rollupProc.full) {
+            rollupProc.valueCountFieldData = rollupFieldData(fieldDataCache, reader, valueCountMapper);
+            rollupProc.sumFieldData = rollupFieldData(fieldDataCache, reader, sumMapper);
+            rollupProc.minFieldData = rollupFieldData(fieldDataCache, reader, minMapper);
+            rollupProc.maxFieldData = rollupFieldData(fieldDataCache, reader, maxMapper);
+        }
+    }
+
+    @Override
+    public Facet facet() {
+        if (rollupProc.full) {
+            return new InternalFullDateHistogramFacet(facetName, comparatorType, rollupProc.entries(), true);
+        }
+        return new InternalCountDateHistogramFacet(facetName, comparatorType, rollupProc.counts(), true);
+    }
+
+    static class RollupProc implements FieldData.OrdinalInDocProc {
+
+        final DateHistogramBuckets buckets;
+
+        final boolean full;
+
+        LongFieldData keyFieldData;
+
+        NumericFieldData countFieldData;
+        NumericFieldData valueCountFieldData;
+        NumericFieldData sumFieldData;
+        NumericFieldData minFieldData;
+        NumericFieldData maxFieldData;
+
+        long[] counts = new long[16];
+
+        InternalFullDateHistogramFacet.FullEntry[] entries = new InternalFullDateHistogramFacet.FullEntry[16];
+
+        RollupProc(TimeZoneRounding tzRounding, boolean full) {
+            this.buckets = new DateHistogramBuckets(tzRounding);
+            this.full = full;
+        }
+
+        @Override
+        public void onOrdinal(int docId, int ordinal) {
+            // ordinal 0 marks a doc without a value
+            if (ordinal == 0 || !countFieldData.hasValue(docId)) {
+                return;
+            }
+            int bucket = buckets.bucket(ordinal);
+            long count = countFieldData.longValue(docId);
+            if (!full) {
+                if (bucket >= counts.length) {
+                    counts = ArrayUtil.grow(counts, bucket + 1);
+                }
+                counts[bucket] += count;
+                return;
+            }
+            if (bucket >= entries.length) {
+                entries = Arrays.copyOf(entries, ArrayUtil.oversize(bucket + 1, RamUsageEstimator.NUM_BYTES_OBJECT_REF));
+            }
+            InternalFullDateHistogramFacet.FullEntry entry = entries[bucket];
+            if (entry == null) {
+                entry = new InternalFullDateHistogramFacet.FullEntry(buckets.key(bucket), 0, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 0, 0);
+                entries[bucket] = entry;
+            }
+            entry.count += count;
+            // buckets without a value of the field have no sum rolled up
+            if (valueCountFieldData.hasValue(docId)) {
+                entry.totalCount += valueCountFieldData.longValue(docId);
+                entry.total += sumFieldData.doubleValue(docId);
+                double min = minFieldData.doubleValue(docId);
+                if (min < entry.min) {
+                    entry.min = min;
+                }
+                double max = maxFieldData.doubleValue(docId);
+                if (max > entry.max) {
+                    entry.max = max;
+                }
+            }
+        }
+
+        TLongLongHashMap counts() {
+            TLongLongHashMap counts = CacheRecycler.popLongLongMap();
+            for (int bucket = 1; bucket < buckets.numberOfBuckets() && bucket < this.counts.length; bucket++) {
+                if (this.counts[bucket] != 0) {
+                    counts.put(buckets.key(bucket), this.counts[bucket]);
+                }
+            }
+            return counts;
+        }
+
+        ExtTLongObjectHashMap<InternalFullDateHistogramFacet.FullEntry> entries() {
+            ExtTLongObjectHashMap<InternalFullDateHistogramFacet.FullEntry> entries = CacheRecycler.popLongObjectMap();
+            for (int bucket = 1; bucket < buckets.numberOfBuckets() && bucket < this.entries.length; bucket++) {
+                if (this.entries[bucket] != null) {
+                    entries.put(this.entries[bucket].time(), this.entries[bucket]);
+                }
+            }
+            return entries;
+        }
+    }
+}
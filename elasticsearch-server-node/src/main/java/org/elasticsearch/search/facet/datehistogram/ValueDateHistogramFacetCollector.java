@@ -20,10 +20,13 @@
 package org.elasticsearch.search.facet.datehistogram;
 
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.RamUsageEstimator;
 import org.elasticsearch.common.CacheRecycler;
 import org.elasticsearch.common.joda.TimeZoneRounding;
 import org.elasticsearch.common.trove.ExtTLongObjectHashMap;
 import org.elasticsearch.index.cache.field.data.FieldDataCache;
+import org.elasticsearch.index.field.data.FieldData;
 import org.elasticsearch.index.field.data.FieldDataType;
 import org.elasticsearch.index.field.data.NumericFieldData;
 import org.elasticsearch.index.field.data.longs.LongFieldData;
@@ -35,9 +38,11 @@ import org.elasticsearch.search.facet.FacetPhaseExecutionException;
 import org.elasticsearch.search.internal.SearchContext;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 /**
- * A histogram facet collector that uses different fields for the key and the value.
+ * A histogram facet collector that uses different fields for the key and the value. Entries are kept in
+ * an array indexed by {@link DateHistogramBuckets bucket}.
  */
 public class ValueDateHistogramFacetCollector extends AbstractFacetCollector {
 
@@ -85,48 +90,65 @@ public class ValueDateHistogramFacetCollector extends AbstractFacetCollector {
 
     @Override
     protected void doCollect(int doc) throws IOException {
-        keyFieldData.forEachValueInDoc(doc, histoProc);
+        keyFieldData.forEachOrdinalInDoc(doc, histoProc);
     }
 
     @Override
     protected void doSetNextReader(IndexReader reader, int docBase) throws IOException {
         keyFieldData = (LongFieldData) fieldDataCache.cache(keyFieldDataType, reader, keyIndexFieldName);
+        histoProc.buckets.setNextReader(keyFieldData);
         histoProc.valueFieldData = (NumericFieldData) fieldDataCache.cache(valueFieldDataType, reader, valueIndexFieldName);
     }
 
     @Override
     public Facet facet() {
-        return new InternalFullDateHistogramFacet(facetName, comparatorType, histoProc.entries, true);
+        return new InternalFullDateHistogramFacet(facetName, comparatorType, histoProc.entries(), true);
     }
 
-    public static class DateHistogramProc implements LongFieldData.LongValueInDocProc {
+    public static class DateHistogramProc implements FieldData.OrdinalInDocProc {
 
-        final ExtTLongObjectHashMap<InternalFullDateHistogramFacet.FullEntry> entries = CacheRecycler.popLongObjectMap();
+        final DateHistogramBuckets buckets;
 
-        private final TimeZoneRounding tzRounding;
+        InternalFullDateHistogramFacet.FullEntry[] entries = new InternalFullDateHistogramFacet.FullEntry[16];
 
         NumericFieldData valueFieldData;
 
         final ValueAggregator valueAggregator = new ValueAggregator();
 
         public DateHistogramProc(TimeZoneRounding tzRounding) {
-            this.tzRounding = tzRounding;
+            this.buckets = new DateHistogramBuckets(tzRounding);
         }
 
         @Override
-        public void onValue(int docId, long value) {
-            long time = tzRounding.calc(value);
-
-            InternalFullDateHistogramFacet.FullEntry entry = entries.get(time);
+        public void onOrdinal(int docId, int ordinal) {
+            // ordinal 0 marks a doc without a value
+            if (ordinal == 0) {
+                return;
+            }
+            int bucket = buckets.bucket(ordinal);
+            if (bucket >= entries.length) {
+                entries = Arrays.copyOf(entries, ArrayUtil.oversize(bucket + 1, RamUsageEstimator.NUM_BYTES_OBJECT_REF));
+            }
+            InternalFullDateHistogramFacet.FullEntry entry = entries[bucket];
             if (entry == null) {
-                entry = new InternalFullDateHistogramFacet.FullEntry(time, 0, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 0, 0);
-                entries.put(time, entry);
+                entry = new InternalFullDateHistogramFacet.FullEntry(buckets.key(bucket), 0, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 0, 0);
+                entries[bucket] = entry;
             }
             entry.count++;
             valueAggregator.entry = entry;
             valueFieldData.forEachValueInDoc(docId, valueAggregator);
         }
 
+        public ExtTLongObjectHashMap<InternalFullDateHistogramFacet.FullEntry> entries() {
+            ExtTLongObjectHashMap<InternalFullDateHistogramFacet.FullEntry> entries = CacheRecycler.popLongObjectMap();
+            for (int bucket = 1; bucket < buckets.numberOfBuckets(); bucket++) {
+                if (this.entries[bucket] != null) {
+                    entries.put(this.entries[bucket].time(), this.entries[bucket]);
+                }
+            }
+            return entries;
+        }
+
         public static class ValueAggregator implements NumericFieldData.DoubleValueInDocProc {
 
             InternalFullDateHistogramFacet.FullEntry entry;
@@ -144,4 +166,4 @@ public class ValueDateHistogramFacetCollector extends AbstractFacetCollector {
             }
         }
     }
-}
\ No newline at end of file
+}
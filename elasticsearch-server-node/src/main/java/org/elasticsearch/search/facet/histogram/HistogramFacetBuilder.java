@@ -39,6 +39,7 @@ public class HistogramFacetBuilder extends AbstractFacetBuilder {
     private HistogramFacet.ComparatorType comparatorType;
     private Object from;
     private Object to;
+    private double sample = -1;
 
     /**
      * Constructs a new histogram facet with the provided facet logical name.
@@ -142,6 +143,15 @@ public class HistogramFacetBuilder extends AbstractFacetBuilder {
         return this;
     }
 
+    /**
+     * Computes the facet over a (deterministic) sample of the docs, taken at the given rate between
+     * <tt>0</tt> (exclusive) and <tt>1</tt>, with the counts scaled back up to estimates over all the docs.
+     */
+    public HistogramFacetBuilder sample(double sample) {
+        this.sample = sample;
+        return this;
+    }
+
     @Override
     public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
         if (keyFieldName == null) {
@@ -172,6 +182,9 @@ public class HistogramFacetBuilder extends AbstractFacetBuilder {
         builder.endObject();
 
         addFilterFacetAndGlobal(builder, params);
+        if (sample != -1) {
+            builder.field("sample", sample);
+        }
 
         builder.endObject();
         return builder;
@@ -30,6 +30,7 @@ import org.elasticsearch.index.mapper.MapperService;
 import org.elasticsearch.search.facet.AbstractFacetCollector;
 import org.elasticsearch.search.facet.Facet;
 import org.elasticsearch.search.facet.FacetPhaseExecutionException;
+import org.elasticsearch.search.facet.SampleableFacetCollector;
 import org.elasticsearch.search.facet.histogram.HistogramFacet;
 import org.elasticsearch.search.internal.SearchContext;
 
@@ -39,7 +40,7 @@ import java.io.IOException;
  * A histogram facet collector that uses the same field as the key as well as the
  * value.
  */
-public class CountHistogramFacetCollector extends AbstractFacetCollector {
+public class CountHistogramFacetCollector extends AbstractFacetCollector implements SampleableFacetCollector {
 
     private final String indexFieldName;
 
@@ -0,0 +1,133 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.search.facet.percentiles;
+
+import gnu.trove.list.array.TDoubleArrayList;
+import org.elasticsearch.common.component.AbstractComponent;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.search.facet.Facet;
+import org.elasticsearch.search.facet.FacetCollector;
+import org.elasticsearch.search.facet.FacetPhaseExecutionException;
+import org.elasticsearch.search.facet.FacetProcessor;
+import org.elasticsearch.search.internal.SearchContext;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *
+ */
+public class PercentilesFacetProcessor extends AbstractComponent implements FacetProcessor {
+
+    static final double[] DEFAULT_PERCENTS = new double[]{1, 5, 25, 50, 75, 95, 99};
+
+    @Inject
+    public PercentilesFacetProcessor(Settings settings) {
+        super(settings);
+        InternalPercentilesFacet.registerStreams();
+    }
+
+    @Override
+    public String[] types() {
+        return new String[]{PercentilesFacet.TYPE};
+    }
+
+    @Override
+    public FacetCollector parse(String facetName, XContentParser parser, SearchContext context) throws IOException {
+        String field = null;
+        double[] percents = DEFAULT_PERCENTS;
+        double compression = TDigest.DEFAULT_COMPRESSION;
+
+        String script = null;
+        String scriptLang = null;
+        Map<String, Object> params = null;
+
+        String currentFieldName = null;
+        XContentParser.Token token;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                currentFieldName = parser.currentName();
+            } else if (token == XContentParser.Token.START_OBJECT) {
+                if ("params".equals(currentFieldName)) {
+                    params = parser.map();
+                }
+            } else if (token == XContentParser.Token.START_ARRAY) {
+                if ("percents".equals(currentFieldName)) {
+                    TDoubleArrayList values = new TDoubleArrayList();
+                    while ((token = parser.nextToken()) != XContentParser.Token.END_ARRAY) {
+                        double percent = parser.doubleValue();
+                        if (percent < 0 || percent > 100) {
+                            throw new FacetPhaseExecutionException(facetName, "percents must be between [0] and [100], got [" + percent + "]");
+                        }
+                        values.add(percent);
+                    }
+                    percents = values.toArray();
+                }
+            } else if (token.isValue()) {
+                if ("field".equals(currentFieldName)) {
+                    field = parser.text();
+                } else if ("script".equals(currentFieldName)) {
+                    script = parser.text();
+                } else if ("lang".equals(currentFieldName)) {
+                    scriptLang = parser.text();
+                } else if ("compression".equals(currentFieldName)) {
+                    compression = parser.doubleValue();
+                }
+            }
+        }
+        if (script == null && field == null) {
+            throw new FacetPhaseExecutionException(facetName, "percentiles facet requires either [script] or [field] to be set");
+        }
+        if (compression < 1) {
+            throw new FacetPhaseExecutionException(facetName, "percentiles facet [compression] must be at least [1]");
+        }
+        if (field != null) {
+            return new PercentilesFacetCollector(facetName, field, percents, compression, context);
+        } else {
+            return new ScriptPercentilesFacetCollector(facetName, scriptLang, script, params, percents, compression, context);
+        }
+    }
+
+    @Override
+    public Facet reduce(String name, List<Facet> facets) {
+        if (facets.size() == 1) {
+            return facets.get(0);
+        }
+        InternalPercentilesFacet first = null;
+        TDigest digest = null;
+        for (Facet facet : facets) {
+            if (!facet.name().equals(name)) {
+                continue;
+            }
+            InternalPercentilesFacet percentilesFacet = (InternalPercentilesFacet) facet;
+            if (first == null) {
+                first = percentilesFacet;
+                digest = percentilesFacet.digest();
+            } else {
+                digest.merge(percentilesFacet.digest());
+            }
+        }
+        return new InternalPercentilesFacet(name, first.percents(), digest);
+    }
+}
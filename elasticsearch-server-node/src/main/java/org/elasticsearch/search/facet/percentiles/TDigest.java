@@ -0,0 +1,259 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.search.facet.percentiles;
+
+import org.apache.lucene.util.SorterTemplate;
+import org.elasticsearch.ElasticSearchIllegalArgumentException;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A merging t-digest: a sorted list of weighted centroids, where the weight a centroid may take is bounded by
+ * how close it is to the tails, so extreme quantiles stay accurate. Values are buffered and merged into the
+ * centroids in batches, which keeps the number of centroids (and the memory used) in the order of the
+ * <tt>compression</tt>, regardless of how many values are added.
+ */
+public class TDigest {
+
+    public static final double DEFAULT_COMPRESSION = 100;
+
+    private double compression;
+
+    private double min = Double.POSITIVE_INFINITY;
+
+    private double max = Double.NEGATIVE_INFINITY;
+
+    private long count;
+
+    // centroids, followed by the buffered ones that still need to be merged
+    private double[] means;
+
+    private long[] counts;
+
+    private int centroids;
+
+    private int buffered;
+
+    TDigest() {
+    }
+
+    public TDigest(double compression) {
+        if (compression < 1) {
+            throw new ElasticSearchIllegalArgumentException("compression must be at least [1], got [" + compression + "]");
+        }
+        this.compression = compression;
+        allocate(0);
+    }
+
+    private void allocate(int centroids) {
+        // the merge bound keeps the centroids under pi / 2 * compression, leave the rest of the room for buffering
+        int size = Math.max(centroids, (int) Math.ceil(2 * compression)) + (int) Math.ceil(5 * compression);
+        means = new double[size];
+        counts = new long[size];
+    }
+
+    public double compression() {
+        return compression;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public double min() {
+        return min;
+    }
+
+    public double max() {
+        return max;
+    }
+
+    public void add(double value) {
+        add(value, 1);
+    }
+
+    public void add(double mean, long weight) {
+        if (centroids + buffered == means.length) {
+            compress();
+            if (centroids == means.length) {
+                // can only happen with very few, heavy centroids
+                means = Arrays.copyOf(means, means.length * 2);
+                counts = Arrays.copyOf(counts, counts.length * 2);
+            }
+        }
+        means[centroids + buffered] = mean;
+        counts[centroids + buffered] = weight;
+        buffered++;
+        count += weight;
+        if (mean < min) {
+            min = mean;
+        }
+        if (mean > max) {
+            max = mean;
+        }
+    }
+
+    /**
+     * Adds all the centroids of the other digest to this one.
+     */
+    public void merge(TDigest other) {
+        other.compress();
+        for (int i = 0; i < other.centroids; i++) {
+            add(other.means[i], other.counts[i]);
+        }
+        // the centroid means are within the other min and max, keep the exact extremes
+        if (other.min < min) {
+            min = other.min;
+        }
+        if (other.max > max) {
+            max = other.max;
+        }
+    }
+
+    /**
+     * Merges the buffered values into the centroids.
+     */
+    public void compress() {
+        if (buffered == 0) {
+            return;
+        }
+        int size = centroids + buffered;
+        new SorterTemplate() {
+            private double pivot;
+
+            @Override
+            protected void swap(int i, int j) {
+                double mean = means[i];
+                means[i] = means[j];
+                means[j] = mean;
+                long weight = counts[i];
+                counts[i] = counts[j];
+                counts[j] = weight;
+            }
+
+            @Override
+            protected int compare(int i, int j) {
+                return Double.compare(means[i], means[j]);
+            }
+
+            @Override
+            protected void setPivot(int i) {
+                pivot = means[i];
+            }
+
+            @Override
+            protected int comparePivot(int j) {
+                return Double.compare(pivot, means[j]);
+            }
+        }.quickSort(0, size - 1);
+
+        int current = 0;
+        long seen = 0;
+        for (int i = 1; i < size; i++) {
+            long proposed = counts[current] + counts[i];
+            double q = (seen + proposed / 2.0) / count;
+            double bound = 4 * count * q * (1 - q) / compression;
+            if (proposed <= bound) {
+                // weighted mean, computed incrementally so it stays within the merged values
+                means[current] += (means[i] - means[current]) * counts[i] / proposed;
+                counts[current] = proposed;
+            } else {
+                seen += counts[current];
+                current++;
+                means[current] = means[i];
+                counts[current] = counts[i];
+            }
+        }
+        centroids = current + 1;
+        buffered = 0;
+    }
+
+    /**
+     * The estimated value below which the given quantile (between <tt>0</tt> and <tt>1</tt>) of the values fall.
+     */
+    public double quantile(double q) {
+        if (q < 0 || q > 1) {
+            throw new ElasticSearchIllegalArgumentException("quantile must be between [0] and [1], got [" + q + "]");
+        }
+        compress();
+        if (centroids == 0) {
+            return Double.NaN;
+        }
+        if (centroids == 1) {
+            return means[0];
+        }
+        double index = q * count;
+        // each centroid is centered on the middle of its weight, interpolate between the neighbouring centers,
+        // and between the extremes and the first / last center
+        double left = 0;
+        double leftMean = min;
+        for (int i = 0; i < centroids; i++) {
+            double center = left + counts[i] / 2.0;
+            if (index <= center) {
+                double previousCenter = i == 0 ? 0 : center - (counts[i - 1] + counts[i]) / 2.0;
+                return interpolate(index, previousCenter, leftMean, center, means[i]);
+            }
+            left += counts[i];
+            leftMean = means[i];
+        }
+        double lastCenter = count - counts[centroids - 1] / 2.0;
+        return interpolate(index, lastCenter, means[centroids - 1], count, max);
+    }
+
+    private static double interpolate(double x, double x0, double y0, double x1, double y1) {
+        if (x1 == x0) {
+            return y1;
+        }
+        return y0 + (x - x0) * (y1 - y0) / (x1 - x0);
+    }
+
+    public static TDigest readFrom(StreamInput in) throws IOException {
+        TDigest digest = new TDigest();
+        digest.compression = in.readDouble();
+        digest.min = in.readDouble();
+        digest.max = in.readDouble();
+        digest.count = in.readVLong();
+        int centroids = in.readVInt();
+        digest.allocate(centroids);
+        for (int i = 0; i < centroids; i++) {
+            digest.means[i] = in.readDouble();
+            digest.counts[i] = in.readVLong();
+        }
+        digest.centroids = centroids;
+        return digest;
+    }
+
+    public void writeTo(StreamOutput out) throws IOException {
+        compress();
+        out.writeDouble(compression);
+        out.writeDouble(min);
+        out.writeDouble(max);
+        out.writeVLong(count);
+        out.writeVInt(centroids);
+        for (int i = 0; i < centroids; i++) {
+            out.writeDouble(means[i]);
+            out.writeVLong(counts[i]);
+        }
+    }
+}
@@ -38,6 +38,7 @@ public class TermsFacetBuilder extends AbstractFacetBuilder {
     private String fieldName;
     private String[] fieldsNames;
     private int size = 10;
+    private int shardSize = -1;
     private Boolean allTerms;
     private Object[] exclude;
     private String regex;
@@ -46,6 +47,7 @@ public class TermsFacetBuilder extends AbstractFacetBuilder {
     private String script;
     private String lang;
     private Map<String, Object> params;
+    private double sample = -1;
     String executionHint;
 
     /**
@@ -93,6 +95,15 @@ public class TermsFacetBuilder extends AbstractFacetBuilder {
         return this;
     }
 
+    /**
+     * Computes the facet over a (deterministic) sample of the docs, taken at the given rate between
+     * <tt>0</tt> (exclusive) and <tt>1</tt>, with the counts scaled back up to estimates over all the docs.
+     */
+    public TermsFacetBuilder sample(double sample) {
+        this.sample = sample;
+        return this;
+    }
+
     /**
      * The field the terms will be collected from.
      */
@@ -134,6 +145,16 @@ public class TermsFacetBuilder extends AbstractFacetBuilder {
         return this;
     }
 
+    /**
+     * The number of top terms each shard returns, at least the size. Asking for more than the size makes
+     * the counts of the returned terms more accurate, see the terms doc count error upper bound. Applies
+     * to string terms. Defaults to the size.
+     */
+    public TermsFacetBuilder shardSize(int shardSize) {
+        this.shardSize = shardSize;
+        return this;
+    }
+
     /**
      * A regular expression to use in order to further filter terms.
      */
@@ -223,6 +244,9 @@ public class TermsFacetBuilder extends AbstractFacetBuilder {
             builder.field("field", fieldName);
         }
         builder.field("size", size);
+        if (shardSize != -1) {
+            builder.field("shard_size", shardSize);
+        }
         if (exclude != null) {
             builder.startArray("exclude");
             for (Object ex : exclude) {
@@ -260,6 +284,9 @@ public class TermsFacetBuilder extends AbstractFacetBuilder {
         builder.endObject();
 
         addFilterFacetAndGlobal(builder, params);
+        if (sample != -1) {
+            builder.field("sample", sample);
+        }
 
         builder.endObject();
         return builder;
@@ -78,6 +78,7 @@ public class TermsFacetProcessor extends AbstractComponent implements FacetProce
     public FacetCollector parse(String facetName, XContentParser parser, SearchContext context) throws IOException {
         String field = null;
         int size = 10;
+        int shardSize = -1;
 
         String[] fieldsNames = null;
         ImmutableSet<String> excluded = ImmutableSet.of();
@@ -120,6 +121,8 @@ public class TermsFacetProcessor extends AbstractComponent implements FacetProce
                     script = parser.text();
                 } else if ("size".equals(currentFieldName)) {
                     size = parser.intValue();
+                } else if ("shard_size".equals(currentFieldName) || "shardSize".equals(currentFieldName)) {
+                    shardSize = parser.intValue();
                 } else if ("all_terms".equals(currentFieldName) || "allTerms".equals(currentFieldName)) {
                     allTerms = parser.booleanValue();
                 } else if ("regex".equals(currentFieldName)) {
@@ -138,6 +141,11 @@ public class TermsFacetProcessor extends AbstractComponent implements FacetProce
             }
         }
 
+        // each shard returns at least the requested size
+        if (shardSize < size) {
+            shardSize = size;
+        }
+
         if ("_index".equals(field)) {
             return new IndexNameFacetCollector(facetName, context.shardTarget().index(), comparatorType, size);
         }
@@ -147,10 +155,10 @@ public class TermsFacetProcessor extends AbstractComponent implements FacetProce
             pattern = Regex.compile(regex, regexFlags);
         }
         if (fieldsNames != null) {
-            return new FieldsTermsStringFacetCollector(facetName, fieldsNames, size, comparatorType, allTerms, context, excluded, pattern, scriptLang, script, params);
+            return new FieldsTermsStringFacetCollector(facetName, fieldsNames, size, shardSize, comparatorType, allTerms, context, excluded, pattern, scriptLang, script, params);
         }
         if (field == null && fieldsNames == null && script != null) {
-            return new ScriptTermsStringFieldFacetCollector(facetName, size, comparatorType, context, excluded, pattern, scriptLang, script, params);
+            return new ScriptTermsStringFieldFacetCollector(facetName, size, shardSize, comparatorType, context, excluded, pattern, scriptLang, script, params);
         }
 
         FieldMapper fieldMapper = context.smartNameFieldMapper(field);
@@ -199,11 +207,11 @@ public class TermsFacetProcessor extends AbstractComponent implements FacetProce
                 }
             } else if (fieldMapper.fieldDataType() == FieldDataType.DefaultTypes.STRING) {
                 if (script == null && !"map".equals(executionHint)) {
-                    return new TermsStringOrdinalsFacetCollector(facetName, field, size, comparatorType, allTerms, context, excluded, pattern);
+                    return new TermsStringOrdinalsFacetCollector(facetName, field, size, shardSize, comparatorType, allTerms, context, excluded, pattern);
                 }
             }
         }
-        return new TermsStringFacetCollector(facetName, field, size, comparatorType, allTerms, context, excluded, pattern, scriptLang, script, params);
+        return new TermsStringFacetCollector(facetName, field, size, shardSize, comparatorType, allTerms, context, excluded, pattern, scriptLang, script, params);
     }
 
     @Override
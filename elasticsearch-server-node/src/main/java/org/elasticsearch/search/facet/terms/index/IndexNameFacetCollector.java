@@ -23,6 +23,7 @@ import com.google.common.collect.Sets;
 import org.apache.lucene.index.IndexReader;
 import org.elasticsearch.search.facet.AbstractFacetCollector;
 import org.elasticsearch.search.facet.Facet;
+import org.elasticsearch.search.facet.SampleableFacetCollector;
 import org.elasticsearch.search.facet.terms.TermsFacet;
 import org.elasticsearch.search.facet.terms.strings.InternalStringTermsFacet;
 
@@ -31,7 +32,7 @@ import java.io.IOException;
 /**
  *
  */
-public class IndexNameFacetCollector extends AbstractFacetCollector {
+public class IndexNameFacetCollector extends AbstractFacetCollector implements SampleableFacetCollector {
 
     private final String indexName;
 
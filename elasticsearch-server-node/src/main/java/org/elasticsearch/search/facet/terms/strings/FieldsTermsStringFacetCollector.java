@@ -35,6 +35,7 @@ import org.elasticsearch.script.SearchScript;
 import org.elasticsearch.search.facet.AbstractFacetCollector;
 import org.elasticsearch.search.facet.Facet;
 import org.elasticsearch.search.facet.FacetPhaseExecutionException;
+import org.elasticsearch.search.facet.SampleableFacetCollector;
 import org.elasticsearch.search.facet.terms.support.EntryPriorityQueue;
 import org.elasticsearch.search.internal.SearchContext;
 
@@ -47,7 +48,7 @@ import java.util.regex.Pattern;
 /**
  *
  */
-public class FieldsTermsStringFacetCollector extends AbstractFacetCollector {
+public class FieldsTermsStringFacetCollector extends AbstractFacetCollector implements SampleableFacetCollector {
 
     private final FieldDataCache fieldDataCache;
 
@@ -57,6 +58,8 @@ public class FieldsTermsStringFacetCollector extends AbstractFacetCollector {
 
     private final int size;
 
+    private final int shardSize;
+
     private final int numberOfShards;
 
     private final FieldDataType[] fieldsDataType;
@@ -67,11 +70,12 @@ public class FieldsTermsStringFacetCollector extends AbstractFacetCollector {
 
     private final SearchScript script;
 
-    public FieldsTermsStringFacetCollector(String facetName, String[] fieldsNames, int size, InternalStringTermsFacet.ComparatorType comparatorType, boolean allTerms, SearchContext context,
+    public FieldsTermsStringFacetCollector(String facetName, String[] fieldsNames, int size, int shardSize, InternalStringTermsFacet.ComparatorType comparatorType, boolean allTerms, SearchContext context,
                                            ImmutableSet<String> excluded, Pattern pattern, String scriptLang, String script, Map<String, Object> params) {
         super(facetName);
         this.fieldDataCache = context.fieldDataCache();
         this.size = size;
+        this.shardSize = shardSize;
         this.comparatorType = comparatorType;
         this.numberOfShards = context.numberOfShards();
 
@@ -146,10 +150,10 @@ public class FieldsTermsStringFacetCollector extends AbstractFacetCollector {
         TObjectIntHashMap<String> facets = aggregator.facets();
         if (facets.isEmpty()) {
             CacheRecycler.pushObjectIntMap(facets);
-            return new InternalStringTermsFacet(facetName, comparatorType, size, ImmutableList.<InternalStringTermsFacet.StringEntry>of(), aggregator.missing(), aggregator.total());
+            return new InternalStringTermsFacet(facetName, comparatorType, size, shardSize, ImmutableList.<InternalStringTermsFacet.StringEntry>of(), aggregator.missing(), aggregator.total());
         } else {
-            if (size < EntryPriorityQueue.LIMIT) {
-                EntryPriorityQueue ordered = new EntryPriorityQueue(size, comparatorType.comparator());
+            if (shardSize < EntryPriorityQueue.LIMIT) {
+                EntryPriorityQueue ordered = new EntryPriorityQueue(shardSize, comparatorType.comparator());
                 for (TObjectIntIterator<String> it = facets.iterator(); it.hasNext(); ) {
                     it.advance();
                     ordered.insertWithOverflow(new InternalStringTermsFacet.StringEntry(it.key(), it.value()));
@@ -159,15 +163,15 @@ public class FieldsTermsStringFacetCollector extends AbstractFacetCollector {
                     list[i] = ((InternalStringTermsFacet.StringEntry) ordered.pop());
                 }
                 CacheRecycler.pushObjectIntMap(facets);
-                return new InternalStringTermsFacet(facetName, comparatorType, size, Arrays.asList(list), aggregator.missing(), aggregator.total());
+                return new InternalStringTermsFacet(facetName, comparatorType, size, shardSize, Arrays.asList(list), aggregator.missing(), aggregator.total());
             } else {
-                BoundedTreeSet<InternalStringTermsFacet.StringEntry> ordered = new BoundedTreeSet<InternalStringTermsFacet.StringEntry>(comparatorType.comparator(), size);
+                BoundedTreeSet<InternalStringTermsFacet.StringEntry> ordered = new BoundedTreeSet<InternalStringTermsFacet.StringEntry>(comparatorType.comparator(), shardSize);
                 for (TObjectIntIterator<String> it = facets.iterator(); it.hasNext(); ) {
                     it.advance();
                     ordered.add(new InternalStringTermsFacet.StringEntry(it.key(), it.value()));
                 }
                 CacheRecycler.pushObjectIntMap(facets);
-                return new InternalStringTermsFacet(facetName, comparatorType, size, ordered, aggregator.missing(), aggregator.total());
+                return new InternalStringTermsFacet(facetName, comparatorType, size, shardSize, ordered, aggregator.missing(), aggregator.total());
             }
         }
     }
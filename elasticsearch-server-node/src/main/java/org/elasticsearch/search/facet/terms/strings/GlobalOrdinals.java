@@ -0,0 +1,152 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.search.facet.terms.strings;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.util.PriorityQueue;
+import org.elasticsearch.index.cache.field.data.FieldDataCache;
+import org.elasticsearch.index.cache.field.data.support.AbstractConcurrentMapFieldDataCache;
+import org.elasticsearch.index.field.data.FieldDataType;
+import org.elasticsearch.index.field.data.strings.StringFieldData;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shard level ordinals of a string field: the sorted union of the terms of all the segments, along with a
+ * mapping from each segment ordinal to its global ordinal. Ordinal <tt>0</tt> marks a doc without a value,
+ * same as with the segment ordinals. Built once per (top level) reader and field, and cached by the index
+ * field data cache, so they are cleared along with the field data they are built from. A warmer running a
+ * terms facet on the field builds them before a refreshed reader is used to search.
+ */
+public class GlobalOrdinals {
+
+    /**
+     * Returns the global ordinals of the field over the segments of the top level reader, building them if
+     * needed.
+     */
+    public static GlobalOrdinals load(final FieldDataCache fieldDataCache, final FieldDataType fieldDataType, final String indexFieldName,
+                                      IndexReader topLevelReader, final IndexReader[] subReaders) throws IOException {
+        if (!(fieldDataCache instanceof AbstractConcurrentMapFieldDataCache)) {
+            // the field data is not cached either
+            return build(fieldDataCache, fieldDataType, indexFieldName, subReaders);
+        }
+        return ((AbstractConcurrentMapFieldDataCache) fieldDataCache).cacheTopLevel(topLevelReader, subReaders, indexFieldName,
+                new AbstractConcurrentMapFieldDataCache.TopLevelLoader<GlobalOrdinals>() {
+                    @Override
+                    public GlobalOrdinals load() throws IOException {
+                        return build(fieldDataCache, fieldDataType, indexFieldName, subReaders);
+                    }
+                });
+    }
+
+    private final String[] values;
+
+    private final Map<Object, int[]> segmentOrdinals;
+
+    GlobalOrdinals(String[] values, Map<Object, int[]> segmentOrdinals) {
+        this.values = values;
+        this.segmentOrdinals = segmentOrdinals;
+    }
+
+    /**
+     * The terms, by global ordinal.
+     */
+    public String[] values() {
+        return values;
+    }
+
+    /**
+     * The mapping from the ordinals of the segment to the global ordinals.
+     */
+    public int[] segmentOrdinals(IndexReader reader) {
+        return segmentOrdinals.get(reader.getCoreCacheKey());
+    }
+
+    public static GlobalOrdinals build(FieldDataCache fieldDataCache, FieldDataType fieldDataType, String indexFieldName, IndexReader[] subReaders) throws IOException {
+        Map<Object, int[]> segmentOrdinals = new IdentityHashMap<Object, int[]>(subReaders.length);
+        SegmentQueue queue = new SegmentQueue(subReaders.length);
+        for (IndexReader reader : subReaders) {
+            StringFieldData fieldData = (StringFieldData) fieldDataCache.cache(fieldDataType, reader, indexFieldName);
+            SegmentTerms segment = new SegmentTerms(fieldData.values());
+            segmentOrdinals.put(reader.getCoreCacheKey(), segment.globalOrdinals);
+            if (segment.nextPosition()) {
+                queue.add(segment);
+            }
+        }
+
+        List<String> values = new ArrayList<String>();
+        values.add(null);
+        while (queue.size() > 0) {
+            SegmentTerms segment = queue.top();
+            String value = segment.current;
+            int globalOrdinal = values.size();
+            values.add(value);
+            do {
+                segment.globalOrdinals[segment.position] = globalOrdinal;
+                if (segment.nextPosition()) {
+                    segment = queue.updateTop();
+                } else {
+                    queue.pop();
+                    segment = queue.top();
+                }
+            } while (segment != null && value.equals(segment.current));
+        }
+        return new GlobalOrdinals(values.toArray(new String[values.size()]), segmentOrdinals);
+    }
+
+    static class SegmentTerms {
+
+        final String[] values;
+        final int[] globalOrdinals;
+
+        int position = 0;
+        String current;
+
+        SegmentTerms(String[] values) {
+            this.values = values;
+            this.globalOrdinals = new int[values.length];
+        }
+
+        boolean nextPosition() {
+            if (++position >= values.length) {
+                return false;
+            }
+            current = values[position];
+            return true;
+        }
+    }
+
+    static class SegmentQueue extends PriorityQueue<SegmentTerms> {
+
+        SegmentQueue(int size) {
+            initialize(size);
+        }
+
+        @Override
+        protected boolean lessThan(SegmentTerms a, SegmentTerms b) {
+            return a.current.compareTo(b.current) < 0;
+        }
+    }
+}
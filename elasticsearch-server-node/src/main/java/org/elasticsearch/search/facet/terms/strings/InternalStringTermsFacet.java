@@ -22,26 +22,33 @@ package org.elasticsearch.search.facet.terms.strings;
 import com.google.common.collect.ImmutableList;
 import gnu.trove.iterator.TObjectIntIterator;
 import gnu.trove.map.hash.TObjectIntHashMap;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.ElasticSearchIllegalStateException;
 import org.elasticsearch.common.CacheRecycler;
 import org.elasticsearch.common.collect.BoundedTreeSet;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentBuilderString;
+import org.elasticsearch.search.facet.CompactFacetStreams;
 import org.elasticsearch.search.facet.Facet;
+import org.elasticsearch.search.facet.SampledFacet;
+import org.elasticsearch.search.facet.SampledFacetCollector;
 import org.elasticsearch.search.facet.terms.InternalTermsFacet;
 import org.elasticsearch.search.facet.terms.TermsFacet;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
 /**
  *
  */
-public class InternalStringTermsFacet extends InternalTermsFacet {
+public class InternalStringTermsFacet extends InternalTermsFacet implements SampledFacet {
 
     private static final String STREAM_TYPE = "tTerms";
 
@@ -65,10 +72,16 @@ public class InternalStringTermsFacet extends InternalTermsFacet {
 
         private String term;
         private int count;
+        private int docCountError;
 
         public StringEntry(String term, int count) {
+            this(term, count, 0);
+        }
+
+        public StringEntry(String term, int count, int docCountError) {
             this.term = term;
             this.count = count;
+            this.docCountError = docCountError;
         }
 
         public String term() {
@@ -97,6 +110,18 @@ public class InternalStringTermsFacet extends InternalTermsFacet {
             return count();
         }
 
+        /**
+         * The most the count of this term can be under its actual count, since shards that did not return it
+         * in their top terms could still have it. <tt>-1</tt> if it can't be bounded (when ordering by reverse count).
+         */
+        public int docCountErrorUpperBound() {
+            return docCountError;
+        }
+
+        public int getDocCountErrorUpperBound() {
+            return docCountErrorUpperBound();
+        }
+
         @Override
         public int compareTo(Entry o) {
             int i = term.compareTo(o.term());
@@ -118,20 +143,62 @@ public class InternalStringTermsFacet extends InternalTermsFacet {
 
     long total;
 
+    long docCountError;
+
+    double sampleRate = 1;
+
     Collection<StringEntry> entries = ImmutableList.of();
 
+    /**
+     * The entries as read from a shard, only decoded into {@link #entries} when needed, so the reduce can
+     * aggregate them without creating an entry per term.
+     */
+    CompactFacetStreams.TermsReader encodedEntries;
+
     ComparatorType comparatorType;
 
     InternalStringTermsFacet() {
     }
 
     public InternalStringTermsFacet(String name, ComparatorType comparatorType, int requiredSize, Collection<StringEntry> entries, long missing, long total) {
+        this(name, comparatorType, requiredSize, requiredSize, entries, missing, total);
+    }
+
+    /**
+     * A shard level facet, holding up to <tt>shardSize</tt> top entries (at least <tt>requiredSize</tt>), so
+     * the reduced counts are more accurate.
+     */
+    public InternalStringTermsFacet(String name, ComparatorType comparatorType, int requiredSize, int shardSize, Collection<StringEntry> entries, long missing, long total) {
         this.name = name;
         this.comparatorType = comparatorType;
         this.requiredSize = requiredSize;
         this.entries = entries;
         this.missing = missing;
         this.total = total;
+        this.docCountError = shardDocCountError(comparatorType, shardSize, entries);
+    }
+
+    /**
+     * The most a term that didn't make it into the shard's top entries could have: if the entries are full
+     * and ordered by count, the lowest count of them.
+     */
+    static long shardDocCountError(ComparatorType comparatorType, int shardSize, Collection<StringEntry> entries) {
+        if (entries.size() < shardSize) {
+            return 0;
+        }
+        if (comparatorType == ComparatorType.REVERSE_COUNT) {
+            return -1;
+        }
+        if (comparatorType != ComparatorType.COUNT) {
+            return 0;
+        }
+        int min = Integer.MAX_VALUE;
+        for (StringEntry entry : entries) {
+            if (entry.count() < min) {
+                min = entry.count();
+            }
+        }
+        return min == Integer.MAX_VALUE ? 0 : min;
     }
 
     @Override
@@ -154,9 +221,30 @@ public class InternalStringTermsFacet extends InternalTermsFacet {
         return type();
     }
 
+    /**
+     * Decodes the entries read from a shard, which are sent ordered by term, back into the facet order.
+     */
+    private Collection<StringEntry> decodedEntries() {
+        if (encodedEntries != null) {
+            try {
+                List<StringEntry> decoded = new ArrayList<StringEntry>(encodedEntries.size());
+                while (encodedEntries.next()) {
+                    int entryDocCountError = docCountError > 0 ? (int) encodedEntries.extra() : (int) docCountError;
+                    decoded.add(new StringEntry(encodedEntries.term(), (int) encodedEntries.count(), entryDocCountError));
+                }
+                Collections.sort(decoded, comparatorType.comparator());
+                entries = decoded;
+            } catch (IOException e) {
+                throw new ElasticSearchIllegalStateException("failed to decode the entries of facet [" + name + "]", e);
+            }
+            encodedEntries = null;
+        }
+        return entries;
+    }
+
     @Override
     public List<StringEntry> entries() {
-        if (!(entries instanceof List)) {
+        if (!(decodedEntries() instanceof List)) {
             entries = ImmutableList.copyOf(entries);
         }
         return (List<StringEntry>) entries;
@@ -170,7 +258,7 @@ public class InternalStringTermsFacet extends InternalTermsFacet {
     @SuppressWarnings({"unchecked"})
     @Override
     public Iterator<Entry> iterator() {
-        return (Iterator) entries.iterator();
+        return (Iterator) decodedEntries().iterator();
     }
 
     @Override
@@ -196,7 +284,7 @@ public class InternalStringTermsFacet extends InternalTermsFacet {
     @Override
     public long otherCount() {
         long other = total;
-        for (Entry entry : entries) {
+        for (Entry entry : decodedEntries()) {
             other -= entry.count();
         }
         return other;
@@ -207,38 +295,133 @@ public class InternalStringTermsFacet extends InternalTermsFacet {
         return otherCount();
     }
 
+    /**
+     * The most a term that is not part of the entries could have. <tt>-1</tt> if it can't be bounded (when
+     * ordering by reverse count).
+     */
+    public long docCountErrorUpperBound() {
+        return docCountError;
+    }
+
+    public long getDocCountErrorUpperBound() {
+        return docCountErrorUpperBound();
+    }
+
+    @Override
+    public void sample(double sampleRate) {
+        this.sampleRate = sampleRate;
+        Collection<StringEntry> entries = decodedEntries();
+        List<StringEntry> scaled = new ArrayList<StringEntry>(entries.size());
+        for (StringEntry entry : entries) {
+            int entryDocCountError = entry.docCountError == -1 ? -1 : (int) SampledFacetCollector.scale(entry.docCountError, sampleRate);
+            scaled.add(new StringEntry(entry.term(), (int) SampledFacetCollector.scale(entry.count(), sampleRate), entryDocCountError));
+        }
+        this.entries = scaled;
+        missing = SampledFacetCollector.scale(missing, sampleRate);
+        total = SampledFacetCollector.scale(total, sampleRate);
+        if (docCountError != -1) {
+            docCountError = SampledFacetCollector.scale(docCountError, sampleRate);
+        }
+    }
+
+    @Override
+    public double sampleRate() {
+        return sampleRate;
+    }
+
     @Override
     public Facet reduce(String name, List<Facet> facets) {
         if (facets.size() == 1) {
-            return facets.get(0);
+            // a single shard, the counts are exact, just drop the extra entries it was asked for
+            InternalStringTermsFacet facet = (InternalStringTermsFacet) facets.get(0);
+            Collection<StringEntry> facetEntries = facet.decodedEntries();
+            facet.docCountError = 0;
+            if (facetEntries.size() > facet.requiredSize) {
+                List<StringEntry> entries = new ArrayList<StringEntry>(facet.requiredSize);
+                for (StringEntry entry : facetEntries) {
+                    if (entries.size() == facet.requiredSize) {
+                        break;
+                    }
+                    entries.add(entry);
+                }
+                facet.entries = entries;
+            }
+            return facet;
         }
         InternalStringTermsFacet first = (InternalStringTermsFacet) facets.get(0);
-        TObjectIntHashMap<String> aggregated = CacheRecycler.popObjectIntMap();
+        // keyed by the UTF-8 bytes of the terms, so the shards' encoded terms are only turned into strings when
+        // they make it into the reduced entries
+        TObjectIntHashMap<BytesRef> aggregated = CacheRecycler.popObjectIntMap();
+        // per term, the part of the total error accounted for by the shards that returned it
+        TObjectIntHashMap<BytesRef> accountedErrors = CacheRecycler.popObjectIntMap();
+        BytesRef scratch = new BytesRef();
         long missing = 0;
         long total = 0;
+        long docCountError = 0;
         for (Facet facet : facets) {
             InternalStringTermsFacet mFacet = (InternalStringTermsFacet) facet;
             missing += mFacet.missingCount();
             total += mFacet.totalCount();
+            if (docCountError != -1) {
+                docCountError = mFacet.docCountError == -1 ? -1 : docCountError + mFacet.docCountError;
+            }
+            if (mFacet.encodedEntries != null) {
+                // aggregate straight from the shard's encoded entries
+                CompactFacetStreams.TermsReader reader = mFacet.encodedEntries;
+                mFacet.encodedEntries = null;
+                try {
+                    while (reader.next()) {
+                        reader.termBytes(scratch);
+                        int entryDocCountError = mFacet.docCountError > 0 ? (int) reader.extra() : (int) mFacet.docCountError;
+                        aggregate(aggregated, accountedErrors, scratch, (int) reader.count(), (int) mFacet.docCountError - entryDocCountError);
+                    }
+                } catch (IOException e) {
+                    throw new ElasticSearchIllegalStateException("failed to decode the entries of facet [" + name + "]", e);
+                }
+                continue;
+            }
             for (InternalStringTermsFacet.StringEntry entry : mFacet.entries) {
-                aggregated.adjustOrPutValue(entry.term(), entry.count(), entry.count());
+                aggregate(aggregated, accountedErrors, new BytesRef(entry.term()), entry.count(), (int) mFacet.docCountError - entry.docCountError);
             }
         }
 
         BoundedTreeSet<StringEntry> ordered = new BoundedTreeSet<StringEntry>(first.comparatorType.comparator(), first.requiredSize);
-        for (TObjectIntIterator<String> it = aggregated.iterator(); it.hasNext(); ) {
+        for (TObjectIntIterator<BytesRef> it = aggregated.iterator(); it.hasNext(); ) {
             it.advance();
-            ordered.add(new StringEntry(it.key(), it.value()));
+            if (!ordered.isEmpty() && ordered.size() >= first.requiredSize) {
+                // the entries are full, skip (without decoding) the terms that can't make it into them
+                int last = ordered.last().count();
+                if (first.comparatorType == ComparatorType.COUNT ? it.value() < last : first.comparatorType == ComparatorType.REVERSE_COUNT && it.value() > last) {
+                    continue;
+                }
+            }
+            int termDocCountError = docCountError == -1 ? -1 : (int) docCountError - accountedErrors.get(it.key());
+            ordered.add(new StringEntry(it.key().utf8ToString(), it.value(), termDocCountError));
         }
         first.entries = ordered;
         first.missing = missing;
         first.total = total;
+        first.docCountError = docCountError;
 
         CacheRecycler.pushObjectIntMap(aggregated);
+        CacheRecycler.pushObjectIntMap(accountedErrors);
 
         return first;
     }
 
+    /**
+     * Adds the count and the accounted error of a term, copying the term only when it is seen for the first time.
+     */
+    private static void aggregate(TObjectIntHashMap<BytesRef> aggregated, TObjectIntHashMap<BytesRef> accountedErrors, BytesRef term, int count, int accounted) {
+        if (aggregated.adjustValue(term, count)) {
+            accountedErrors.adjustValue(term, accounted);
+            return;
+        }
+        BytesRef copy = new BytesRef(Arrays.copyOfRange(term.bytes, term.offset, term.offset + term.length));
+        aggregated.put(copy, count);
+        accountedErrors.put(copy, accounted);
+    }
+
     static final class Fields {
         static final XContentBuilderString _TYPE = new XContentBuilderString("_type");
         static final XContentBuilderString MISSING = new XContentBuilderString("missing");
@@ -247,6 +430,9 @@ public class InternalStringTermsFacet extends InternalTermsFacet {
         static final XContentBuilderString TERMS = new XContentBuilderString("terms");
         static final XContentBuilderString TERM = new XContentBuilderString("term");
         static final XContentBuilderString COUNT = new XContentBuilderString("count");
+        static final XContentBuilderString DOC_COUNT_ERROR_UPPER_BOUND = new XContentBuilderString("doc_count_error_upper_bound");
+        static final XContentBuilderString SAMPLE_RATE = new XContentBuilderString("sample_rate");
+        static final XContentBuilderString COUNT_ERROR = new XContentBuilderString("count_error");
     }
 
     @Override
@@ -256,11 +442,21 @@ public class InternalStringTermsFacet extends InternalTermsFacet {
         builder.field(Fields.MISSING, missing);
         builder.field(Fields.TOTAL, total);
         builder.field(Fields.OTHER, otherCount());
+        builder.field(Fields.DOC_COUNT_ERROR_UPPER_BOUND, docCountError);
+        if (sampleRate < 1) {
+            builder.field(Fields.SAMPLE_RATE, sampleRate);
+        }
         builder.startArray(Fields.TERMS);
-        for (Entry entry : entries) {
+        for (StringEntry entry : decodedEntries()) {
             builder.startObject();
             builder.field(Fields.TERM, entry.term());
             builder.field(Fields.COUNT, entry.count());
+            if (docCountError > 0) {
+                builder.field(Fields.DOC_COUNT_ERROR_UPPER_BOUND, entry.docCountErrorUpperBound());
+            }
+            if (sampleRate < 1) {
+                builder.field(Fields.COUNT_ERROR, SampledFacetCollector.countError(entry.count(), sampleRate));
+            }
             builder.endObject();
         }
         builder.endArray();
@@ -281,12 +477,10 @@ public class InternalStringTermsFacet extends InternalTermsFacet {
         requiredSize = in.readVInt();
         missing = in.readVLong();
         total = in.readVLong();
+        docCountError = in.readLong();
+        sampleRate = in.readDouble();
 
-        int size = in.readVInt();
-        entries = new ArrayList<StringEntry>(size);
-        for (int i = 0; i < size; i++) {
-            entries.add(new StringEntry(in.readUTF(), in.readVInt()));
-        }
+        encodedEntries = CompactFacetStreams.TermsReader.readFrom(in);
     }
 
     @Override
@@ -296,11 +490,18 @@ public class InternalStringTermsFacet extends InternalTermsFacet {
         out.writeVInt(requiredSize);
         out.writeVLong(missing);
         out.writeVLong(total);
-
-        out.writeVInt(entries.size());
-        for (Entry entry : entries) {
-            out.writeUTF(entry.term());
-            out.writeVInt(entry.count());
+        out.writeLong(docCountError);
+        out.writeDouble(sampleRate);
+
+        // written ordered by term, so the terms can share their prefixes
+        Collection<StringEntry> entries = decodedEntries();
+        StringEntry[] sorted = entries.toArray(new StringEntry[entries.size()]);
+        Arrays.sort(sorted, ComparatorType.TERM.comparator());
+        // the per entry errors are only sent when they can differ
+        CompactFacetStreams.TermsWriter writer = new CompactFacetStreams.TermsWriter(docCountError > 0);
+        for (StringEntry entry : sorted) {
+            writer.add(entry.term(), entry.count(), docCountError > 0 ? entry.docCountErrorUpperBound() : 0);
         }
+        writer.writeTo(out);
     }
 }
\ No newline at end of file
@@ -30,6 +30,7 @@ import org.elasticsearch.common.collect.BoundedTreeSet;
 import org.elasticsearch.script.SearchScript;
 import org.elasticsearch.search.facet.AbstractFacetCollector;
 import org.elasticsearch.search.facet.Facet;
+import org.elasticsearch.search.facet.SampleableFacetCollector;
 import org.elasticsearch.search.facet.terms.support.EntryPriorityQueue;
 import org.elasticsearch.search.internal.SearchContext;
 
@@ -42,12 +43,14 @@ import java.util.regex.Pattern;
 /**
  *
  */
-public class ScriptTermsStringFieldFacetCollector extends AbstractFacetCollector {
+public class ScriptTermsStringFieldFacetCollector extends AbstractFacetCollector implements SampleableFacetCollector {
 
     private final InternalStringTermsFacet.ComparatorType comparatorType;
 
     private final int size;
 
+    private final int shardSize;
+
     private final int numberOfShards;
 
     private final SearchScript script;
@@ -61,10 +64,11 @@ public class ScriptTermsStringFieldFacetCollector extends AbstractFacetCollector
     private int missing;
     private int total;
 
-    public ScriptTermsStringFieldFacetCollector(String facetName, int size, InternalStringTermsFacet.ComparatorType comparatorType, SearchContext context,
+    public ScriptTermsStringFieldFacetCollector(String facetName, int size, int shardSize, InternalStringTermsFacet.ComparatorType comparatorType, SearchContext context,
                                                 ImmutableSet<String> excluded, Pattern pattern, String scriptLang, String script, Map<String, Object> params) {
         super(facetName);
         this.size = size;
+        this.shardSize = shardSize;
         this.comparatorType = comparatorType;
         this.numberOfShards = context.numberOfShards();
         this.script = context.scriptService().search(context.lookup(), scriptLang, script, params);
@@ -144,10 +148,10 @@ public class ScriptTermsStringFieldFacetCollector extends AbstractFacetCollector
     public Facet facet() {
         if (facets.isEmpty()) {
             CacheRecycler.pushObjectIntMap(facets);
-            return new InternalStringTermsFacet(facetName, comparatorType, size, ImmutableList.<InternalStringTermsFacet.StringEntry>of(), missing, total);
+            return new InternalStringTermsFacet(facetName, comparatorType, size, shardSize, ImmutableList.<InternalStringTermsFacet.StringEntry>of(), missing, total);
         } else {
-            if (size < EntryPriorityQueue.LIMIT) {
-                EntryPriorityQueue ordered = new EntryPriorityQueue(size, comparatorType.comparator());
+            if (shardSize < EntryPriorityQueue.LIMIT) {
+                EntryPriorityQueue ordered = new EntryPriorityQueue(shardSize, comparatorType.comparator());
                 for (TObjectIntIterator<String> it = facets.iterator(); it.hasNext(); ) {
                     it.advance();
                     ordered.insertWithOverflow(new InternalStringTermsFacet.StringEntry(it.key(), it.value()));
@@ -157,15 +161,15 @@ public class ScriptTermsStringFieldFacetCollector extends AbstractFacetCollector
                     list[i] = ((InternalStringTermsFacet.StringEntry) ordered.pop());
                 }
                 CacheRecycler.pushObjectIntMap(facets);
-                return new InternalStringTermsFacet(facetName, comparatorType, size, Arrays.asList(list), missing, total);
+                return new InternalStringTermsFacet(facetName, comparatorType, size, shardSize, Arrays.asList(list), missing, total);
             } else {
-                BoundedTreeSet<InternalStringTermsFacet.StringEntry> ordered = new BoundedTreeSet<InternalStringTermsFacet.StringEntry>(comparatorType.comparator(), size);
+                BoundedTreeSet<InternalStringTermsFacet.StringEntry> ordered = new BoundedTreeSet<InternalStringTermsFacet.StringEntry>(comparatorType.comparator(), shardSize);
                 for (TObjectIntIterator<String> it = facets.iterator(); it.hasNext(); ) {
                     it.advance();
                     ordered.add(new InternalStringTermsFacet.StringEntry(it.key(), it.value()));
                 }
                 CacheRecycler.pushObjectIntMap(facets);
-                return new InternalStringTermsFacet(facetName, comparatorType, size, ordered, missing, total);
+                return new InternalStringTermsFacet(facetName, comparatorType, size, shardSize, ordered, missing, total);
             }
         }
     }
@@ -21,32 +21,31 @@ package org.elasticsearch.search.facet.terms.strings;
 
 import com.google.common.collect.ImmutableSet;
 import org.apache.lucene.index.IndexReader;
-import org.apache.lucene.util.PriorityQueue;
 import org.elasticsearch.ElasticSearchIllegalArgumentException;
 import org.elasticsearch.common.CacheRecycler;
 import org.elasticsearch.common.collect.BoundedTreeSet;
 import org.elasticsearch.index.cache.field.data.FieldDataCache;
 import org.elasticsearch.index.field.data.FieldData;
 import org.elasticsearch.index.field.data.FieldDataType;
-import org.elasticsearch.index.field.data.strings.StringFieldData;
 import org.elasticsearch.index.mapper.MapperService;
 import org.elasticsearch.search.facet.AbstractFacetCollector;
 import org.elasticsearch.search.facet.Facet;
+import org.elasticsearch.search.facet.FacetPhaseExecutionException;
+import org.elasticsearch.search.facet.SampleableFacetCollector;
 import org.elasticsearch.search.facet.terms.TermsFacet;
 import org.elasticsearch.search.facet.terms.support.EntryPriorityQueue;
 import org.elasticsearch.search.internal.SearchContext;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
- *
+ * Counts terms by their shard level {@link GlobalOrdinals}, into a single counts array across all the
+ * segments, and only resolves the top terms at the end.
  */
-public class TermsStringOrdinalsFacetCollector extends AbstractFacetCollector {
+public class TermsStringOrdinalsFacetCollector extends AbstractFacetCollector implements SampleableFacetCollector {
 
     private final FieldDataCache fieldDataCache;
 
@@ -56,30 +55,30 @@ public class TermsStringOrdinalsFacetCollector extends AbstractFacetCollector {
 
     private final int size;
 
+    private final int shardSize;
+
     private final int numberOfShards;
 
     private final int minCount;
 
     private final FieldDataType fieldDataType;
 
-    private StringFieldData fieldData;
+    private FieldData fieldData;
 
-    private final List<ReaderAggregator> aggregators;
+    private final GlobalOrdinals globalOrdinals;
 
-    private ReaderAggregator current;
-
-    long missing;
-    long total;
+    private final OrdinalsAggregator aggregator;
 
     private final ImmutableSet<String> excluded;
 
     private final Matcher matcher;
 
-    public TermsStringOrdinalsFacetCollector(String facetName, String fieldName, int size, TermsFacet.ComparatorType comparatorType, boolean allTerms, SearchContext context,
+    public TermsStringOrdinalsFacetCollector(String facetName, String fieldName, int size, int shardSize, TermsFacet.ComparatorType comparatorType, boolean allTerms, SearchContext context,
                                              ImmutableSet<String> excluded, Pattern pattern) {
         super(facetName);
         this.fieldDataCache = context.fieldDataCache();
         this.size = size;
+        this.shardSize = shardSize;
         this.comparatorType = comparatorType;
         this.numberOfShards = context.numberOfShards();
 
@@ -113,75 +112,40 @@ public class TermsStringOrdinalsFacetCollector extends AbstractFacetCollector {
             minCount = 0;
         }
 
-        this.aggregators = new ArrayList<ReaderAggregator>(context.searcher().subReaders().length);
+        try {
+            this.globalOrdinals = GlobalOrdinals.load(fieldDataCache, fieldDataType, indexFieldName, context.searcher().getIndexReader(), context.searcher().subReaders());
+        } catch (IOException e) {
+            throw new FacetPhaseExecutionException(facetName, "failed to load global ordinals for [" + fieldName + "]", e);
+        }
+        this.aggregator = new OrdinalsAggregator(CacheRecycler.popIntArray(globalOrdinals.values().length));
     }
 
     @Override
     protected void doSetNextReader(IndexReader reader, int docBase) throws IOException {
-        if (current != null) {
-            missing += current.counts[0];
-            total += current.total - current.counts[0];
-            if (current.values.length > 1) {
-                aggregators.add(current);
-            }
-        }
-        fieldData = (StringFieldData) fieldDataCache.cache(fieldDataType, reader, indexFieldName);
-        current = new ReaderAggregator(fieldData);
+        fieldData = fieldDataCache.cache(fieldDataType, reader, indexFieldName);
+        aggregator.segmentOrdinals = globalOrdinals.segmentOrdinals(reader);
     }
 
     @Override
     protected void doCollect(int doc) throws IOException {
-        fieldData.forEachOrdinalInDoc(doc, current);
+        fieldData.forEachOrdinalInDoc(doc, aggregator);
     }
 
     @Override
     public Facet facet() {
-        if (current != null) {
-            missing += current.counts[0];
-            total += current.total - current.counts[0];
-            // if we have values for this one, add it
-            if (current.values.length > 1) {
-                aggregators.add(current);
-            }
-        }
-
-        AggregatorPriorityQueue queue = new AggregatorPriorityQueue(aggregators.size());
-
-        for (ReaderAggregator aggregator : aggregators) {
-            if (aggregator.nextPosition()) {
-                queue.add(aggregator);
-            }
-        }
+        String[] values = globalOrdinals.values();
+        int[] counts = aggregator.counts;
+        long missing = counts[0];
+        long total = aggregator.total - missing;
 
         // YACK, we repeat the same logic, but once with an optimizer priority queue for smaller sizes
-        if (size < EntryPriorityQueue.LIMIT) {
+        if (shardSize < EntryPriorityQueue.LIMIT) {
             // optimize to use priority size
-            EntryPriorityQueue ordered = new EntryPriorityQueue(size, comparatorType.comparator());
-
-            while (queue.size() > 0) {
-                ReaderAggregator agg = queue.top();
-                String value = agg.current;
-                int count = 0;
-                do {
-                    count += agg.counts[agg.position];
-                    if (agg.nextPosition()) {
-                        agg = queue.updateTop();
-                    } else {
-                        // we are done with this reader
-                        queue.pop();
-                        agg = queue.top();
-                    }
-                } while (agg != null && value.equals(agg.current));
-
-                if (count > minCount) {
-                    if (excluded != null && excluded.contains(value)) {
-                        continue;
-                    }
-                    if (matcher != null && !matcher.reset(value).matches()) {
-                        continue;
-                    }
-                    InternalStringTermsFacet.StringEntry entry = new InternalStringTermsFacet.StringEntry(value, count);
-                    ordered.insertWithOverflow(entry);
+            EntryPriorityQueue ordered = new EntryPriorityQueue(shardSize, comparatorType.comparator());
+
+            for (int ord = 1; ord < values.length; ord++) {
+                if (counts[ord] > minCount && accept(values[ord])) {
+                    ordered.insertWithOverflow(new InternalStringTermsFacet.StringEntry(values[ord], counts[ord]));
                 }
             }
             InternalStringTermsFacet.StringEntry[] list = new InternalStringTermsFacet.StringEntry[ordered.size()];
@@ -189,88 +153,50 @@ public class TermsStringOrdinalsFacetCollector extends AbstractFacetCollector {
                 list[i] = (InternalStringTermsFacet.StringEntry) ordered.pop();
             }
 
-            for (ReaderAggregator aggregator : aggregators) {
-                CacheRecycler.pushIntArray(aggregator.counts);
-            }
+            CacheRecycler.pushIntArray(counts);
 
-            return new InternalStringTermsFacet(facetName, comparatorType, size, Arrays.asList(list), missing, total);
+            return new InternalStringTermsFacet(facetName, comparatorType, size, shardSize, Arrays.asList(list), missing, total);
         }
 
-        BoundedTreeSet<InternalStringTermsFacet.StringEntry> ordered = new BoundedTreeSet<InternalStringTermsFacet.StringEntry>(comparatorType.comparator(), size);
-
-        while (queue.size() > 0) {
-            ReaderAggregator agg = queue.top();
-            String value = agg.current;
-            int count = 0;
-            do {
-                count += agg.counts[agg.position];
-                if (agg.nextPosition()) {
-                    agg = queue.updateTop();
-                } else {
-                    // we are done with this reader
-                    queue.pop();
-                    agg = queue.top();
-                }
-            } while (agg != null && value.equals(agg.current));
+        BoundedTreeSet<InternalStringTermsFacet.StringEntry> ordered = new BoundedTreeSet<InternalStringTermsFacet.StringEntry>(comparatorType.comparator(), shardSize);
 
-            if (count > minCount) {
-                if (excluded != null && excluded.contains(value)) {
-                    continue;
-                }
-                if (matcher != null && !matcher.reset(value).matches()) {
-                    continue;
-                }
-                InternalStringTermsFacet.StringEntry entry = new InternalStringTermsFacet.StringEntry(value, count);
-                ordered.add(entry);
+        for (int ord = 1; ord < values.length; ord++) {
+            if (counts[ord] > minCount && accept(values[ord])) {
+                ordered.add(new InternalStringTermsFacet.StringEntry(values[ord], counts[ord]));
             }
         }
 
+        CacheRecycler.pushIntArray(counts);
 
-        for (ReaderAggregator aggregator : aggregators) {
-            CacheRecycler.pushIntArray(aggregator.counts);
-        }
+        return new InternalStringTermsFacet(facetName, comparatorType, size, shardSize, ordered, missing, total);
+    }
 
-        return new InternalStringTermsFacet(facetName, comparatorType, size, ordered, missing, total);
+    private boolean accept(String value) {
+        if (excluded != null && excluded.contains(value)) {
+            return false;
+        }
+        if (matcher != null && !matcher.reset(value).matches()) {
+            return false;
+        }
+        return true;
     }
 
-    public static class ReaderAggregator implements FieldData.OrdinalInDocProc {
+    public static class OrdinalsAggregator implements FieldData.OrdinalInDocProc {
 
-        final String[] values;
         final int[] counts;
 
-        int position = 0;
-        String current;
-        int total;
+        int[] segmentOrdinals;
+
+        long total;
 
-        public ReaderAggregator(StringFieldData fieldData) {
-            this.values = fieldData.values();
-            this.counts = CacheRecycler.popIntArray(fieldData.values().length);
+        public OrdinalsAggregator(int[] counts) {
+            this.counts = counts;
         }
 
         @Override
         public void onOrdinal(int docId, int ordinal) {
-            counts[ordinal]++;
+            counts[segmentOrdinals[ordinal]]++;
             total++;
         }
-
-        public boolean nextPosition() {
-            if (++position >= values.length) {
-                return false;
-            }
-            current = values[position];
-            return true;
-        }
-    }
-
-    public static class AggregatorPriorityQueue extends PriorityQueue<ReaderAggregator> {
-
-        public AggregatorPriorityQueue(int size) {
-            initialize(size);
-        }
-
-        @Override
-        protected boolean lessThan(ReaderAggregator a, ReaderAggregator b) {
-            return a.current.compareTo(b.current) < 0;
-        }
     }
 }
@@ -31,6 +31,7 @@ import org.elasticsearch.search.facet.FacetPhaseExecutionException;
 import org.elasticsearch.search.facet.FacetProcessor;
 import org.elasticsearch.search.facet.termsstats.doubles.TermsStatsDoubleFacetCollector;
 import org.elasticsearch.search.facet.termsstats.longs.TermsStatsLongFacetCollector;
+import org.elasticsearch.search.facet.termsstats.strings.RollupTermsStatsFacetCollector;
 import org.elasticsearch.search.facet.termsstats.strings.TermsStatsStringFacetCollector;
 import org.elasticsearch.search.internal.SearchContext;
 
@@ -60,6 +61,7 @@ public class TermsStatsFacetProcessor extends AbstractComponent implements Facet
         String scriptLang = null;
         String script = null;
         Map<String, Object> params = null;
+        boolean rollup = false;
 
         String currentFieldName = null;
         XContentParser.Token token;
@@ -91,6 +93,8 @@ public class TermsStatsFacetProcessor extends AbstractComponent implements Facet
                     script = parser.text();
                 } else if ("lang".equals(currentFieldName)) {
                     scriptLang = parser.text();
+                } else if ("rollup".equals(currentFieldName)) {
+                    rollup = parser.booleanValue();
                 }
             }
         }
@@ -102,6 +106,13 @@ public class TermsStatsFacetProcessor extends AbstractComponent implements Facet
             throw new FacetPhaseExecutionException(facetName, "either [value_field] or [script] are required to be set for terms stats facet");
         }
 
+        if (rollup) {
+            if (valueField == null) {
+                throw new FacetPhaseExecutionException(facetName, "[value_field] is required to be set for terms stats facet over a rollup index");
+            }
+            return new RollupTermsStatsFacetCollector(facetName, keyField, valueField, size, comparatorType, context);
+        }
+
         FieldMapper keyFieldMapper = context.smartNameFieldMapper(keyField);
         if (keyFieldMapper != null) {
             if (keyFieldMapper.fieldDataType() == FieldDataType.DefaultTypes.LONG) {
@@ -0,0 +1,193 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.search.facet.termsstats.strings;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.apache.lucene.index.IndexReader;
+import org.elasticsearch.common.CacheRecycler;
+import org.elasticsearch.common.trove.ExtTHashMap;
+import org.elasticsearch.index.cache.field.data.FieldDataCache;
+import org.elasticsearch.index.field.data.FieldData;
+import org.elasticsearch.index.field.data.FieldDataType;
+import org.elasticsearch.index.field.data.NumericFieldData;
+import org.elasticsearch.index.mapper.FieldMapper;
+import org.elasticsearch.index.mapper.MapperService;
+import org.elasticsearch.indices.rollup.RollupConfig;
+import org.elasticsearch.search.facet.AbstractFacetCollector;
+import org.elasticsearch.search.facet.Facet;
+import org.elasticsearch.search.facet.FacetPhaseExecutionException;
+import org.elasticsearch.search.facet.termsstats.TermsStatsFacet;
+import org.elasticsearch.search.internal.SearchContext;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A terms stats facet collector over the docs of a {@link RollupConfig rollup} index, keyed by a dimension of the
+ * rollup. Each doc stands for {@link RollupConfig#COUNT_FIELD its count} raw docs, with the value count, sum, min
+ * and max of the value field rolled up into their own fields. Builds the same facet as the collector over the raw docs,
+ * the docs without a term of the dimension counting as missing.
+ */
+public class RollupTermsStatsFacetCollector extends AbstractFacetCollector {
+
+    private final TermsStatsFacet.ComparatorType comparatorType;
+
+    private final FieldDataCache fieldDataCache;
+
+    private final String keyFieldName;
+
+    private final FieldDataType keyFieldDataType;
+
+    private final int size;
+
+    private final FieldMapper countMapper;
+    private final FieldMapper valueCountMapper;
+    private final FieldMapper sumMapper;
+    private final FieldMapper minMapper;
+    private final FieldMapper maxMapper;
+
+    private FieldData keyFieldData;
+
+    private final Aggregator aggregator = new Aggregator();
+
+    public RollupTermsStatsFacetCollector(String facetName, String keyFieldName, String valueFieldName, int size,
+                                          TermsStatsFacet.ComparatorType comparatorType, SearchContext context) {
+        super(facetName);
+        this.fieldDataCache = context.fieldDataCache();
+        this.size = size;
+        this.comparatorType = comparatorType;
+
+        MapperService.SmartNameFieldMappers smartMappers = context.smartFieldMappers(keyFieldName);
+        if (smartMappers == null || !smartMappers.hasMapper()) {
+            throw new FacetPhaseExecutionException(facetName, "No mapping found for field [" + keyFieldName + "]");
+        }
+        // add type filter if there is exact doc mapper associated with it
+        if (smartMappers.explicitTypeInNameWithDocMapper()) {
+            setFilter(context.filterCache().cache(smartMappers.docMapper().typeFilter()));
+        }
+        this.keyFieldName = smartMappers.mapper().names().indexName();
+        this.keyFieldDataType = smartMappers.mapper().fieldDataType();
+
+        this.countMapper = rollupMapper(facetName, RollupConfig.COUNT_FIELD, context);
+        this.valueCountMapper = rollupMapper(facetName, RollupConfig.valueCountField(valueFieldName), context);
+        this.sumMapper = rollupMapper(facetName, RollupConfig.sumField(valueFieldName), context);
+        this.minMapper = rollupMapper(facetName, RollupConfig.minField(valueFieldName), context);
+        this.maxMapper = rollupMapper(facetName, RollupConfig.maxField(valueFieldName), context);
+    }
+
+    private static FieldMapper rollupMapper(String facetName, String fieldName, SearchContext context) {
+        FieldMapper mapper = context.smartNameFieldMapper(fieldName);
+        if (mapper == null) {
+            throw new FacetPhaseExecutionException(facetName, "No mapping found for rollup field [" + fieldName + "], is it a rollup index?");
+        }
+        return mapper;
+    }
+
+    private NumericFieldData rollupFieldData(IndexReader reader, FieldMapper mapper) throws IOException {
+        return (NumericFieldData) fieldDataCache.cache(mapper.fieldDataType(), reader, mapper.names().indexName());
+    }
+
+    @Override
+    protected void doSetNextReader(IndexReader reader, int docBase) throws IOException {
+        keyFieldData = fieldDataCache.cache(keyFieldDataType, reader, keyFieldName);
+        aggregator.countFieldData = rollupFieldData(reader, countMapper);
+        aggregator.valueCountFieldData = rollupFieldData(reader, valueCountMapper);
+        aggregator.sumFieldData = rollupFieldData(reader, sumMapper);
+        aggregator.minFieldData = rollupFieldData(reader, minMapper);
+        aggregator.maxFieldData = rollupFieldData(reader, maxMapper);
+    }
+
+    @Override
+    protected void doCollect(int doc) throws IOException {
+        keyFieldData.forEachValueInDoc(doc, aggregator);
+    }
+
+    @Override
+    public Facet facet() {
+        if (aggregator.entries.isEmpty()) {
+            return new InternalTermsStatsStringFacet(facetName, comparatorType, size, ImmutableList.<InternalTermsStatsStringFacet.StringEntry>of(), aggregator.missing);
+        }
+        if (size == 0) { // all terms
+            // all terms, just return the collection, we will sort it on the way back
+            return new InternalTermsStatsStringFacet(facetName, comparatorType, 0 /* indicates all terms*/, aggregator.entries.values(), aggregator.missing);
+        }
+        Object[] values = aggregator.entries.internalValues();
+        Arrays.sort(values, (Comparator) comparatorType.comparator());
+
+        List<InternalTermsStatsStringFacet.StringEntry> ordered = Lists.newArrayList();
+        for (int i = 0; i < size; i++) {
+            InternalTermsStatsStringFacet.StringEntry value = (InternalTermsStatsStringFacet.StringEntry) values[i];
+            if (value == null) {
+                break;
+            }
+            ordered.add(value);
+        }
+
+        CacheRecycler.pushHashMap(aggregator.entries); // fine to push here, we are done with it
+        return new InternalTermsStatsStringFacet(facetName, comparatorType, size, ordered, aggregator.missing);
+    }
+
+    static class Aggregator implements FieldData.StringValueInDocProc {
+
+        final ExtTHashMap<String, InternalTermsStatsStringFacet.StringEntry> entries = CacheRecycler.popHashMap();
+
+        NumericFieldData countFieldData;
+        NumericFieldData valueCountFieldData;
+        NumericFieldData sumFieldData;
+        NumericFieldData minFieldData;
+        NumericFieldData maxFieldData;
+
+        long missing;
+
+        @Override
+        public void onValue(int docId, String value) {
+            InternalTermsStatsStringFacet.StringEntry stringEntry = entries.get(value);
+            if (stringEntry == null) {
+                stringEntry = new InternalTermsStatsStringFacet.StringEntry(value, 0, 0, 0, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY);
+                entries.put(value, stringEntry);
+            }
+            stringEntry.count += countFieldData.longValue(docId);
+            // buckets without a value of the field have no stats rolled up
+            if (!valueCountFieldData.hasValue(docId)) {
+                return;
+            }
+            stringEntry.totalCount += valueCountFieldData.longValue(docId);
+            stringEntry.total += sumFieldData.doubleValue(docId);
+            double min = minFieldData.doubleValue(docId);
+            if (min < stringEntry.min) {
+                stringEntry.min = min;
+            }
+            double max = maxFieldData.doubleValue(docId);
+            if (max > stringEntry.max) {
+                stringEntry.max = max;
+            }
+        }
+
+        @Override
+        public void onMissing(int docId) {
+            // the raw docs missing the dimension are rolled up into docs without a term
+            missing += countFieldData.longValue(docId);
+        }
+    }
+}
@@ -0,0 +1,312 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.search.facet.tophits;
+
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentBuilderString;
+import org.elasticsearch.search.facet.Facet;
+import org.elasticsearch.search.facet.InternalFacet;
+import org.elasticsearch.search.lookup.SourceLookup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *
+ */
+public class InternalTopHitsFacet implements TopHitsFacet, InternalFacet {
+
+    private static final String STREAM_TYPE = "topHits";
+
+    public static void registerStreams() {
+        Streams.registerStream(STREAM, STREAM_TYPE);
+    }
+
+    static Stream STREAM = new Stream() {
+        @Override
+        public Facet readFacet(String type, StreamInput in) throws IOException {
+            return readTopHitsFacet(in);
+        }
+    };
+
+    @Override
+    public String streamType() {
+        return STREAM_TYPE;
+    }
+
+    public static class TermEntry implements Entry {
+
+        String term;
+
+        int count;
+
+        List<TopHit> hits;
+
+        public TermEntry(String term, int count, List<TopHit> hits) {
+            this.term = term;
+            this.count = count;
+            this.hits = hits;
+        }
+
+        @Override
+        public String term() {
+            return term;
+        }
+
+        @Override
+        public String getTerm() {
+            return term();
+        }
+
+        @Override
+        public int count() {
+            return count;
+        }
+
+        @Override
+        public int getCount() {
+            return count();
+        }
+
+        @Override
+        public List<TopHit> hits() {
+            return hits;
+        }
+
+        @Override
+        public List<TopHit> getHits() {
+            return hits();
+        }
+    }
+
+    public static class TopHit implements Hit {
+
+        private final String id;
+
+        private final String type;
+
+        private final float score;
+
+        private final BytesReference source;
+
+        public TopHit(String id, String type, float score, BytesReference source) {
+            this.id = id;
+            this.type = type;
+            this.score = score;
+            this.source = source;
+        }
+
+        @Override
+        public String id() {
+            return id;
+        }
+
+        @Override
+        public String getId() {
+            return id();
+        }
+
+        @Override
+        public String type() {
+            return type;
+        }
+
+        @Override
+        public String getType() {
+            return type();
+        }
+
+        @Override
+        public float score() {
+            return score;
+        }
+
+        @Override
+        public float getScore() {
+            return score();
+        }
+
+        @Override
+        public Map<String, Object> sourceAsMap() {
+            if (source == null) {
+                return null;
+            }
+            return SourceLookup.sourceAsMap(source);
+        }
+
+        @Override
+        public Map<String, Object> getSource() {
+            return sourceAsMap();
+        }
+    }
+
+    private String name;
+
+    int requiredSize;
+
+    int hitsSize;
+
+    List<TermEntry> entries;
+
+    private InternalTopHitsFacet() {
+    }
+
+    public InternalTopHitsFacet(String name, int requiredSize, int hitsSize, List<TermEntry> entries) {
+        this.name = name;
+        this.requiredSize = requiredSize;
+        this.hitsSize = hitsSize;
+        this.entries = entries;
+    }
+
+    @Override
+    public String name() {
+        return this.name;
+    }
+
+    @Override
+    public String getName() {
+        return name();
+    }
+
+    @Override
+    public String type() {
+        return TYPE;
+    }
+
+    @Override
+    public String getType() {
+        return TYPE;
+    }
+
+    @Override
+    public List<TermEntry> entries() {
+        return entries;
+    }
+
+    @Override
+    public List<TermEntry> getEntries() {
+        return entries();
+    }
+
+    @SuppressWarnings({"unchecked"})
+    @Override
+    public Iterator<Entry> iterator() {
+        return (Iterator) entries.iterator();
+    }
+
+    static final class Fields {
+        static final XContentBuilderString _TYPE = new XContentBuilderString("_type");
+        static final XContentBuilderString TERMS = new XContentBuilderString("terms");
+        static final XContentBuilderString TERM = new XContentBuilderString("term");
+        static final XContentBuilderString COUNT = new XContentBuilderString("count");
+        static final XContentBuilderString HITS = new XContentBuilderString("hits");
+        static final XContentBuilderString _ID = new XContentBuilderString("_id");
+        static final XContentBuilderString _SCORE = new XContentBuilderString("_score");
+        static final XContentBuilderString _SOURCE = new XContentBuilderString("_source");
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject(name);
+        builder.field(Fields._TYPE, TopHitsFacet.TYPE);
+        builder.startArray(Fields.TERMS);
+        for (TermEntry entry : entries) {
+            builder.startObject();
+            builder.field(Fields.TERM, entry.term());
+            builder.field(Fields.COUNT, entry.count());
+            builder.startArray(Fields.HITS);
+            for (TopHit hit : entry.hits()) {
+                builder.startObject();
+                builder.field(Fields._ID, hit.id());
+                builder.field(Fields._TYPE, hit.type());
+                builder.field(Fields._SCORE, hit.score());
+                if (hit.source != null) {
+                    builder.field(Fields._SOURCE, hit.sourceAsMap());
+                }
+                builder.endObject();
+            }
+            builder.endArray();
+            builder.endObject();
+        }
+        builder.endArray();
+        builder.endObject();
+        return builder;
+    }
+
+    public static TopHitsFacet readTopHitsFacet(StreamInput in) throws IOException {
+        InternalTopHitsFacet facet = new InternalTopHitsFacet();
+        facet.readFrom(in);
+        return facet;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        name = in.readUTF();
+        requiredSize = in.readVInt();
+        hitsSize = in.readVInt();
+        int size = in.readVInt();
+        entries = new ArrayList<TermEntry>(size);
+        for (int i = 0; i < size; i++) {
+            String term = in.readUTF();
+            int count = in.readVInt();
+            int numberOfHits = in.readVInt();
+            List<TopHit> hits = new ArrayList<TopHit>(numberOfHits);
+            for (int j = 0; j < numberOfHits; j++) {
+                String id = in.readUTF();
+                String type = in.readUTF();
+                float score = in.readFloat();
+                BytesReference source = in.readBoolean() ? in.readBytesReference() : null;
+                hits.add(new TopHit(id, type, score, source));
+            }
+            entries.add(new TermEntry(term, count, hits));
+        }
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeUTF(name);
+        out.writeVInt(requiredSize);
+        out.writeVInt(hitsSize);
+        out.writeVInt(entries.size());
+        for (TermEntry entry : entries) {
+            out.writeUTF(entry.term());
+            out.writeVInt(entry.count());
+            out.writeVInt(entry.hits().size());
+            for (TopHit hit : entry.hits()) {
+                out.writeUTF(hit.id());
+                out.writeUTF(hit.type());
+                out.writeFloat(hit.score());
+                if (hit.source == null) {
+                    out.writeBoolean(false);
+                } else {
+                    out.writeBoolean(true);
+                    out.writeBytesReference(hit.source);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.search.facet.tophits;
+
+import org.elasticsearch.search.facet.Facet;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The top terms of a field, along with the best scoring docs of each term.
+ */
+public interface TopHitsFacet extends Facet, Iterable<TopHitsFacet.Entry> {
+
+    /**
+     * The type of the top hits facet.
+     */
+    public static final String TYPE = "top_hits";
+
+    /**
+     * The terms, ordered by their doc count.
+     */
+    List<? extends Entry> entries();
+
+    /**
+     * The terms, ordered by their doc count.
+     */
+    List<? extends Entry> getEntries();
+
+    public interface Entry {
+
+        String term();
+
+        String getTerm();
+
+        /**
+         * The number of docs with the term.
+         */
+        int count();
+
+        int getCount();
+
+        /**
+         * The best scoring docs with the term, best first.
+         */
+        List<? extends Hit> hits();
+
+        List<? extends Hit> getHits();
+    }
+
+    public interface Hit {
+
+        String id();
+
+        String getId();
+
+        String type();
+
+        String getType();
+
+        float score();
+
+        float getScore();
+
+        /**
+         * The source of the doc, <tt>null</tt> if it is not stored.
+         */
+        Map<String, Object> sourceAsMap();
+
+        Map<String, Object> getSource();
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.search.facet.tophits;
+
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.index.query.FilterBuilder;
+import org.elasticsearch.search.builder.SearchSourceBuilderException;
+import org.elasticsearch.search.facet.AbstractFacetBuilder;
+
+import java.io.IOException;
+
+/**
+ * Builds a top hits facet, returning the <tt>size</tt> terms of a (string) field with the most docs, along with
+ * the best <tt>hitsSize</tt> scoring docs of each term.
+ */
+public class TopHitsFacetBuilder extends AbstractFacetBuilder {
+    private String fieldName;
+    private int size = -1;
+    private int hitsSize = -1;
+
+    public TopHitsFacetBuilder(String name) {
+        super(name);
+    }
+
+    /**
+     * The (string) field the docs are grouped by.
+     */
+    public TopHitsFacetBuilder field(String field) {
+        this.fieldName = field;
+        return this;
+    }
+
+    /**
+     * The number of terms to return, defaults to <tt>10</tt>.
+     */
+    public TopHitsFacetBuilder size(int size) {
+        this.size = size;
+        return this;
+    }
+
+    /**
+     * The number of best scoring docs to return per term, defaults to <tt>3</tt>.
+     */
+    public TopHitsFacetBuilder hitsSize(int hitsSize) {
+        this.hitsSize = hitsSize;
+        return this;
+    }
+
+    /**
+     * Marks the facet to run in a global scope, not bounded by any query.
+     */
+    public TopHitsFacetBuilder global(boolean global) {
+        super.global(global);
+        return this;
+    }
+
+    /**
+     * Marks the facet to run in a specific scope.
+     */
+    @Override
+    public TopHitsFacetBuilder scope(String scope) {
+        super.scope(scope);
+        return this;
+    }
+
+    public TopHitsFacetBuilder facetFilter(FilterBuilder filter) {
+        this.facetFilter = filter;
+        return this;
+    }
+
+    /**
+     * Sets the nested path the facet will execute on. A match (root object) will then cause all the
+     * nested objects matching the path to be computed into the facet.
+     */
+    public TopHitsFacetBuilder nested(String nested) {
+        this.nested = nested;
+        return this;
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        if (fieldName == null) {
+            throw new SearchSourceBuilderException("field must be set on top_hits facet for facet [" + name + "]");
+        }
+        builder.startObject(name);
+
+        builder.startObject(TopHitsFacet.TYPE);
+        builder.field("field", fieldName);
+        if (size != -1) {
+            builder.field("size", size);
+        }
+        if (hitsSize != -1) {
+            builder.field("hits_size", hitsSize);
+        }
+        builder.endObject();
+
+        addFilterFacetAndGlobal(builder, params);
+
+        builder.endObject();
+        return builder;
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.search.facet.tophits;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Fieldable;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.util.PriorityQueue;
+import org.elasticsearch.common.CacheRecycler;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.index.cache.field.data.FieldDataCache;
+import org.elasticsearch.index.field.data.FieldData;
+import org.elasticsearch.index.field.data.FieldDataType;
+import org.elasticsearch.index.mapper.DocumentMapper;
+import org.elasticsearch.index.mapper.MapperService;
+import org.elasticsearch.index.mapper.Uid;
+import org.elasticsearch.index.mapper.internal.SourceFieldMapper;
+import org.elasticsearch.index.mapper.internal.UidFieldMapper;
+import org.elasticsearch.index.mapper.selector.UidAndSourceFieldSelector;
+import org.elasticsearch.search.facet.AbstractFacetCollector;
+import org.elasticsearch.search.facet.Facet;
+import org.elasticsearch.search.facet.FacetPhaseExecutionException;
+import org.elasticsearch.search.facet.terms.strings.GlobalOrdinals;
+import org.elasticsearch.search.internal.SearchContext;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Counts the docs per (string) term, keyed by the {@link GlobalOrdinals global ordinals} of the terms, and keeps a
+ * queue of the <tt>hits_size</tt> best scoring docs of each term, created the first time a doc has the term. The
+ * best docs per term come back with the query instead of a search per term, and the memory used is bounded by the
+ * number of terms matched times <tt>hits_size</tt>, whatever the number of matching docs.
+ */
+public class TopHitsFacetCollector extends AbstractFacetCollector {
+
+    private final SearchContext context;
+
+    private final FieldDataCache fieldDataCache;
+
+    private final String indexFieldName;
+
+    private final FieldDataType fieldDataType;
+
+    private final int size;
+
+    private final int hitsSize;
+
+    private final GlobalOrdinals globalOrdinals;
+
+    private final String[] values;
+
+    private final int[] counts;
+
+    private final HitsQueue[] queues;
+
+    private FieldData fieldData;
+
+    private int docBase;
+
+    private int[] segmentOrdinals;
+
+    private Scorer scorer;
+
+    private final CollectProc collectProc = new CollectProc();
+
+    public TopHitsFacetCollector(String facetName, String fieldName, int size, int hitsSize, SearchContext context) {
+        super(facetName);
+        this.context = context;
+        this.fieldDataCache = context.fieldDataCache();
+        this.size = size;
+        this.hitsSize = hitsSize;
+
+        MapperService.SmartNameFieldMappers smartMappers = context.smartFieldMappers(fieldName);
+        if (smartMappers == null || !smartMappers.hasMapper()) {
+            throw new FacetPhaseExecutionException(facetName, "No mapping found for field [" + fieldName + "]");
+        }
+        // add type filter if there is exact doc mapper associated with it
+        if (smartMappers.explicitTypeInNameWithDocMapper()) {
+            setFilter(context.filterCache().cache(smartMappers.docMapper().typeFilter()));
+        }
+        if (smartMappers.mapper().fieldDataType() != FieldDataType.DefaultTypes.STRING) {
+            throw new FacetPhaseExecutionException(facetName, "Field [" + fieldName + "] is not of string type, can't group top hits by it");
+        }
+
+        this.indexFieldName = smartMappers.mapper().names().indexName();
+        this.fieldDataType = smartMappers.mapper().fieldDataType();
+
+        try {
+            this.globalOrdinals = GlobalOrdinals.load(fieldDataCache, fieldDataType, indexFieldName, context.searcher().getIndexReader(), context.searcher().subReaders());
+        } catch (IOException e) {
+            throw new FacetPhaseExecutionException(facetName, "failed to load global ordinals for [" + fieldName + "]", e);
+        }
+        this.values = globalOrdinals.values();
+        this.counts = CacheRecycler.popIntArray(values.length);
+        this.queues = new HitsQueue[values.length];
+    }
+
+    @Override
+    public void setScorer(Scorer scorer) throws IOException {
+        this.scorer = scorer;
+    }
+
+    @Override
+    protected void doSetNextReader(IndexReader reader, int docBase) throws IOException {
+        fieldData = fieldDataCache.cache(fieldDataType, reader, indexFieldName);
+        segmentOrdinals = globalOrdinals.segmentOrdinals(reader);
+        this.docBase = docBase;
+    }
+
+    @Override
+    protected void doCollect(int doc) throws IOException {
+        // the score is computed once per doc, and only when the doc has a value for the field
+        collectProc.scored = false;
+        fieldData.forEachOrdinalInDoc(doc, collectProc);
+    }
+
+    @Override
+    public Facet facet() {
+        TermQueue termQueue = new TermQueue(Math.min(size, values.length));
+        for (int ordinal = 0; ordinal < values.length; ordinal++) {
+            if (counts[ordinal] > 0) {
+                termQueue.insertWithOverflow(ordinal);
+            }
+        }
+        int[] ordinals = new int[termQueue.size()];
+        for (int i = ordinals.length - 1; i >= 0; i--) {
+            ordinals[i] = termQueue.pop();
+        }
+
+        InternalTopHitsFacet.TermEntry[] entries = new InternalTopHitsFacet.TermEntry[ordinals.length];
+        UidAndSourceFieldSelector fieldSelector = new UidAndSourceFieldSelector();
+        for (int i = 0; i < ordinals.length; i++) {
+            HitsQueue hitsQueue = queues[ordinals[i]];
+            InternalTopHitsFacet.TopHit[] hits = new InternalTopHitsFacet.TopHit[hitsQueue.size()];
+            for (int j = hitsQueue.size() - 1; j >= 0; j--) {
+                ScoreDoc scoreDoc = hitsQueue.pop();
+                hits[j] = loadHit(scoreDoc, fieldSelector);
+            }
+            entries[i] = new InternalTopHitsFacet.TermEntry(values[ordinals[i]], counts[ordinals[i]], new ArrayList<InternalTopHitsFacet.TopHit>(Arrays.asList(hits)));
+        }
+        CacheRecycler.pushIntArray(counts);
+        return new InternalTopHitsFacet(facetName, size, hitsSize, new ArrayList<InternalTopHitsFacet.TermEntry>(Arrays.asList(entries)));
+    }
+
+    private InternalTopHitsFacet.TopHit loadHit(ScoreDoc scoreDoc, UidAndSourceFieldSelector fieldSelector) {
+        Document doc;
+        try {
+            fieldSelector.reset();
+            doc = context.searcher().doc(scoreDoc.doc, fieldSelector);
+        } catch (IOException e) {
+            throw new FacetPhaseExecutionException(facetName, "failed to load doc [" + scoreDoc.doc + "]", e);
+        }
+        String sUid = doc.get(UidFieldMapper.NAME);
+        if (sUid == null) {
+            throw new FacetPhaseExecutionException(facetName, "failed to load uid of doc [" + scoreDoc.doc + "]");
+        }
+        Uid uid = Uid.createUid(sUid);
+        BytesArray source = null;
+        DocumentMapper documentMapper = context.mapperService().documentMapper(uid.type());
+        Fieldable sourceField = doc.getFieldable(SourceFieldMapper.NAME);
+        if (documentMapper != null && sourceField != null) {
+            byte[] bytes = documentMapper.sourceMapper().nativeValue(sourceField);
+            if (bytes != null) {
+                source = new BytesArray(bytes);
+            }
+        }
+        return new InternalTopHitsFacet.TopHit(uid.id(), uid.type(), scoreDoc.score, source);
+    }
+
+    class CollectProc implements FieldData.OrdinalInDocProc {
+
+        boolean scored;
+
+        float score;
+
+        @Override
+        public void onOrdinal(int docId, int ordinal) {
+            // ordinal 0 marks a doc without a value
+            if (ordinal == 0) {
+                return;
+            }
+            if (!scored) {
+                try {
+                    score = scorer.score();
+                } catch (IOException e) {
+                    throw new FacetPhaseExecutionException(facetName, "failed to score doc [" + docId + "]", e);
+                }
+                scored = true;
+            }
+            int globalOrdinal = segmentOrdinals[ordinal];
+            counts[globalOrdinal]++;
+            HitsQueue queue = queues[globalOrdinal];
+            if (queue == null) {
+                queue = new HitsQueue(hitsSize);
+                queues[globalOrdinal] = queue;
+            }
+            queue.offer(docBase + docId, score);
+        }
+    }
+
+    /**
+     * The best scoring docs of a term, the lowest scoring doc is on top so it is the one replaced.
+     */
+    static class HitsQueue extends PriorityQueue<ScoreDoc> {
+
+        private final int maxSize;
+
+        HitsQueue(int maxSize) {
+            this.maxSize = maxSize;
+            initialize(maxSize);
+        }
+
+        void offer(int doc, float score) {
+            if (size() == maxSize) {
+                ScoreDoc top = top();
+                // docs are collected in increasing doc id order, so on equal scores the earlier doc wins
+                if (score <= top.score) {
+                    return;
+                }
+                top.doc = doc;
+                top.score = score;
+                updateTop();
+            } else {
+                add(new ScoreDoc(doc, score));
+            }
+        }
+
+        @Override
+        protected boolean lessThan(ScoreDoc a, ScoreDoc b) {
+            if (a.score == b.score) {
+                return a.doc > b.doc;
+            }
+            return a.score < b.score;
+        }
+    }
+
+    class TermQueue extends PriorityQueue<Integer> {
+
+        TermQueue(int size) {
+            initialize(size);
+        }
+
+        @Override
+        protected boolean lessThan(Integer a, Integer b) {
+            int countA = counts[a];
+            int countB = counts[b];
+            if (countA != countB) {
+                return countA < countB;
+            }
+            // on equal counts, the smaller term ranks first
+            return values[a].compareTo(values[b]) > 0;
+        }
+    }
+}
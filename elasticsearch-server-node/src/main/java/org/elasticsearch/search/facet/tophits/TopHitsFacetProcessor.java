@@ -0,0 +1,152 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.search.facet.tophits;
+
+import org.elasticsearch.common.component.AbstractComponent;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.search.facet.Facet;
+import org.elasticsearch.search.facet.FacetCollector;
+import org.elasticsearch.search.facet.FacetPhaseExecutionException;
+import org.elasticsearch.search.facet.FacetProcessor;
+import org.elasticsearch.search.internal.SearchContext;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses and reduces the top hits facet. The <tt>hits_size</tt> of a request is capped by the
+ * <tt>search.facet.tophits.max_hits_size</tt> setting (defaults to <tt>100</tt>).
+ */
+public class TopHitsFacetProcessor extends AbstractComponent implements FacetProcessor {
+
+    private final int maxHitsSize;
+
+    @Inject
+    public TopHitsFacetProcessor(Settings settings) {
+        super(settings);
+        InternalTopHitsFacet.registerStreams();
+        this.maxHitsSize = componentSettings.getAsInt("max_hits_size", 100);
+    }
+
+    @Override
+    public String[] types() {
+        return new String[]{TopHitsFacet.TYPE, "topHits"};
+    }
+
+    @Override
+    public FacetCollector parse(String facetName, XContentParser parser, SearchContext context) throws IOException {
+        String field = null;
+        int size = 10;
+        int hitsSize = 3;
+
+        String currentFieldName = null;
+        XContentParser.Token token;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                currentFieldName = parser.currentName();
+            } else if (token.isValue()) {
+                if ("field".equals(currentFieldName)) {
+                    field = parser.text();
+                } else if ("size".equals(currentFieldName)) {
+                    size = parser.intValue();
+                } else if ("hits_size".equals(currentFieldName) || "hitsSize".equals(currentFieldName)) {
+                    hitsSize = parser.intValue();
+                } else {
+                    throw new FacetPhaseExecutionException(facetName, "top_hits facet does not support [" + currentFieldName + "]");
+                }
+            } else {
+                throw new FacetPhaseExecutionException(facetName, "top_hits facet does not support [" + currentFieldName + "]");
+            }
+        }
+        if (field == null) {
+            throw new FacetPhaseExecutionException(facetName, "top_hits facet requires [field] to be set");
+        }
+        if (size < 1) {
+            throw new FacetPhaseExecutionException(facetName, "top_hits facet [size] must be at least [1]");
+        }
+        if (hitsSize < 1) {
+            throw new FacetPhaseExecutionException(facetName, "top_hits facet [hits_size] must be at least [1]");
+        }
+        if (hitsSize > maxHitsSize) {
+            throw new FacetPhaseExecutionException(facetName, "top_hits facet [hits_size] must be at most [" + maxHitsSize + "], got [" + hitsSize + "]");
+        }
+        return new TopHitsFacetCollector(facetName, field, size, hitsSize, context);
+    }
+
+    @Override
+    public Facet reduce(String name, List<Facet> facets) {
+        if (facets.size() == 1) {
+            return facets.get(0);
+        }
+        InternalTopHitsFacet first = (InternalTopHitsFacet) facets.get(0);
+        Map<String, InternalTopHitsFacet.TermEntry> merged = new HashMap<String, InternalTopHitsFacet.TermEntry>();
+        for (Facet facet : facets) {
+            InternalTopHitsFacet topHitsFacet = (InternalTopHitsFacet) facet;
+            for (InternalTopHitsFacet.TermEntry entry : topHitsFacet.entries()) {
+                InternalTopHitsFacet.TermEntry current = merged.get(entry.term());
+                if (current == null) {
+                    merged.put(entry.term(), new InternalTopHitsFacet.TermEntry(entry.term(), entry.count(), new ArrayList<InternalTopHitsFacet.TopHit>(entry.hits())));
+                } else {
+                    current.count += entry.count();
+                    current.hits.addAll(entry.hits());
+                }
+            }
+        }
+
+        List<InternalTopHitsFacet.TermEntry> entries = new ArrayList<InternalTopHitsFacet.TermEntry>(merged.values());
+        Collections.sort(entries, COUNT_COMPARATOR);
+        if (entries.size() > first.requiredSize) {
+            entries = new ArrayList<InternalTopHitsFacet.TermEntry>(entries.subList(0, first.requiredSize));
+        }
+        for (InternalTopHitsFacet.TermEntry entry : entries) {
+            // each shard sent its best hits in order, the stable sort keeps shard order on equal scores
+            Collections.sort(entry.hits, SCORE_COMPARATOR);
+            if (entry.hits.size() > first.hitsSize) {
+                entry.hits = new ArrayList<InternalTopHitsFacet.TopHit>(entry.hits.subList(0, first.hitsSize));
+            }
+        }
+        return new InternalTopHitsFacet(name, first.requiredSize, first.hitsSize, entries);
+    }
+
+    static final Comparator<InternalTopHitsFacet.TermEntry> COUNT_COMPARATOR = new Comparator<InternalTopHitsFacet.TermEntry>() {
+        @Override
+        public int compare(InternalTopHitsFacet.TermEntry o1, InternalTopHitsFacet.TermEntry o2) {
+            if (o1.count() != o2.count()) {
+                return o1.count() > o2.count() ? -1 : 1;
+            }
+            return o1.term().compareTo(o2.term());
+        }
+    };
+
+    static final Comparator<InternalTopHitsFacet.TopHit> SCORE_COMPARATOR = new Comparator<InternalTopHitsFacet.TopHit>() {
+        @Override
+        public int compare(InternalTopHitsFacet.TopHit o1, InternalTopHitsFacet.TopHit o2) {
+            return Float.compare(o2.score(), o1.score());
+        }
+    };
+}
@@ -56,6 +56,7 @@ import org.elasticsearch.search.internal.SearchContext;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -88,6 +89,8 @@ public class FetchPhase implements SearchPhase {
     }
 
     public void execute(SearchContext context) {
+        context.executionStarted(System.currentTimeMillis());
+        context.fetchResult().searchTimedOut(false);
         ResetFieldSelector fieldSelector;
         List<String> extractFieldNames = null;
         boolean sourceRequested = false;
@@ -154,7 +157,19 @@ public class FetchPhase implements SearchPhase {
         }
 
         InternalSearchHit[] hits = new InternalSearchHit[context.docIdsToLoadSize()];
-        for (int index = 0; index < context.docIdsToLoadSize(); index++) {
+        // load the docs in doc id order, so stored fields are read sequentially per segment, and the hits are
+        // placed back in the order they were requested in
+        int[] loadOrder = docIdsLoadOrder(context);
+        // shared across hits, so sub phases can cache per request structures (like the highlighters) in it
+        FetchSubPhase.HitContext hitContext = new FetchSubPhase.HitContext();
+        for (int index : loadOrder) {
+            if (context.scroll() == null && context.timedOut()) {
+                // return the hits fetched so far, the coordinating node handles fewer hits than requested. When
+                // scrolling, we can't skip hits since the next scroll moves past them
+                hits = fetchedHitsPrefix(hits);
+                context.fetchResult().searchTimedOut(true);
+                break;
+            }
             int docId = context.docIdsToLoad()[context.docIdsToLoadFrom() + index];
             Document doc = loadDocument(context, fieldSelector, docId);
             Uid uid = extractUid(context, doc, fieldSelector);
@@ -243,10 +258,9 @@ public class FetchPhase implements SearchPhase {
                 }
             }
 
+            hitContext.reset(searchHit, subReader, subDoc, context.searcher().getIndexReader(), docId, doc);
             for (FetchSubPhase fetchSubPhase : fetchSubPhases) {
-                FetchSubPhase.HitContext hitContext = new FetchSubPhase.HitContext();
                 if (fetchSubPhase.hitExecutionNeeded(context)) {
-                    hitContext.reset(searchHit, subReader, subDoc, context.searcher().getIndexReader(), docId, doc);
                     fetchSubPhase.hitExecute(context, hitContext);
                 }
             }
@@ -261,6 +275,38 @@ public class FetchPhase implements SearchPhase {
         context.fetchResult().hits(new InternalSearchHits(hits, context.queryResult().topDocs().totalHits, context.queryResult().topDocs().getMaxScore()));
     }
 
+    /**
+     * Returns the positions of the docs to load (relative to {@link SearchContext#docIdsToLoadFrom()}), sorted
+     * by their doc id.
+     */
+    static int[] docIdsLoadOrder(SearchContext context) {
+        int size = context.docIdsToLoadSize();
+        long[] docsAndPositions = new long[size];
+        for (int index = 0; index < size; index++) {
+            docsAndPositions[index] = (((long) context.docIdsToLoad()[context.docIdsToLoadFrom() + index]) << 32) | index;
+        }
+        Arrays.sort(docsAndPositions);
+        int[] loadOrder = new int[size];
+        for (int i = 0; i < size; i++) {
+            loadOrder[i] = (int) docsAndPositions[i];
+        }
+        return loadOrder;
+    }
+
+    /**
+     * Since docs are loaded out of order, keep the longest run of loaded hits from the start, the coordinating
+     * node matches fetched hits to the sorted docs by position.
+     */
+    static InternalSearchHit[] fetchedHitsPrefix(InternalSearchHit[] hits) {
+        int length = 0;
+        while (length < hits.length && hits[length] != null) {
+            length++;
+        }
+        InternalSearchHit[] fetchedHits = new InternalSearchHit[length];
+        System.arraycopy(hits, 0, fetchedHits, 0, length);
+        return fetchedHits;
+    }
+
     private byte[] extractSource(Document doc, DocumentMapper documentMapper) {
         Fieldable sourceField = doc.getFieldable(SourceFieldMapper.NAME);
         if (sourceField != null) {
@@ -37,6 +37,7 @@ public class FetchSearchResult extends TransportResponse implements FetchSearchR
     private long id;
     private SearchShardTarget shardTarget;
     private InternalSearchHits hits;
+    private boolean searchTimedOut;
     // client side counter
     private transient int counter;
 
@@ -75,6 +76,17 @@ public class FetchSearchResult extends TransportResponse implements FetchSearchR
         return hits;
     }
 
+    public void searchTimedOut(boolean searchTimedOut) {
+        this.searchTimedOut = searchTimedOut;
+    }
+
+    /**
+     * Returns <tt>true</tt> if the fetch timed out (or was cancelled), and only part of the hits were fetched.
+     */
+    public boolean searchTimedOut() {
+        return searchTimedOut;
+    }
+
     public FetchSearchResult initCounter() {
         counter = 0;
         return this;
@@ -95,6 +107,7 @@ public class FetchSearchResult extends TransportResponse implements FetchSearchR
         super.readFrom(in);
         id = in.readLong();
         hits = InternalSearchHits.readSearchHits(in, InternalSearchHits.streamContext().streamShardTarget(StreamContext.ShardTargetType.NO_STREAM));
+        searchTimedOut = in.readBoolean();
     }
 
     @Override
@@ -102,5 +115,6 @@ public class FetchSearchResult extends TransportResponse implements FetchSearchR
         super.writeTo(out);
         out.writeLong(id);
         hits.writeTo(out, InternalSearchHits.streamContext().streamShardTarget(StreamContext.ShardTargetType.NO_STREAM));
+        out.writeBoolean(searchTimedOut);
     }
 }
@@ -118,9 +118,14 @@ public class ContextIndexSearcher extends ExtendedIndexSearcher {
             }
             Query rewriteQuery = super.rewrite(original);
             searchContext.updateRewriteQuery(rewriteQuery);
+            // expensive rewrites (wildcard, fuzzy, ...) can take a long time, check before moving on (the
+            // rewritten query is kept, so a phase that can't return partial results can still use it)
+            searchContext.checkTimeout();
             return rewriteQuery;
         } else {
-            return super.rewrite(original);
+            Query rewriteQuery = super.rewrite(original);
+            searchContext.checkTimeout();
+            return rewriteQuery;
         }
     }
 
@@ -172,6 +177,11 @@ public class ContextIndexSearcher extends ExtendedIndexSearcher {
         if (searchContext.minimumScore() != null) {
             collector = new MinimumScoreCollector(collector, searchContext.minimumScore());
         }
+        if (searchContext.timeoutInMillis() != -1 || searchContext.searchId() != null) {
+            // check for timeout and cancellation on each segment, before the collectors (including facets) load
+            // field data for it
+            collector = new TimeoutCheckingCollector(collector, searchContext);
+        }
 
         Filter combinedFilter;
         if (filter == null) {
@@ -185,14 +195,13 @@ public class ContextIndexSearcher extends ExtendedIndexSearcher {
         }
 
         // we only compute the doc id set once since within a context, we execute the same query always...
-        if (searchContext.timeoutInMillis() != -1) {
-            try {
-                super.search(weight, combinedFilter, collector);
-            } catch (TimeLimitingCollector.TimeExceededException e) {
-                searchContext.queryResult().searchTimedOut(true);
-            }
-        } else {
+        try {
             super.search(weight, combinedFilter, collector);
+        } catch (TimeLimitingCollector.TimeExceededException e) {
+            searchContext.queryResult().searchTimedOut(true);
+        } catch (SearchTimeExceededException e) {
+            // keep what was collected from the previous segments
+            searchContext.queryResult().searchTimedOut(true);
         }
     }
 
@@ -205,4 +214,37 @@ public class ContextIndexSearcher extends ExtendedIndexSearcher {
         FilteredQuery filteredQuery = new FilteredQuery(query, searchContext.aliasFilter());
         return super.explain(filteredQuery, doc);
     }
-}
\ No newline at end of file
+
+    static class TimeoutCheckingCollector extends Collector {
+
+        private final Collector collector;
+
+        private final SearchContext searchContext;
+
+        TimeoutCheckingCollector(Collector collector, SearchContext searchContext) {
+            this.collector = collector;
+            this.searchContext = searchContext;
+        }
+
+        @Override
+        public void setScorer(Scorer scorer) throws IOException {
+            collector.setScorer(scorer);
+        }
+
+        @Override
+        public void collect(int doc) throws IOException {
+            collector.collect(doc);
+        }
+
+        @Override
+        public void setNextReader(IndexReader reader, int docBase) throws IOException {
+            searchContext.checkTimeout();
+            collector.setNextReader(reader, docBase);
+        }
+
+        @Override
+        public boolean acceptsDocsOutOfOrder() {
+            return collector.acceptsDocsOutOfOrder();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.search.internal;
+
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.transport.TransportRequest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A batch of {@link ShardSearchRequest}s targeting shards that are all allocated on the same node,
+ * shipped in a single transport message.
+ */
+public class MultiShardSearchRequest extends TransportRequest {
+
+    private List<ShardSearchRequest> requests;
+
+    public MultiShardSearchRequest() {
+    }
+
+    public MultiShardSearchRequest(SearchRequest searchRequest, List<ShardSearchRequest> requests) {
+        super(searchRequest);
+        this.requests = requests;
+    }
+
+    public List<ShardSearchRequest> requests() {
+        return requests;
+    }
+
+    public int size() {
+        return requests.size();
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        int size = in.readVInt();
+        requests = new ArrayList<ShardSearchRequest>(size);
+        for (int i = 0; i < size; i++) {
+            ShardSearchRequest request = new ShardSearchRequest();
+            request.readFrom(in);
+            requests.add(request);
+        }
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeVInt(requests.size());
+        for (ShardSearchRequest request : requests) {
+            request.writeTo(out);
+        }
+    }
+}
@@ -115,6 +115,12 @@ public class SearchContext implements Releasable {
     // timeout in millis
     private long timeoutInMillis = -1;
 
+    // the time the currently executing phase started, the timeout is checked against it
+    private long executionStartTime;
+
+    // set when the coordinating node cancelled the search, checked along with the timeout
+    private volatile boolean cancelled;
+
 
     private List<String> groupStats;
 
@@ -373,6 +379,56 @@ public class SearchContext implements Releasable {
         this.timeoutInMillis = timeoutInMillis;
     }
 
+    /**
+     * Marks the start of a search phase execution, each phase gets the full timeout.
+     */
+    public void executionStarted(long executionStartTime) {
+        this.executionStartTime = executionStartTime;
+    }
+
+    /**
+     * The id the coordinating node assigned to the search, shared by the contexts of all its shards,
+     * <tt>null</tt> if the search can't be cancelled.
+     */
+    @Nullable
+    public String searchId() {
+        return request.searchId();
+    }
+
+    /**
+     * Cancels the search, the executing phase (or the next one) stops at its next timeout check.
+     */
+    public void cancel() {
+        this.cancelled = true;
+    }
+
+    public boolean cancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Returns <tt>true</tt> if the search was cancelled, or if the executing phase ran longer than the timeout. A
+     * phase that didn't mark its start with {@link #executionStarted(long)} never times out.
+     */
+    public boolean timedOut() {
+        if (cancelled) {
+            return true;
+        }
+        return timeoutInMillis != -1 && executionStartTime != 0 && (System.currentTimeMillis() - executionStartTime) > timeoutInMillis;
+    }
+
+    /**
+     * Cooperative timeout check, called at points where the search can stop and return partial results, such as
+     * segment boundaries, after query rewrites and between fetched hits.
+     *
+     * @throws SearchTimeExceededException if the search timed out or was cancelled
+     */
+    public void checkTimeout() throws SearchTimeExceededException {
+        if (timedOut()) {
+            throw new SearchTimeExceededException(cancelled ? "search cancelled" : "search timed out after [" + timeoutInMillis + "ms]");
+        }
+    }
+
     public SearchContext minimumScore(float minimumScore) {
         this.minimumScore = minimumScore;
         return this;
@@ -22,6 +22,7 @@ package org.elasticsearch.search.internal;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchType;
 import org.elasticsearch.cluster.routing.ShardRouting;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.Strings;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.io.stream.StreamInput;
@@ -71,6 +72,8 @@ public class ShardSearchRequest extends TransportRequest {
 
     private long nowInMillis;
 
+    private String searchId;
+
     public ShardSearchRequest() {
     }
 
@@ -141,6 +144,20 @@ public class ShardSearchRequest extends TransportRequest {
         return this.nowInMillis;
     }
 
+    /**
+     * The id the coordinating node assigned to the search, the same for all its shard requests, so it can
+     * cancel them. <tt>null</tt> if the search can't be cancelled.
+     */
+    @Nullable
+    public String searchId() {
+        return searchId;
+    }
+
+    public ShardSearchRequest searchId(String searchId) {
+        this.searchId = searchId;
+        return this;
+    }
+
     public Scroll scroll() {
         return scroll;
     }
@@ -185,6 +202,7 @@ public class ShardSearchRequest extends TransportRequest {
         types = in.readStringArray();
         filteringAliases = in.readStringArray();
         nowInMillis = in.readVLong();
+        searchId = in.readOptionalString();
     }
 
     @Override
@@ -205,5 +223,6 @@ public class ShardSearchRequest extends TransportRequest {
         out.writeStringArray(types);
         out.writeStringArrayNullable(filteringAliases);
         out.writeVLong(nowInMillis);
+        out.writeOptionalString(searchId);
     }
 }
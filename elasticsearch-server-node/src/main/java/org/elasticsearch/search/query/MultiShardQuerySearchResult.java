@@ -0,0 +1,136 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.search.query;
+
+import org.elasticsearch.common.io.ThrowableObjectInputStream;
+import org.elasticsearch.common.io.ThrowableObjectOutputStream;
+import org.elasticsearch.common.io.stream.BytesStreamInput;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.transport.NotSerializableTransportException;
+import org.elasticsearch.transport.TransportResponse;
+import org.elasticsearch.transport.TransportSerializationException;
+
+import java.io.IOException;
+import java.io.NotSerializableException;
+
+/**
+ * The per shard query results of a {@link org.elasticsearch.search.internal.MultiShardSearchRequest}, in
+ * the same order as the shard requests. Each slot holds either a result or the failure of the shard,
+ * serialized the same way the transport serializes exceptions so its type is kept.
+ */
+public class MultiShardQuerySearchResult extends TransportResponse {
+
+    private QuerySearchResult[] results;
+
+    private Throwable[] failures;
+
+    public MultiShardQuerySearchResult() {
+    }
+
+    public MultiShardQuerySearchResult(int size) {
+        this.results = new QuerySearchResult[size];
+        this.failures = new Throwable[size];
+    }
+
+    public int size() {
+        return results.length;
+    }
+
+    public void result(int index, QuerySearchResult result) {
+        results[index] = result;
+    }
+
+    public void failure(int index, Throwable failure) {
+        failures[index] = failure;
+    }
+
+    /**
+     * The result of the shard at the given index, <tt>null</tt> if it failed.
+     */
+    public QuerySearchResult result(int index) {
+        return results[index];
+    }
+
+    /**
+     * The failure of the shard at the given index, <tt>null</tt> if it succeeded.
+     */
+    public Throwable failure(int index) {
+        return failures[index];
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        int size = in.readVInt();
+        results = new QuerySearchResult[size];
+        failures = new Throwable[size];
+        for (int i = 0; i < size; i++) {
+            if (in.readBoolean()) {
+                results[i] = QuerySearchResult.readQuerySearchResult(in);
+            } else {
+                failures[i] = readFailure(in);
+            }
+        }
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeVInt(results.length);
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] != null) {
+                out.writeBoolean(true);
+                results[i].writeTo(out);
+            } else {
+                out.writeBoolean(false);
+                writeFailure(out, failures[i] == null ? new IllegalStateException("unknown failure") : failures[i]);
+            }
+        }
+    }
+
+    private static Throwable readFailure(StreamInput in) throws IOException {
+        byte[] bytes = new byte[in.readVInt()];
+        in.readFully(bytes);
+        try {
+            ThrowableObjectInputStream ois = new ThrowableObjectInputStream(new BytesStreamInput(bytes, false));
+            return (Throwable) ois.readObject();
+        } catch (Exception e) {
+            return new TransportSerializationException("Failed to deserialize shard failure", e);
+        }
+    }
+
+    private static void writeFailure(StreamOutput out, Throwable failure) throws IOException {
+        BytesStreamOutput bytes = new BytesStreamOutput();
+        try {
+            ThrowableObjectOutputStream too = new ThrowableObjectOutputStream(bytes);
+            too.writeObject(failure);
+            too.close();
+        } catch (NotSerializableException e) {
+            bytes = new BytesStreamOutput();
+            ThrowableObjectOutputStream too = new ThrowableObjectOutputStream(bytes);
+            too.writeObject(new NotSerializableTransportException(failure));
+            too.close();
+        }
+        out.writeBytesReference(bytes.bytes());
+    }
+}
@@ -23,6 +23,7 @@ import com.google.common.collect.ImmutableMap;
 import org.apache.lucene.search.Collector;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopFieldDocs;
 import org.apache.lucene.search.TotalHitCountCollector;
 import org.elasticsearch.action.search.SearchType;
 import org.elasticsearch.common.inject.Inject;
@@ -33,6 +34,7 @@ import org.elasticsearch.search.facet.FacetPhase;
 import org.elasticsearch.search.internal.ContextIndexSearcher;
 import org.elasticsearch.search.internal.ScopePhase;
 import org.elasticsearch.search.internal.SearchContext;
+import org.elasticsearch.search.internal.SearchTimeExceededException;
 import org.elasticsearch.search.sort.SortParseElement;
 import org.elasticsearch.search.sort.TrackScoresParseElement;
 
@@ -80,6 +82,7 @@ public class QueryPhase implements SearchPhase {
 
     public void execute(SearchContext searchContext) throws QueryPhaseExecutionException {
         searchContext.queryResult().searchTimedOut(false);
+        searchContext.executionStarted(System.currentTimeMillis());
         // set the filter on the searcher
         if (searchContext.scopePhases() != null) {
             // we have scoped queries, refresh the id cache
@@ -178,6 +181,14 @@ public class QueryPhase implements SearchPhase {
                 topDocs = searchContext.searcher().search(query, numDocs);
             }
             searchContext.queryResult().topDocs(topDocs);
+        } catch (SearchTimeExceededException e) {
+            // timed out before collecting anything (for example, while rewriting the query), return no hits
+            searchContext.queryResult().searchTimedOut(true);
+            if (searchContext.sort() != null) {
+                searchContext.queryResult().topDocs(new TopFieldDocs(0, Lucene.EMPTY_SCORE_DOCS, searchContext.sort().getSort(), Float.NaN));
+            } else {
+                searchContext.queryResult().topDocs(new TopDocs(0, Lucene.EMPTY_SCORE_DOCS, Float.NaN));
+            }
         } catch (Exception e) {
             throw new QueryPhaseExecutionException(searchContext, "Failed to execute main query", e);
         } finally {
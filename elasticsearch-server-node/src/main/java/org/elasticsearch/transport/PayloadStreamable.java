@@ -0,0 +1,41 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.transport;
+
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+import java.io.IOException;
+
+/**
+ * A transport message ending with a (potentially large) bytes payload, its <tt>writeTo</tt> being
+ * {@link #writeToPayload(StreamOutput)} followed by {@link StreamOutput#writeBytesReference(BytesReference)} of the
+ * {@link #payload()}. Transports can then frame the payload without copying it into the message buffer, so it must
+ * not be changed until the message was sent.
+ */
+public interface PayloadStreamable {
+
+    /**
+     * Writes the message, up to (and not including) its payload.
+     */
+    void writeToPayload(StreamOutput out) throws IOException;
+
+    BytesReference payload();
+}
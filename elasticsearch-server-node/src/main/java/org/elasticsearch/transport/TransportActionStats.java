@@ -0,0 +1,312 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.transport;
+
+import org.elasticsearch.common.metrics.CounterMetric;
+import org.elasticsearch.common.metrics.MeanMetric;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentBuilderString;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.elasticsearch.common.util.concurrent.ConcurrentCollections.newConcurrentMap;
+
+/**
+ * Metrics of the transport messages, per action. Request messages received by this node are counted along with their
+ * size. Requests handled by this node are counted along with the time they
+ * waited before their handler was called (from the moment they were read off the wire, so including their
+ * deserialization), the time their handler took, and the time until a response was sent back. Requests sent by this
+ * node are counted along with the time it took to serialize and write them, and the time until their response came
+ * back.
+ * <p/>
+ * Times are kept as totals (so as means), the response and round trip times are also kept as a
+ * {@link LatencyHistogram}, so their percentiles can be estimated.
+ */
+public class TransportActionStats implements ToXContent {
+
+    public static class ActionStats {
+
+        // requests received by this node
+        final MeanMetric receivedBytes = new MeanMetric();
+
+        final MeanMetric queueNanos = new MeanMetric();
+
+        final MeanMetric handlerNanos = new MeanMetric();
+
+        final CounterMetric handlerFailures = new CounterMetric();
+
+        final MeanMetric responseNanos = new MeanMetric();
+
+        final LatencyHistogram responseHistogram = new LatencyHistogram();
+
+        final MeanMetric responseSerializationNanos = new MeanMetric();
+
+        final CounterMetric errorResponses = new CounterMetric();
+
+        // requests sent by this node
+        final MeanMetric requestSerializationNanos = new MeanMetric();
+
+        final CounterMetric sendFailures = new CounterMetric();
+
+        final MeanMetric roundTripNanos = new MeanMetric();
+
+        final LatencyHistogram roundTripHistogram = new LatencyHistogram();
+
+        void onResponse(long nanos) {
+            responseNanos.inc(nanos);
+            responseHistogram.inc(nanos);
+        }
+
+        void onRoundTrip(long nanos) {
+            roundTripNanos.inc(nanos);
+            roundTripHistogram.inc(nanos);
+        }
+
+        /**
+         * The number of request messages received by this node, including the ones that failed to be deserialized.
+         */
+        public long receivedMessages() {
+            return receivedBytes.count();
+        }
+
+        /**
+         * The size of the request messages received by this node.
+         */
+        public long receivedBytes() {
+            return receivedBytes.sum();
+        }
+
+        /**
+         * The number of requests received (and handled) by this node.
+         */
+        public long received() {
+            return handlerNanos.count();
+        }
+
+        public long queueTimeInMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(queueNanos.sum());
+        }
+
+        public long handlerTimeInMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(handlerNanos.sum());
+        }
+
+        public long handlerFailures() {
+            return handlerFailures.count();
+        }
+
+        /**
+         * The number of responses (including errors) sent back for received requests.
+         */
+        public long responses() {
+            return responseNanos.count();
+        }
+
+        /**
+         * The time from calling the handler of received requests until their response was sent back.
+         */
+        public long responseTimeInMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(responseNanos.sum());
+        }
+
+        public LatencyHistogram responseTimeHistogram() {
+            return responseHistogram;
+        }
+
+        public long responseSerializationTimeInMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(responseSerializationNanos.sum());
+        }
+
+        public long errorResponses() {
+            return errorResponses.count();
+        }
+
+        /**
+         * The number of requests sent by this node.
+         */
+        public long sent() {
+            return requestSerializationNanos.count();
+        }
+
+        public long requestSerializationTimeInMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(requestSerializationNanos.sum());
+        }
+
+        public long sendFailures() {
+            return sendFailures.count();
+        }
+
+        /**
+         * The number of responses (including errors) received for sent requests.
+         */
+        public long roundTrips() {
+            return roundTripNanos.count();
+        }
+
+        public long roundTripTimeInMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(roundTripNanos.sum());
+        }
+
+        public LatencyHistogram roundTripTimeHistogram() {
+            return roundTripHistogram;
+        }
+    }
+
+    /**
+     * Counts latencies in power of two millisecond buckets: the first bucket holds the latencies under 1ms, bucket
+     * <tt>i</tt> the ones from <tt>2^(i-1)</tt> up to <tt>2^i</tt> ms, and the last one all the longer ones. This is
+     * enough to estimate percentiles (within a factor of two) without keeping samples.
+     */
+    public static class LatencyHistogram {
+
+        public static final int BUCKETS = 20;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+        public void inc(long nanos) {
+            long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+            counts.incrementAndGet(millis <= 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(millis)));
+        }
+
+        public long count(int bucket) {
+            return counts.get(bucket);
+        }
+
+        /**
+         * The upper bound (in millis) of the bucket holding the given percentile (0 to 100) of the latencies, the
+         * latencies of the last bucket being reported as its lower bound. Returns 0 when there are no latencies.
+         */
+        public long percentileInMillis(double percentile) {
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                total += counts.get(i);
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(total * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS - 1; i++) {
+                seen += counts.get(i);
+                if (seen >= rank) {
+                    return 1l << i;
+                }
+            }
+            return 1l << (BUCKETS - 2);
+        }
+    }
+
+    private final ConcurrentMap<String, ActionStats> stats = newConcurrentMap();
+
+    public ActionStats stats(String action) {
+        ActionStats actionStats = stats.get(action);
+        if (actionStats == null) {
+            actionStats = new ActionStats();
+            ActionStats existing = stats.putIfAbsent(action, actionStats);
+            if (existing != null) {
+                actionStats = existing;
+            }
+        }
+        return actionStats;
+    }
+
+    /**
+     * The stats of all the actions messages were received or sent for.
+     */
+    public Map<String, ActionStats> stats() {
+        return Collections.unmodifiableMap(stats);
+    }
+
+    public void clear() {
+        stats.clear();
+    }
+
+    static final class Fields {
+        static final XContentBuilderString ACTIONS = new XContentBuilderString("actions");
+        static final XContentBuilderString RECEIVED = new XContentBuilderString("received");
+        static final XContentBuilderString MESSAGES = new XContentBuilderString("messages");
+        static final XContentBuilderString SIZE = new XContentBuilderString("size");
+        static final XContentBuilderString SIZE_IN_BYTES = new XContentBuilderString("size_in_bytes");
+        static final XContentBuilderString COUNT = new XContentBuilderString("count");
+        static final XContentBuilderString QUEUE_TIME_IN_MILLIS = new XContentBuilderString("queue_time_in_millis");
+        static final XContentBuilderString HANDLER_TIME_IN_MILLIS = new XContentBuilderString("handler_time_in_millis");
+        static final XContentBuilderString HANDLER_FAILURES = new XContentBuilderString("handler_failures");
+        static final XContentBuilderString RESPONSES = new XContentBuilderString("responses");
+        static final XContentBuilderString RESPONSE_TIME_IN_MILLIS = new XContentBuilderString("response_time_in_millis");
+        static final XContentBuilderString RESPONSE_TIME_P50_IN_MILLIS = new XContentBuilderString("response_time_p50_in_millis");
+        static final XContentBuilderString RESPONSE_TIME_P99_IN_MILLIS = new XContentBuilderString("response_time_p99_in_millis");
+        static final XContentBuilderString RESPONSE_SERIALIZATION_TIME_IN_MILLIS = new XContentBuilderString("response_serialization_time_in_millis");
+        static final XContentBuilderString ERROR_RESPONSES = new XContentBuilderString("error_responses");
+        static final XContentBuilderString SENT = new XContentBuilderString("sent");
+        static final XContentBuilderString REQUEST_SERIALIZATION_TIME_IN_MILLIS = new XContentBuilderString("request_serialization_time_in_millis");
+        static final XContentBuilderString SEND_FAILURES = new XContentBuilderString("send_failures");
+        static final XContentBuilderString ROUND_TRIPS = new XContentBuilderString("round_trips");
+        static final XContentBuilderString ROUND_TRIP_TIME_IN_MILLIS = new XContentBuilderString("round_trip_time_in_millis");
+        static final XContentBuilderString ROUND_TRIP_TIME_P50_IN_MILLIS = new XContentBuilderString("round_trip_time_p50_in_millis");
+        static final XContentBuilderString ROUND_TRIP_TIME_P99_IN_MILLIS = new XContentBuilderString("round_trip_time_p99_in_millis");
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject(Fields.ACTIONS);
+        for (Map.Entry<String, ActionStats> entry : new TreeMap<String, ActionStats>(stats).entrySet()) {
+            ActionStats actionStats = entry.getValue();
+            builder.startObject(entry.getKey(), XContentBuilder.FieldCaseConversion.NONE);
+
+            builder.startObject(Fields.RECEIVED);
+            builder.field(Fields.MESSAGES, actionStats.receivedMessages());
+            builder.field(Fields.SIZE, new ByteSizeValue(actionStats.receivedBytes()).toString());
+            builder.field(Fields.SIZE_IN_BYTES, actionStats.receivedBytes());
+            builder.field(Fields.COUNT, actionStats.received());
+            builder.field(Fields.QUEUE_TIME_IN_MILLIS, actionStats.queueTimeInMillis());
+            builder.field(Fields.HANDLER_TIME_IN_MILLIS, actionStats.handlerTimeInMillis());
+            builder.field(Fields.HANDLER_FAILURES, actionStats.handlerFailures());
+            builder.field(Fields.RESPONSES, actionStats.responses());
+            builder.field(Fields.RESPONSE_TIME_IN_MILLIS, actionStats.responseTimeInMillis());
+            builder.field(Fields.RESPONSE_TIME_P50_IN_MILLIS, actionStats.responseTimeHistogram().percentileInMillis(50));
+            builder.field(Fields.RESPONSE_TIME_P99_IN_MILLIS, actionStats.responseTimeHistogram().percentileInMillis(99));
+            builder.field(Fields.RESPONSE_SERIALIZATION_TIME_IN_MILLIS, actionStats.responseSerializationTimeInMillis());
+            builder.field(Fields.ERROR_RESPONSES, actionStats.errorResponses());
+            builder.endObject();
+
+            builder.startObject(Fields.SENT);
+            builder.field(Fields.COUNT, actionStats.sent());
+            builder.field(Fields.REQUEST_SERIALIZATION_TIME_IN_MILLIS, actionStats.requestSerializationTimeInMillis());
+            builder.field(Fields.SEND_FAILURES, actionStats.sendFailures());
+            builder.field(Fields.ROUND_TRIPS, actionStats.roundTrips());
+            builder.field(Fields.ROUND_TRIP_TIME_IN_MILLIS, actionStats.roundTripTimeInMillis());
+            builder.field(Fields.ROUND_TRIP_TIME_P50_IN_MILLIS, actionStats.roundTripTimeHistogram().percentileInMillis(50));
+            builder.field(Fields.ROUND_TRIP_TIME_P99_IN_MILLIS, actionStats.roundTripTimeHistogram().percentileInMillis(99));
+            builder.endObject();
+
+            builder.endObject();
+        }
+        builder.endObject();
+        return builder;
+    }
+}
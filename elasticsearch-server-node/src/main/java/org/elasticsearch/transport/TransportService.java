@@ -33,6 +33,7 @@ import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
 import org.elasticsearch.common.util.concurrent.ConcurrentMapLong;
 import org.elasticsearch.threadpool.ThreadPool;
 
+import java.io.IOException;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -71,6 +72,10 @@ public class TransportService extends AbstractLifecycleComponent<TransportServic
     private boolean throwConnectException = false;
     private final TransportService.Adapter adapter = new Adapter();
 
+    private final boolean measureActions;
+
+    private final TransportActionStats actionStats = new TransportActionStats();
+
     public TransportService(Transport transport, ThreadPool threadPool) {
         this(EMPTY_SETTINGS, transport, threadPool);
     }
@@ -80,12 +85,14 @@ public class TransportService extends AbstractLifecycleComponent<TransportServic
         super(settings);
         this.transport = transport;
         this.threadPool = threadPool;
+        this.measureActions = settings.getAsBoolean("transport.stats.actions", true);
     }
 
     @Override
     protected void doStart() throws ElasticSearchException {
         adapter.rxMetric.clear();
         adapter.txMetric.clear();
+        actionStats.clear();
         transport.transportServiceAdapter(adapter);
         transport.start();
         if (transport.boundAddress() != null && logger.isInfoEnabled()) {
@@ -115,6 +122,14 @@ public class TransportService extends AbstractLifecycleComponent<TransportServic
         return new TransportStats(transport.serverOpen(), adapter.rxMetric.count(), adapter.rxMetric.sum(), adapter.txMetric.count(), adapter.txMetric.sum());
     }
 
+    /**
+     * Per action metrics of the requests received and sent by this node, collected unless
+     * <tt>transport.stats.actions</tt> is set to <tt>false</tt>.
+     */
+    public TransportActionStats actionStats() {
+        return actionStats;
+    }
+
     public BoundTransportAddress boundAddress() {
         return transport.boundAddress();
     }
@@ -181,11 +196,20 @@ public class TransportService extends AbstractLifecycleComponent<TransportServic
                 timeoutHandler.future = threadPool.schedule(options.timeout(), ThreadPool.Names.GENERIC, timeoutHandler);
             }
             clientHandlers.put(requestId, new RequestHolder<T>(handler, node, action, timeoutHandler));
-            transport.sendRequest(node, requestId, action, request, options);
+            if (measureActions) {
+                long start = System.nanoTime();
+                transport.sendRequest(node, requestId, action, request, options);
+                actionStats.stats(action).requestSerializationNanos.inc(System.nanoTime() - start);
+            } else {
+                transport.sendRequest(node, requestId, action, request, options);
+            }
         } catch (final Exception e) {
             // usually happen either because we failed to connect to the node
             // or because we failed serializing the message
             clientHandlers.remove(requestId);
+            if (measureActions) {
+                actionStats.stats(action).sendFailures.inc();
+            }
             if (timeoutHandler != null) {
                 timeoutHandler.future.cancel(false);
             }
@@ -235,9 +259,21 @@ public class TransportService extends AbstractLifecycleComponent<TransportServic
         final MeanMetric rxMetric = new MeanMetric();
         final MeanMetric txMetric = new MeanMetric();
 
+        // the size of the last message received on the thread, the transports look up the handler of a request on
+        // the thread that received it, right after reporting its size
+        private final ThreadLocal<long[]> receivedSize = new ThreadLocal<long[]>() {
+            @Override
+            protected long[] initialValue() {
+                return new long[1];
+            }
+        };
+
         @Override
         public void received(long size) {
             rxMetric.inc(size);
+            if (measureActions) {
+                receivedSize.get()[0] = size;
+            }
         }
 
         @Override
@@ -247,7 +283,15 @@ public class TransportService extends AbstractLifecycleComponent<TransportServic
 
         @Override
         public TransportRequestHandler handler(String action) {
-            return serverHandlers.get(action);
+            TransportRequestHandler<?> handler = serverHandlers.get(action);
+            if (handler == null || !measureActions) {
+                return handler;
+            }
+            // looked up by the transport for each received request, so the measured handler carries its receive time
+            long[] size = receivedSize.get();
+            TransportRequestHandler<?> measuredHandler = measured(handler, actionStats.stats(action), size[0]);
+            size[0] = 0;
+            return measuredHandler;
         }
 
         @Override
@@ -265,6 +309,9 @@ public class TransportService extends AbstractLifecycleComponent<TransportServic
                 return null;
             }
             holder.cancel();
+            if (measureActions) {
+                actionStats.stats(holder.action()).onRoundTrip(System.nanoTime() - holder.sentNanos());
+            }
             return holder.handler();
         }
 
@@ -389,6 +436,8 @@ public class TransportService extends AbstractLifecycleComponent<TransportServic
 
         private final TimeoutHandler timeout;
 
+        private final long sentNanos = System.nanoTime();
+
         RequestHolder(TransportResponseHandler<T> handler, DiscoveryNode node, String action, TimeoutHandler timeout) {
             this.handler = handler;
             this.node = node;
@@ -408,10 +457,125 @@ public class TransportService extends AbstractLifecycleComponent<TransportServic
             return this.action;
         }
 
+        public long sentNanos() {
+            return sentNanos;
+        }
+
         public void cancel() {
             if (timeout != null) {
                 timeout.future.cancel(false);
             }
         }
     }
-}
\ No newline at end of file
+
+    static <T extends TransportRequest> MeasuredRequestHandler<T> measured(TransportRequestHandler<T> handler, TransportActionStats.ActionStats stats, long size) {
+        return new MeasuredRequestHandler<T>(handler, stats, size);
+    }
+
+    /**
+     * Wraps a request handler for a single received request, counting the request message and its size, keeping
+     * the time the request waited until handled
+     * (from the moment the transport looked up its handler, so including its deserialization), the time the handler
+     * took, and the time until a response was sent back.
+     */
+    static class MeasuredRequestHandler<T extends TransportRequest> implements TransportRequestHandler<T> {
+
+        private final TransportRequestHandler<T> handler;
+
+        private final TransportActionStats.ActionStats stats;
+
+        private final long received = System.nanoTime();
+
+        MeasuredRequestHandler(TransportRequestHandler<T> handler, TransportActionStats.ActionStats stats, long size) {
+            this.handler = handler;
+            this.stats = stats;
+            stats.receivedBytes.inc(size);
+        }
+
+        @Override
+        public T newInstance() {
+            return handler.newInstance();
+        }
+
+        @Override
+        public void messageReceived(T request, TransportChannel channel) throws Exception {
+            long start = System.nanoTime();
+            stats.queueNanos.inc(start - received);
+            try {
+                handler.messageReceived(request, new MeasuredTransportChannel(channel, stats, start));
+            } catch (Exception e) {
+                stats.handlerFailures.inc();
+                throw e;
+            } finally {
+                stats.handlerNanos.inc(System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public String executor() {
+            return handler.executor();
+        }
+
+        @Override
+        public String toString() {
+            return handler.toString();
+        }
+    }
+
+    static class MeasuredTransportChannel implements TransportChannel {
+
+        private final TransportChannel channel;
+
+        private final TransportActionStats.ActionStats stats;
+
+        private final long received;
+
+        MeasuredTransportChannel(TransportChannel channel, TransportActionStats.ActionStats stats, long received) {
+            this.channel = channel;
+            this.stats = stats;
+            this.received = received;
+        }
+
+        @Override
+        public String action() {
+            return channel.action();
+        }
+
+        @Override
+        public void sendResponse(TransportResponse response) throws IOException {
+            long start = System.nanoTime();
+            try {
+                channel.sendResponse(response);
+            } finally {
+                onResponse(start);
+            }
+        }
+
+        @Override
+        public void sendResponse(TransportResponse response, TransportResponseOptions options) throws IOException {
+            long start = System.nanoTime();
+            try {
+                channel.sendResponse(response, options);
+            } finally {
+                onResponse(start);
+            }
+        }
+
+        @Override
+        public void sendResponse(Throwable error) throws IOException {
+            stats.errorResponses.inc();
+            long start = System.nanoTime();
+            try {
+                channel.sendResponse(error);
+            } finally {
+                onResponse(start);
+            }
+        }
+
+        private void onResponse(long start) {
+            long now = System.nanoTime();
+            stats.responseSerializationNanos.inc(now - start);
+            stats.onResponse(now - received);
+        }
+    }
+}
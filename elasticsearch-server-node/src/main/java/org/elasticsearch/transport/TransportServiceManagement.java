@@ -20,9 +20,13 @@
 package org.elasticsearch.transport;
 
 import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.jmx.MBean;
 import org.elasticsearch.jmx.ManagedAttribute;
 
+import java.util.Map;
+import java.util.TreeMap;
+
 /**
  *
  */
@@ -50,4 +54,35 @@ public class TransportServiceManagement {
     public long getTotalNumberOfRequests() {
         return transportService.requestIds.get();
     }
+
+    @ManagedAttribute(description = "Transport requests received and sent per action")
+    public String getActionStats() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, TransportActionStats.ActionStats> entry : new TreeMap<String, TransportActionStats.ActionStats>(transportService.actionStats().stats()).entrySet()) {
+            TransportActionStats.ActionStats stats = entry.getValue();
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(entry.getKey()).append(" [received_messages=").append(stats.receivedMessages())
+                    .append(", received_size=").append(new ByteSizeValue(stats.receivedBytes()))
+                    .append(", received=").append(stats.received())
+                    .append(", queue_time=").append(stats.queueTimeInMillis()).append("ms")
+                    .append(", handler_time=").append(stats.handlerTimeInMillis()).append("ms")
+                    .append(", handler_failures=").append(stats.handlerFailures())
+                    .append(", responses=").append(stats.responses())
+                    .append(", response_time=").append(stats.responseTimeInMillis()).append("ms")
+                    .append(", response_time_p50=").append(stats.responseTimeHistogram().percentileInMillis(50)).append("ms")
+                    .append(", response_time_p99=").append(stats.responseTimeHistogram().percentileInMillis(99)).append("ms")
+                    .append(", response_serialization_time=").append(stats.responseSerializationTimeInMillis()).append("ms")
+                    .append(", error_responses=").append(stats.errorResponses())
+                    .append(", sent=").append(stats.sent())
+                    .append(", request_serialization_time=").append(stats.requestSerializationTimeInMillis()).append("ms")
+                    .append(", send_failures=").append(stats.sendFailures())
+                    .append(", round_trips=").append(stats.roundTrips())
+                    .append(", round_trip_time=").append(stats.roundTripTimeInMillis()).append("ms")
+                    .append(", round_trip_time_p50=").append(stats.roundTripTimeHistogram().percentileInMillis(50)).append("ms")
+                    .append(", round_trip_time_p99=").append(stats.roundTripTimeHistogram().percentileInMillis(99)).append("ms]");
+        }
+        return sb.toString();
+    }
 }
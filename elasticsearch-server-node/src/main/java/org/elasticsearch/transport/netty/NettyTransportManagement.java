@@ -24,6 +24,8 @@ import org.elasticsearch.jmx.MBean;
 import org.elasticsearch.jmx.ManagedAttribute;
 import org.elasticsearch.transport.Transport;
 
+import java.util.Map;
+
 /**
  *
  */
@@ -97,4 +99,39 @@ public class NettyTransportManagement {
         }
         return transport.tcpReceiveBufferSize.toString();
     }
+
+    @ManagedAttribute(description = "Bytes sent and compression stats per action")
+    public String getCompressionStats() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, TransportCompression.ActionStats> entry : transport.compression.stats().entrySet()) {
+            TransportCompression.ActionStats stats = entry.getValue();
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(entry.getKey()).append(" [messages=").append(stats.messages())
+                    .append(", bytes=").append(stats.bytes())
+                    .append(", compressed=").append(stats.compressedMessages())
+                    .append(", ratio=").append(String.format("%.2f", stats.ratio()))
+                    .append(", time=").append(stats.compressionTimeInMillis()).append("ms]");
+        }
+        return sb.toString();
+    }
+
+    @ManagedAttribute(description = "Connections and messages sent per traffic class")
+    public String getTrafficClassStats() {
+        StringBuilder sb = new StringBuilder();
+        for (TransportTrafficClasses.TrafficClass trafficClass : transport.trafficClasses.classes()) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(trafficClass.name()).append(" [connections=").append(trafficClass.connections())
+                    .append(", workers=").append(trafficClass.workers())
+                    .append(", max_bytes_per_sec=").append(trafficClass.maxBytesPerSec())
+                    .append(", messages=").append(trafficClass.messages())
+                    .append(", bytes=").append(trafficClass.bytes())
+                    .append(", throttle_time=").append(trafficClass.throttleTimeInMillis()).append("ms")
+                    .append(", rejected=").append(trafficClass.rejected()).append("]");
+        }
+        return sb.toString();
+    }
 }
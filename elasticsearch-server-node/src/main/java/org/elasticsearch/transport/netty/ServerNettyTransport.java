@@ -19,14 +19,16 @@
 
 package org.elasticsearch.transport.netty;
 
-import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import org.elasticsearch.ElasticSearchException;
+import org.elasticsearch.ElasticSearchIllegalArgumentException;
 import org.elasticsearch.ElasticSearchIllegalStateException;
 import org.elasticsearch.cluster.node.DiscoveryNode;
 import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.bytes.ChannelBufferBytesReference;
 import org.elasticsearch.common.bytes.NettyBytesArray;
+import org.elasticsearch.common.bytes.NettyBytesReference;
 import org.elasticsearch.common.component.AbstractLifecycleComponent;
 import org.elasticsearch.common.compress.NettyCompressorFactory;
 import org.elasticsearch.common.inject.Inject;
@@ -41,6 +43,7 @@ import org.elasticsearch.common.transport.BoundTransportAddress;
 import org.elasticsearch.common.transport.InetSocketTransportAddress;
 import org.elasticsearch.common.transport.PortsRange;
 import org.elasticsearch.common.transport.TransportAddress;
+import org.elasticsearch.common.unit.ByteSizeUnit;
 import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.monitor.jvm.JvmInfo;
@@ -50,6 +53,7 @@ import org.elasticsearch.transport.support.TransportStatus;
 import org.jboss.netty.bootstrap.ClientBootstrap;
 import org.jboss.netty.bootstrap.ServerBootstrap;
 import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.*;
 import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
 import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
@@ -64,6 +68,7 @@ import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.nio.channels.CancelledKeyException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
@@ -84,9 +89,10 @@ import static org.elasticsearch.common.util.concurrent.ConcurrentCollections.new
 import static org.elasticsearch.common.util.concurrent.ClientEsExecutors.daemonThreadFactory;
 
 /**
- * There are 3 types of connections per node, low/med/high. Low if for batch oriented APIs (like recovery or
- * batch) with high payload that will cause regular request. (like search or single index) to take
- * longer. Med is for the typical search / single doc index. And High is for ping type requests (like FD).
+ * Connections to other nodes are pooled per traffic class (see {@link TransportTrafficClasses}), so batch oriented
+ * APIs with high payload (like recovery or bulk) don't cause regular requests (like search or single index) or ping
+ * type requests (like FD) to take longer. The number of connections of the classes defaults to the low/med/high
+ * connections per node, low for recovery and bulk, med for search and high for ping and cluster state.
  */
 public class ServerNettyTransport extends AbstractLifecycleComponent<Transport> implements NettyTransport {
 
@@ -111,6 +117,8 @@ public class ServerNettyTransport extends AbstractLifecycleComponent<Transport>
 
     final boolean compress;
 
+    final TransportCompression compression;
+
     final TimeValue connectTimeout;
 
     final Boolean tcpNoDelay;
@@ -127,15 +135,22 @@ public class ServerNettyTransport extends AbstractLifecycleComponent<Transport>
     final int connectionsPerNodeMed;
     final int connectionsPerNodeHigh;
 
+    final TransportTrafficClasses trafficClasses;
+
     final ByteSizeValue maxCumulationBufferCapacity;
     final int maxCompositeBufferComponents;
 
+    final ByteSizeValue payloadReferenceThreshold;
+
     private final ThreadPool threadPool;
 
     private volatile OpenChannelsHandler serverOpenChannels;
 
     private volatile ClientBootstrap clientBootstrap;
 
+    // the bootstrap connecting the channels of each traffic class, by class index
+    private volatile ClientBootstrap[] classBootstraps;
+
     private volatile ServerBootstrap serverBootstrap;
 
     // node id to actual channel
@@ -184,6 +199,12 @@ public class ServerNettyTransport extends AbstractLifecycleComponent<Transport>
         this.bindHost = componentSettings.get("bind_host", settings.get("transport.bind_host", settings.get("transport.host")));
         this.publishHost = componentSettings.get("publish_host", settings.get("transport.publish_host", settings.get("transport.host")));
         this.compress = settings.getAsBoolean("transport.tcp.compress", false);
+        this.compression = new TransportCompression(settings);
+        for (TransportCompression.Rule rule : compression.rules()) {
+            if (rule.type() != null && NettyCompressorFactory.compressor(rule.type()) == null) {
+                throw new ElasticSearchIllegalArgumentException("No compressor found for type [" + rule.type() + "] of actions [" + rule.prefix() + "]");
+            }
+        }
         this.connectTimeout = componentSettings.getAsTime("connect_timeout", settings.getAsTime("transport.tcp.connect_timeout", settings.getAsTime(TCP_CONNECT_TIMEOUT, TCP_DEFAULT_CONNECT_TIMEOUT)));
         this.tcpNoDelay = componentSettings.getAsBoolean("tcp_no_delay", settings.getAsBoolean(TCP_NO_DELAY, true));
         this.tcpKeepAlive = componentSettings.getAsBoolean("tcp_keep_alive", settings.getAsBoolean(TCP_KEEP_ALIVE, true));
@@ -193,9 +214,12 @@ public class ServerNettyTransport extends AbstractLifecycleComponent<Transport>
         this.connectionsPerNodeLow = componentSettings.getAsInt("connections_per_node.low", settings.getAsInt("transport.connections_per_node.low", 2));
         this.connectionsPerNodeMed = componentSettings.getAsInt("connections_per_node.med", settings.getAsInt("transport.connections_per_node.med", 6));
         this.connectionsPerNodeHigh = componentSettings.getAsInt("connections_per_node.high", settings.getAsInt("transport.connections_per_node.high", 1));
+        this.trafficClasses = new TransportTrafficClasses(settings, connectionsPerNodeLow, connectionsPerNodeMed, connectionsPerNodeHigh);
 
         this.maxCumulationBufferCapacity = componentSettings.getAsBytesSize("max_cumulation_buffer_capacity", null);
         this.maxCompositeBufferComponents = componentSettings.getAsInt("max_composite_buffer_components", -1);
+        // uncompressed message payloads from this size on are referenced by the written buffer instead of copied into it
+        this.payloadReferenceThreshold = componentSettings.getAsBytesSize("payload_reference_threshold", new ByteSizeValue(8, ByteSizeUnit.KB));
 
         long defaultReceiverPredictor = 512 * 1024;
         if (JvmInfo.jvmInfo().mem().directMemoryMax().bytes() > 0) {
@@ -291,6 +315,24 @@ public class ServerNettyTransport extends AbstractLifecycleComponent<Transport>
             clientBootstrap.setOption("reuseAddress", reuseAddress);
         }
 
+        ClientBootstrap[] classBootstraps = new ClientBootstrap[trafficClasses.classes().size()];
+        for (TransportTrafficClasses.TrafficClass trafficClass : trafficClasses.classes()) {
+            if (trafficClass.workers() > 0 && !blockingClient) {
+                String prefix = "transport_client_" + trafficClass.name();
+                ClientBootstrap classBootstrap = new ClientBootstrap(new NioClientSocketChannelFactory(
+                        Executors.newCachedThreadPool(daemonThreadFactory(settings, prefix + "_boss")),
+                        bossCount,
+                        new NioWorkerPool(Executors.newCachedThreadPool(daemonThreadFactory(settings, prefix + "_worker")), trafficClass.workers()),
+                        new HashedWheelTimer(daemonThreadFactory(settings, prefix + "_timer"))));
+                classBootstrap.setPipelineFactory(clientPipelineFactory);
+                classBootstrap.setOptions(clientBootstrap.getOptions());
+                classBootstraps[trafficClass.index()] = classBootstrap;
+            } else {
+                classBootstraps[trafficClass.index()] = clientBootstrap;
+            }
+        }
+        this.classBootstraps = classBootstraps;
+
         if (!settings.getAsBoolean("network.server", true)) {
             return;
         }
@@ -426,6 +468,15 @@ public class ServerNettyTransport extends AbstractLifecycleComponent<Transport>
                         nodeChannels.close();
                     }
 
+                    if (classBootstraps != null) {
+                        for (ClientBootstrap classBootstrap : classBootstraps) {
+                            if (classBootstrap != clientBootstrap) {
+                                classBootstrap.releaseExternalResources();
+                            }
+                        }
+                        classBootstraps = null;
+                    }
+
                     if (clientBootstrap != null) {
                         clientBootstrap.releaseExternalResources();
                         clientBootstrap = null;
@@ -526,50 +577,98 @@ public class ServerNettyTransport extends AbstractLifecycleComponent<Transport>
 
     @Override
     public void sendRequest(final DiscoveryNode node, final long requestId, final String action, final TransportRequest request, TransportRequestOptions options) throws IOException, TransportException {
-        Channel targetChannel = nodeChannel(node, options);
+        TransportTrafficClasses.TrafficClass trafficClass = trafficClasses.trafficClass(action, options.type());
+        final Channel targetChannel = nodeChannel(node, trafficClass);
 
-        if (compress) {
-            options.withCompress(true);
-        }
+        TransportCompression.Rule compressionRule = compression.rule(action);
 
         NettyCachedStreamOutput.Entry cachedEntry = NettyCachedStreamOutput.popEntry();
 
         byte status = 0;
         status = TransportStatus.setRequest(status);
 
-        if (options.compress()) {
-            status = TransportStatus.setCompress(status);
-            cachedEntry.bytes().skip(NettyHeader.HEADER_SIZE);
-            StreamOutput stream = cachedEntry.handles(NettyCompressorFactory.defaultCompressor());
-            stream.setVersion(node.version());
-            stream.writeString(action);
-            request.writeTo(stream);
-            stream.close();
+        BytesReference payload = null;
+        if (!options.compress() && !compressionRule.enabled() && request instanceof PayloadStreamable) {
+            payload = ((PayloadStreamable) request).payload();
+            if (payload == null || payload.length() < payloadReferenceThreshold.bytes()) {
+                payload = null;
+            }
+        }
+
+        StreamOutput stream = cachedEntry.handles();
+        cachedEntry.bytes().skip(NettyHeader.HEADER_SIZE);
+        stream.setVersion(node.version());
+        stream.writeString(action);
+        if (payload != null) {
+            ((PayloadStreamable) request).writeToPayload(stream);
+            // the payload length, as writeBytesReference would, the payload bytes themselves are referenced below
+            stream.writeVInt(payload.length());
         } else {
-            StreamOutput stream = cachedEntry.handles();
-            cachedEntry.bytes().skip(NettyHeader.HEADER_SIZE);
-            stream.setVersion(node.version());
-            stream.writeString(action);
             request.writeTo(stream);
-            stream.close();
         }
+        stream.close();
+
+        // the message is serialized uncompressed first, so its size can decide if it gets compressed
+        BytesReference serialized = cachedEntry.bytes().bytes();
+        int size = serialized.length() - NettyHeader.HEADER_SIZE;
+        long compressedSize = -1;
+        long compressionNanos = 0;
+        if (payload == null && (options.compress() || compressionRule.compress(size))) {
+            long start = System.nanoTime();
+            NettyCachedStreamOutput.Entry compressedEntry = NettyCachedStreamOutput.popEntry();
+            compressedEntry.bytes().skip(NettyHeader.HEADER_SIZE);
+            StreamOutput compressedStream = compressedEntry.handles(compressionRule.type() == null ?
+                    NettyCompressorFactory.defaultCompressor() : NettyCompressorFactory.compressor(compressionRule.type()));
+            // the bytes were already serialized with handles, so are written as is
+            compressedStream.writeBytes(serialized.array(), serialized.arrayOffset() + NettyHeader.HEADER_SIZE, size);
+            compressedStream.close();
+            NettyCachedStreamOutput.pushEntry(cachedEntry);
+            cachedEntry = compressedEntry;
+            status = TransportStatus.setCompress(status);
+            compressedSize = cachedEntry.bytes().bytes().length() - NettyHeader.HEADER_SIZE;
+            compressionNanos = System.nanoTime() - start;
+        }
+        compression.onMessage(action, payload == null ? size : size + payload.length(), compressedSize, compressionNanos);
+
         ChannelBuffer buffer = ((NettyBytesArray)cachedEntry.bytes().bytes()).toChannelBuffer();
+        if (payload != null) {
+            // the header (including the message length) is written into the first component
+            buffer = ChannelBuffers.wrappedBuffer(buffer, toChannelBuffer(payload));
+        }
         NettyHeader.writeHeader(buffer, requestId, status, node.version());
 
+        final int messageSize = buffer.readableBytes();
+        final TransportTrafficClasses.TrafficClass delayedClass = trafficClass;
+        long delayNanos = trafficClass.onMessage(messageSize);
+        if (delayNanos < 0) {
+            NettyCachedStreamOutput.pushEntry(cachedEntry);
+            throw new TransportException("rejected sending [" + action + "] to " + node + ", more than [" + trafficClass.maxDelayedBytes()
+                    + "] are already delayed in traffic class [" + trafficClass.name() + "] to keep to [" + trafficClass.maxBytesPerSec() + "] per sec");
+        }
+        if (delayNanos > 0) {
+            // over the max rate of its class, the write is delayed (the sending thread can be an IO thread, so
+            // is not paused)
+            final ChannelBuffer delayedBuffer = buffer;
+            final NettyCachedStreamOutput.Entry delayedEntry = cachedEntry;
+            threadPool.schedule(TimeValue.timeValueNanos(delayNanos), ThreadPool.Names.SAME, new Runnable() {
+                @Override
+                public void run() {
+                    ChannelFuture future = targetChannel.write(delayedBuffer);
+                    future.addListener(new CacheFutureListener(delayedEntry));
+                    future.addListener(new WriteFailureListener(node, requestId, action));
+                    future.addListener(new ChannelFutureListener() {
+                        @Override
+                        public void operationComplete(ChannelFuture future) throws Exception {
+                            delayedClass.onDelayedWrite(messageSize);
+                        }
+                    });
+                }
+            });
+            return;
+        }
         ChannelFuture future = targetChannel.write(buffer);
         future.addListener(new CacheFutureListener(cachedEntry));
-        // We handle close connection exception in the #exceptionCaught method, which is the main reason we want to add this future
-//        channelFuture.addListener(new ChannelFutureListener() {
-//            @Override public void operationComplete(ChannelFuture future) throws Exception {
-//                if (!future.isSuccess()) {
-//                    // maybe add back the retry?
-//                    TransportResponseHandler handler = transportServiceAdapter.remove(requestId);
-//                    if (handler != null) {
-//                        handler.handleException(new RemoteTransportException("Failed write request", new SendRequestTransportException(node, action, future.getCause())));
-//                    }
-//                }
-//            }
-//        });
+        future.addListener(new WriteFailureListener(node, requestId, action));
     }
 
     @Override
@@ -612,7 +711,11 @@ public class ServerNettyTransport extends AbstractLifecycleComponent<Transport>
                     if (light) {
                         nodeChannels = connectToChannelsLight(node);
                     } else {
-                        nodeChannels = new NodeChannels(new Channel[connectionsPerNodeLow], new Channel[connectionsPerNodeMed], new Channel[connectionsPerNodeHigh]);
+                        Channel[][] channels = new Channel[trafficClasses.classes().size()][];
+                        for (TransportTrafficClasses.TrafficClass trafficClass : trafficClasses.classes()) {
+                            channels[trafficClass.index()] = new Channel[trafficClass.connections()];
+                        }
+                        nodeChannels = new NodeChannels(channels);
                         try {
                             connectToChannels(nodeChannels, node);
                         } catch (Exception e) {
@@ -653,82 +756,56 @@ public class ServerNettyTransport extends AbstractLifecycleComponent<Transport>
         Channel[] channels = new Channel[1];
         channels[0] = connect.getChannel();
         channels[0].getCloseFuture().addListener(new ChannelCloseListener(node));
-        return new NodeChannels(channels, channels, channels);
+        Channel[][] classChannels = new Channel[trafficClasses.classes().size()][];
+        Arrays.fill(classChannels, channels);
+        return new NodeChannels(classChannels);
     }
 
     private void connectToChannels(NodeChannels nodeChannels, DiscoveryNode node) {
-        ChannelFuture[] connectLow = new ChannelFuture[nodeChannels.low.length];
-        ChannelFuture[] connectMed = new ChannelFuture[nodeChannels.med.length];
-        ChannelFuture[] connectHigh = new ChannelFuture[nodeChannels.high.length];
+        ChannelFuture[][] connects = new ChannelFuture[nodeChannels.channels.length][];
         InetSocketAddress address = ((InetSocketTransportAddress) node.address()).address();
-        for (int i = 0; i < connectLow.length; i++) {
-            connectLow[i] = clientBootstrap.connect(address);
-        }
-        for (int i = 0; i < connectMed.length; i++) {
-            connectMed[i] = clientBootstrap.connect(address);
-        }
-        for (int i = 0; i < connectHigh.length; i++) {
-            connectHigh[i] = clientBootstrap.connect(address);
+        ClientBootstrap[] classBootstraps = this.classBootstraps;
+        for (int c = 0; c < connects.length; c++) {
+            connects[c] = new ChannelFuture[nodeChannels.channels[c].length];
+            for (int i = 0; i < connects[c].length; i++) {
+                connects[c][i] = classBootstraps[c].connect(address);
+            }
         }
 
         try {
-            for (int i = 0; i < connectLow.length; i++) {
-                connectLow[i].awaitUninterruptibly((long) (connectTimeout.millis() * 1.5));
-                if (!connectLow[i].isSuccess()) {
-                    throw new ConnectTransportException(node, "connect_timeout[" + connectTimeout + "]", connectLow[i].getCause());
-                }
-                nodeChannels.low[i] = connectLow[i].getChannel();
-                nodeChannels.low[i].getCloseFuture().addListener(new ChannelCloseListener(node));
-            }
-
-            for (int i = 0; i < connectMed.length; i++) {
-                connectMed[i].awaitUninterruptibly((long) (connectTimeout.millis() * 1.5));
-                if (!connectMed[i].isSuccess()) {
-                    throw new ConnectTransportException(node, "connect_timeout[" + connectTimeout + "]", connectMed[i].getCause());
-                }
-                nodeChannels.med[i] = connectMed[i].getChannel();
-                nodeChannels.med[i].getCloseFuture().addListener(new ChannelCloseListener(node));
-            }
-
-            for (int i = 0; i < connectHigh.length; i++) {
-                connectHigh[i].awaitUninterruptibly((long) (connectTimeout.millis() * 1.5));
-                if (!connectHigh[i].isSuccess()) {
-                    throw new ConnectTransportException(node, "connect_timeout[" + connectTimeout + "]", connectHigh[i].getCause());
+            for (int c = 0; c < connects.length; c++) {
+                for (int i = 0; i < connects[c].length; i++) {
+                    connects[c][i].awaitUninterruptibly((long) (connectTimeout.millis() * 1.5));
+                    if (!connects[c][i].isSuccess()) {
+                        throw new ConnectTransportException(node, "connect_timeout[" + connectTimeout + "]", connects[c][i].getCause());
+                    }
+                    nodeChannels.channels[c][i] = connects[c][i].getChannel();
+                    nodeChannels.channels[c][i].getCloseFuture().addListener(new ChannelCloseListener(node));
                 }
-                nodeChannels.high[i] = connectHigh[i].getChannel();
-                nodeChannels.high[i].getCloseFuture().addListener(new ChannelCloseListener(node));
             }
 
-            if (nodeChannels.low.length == 0) {
-                if (nodeChannels.med.length > 0) {
-                    nodeChannels.low = nodeChannels.med;
-                } else {
-                    nodeChannels.low = nodeChannels.high;
-                }
-            }
-            if (nodeChannels.med.length == 0) {
-                if (nodeChannels.high.length > 0) {
-                    nodeChannels.med = nodeChannels.high;
-                } else {
-                    nodeChannels.med = nodeChannels.low;
-                }
-            }
-            if (nodeChannels.high.length == 0) {
-                if (nodeChannels.med.length > 0) {
-                    nodeChannels.high = nodeChannels.med;
-                } else {
-                    nodeChannels.high = nodeChannels.low;
+            // classes without connections of their own use the ones of the last class that has some (search by default)
+            for (int c = 0; c < nodeChannels.channels.length; c++) {
+                if (nodeChannels.channels[c].length == 0) {
+                    for (int other = nodeChannels.channels.length - 1; other >= 0; other--) {
+                        if (connects[other].length > 0) {
+                            nodeChannels.channels[c] = nodeChannels.channels[other];
+                            break;
+                        }
+                    }
                 }
             }
         } catch (RuntimeException e) {
             // clean the futures
-            for (ChannelFuture future : ImmutableList.<ChannelFuture>builder().add(connectLow).add(connectMed).add(connectHigh).build()) {
-                future.cancel();
-                if (future.getChannel() != null && future.getChannel().isOpen()) {
-                    try {
-                        future.getChannel().close();
-                    } catch (Exception e1) {
-                        // ignore
+            for (ChannelFuture[] connect : connects) {
+                for (ChannelFuture future : connect) {
+                    future.cancel();
+                    if (future.getChannel() != null && future.getChannel().isOpen()) {
+                        try {
+                            future.getChannel().close();
+                        } catch (Exception e1) {
+                            // ignore
+                        }
                     }
                 }
             }
@@ -751,12 +828,12 @@ public class ServerNettyTransport extends AbstractLifecycleComponent<Transport>
         }
     }
 
-    private Channel nodeChannel(DiscoveryNode node, TransportRequestOptions options) throws ConnectTransportException {
+    private Channel nodeChannel(DiscoveryNode node, TransportTrafficClasses.TrafficClass trafficClass) throws ConnectTransportException {
         NodeChannels nodeChannels = connectedNodes.get(node);
         if (nodeChannels == null) {
             throw new NodeNotConnectedException(node, "Node not connected");
         }
-        return nodeChannels.channel(options.type());
+        return nodeChannels.channel(trafficClass);
     }
 
     private Object connectLock(String nodeId) {
@@ -784,21 +861,25 @@ public class ServerNettyTransport extends AbstractLifecycleComponent<Transport>
 
     public static class NodeChannels {
 
-        private Channel[] low;
-        private final AtomicInteger lowCounter = new AtomicInteger();
-        private Channel[] med;
-        private final AtomicInteger medCounter = new AtomicInteger();
-        private Channel[] high;
-        private final AtomicInteger highCounter = new AtomicInteger();
+        // the channels of each traffic class, by class index
+        private final Channel[][] channels;
+        private final AtomicInteger[] counters;
 
-        public NodeChannels(Channel[] low, Channel[] med, Channel[] high) {
-            this.low = low;
-            this.med = med;
-            this.high = high;
+        public NodeChannels(Channel[][] channels) {
+            this.channels = channels;
+            this.counters = new AtomicInteger[channels.length];
+            for (int i = 0; i < counters.length; i++) {
+                counters[i] = new AtomicInteger();
+            }
         }
 
         public boolean hasChannel(Channel channel) {
-            return hasChannel(channel, low) || hasChannel(channel, med) || hasChannel(channel, high);
+            for (Channel[] classChannels : channels) {
+                if (hasChannel(channel, classChannels)) {
+                    return true;
+                }
+            }
+            return false;
         }
 
         private boolean hasChannel(Channel channel, Channel[] channels) {
@@ -810,21 +891,16 @@ public class ServerNettyTransport extends AbstractLifecycleComponent<Transport>
             return false;
         }
 
-        public Channel channel(TransportRequestOptions.Type type) {
-            if (type == TransportRequestOptions.Type.MED) {
-                return med[Math.abs(medCounter.incrementAndGet()) % med.length];
-            } else if (type == TransportRequestOptions.Type.HIGH) {
-                return high[Math.abs(highCounter.incrementAndGet()) % high.length];
-            } else {
-                return low[Math.abs(lowCounter.incrementAndGet()) % low.length];
-            }
+        public Channel channel(TransportTrafficClasses.TrafficClass trafficClass) {
+            Channel[] classChannels = channels[trafficClass.index()];
+            return classChannels[Math.abs(counters[trafficClass.index()].incrementAndGet()) % classChannels.length];
         }
 
         public synchronized void close() {
             List<ChannelFuture> futures = new ArrayList<ChannelFuture>();
-            closeChannelsAndWait(low, futures);
-            closeChannelsAndWait(med, futures);
-            closeChannelsAndWait(high, futures);
+            for (Channel[] classChannels : channels) {
+                closeChannelsAndWait(classChannels, futures);
+            }
             for (ChannelFuture future : futures) {
                 future.awaitUninterruptibly();
             }
@@ -843,6 +919,58 @@ public class ServerNettyTransport extends AbstractLifecycleComponent<Transport>
         }
     }
 
+    /**
+     * A channel buffer wrapping the bytes, without copying them when possible.
+     */
+    static ChannelBuffer toChannelBuffer(BytesReference bytes) {
+        if (bytes instanceof NettyBytesReference) {
+            return ((NettyBytesReference) bytes).toChannelBuffer();
+        }
+        if (bytes.hasArray()) {
+            return ChannelBuffers.wrappedBuffer(bytes.array(), bytes.arrayOffset(), bytes.length());
+        }
+        return ChannelBuffers.wrappedBuffer(bytes.toBytes());
+    }
+
+    /**
+     * Notifies the response handler of a request that failed to be written, rather than leaving it waiting for a
+     * response (or its timeout).
+     */
+    class WriteFailureListener implements ChannelFutureListener {
+
+        private final DiscoveryNode node;
+
+        private final long requestId;
+
+        private final String action;
+
+        WriteFailureListener(DiscoveryNode node, long requestId, String action) {
+            this.node = node;
+            this.requestId = requestId;
+            this.action = action;
+        }
+
+        @Override
+        public void operationComplete(ChannelFuture future) throws Exception {
+            if (future.isSuccess()) {
+                return;
+            }
+            final TransportResponseHandler handler = transportServiceAdapter.remove(requestId);
+            if (handler == null) {
+                // already notified, for example when the node got disconnected
+                return;
+            }
+            final SendRequestTransportException exception = new SendRequestTransportException(node, action, future.getCause());
+            // called on an IO thread, handlers may block
+            threadPool.generic().execute(new Runnable() {
+                @Override
+                public void run() {
+                    handler.handleException(exception);
+                }
+            });
+        }
+    }
+
     public static class CacheFutureListener implements ChannelFutureListener {
 
         private final NettyCachedStreamOutput.Entry cachedEntry;
@@ -0,0 +1,223 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.transport.netty;
+
+import com.google.common.collect.Lists;
+import org.elasticsearch.common.metrics.CounterMetric;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+import static org.elasticsearch.common.util.concurrent.ConcurrentCollections.newConcurrentMap;
+
+/**
+ * Decides which messages get compressed, and with which compressor, per action, and keeps compression stats per
+ * action. Messages are compressed when their rule is enabled and their (uncompressed) size is at least the rule's
+ * threshold. The rule of an action is the one with the longest prefix of it, defaulting to:
+ * <pre>
+ * transport.tcp.compress: true
+ * transport.tcp.compress_threshold: 1kb
+ * transport.tcp.compress_type: lzf
+ * </pre>
+ * with rules per action prefix set as:
+ * <pre>
+ * transport.tcp.compress_actions.recovery.prefix: index/shard/recovery/
+ * transport.tcp.compress_actions.recovery.threshold: 0
+ * transport.tcp.compress_actions.ping.prefix: discovery/zen/fd/
+ * transport.tcp.compress_actions.ping.enabled: false
+ * </pre>
+ */
+public class TransportCompression {
+
+    public static class Rule {
+
+        private final String prefix;
+
+        private final boolean enabled;
+
+        private final long threshold;
+
+        private final String type;
+
+        Rule(String prefix, boolean enabled, long threshold, String type) {
+            this.prefix = prefix;
+            this.enabled = enabled;
+            this.threshold = threshold;
+            this.type = type;
+        }
+
+        public String prefix() {
+            return prefix;
+        }
+
+        public boolean enabled() {
+            return enabled;
+        }
+
+        public long threshold() {
+            return threshold;
+        }
+
+        /**
+         * The compressor type, <tt>null</tt> for the default compressor.
+         */
+        public String type() {
+            return type;
+        }
+
+        /**
+         * Should a message of the given (uncompressed) size be compressed.
+         */
+        public boolean compress(long size) {
+            return enabled && size >= threshold;
+        }
+    }
+
+    public static class ActionStats {
+
+        final CounterMetric messages = new CounterMetric();
+
+        // the uncompressed size of all the messages
+        final CounterMetric bytes = new CounterMetric();
+
+        final CounterMetric compressedMessages = new CounterMetric();
+
+        // the uncompressed and compressed sizes of the compressed messages
+        final CounterMetric rawBytes = new CounterMetric();
+
+        final CounterMetric compressedBytes = new CounterMetric();
+
+        final CounterMetric compressionNanos = new CounterMetric();
+
+        public long messages() {
+            return messages.count();
+        }
+
+        public long bytes() {
+            return bytes.count();
+        }
+
+        public long compressedMessages() {
+            return compressedMessages.count();
+        }
+
+        public long rawBytes() {
+            return rawBytes.count();
+        }
+
+        public long compressedBytes() {
+            return compressedBytes.count();
+        }
+
+        /**
+         * The compressed size of the compressed messages relative to their uncompressed size.
+         */
+        public double ratio() {
+            long raw = rawBytes.count();
+            return raw == 0 ? 1 : ((double) compressedBytes.count()) / raw;
+        }
+
+        public long compressionTimeInMillis() {
+            return compressionNanos.count() / 1000000;
+        }
+    }
+
+    private final Rule defaultRule;
+
+    // sorted by descending prefix length, so the first matching one is the longest
+    private final List<Rule> rules;
+
+    private final ConcurrentMap<String, ActionStats> stats = newConcurrentMap();
+
+    public TransportCompression(Settings settings) {
+        this.defaultRule = new Rule("", settings.getAsBoolean("transport.tcp.compress", false),
+                settings.getAsBytesSize("transport.tcp.compress_threshold", new ByteSizeValue(1, ByteSizeUnit.KB)).bytes(),
+                settings.get("transport.tcp.compress_type"));
+        List<Rule> rules = Lists.newArrayList();
+        for (Map.Entry<String, Settings> entry : settings.getGroups("transport.tcp.compress_actions").entrySet()) {
+            Settings ruleSettings = entry.getValue();
+            rules.add(new Rule(ruleSettings.get("prefix", entry.getKey()), ruleSettings.getAsBoolean("enabled", true),
+                    ruleSettings.getAsBytesSize("threshold", new ByteSizeValue(defaultRule.threshold())).bytes(),
+                    ruleSettings.get("type", defaultRule.type())));
+        }
+        Collections.sort(rules, new Comparator<Rule>() {
+            @Override
+            public int compare(Rule o1, Rule o2) {
+                return o2.prefix().length() - o1.prefix().length();
+            }
+        });
+        this.rules = rules;
+    }
+
+    /**
+     * All the rules, including the default one.
+     */
+    public List<Rule> rules() {
+        List<Rule> all = Lists.newArrayList(rules);
+        all.add(defaultRule);
+        return all;
+    }
+
+    public Rule rule(String action) {
+        for (Rule rule : rules) {
+            if (action.startsWith(rule.prefix())) {
+                return rule;
+            }
+        }
+        return defaultRule;
+    }
+
+    public ActionStats stats(String action) {
+        ActionStats actionStats = stats.get(action);
+        if (actionStats == null) {
+            actionStats = new ActionStats();
+            ActionStats existing = stats.putIfAbsent(action, actionStats);
+            if (existing != null) {
+                actionStats = existing;
+            }
+        }
+        return actionStats;
+    }
+
+    /**
+     * The stats of all the actions messages were sent for.
+     */
+    public Map<String, ActionStats> stats() {
+        return Collections.unmodifiableMap(stats);
+    }
+
+    void onMessage(String action, long size, long compressedSize, long compressionNanos) {
+        ActionStats actionStats = stats(action);
+        actionStats.messages.inc();
+        actionStats.bytes.inc(size);
+        if (compressedSize >= 0) {
+            actionStats.compressedMessages.inc();
+            actionStats.rawBytes.inc(size);
+            actionStats.compressedBytes.inc(compressedSize);
+            actionStats.compressionNanos.inc(compressionNanos);
+        }
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.transport.netty;
+
+import com.google.common.collect.ImmutableList;
+import org.elasticsearch.common.metrics.CounterMetric;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.transport.TransportRequestOptions;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The classes of traffic sent to other nodes, each with its own pool of connections per node, optionally its own IO
+ * workers and a maximum rate of bytes sent, so bulk and recovery traffic doesn't delay pings, cluster state
+ * publishing and searches queued behind it on the same sockets. The class of a request is the one with the longest
+ * action prefix matching its action, or else picked based on the request type (<tt>high</tt> requests are sent as
+ * <tt>ping</tt>, <tt>low</tt> ones as <tt>bulk</tt> and the rest as <tt>search</tt>). Classes are set as:
+ * <pre>
+ * transport.traffic_classes.recovery.actions: index/shard/recovery/
+ * transport.traffic_classes.recovery.connections: 2
+ * transport.traffic_classes.recovery.workers: 2
+ * transport.traffic_classes.recovery.max_bytes_per_sec: 40mb
+ * transport.traffic_classes.recovery.max_delayed_bytes: 40mb
+ * </pre>
+ * Workers default to <tt>0</tt>, sharing the transport client workers, and the rate is not limited by default. The
+ * rate is limited by delaying the write of the messages over it, never by pausing the sending thread, which can be an
+ * IO thread. At most <tt>max_delayed_bytes</tt> (defaults to a second worth of <tt>max_bytes_per_sec</tt>) are held
+ * back per class, a message that would go over it is rejected, so senders that don't wait for their responses get
+ * failures instead of piling up delayed messages on the heap.
+ * <p/>
+ * Note, by default the <tt>ping</tt> and <tt>state</tt> classes each get the <tt>high</tt> connections, and the
+ * <tt>recovery</tt> and <tt>bulk</tt> classes each get the <tt>low</tt> ones, so with the default
+ * <tt>transport.connections_per_node</tt> settings (<tt>2</tt> low, <tt>6</tt> med, <tt>1</tt> high) there are
+ * <tt>12</tt> connections opened to each node, rather than the <tt>9</tt> of the three request types.
+ */
+public class TransportTrafficClasses {
+
+    public static final String PING = "ping";
+    public static final String STATE = "state";
+    public static final String RECOVERY = "recovery";
+    public static final String BULK = "bulk";
+    public static final String SEARCH = "search";
+
+    public static class TrafficClass {
+
+        private final int index;
+
+        private final String name;
+
+        private final String[] actions;
+
+        private final int connections;
+
+        private final int workers;
+
+        private final ByteSizeValue maxBytesPerSec;
+
+        private final ByteSizeValue maxDelayedBytes;
+
+        // the time it takes to send a byte at the max rate, 0 when not limited
+        private final double nanosPerByte;
+
+        // the time the bytes sent so far are done being sent at the max rate
+        private final AtomicLong sentUntilNanos = new AtomicLong(System.nanoTime());
+
+        // the size of the messages delayed and not written yet
+        private final AtomicLong delayedBytes = new AtomicLong();
+
+        final CounterMetric messages = new CounterMetric();
+
+        final CounterMetric bytes = new CounterMetric();
+
+        final CounterMetric throttleNanos = new CounterMetric();
+
+        final CounterMetric rejected = new CounterMetric();
+
+        TrafficClass(int index, String name, Settings settings, String[] defaultActions, int defaultConnections) {
+            this.index = index;
+            this.name = name;
+            this.actions = settings.getAsArray("actions", defaultActions);
+            this.connections = settings.getAsInt("connections", defaultConnections);
+            this.workers = settings.getAsInt("workers", 0);
+            this.maxBytesPerSec = settings.getAsBytesSize("max_bytes_per_sec", new ByteSizeValue(0));
+            this.maxDelayedBytes = settings.getAsBytesSize("max_delayed_bytes", maxBytesPerSec);
+            this.nanosPerByte = maxBytesPerSec.bytes() <= 0 ? 0 : TimeUnit.SECONDS.toNanos(1) / (double) maxBytesPerSec.bytes();
+        }
+
+        int index() {
+            return index;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        /**
+         * The action prefixes of the requests sent in this class.
+         */
+        public String[] actions() {
+            return actions;
+        }
+
+        /**
+         * The number of connections opened to each node for this class.
+         */
+        public int connections() {
+            return connections;
+        }
+
+        /**
+         * The number of IO workers dedicated to the connections of this class, <tt>0</tt> to share the transport
+         * client workers.
+         */
+        public int workers() {
+            return workers;
+        }
+
+        /**
+         * The maximum rate of bytes sent in this class, <tt>0</tt> when not limited.
+         */
+        public ByteSizeValue maxBytesPerSec() {
+            return maxBytesPerSec;
+        }
+
+        /**
+         * The maximum size of the messages held back to keep to {@link #maxBytesPerSec()}, the messages over it are
+         * rejected.
+         */
+        public ByteSizeValue maxDelayedBytes() {
+            return maxDelayedBytes;
+        }
+
+        public long messages() {
+            return messages.count();
+        }
+
+        public long bytes() {
+            return bytes.count();
+        }
+
+        public long throttleTimeInMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(throttleNanos.count());
+        }
+
+        /**
+         * The number of messages rejected because too many bytes were delayed already.
+         */
+        public long rejected() {
+            return rejected.count();
+        }
+
+        /**
+         * Accounts for a message of the given size sent in this class, returning how long (in nanos) its write should
+         * be delayed so the maximum rate is not exceeded, <tt>0</tt> to write it right away. A delayed message must
+         * be followed by a call to {@link #onDelayedWrite(long)} once written. Never blocks, returns <tt>-1</tt> if the
+         * message would be delayed while <tt>max_delayed_bytes</tt> are delayed already, in which case it is not
+         * accounted for and should not be sent.
+         */
+        public long onMessage(long size) {
+            if (nanosPerByte == 0) {
+                messages.inc();
+                bytes.inc(size);
+                return 0;
+            }
+            while (true) {
+                long now = System.nanoTime();
+                long sentUntil = sentUntilNanos.get();
+                // the message is sent once the ones before it are, at the max rate
+                long start = sentUntil - now > 0 ? sentUntil : now;
+                long delay = start - now;
+                if (delay > 0) {
+                    // a message is always let through when nothing else is delayed, even if larger than the bound
+                    long delayed = delayedBytes.addAndGet(size);
+                    if (delayed > maxDelayedBytes.bytes() && delayed != size) {
+                        delayedBytes.addAndGet(-size);
+                        rejected.inc();
+                        return -1;
+                    }
+                }
+                if (sentUntilNanos.compareAndSet(sentUntil, start + (long) (size * nanosPerByte))) {
+                    messages.inc();
+                    bytes.inc(size);
+                    if (delay > 0) {
+                        throttleNanos.inc(delay);
+                    }
+                    return delay;
+                }
+                if (delay > 0) {
+                    delayedBytes.addAndGet(-size);
+                }
+            }
+        }
+
+        /**
+         * Called once a message delayed by {@link #onMessage(long)} was written (or failed to).
+         */
+        public void onDelayedWrite(long size) {
+            delayedBytes.addAndGet(-size);
+        }
+    }
+
+    private final ImmutableList<TrafficClass> classes;
+
+    private final TrafficClass ping;
+
+    private final TrafficClass bulk;
+
+    private final TrafficClass search;
+
+    /**
+     * @param connectionsPerNodeLow  the default number of connections of the <tt>recovery</tt> and <tt>bulk</tt> classes
+     * @param connectionsPerNodeMed  the default number of connections of the <tt>search</tt> class
+     * @param connectionsPerNodeHigh the default number of connections of the <tt>ping</tt> and <tt>state</tt> classes
+     */
+    public TransportTrafficClasses(Settings settings, int connectionsPerNodeLow, int connectionsPerNodeMed, int connectionsPerNodeHigh) {
+        this.ping = new TrafficClass(0, PING, classSettings(settings, PING),
+                new String[]{"discovery/zen/fd/", "discovery/zen/unicast", "discovery/zen/multicast"}, connectionsPerNodeHigh);
+        TrafficClass state = new TrafficClass(1, STATE, classSettings(settings, STATE),
+                new String[]{"discovery/zen/publish", "discovery/zen/join", "discovery/zen/leave", "discovery/zen/rejoin", "river/state/publish"}, connectionsPerNodeHigh);
+        TrafficClass recovery = new TrafficClass(2, RECOVERY, classSettings(settings, RECOVERY),
+                new String[]{"index/shard/recovery/"}, connectionsPerNodeLow);
+        this.bulk = new TrafficClass(3, BULK, classSettings(settings, BULK),
+                new String[]{"bulk/"}, connectionsPerNodeLow);
+        this.search = new TrafficClass(4, SEARCH, classSettings(settings, SEARCH),
+                new String[]{"search/"}, connectionsPerNodeMed);
+        this.classes = ImmutableList.of(ping, state, recovery, bulk, search);
+    }
+
+    private static Settings classSettings(Settings settings, String name) {
+        return settings.getByPrefix("transport.traffic_classes." + name + ".");
+    }
+
+    /**
+     * All the classes, in a fixed order.
+     */
+    public List<TrafficClass> classes() {
+        return classes;
+    }
+
+    public TrafficClass trafficClass(String action, TransportRequestOptions.Type type) {
+        TrafficClass match = null;
+        int matchLength = -1;
+        for (TrafficClass trafficClass : classes) {
+            for (String prefix : trafficClass.actions()) {
+                if (prefix.length() > matchLength && action.startsWith(prefix)) {
+                    match = trafficClass;
+                    matchLength = prefix.length();
+                }
+            }
+        }
+        if (match != null) {
+            return match;
+        }
+        if (type == TransportRequestOptions.Type.HIGH) {
+            return ping;
+        } else if (type == TransportRequestOptions.Type.LOW) {
+            return bulk;
+        }
+        return search;
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.test.unit.http.netty;
+
+import org.elasticsearch.common.network.NetworkService;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.http.netty.HttpPipeliningHandler;
+import org.elasticsearch.http.netty.NettyHttpServerTransport;
+import org.elasticsearch.http.netty.OrderedHttpResponse;
+import org.elasticsearch.http.netty.OrderedUpstreamMessageEvent;
+import org.jboss.netty.channel.*;
+import org.jboss.netty.handler.codec.http.*;
+import org.testng.annotations.Test;
+
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.elasticsearch.common.settings.ImmutableSettings.settingsBuilder;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ *
+ */
+public class HttpPipeliningHandlerTests {
+
+    @Test
+    public void testResponsesWrittenInRequestOrder() {
+        TestChannel channel = new TestChannel(10);
+        for (int i = 0; i < 4; i++) {
+            Channels.fireMessageReceived(channel, request("/" + i));
+        }
+        assertThat(channel.sequences, contains(0, 1, 2, 3));
+
+        // held back until the responses before them are written
+        channel.respond(2);
+        channel.respond(1);
+        assertThat(channel.written, empty());
+        channel.respond(0);
+        assertThat(channel.written, contains(0, 1, 2));
+        channel.respond(3);
+        assertThat(channel.written, contains(0, 1, 2, 3));
+    }
+
+    @Test
+    public void testReadingSuspendedWithMaxInFlight() {
+        TestChannel channel = new TestChannel(2);
+        Channels.fireMessageReceived(channel, request("/0"));
+        assertThat(channel.readable, equalTo(true));
+        Channels.fireMessageReceived(channel, request("/1"));
+        assertThat(channel.readable, equalTo(false));
+        assertThat(channel.interestOpsChanges, equalTo(1));
+
+        // still two requests without a written response
+        channel.respond(1);
+        assertThat(channel.readable, equalTo(false));
+
+        channel.respond(0);
+        assertThat(channel.written, contains(0, 1));
+        assertThat(channel.readable, equalTo(true));
+        assertThat(channel.interestOpsChanges, equalTo(2));
+
+        Channels.fireMessageReceived(channel, request("/2"));
+        assertThat(channel.readable, equalTo(true));
+        assertThat(channel.sequences, contains(0, 1, 2));
+    }
+
+    private static HttpRequest request(String uri) {
+        return new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, uri);
+    }
+
+    /**
+     * A channel with a pipeline holding just the pipelining handler, recording the sequences of the received
+     * requests, the sequences of the written responses, and whether reading is suspended.
+     */
+    static class TestChannel extends AbstractChannel {
+
+        final List<Integer> sequences = new ArrayList<Integer>();
+
+        final List<Integer> written = new ArrayList<Integer>();
+
+        boolean readable = true;
+
+        int interestOpsChanges;
+
+        TestChannel(int maxInFlight) {
+            this(pipeline(maxInFlight), new RecordingSink());
+        }
+
+        private TestChannel(ChannelPipeline pipeline, RecordingSink sink) {
+            super(null, null, pipeline, sink);
+            sink.channel = this;
+        }
+
+        private static ChannelPipeline pipeline(int maxInFlight) {
+            Settings settings = settingsBuilder().build();
+            ChannelPipeline pipeline = Channels.pipeline();
+            pipeline.addLast("pipelining", new HttpPipeliningHandler(new NettyHttpServerTransport(settings, new NetworkService(settings), null), maxInFlight));
+            pipeline.addLast("handler", new SimpleChannelUpstreamHandler() {
+                @Override
+                public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+                    ((TestChannel) ctx.getChannel()).sequences.add(((OrderedUpstreamMessageEvent) e).sequence());
+                }
+            });
+            return pipeline;
+        }
+
+        void respond(int sequence) {
+            HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+            response.setHeader("sequence", sequence);
+            write(new OrderedHttpResponse(sequence, response));
+        }
+
+        @Override
+        public ChannelConfig getConfig() {
+            return new DefaultChannelConfig();
+        }
+
+        @Override
+        public boolean isBound() {
+            return true;
+        }
+
+        @Override
+        public boolean isConnected() {
+            return true;
+        }
+
+        @Override
+        public SocketAddress getLocalAddress() {
+            return null;
+        }
+
+        @Override
+        public SocketAddress getRemoteAddress() {
+            return null;
+        }
+    }
+
+    static class RecordingSink extends AbstractChannelSink {
+
+        TestChannel channel;
+
+        @Override
+        public void eventSunk(ChannelPipeline pipeline, ChannelEvent e) throws Exception {
+            if (e instanceof MessageEvent) {
+                HttpResponse response = (HttpResponse) ((MessageEvent) e).getMessage();
+                channel.written.add(Integer.parseInt(response.getHeader("sequence")));
+                e.getFuture().setSuccess();
+            } else if (e instanceof ChannelStateEvent && ((ChannelStateEvent) e).getState() == ChannelState.INTEREST_OPS) {
+                boolean readable = (((Integer) ((ChannelStateEvent) e).getValue()) & Channel.OP_READ) != 0;
+                if (readable != channel.readable) {
+                    channel.readable = readable;
+                    channel.interestOpsChanges++;
+                }
+                e.getFuture().setSuccess();
+            }
+        }
+    }
+}
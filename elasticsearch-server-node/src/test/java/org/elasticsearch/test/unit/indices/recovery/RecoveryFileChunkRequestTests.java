@@ -0,0 +1,93 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.test.unit.indices.recovery;
+
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamInput;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.indices.recovery.RecoveryFileChunkRequest;
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ *
+ */
+public class RecoveryFileChunkRequestTests {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        RecoveryFileChunkRequest request = request("abc123");
+        BytesStreamOutput out = new BytesStreamOutput();
+        request.writeTo(out);
+
+        assertRead(out.bytes().toBytes(), "abc123");
+    }
+
+    @Test
+    public void testPayloadRoundTrip() throws Exception {
+        RecoveryFileChunkRequest request = request(null);
+
+        // framed the way the transport sends it, the payload bytes following the message without being copied into it
+        BytesStreamOutput out = new BytesStreamOutput();
+        request.writeToPayload(out);
+        BytesReference payload = request.payload();
+        out.writeVInt(payload.length());
+        out.writeBytes(payload.array(), payload.arrayOffset(), payload.length());
+
+        BytesStreamOutput plain = new BytesStreamOutput();
+        request.writeTo(plain);
+        assertThat(out.bytes().toBytes(), equalTo(plain.bytes().toBytes()));
+
+        assertRead(out.bytes().toBytes(), null);
+    }
+
+    private static RecoveryFileChunkRequest request(String checksum) {
+        byte[] data = new byte[100];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        // the content is a slice, so its offset is not 0
+        return new RecoveryFileChunkRequest(7, new ShardId("test", 2), "_0.frq", 1024, 4096, checksum, new BytesArray(data, 10, 80));
+    }
+
+    private static void assertRead(byte[] bytes, String checksum) throws Exception {
+        RecoveryFileChunkRequest read = new RecoveryFileChunkRequest();
+        read.readFrom(new BytesStreamInput(bytes, false));
+        assertThat(read.recoveryId(), equalTo(7l));
+        assertThat(read.shardId(), equalTo(new ShardId("test", 2)));
+        assertThat(read.name(), equalTo("_0.frq"));
+        assertThat(read.position(), equalTo(1024l));
+        assertThat(read.length(), equalTo(4096l));
+        if (checksum == null) {
+            assertThat(read.checksum(), nullValue());
+        } else {
+            assertThat(read.checksum(), equalTo(checksum));
+        }
+        assertThat(read.content().length(), equalTo(80));
+        for (int i = 0; i < 80; i++) {
+            assertThat(read.content().get(i), equalTo((byte) (i + 10)));
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.test.unit.search.canmatch;
+
+import com.google.common.collect.ImmutableList;
+import org.apache.lucene.document.NumericField;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.*;
+import org.apache.lucene.store.RAMDirectory;
+import org.elasticsearch.common.lucene.Lucene;
+import org.elasticsearch.common.lucene.search.AndFilter;
+import org.elasticsearch.search.canmatch.CanMatchPhase;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import static org.elasticsearch.common.lucene.DocumentBuilder.doc;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ *
+ */
+public class CanMatchPhaseTests {
+
+    private final CanMatchPhase canMatchPhase = new CanMatchPhase();
+
+    private IndexReader reader;
+
+    @BeforeClass
+    public void createIndex() throws Exception {
+        IndexWriter indexWriter = new IndexWriter(new RAMDirectory(), new IndexWriterConfig(Lucene.VERSION, Lucene.STANDARD_ANALYZER));
+        for (int i = 0; i <= 10; i++) {
+            indexWriter.addDocument(doc()
+                    .add(new NumericField("lvalue").setLongValue(10 + i))
+                    .add(new NumericField("ivalue").setIntValue(100 + i))
+                    .add(new NumericField("dvalue").setDoubleValue(1.5 + i / 10.0))
+                    .build());
+        }
+        // a second segment, with values that none of the first one has
+        indexWriter.commit();
+        indexWriter.addDocument(doc()
+                .add(new NumericField("lvalue").setLongValue(-50))
+                .build());
+        reader = IndexReader.open(indexWriter, true);
+        indexWriter.close();
+    }
+
+    @AfterClass
+    public void closeIndex() throws Exception {
+        reader.close();
+    }
+
+    private boolean canMatch(Query query) throws Exception {
+        return canMatch(query, null);
+    }
+
+    private boolean canMatch(Query query, Filter filter) throws Exception {
+        return canMatchPhase.canMatch(reader.getSequentialSubReaders(), query, filter);
+    }
+
+    @Test
+    public void testLongRanges() throws Exception {
+        assertThat(canMatch(NumericRangeQuery.newLongRange("lvalue", 10l, 20l, true, true)), equalTo(true));
+        assertThat(canMatch(NumericRangeQuery.newLongRange("lvalue", 15l, 16l, true, true)), equalTo(true));
+        assertThat(canMatch(NumericRangeQuery.newLongRange("lvalue", 21l, 30l, true, true)), equalTo(false));
+        assertThat(canMatch(NumericRangeQuery.newLongRange("lvalue", 0l, 9l, true, true)), equalTo(false));
+        // values only found in the second segment
+        assertThat(canMatch(NumericRangeQuery.newLongRange("lvalue", -60l, -40l, true, true)), equalTo(true));
+    }
+
+    @Test
+    public void testExclusiveBounds() throws Exception {
+        assertThat(canMatch(NumericRangeQuery.newLongRange("lvalue", 20l, 30l, true, true)), equalTo(true));
+        assertThat(canMatch(NumericRangeQuery.newLongRange("lvalue", 20l, 30l, false, true)), equalTo(false));
+        assertThat(canMatch(NumericRangeQuery.newLongRange("lvalue", 0l, 10l, true, true)), equalTo(true));
+        assertThat(canMatch(NumericRangeQuery.newLongRange("lvalue", 0l, 10l, true, false)), equalTo(false));
+        // exclusive bounds at the edges of the value space can't overflow into matching everything
+        assertThat(canMatch(NumericRangeQuery.newLongRange("lvalue", Long.MAX_VALUE, null, false, true)), equalTo(false));
+        assertThat(canMatch(NumericRangeQuery.newLongRange("lvalue", null, Long.MIN_VALUE, true, false)), equalTo(false));
+        assertThat(canMatch(NumericRangeQuery.newIntRange("ivalue", Integer.MAX_VALUE, null, false, true)), equalTo(false));
+        assertThat(canMatch(NumericRangeQuery.newIntRange("ivalue", null, Integer.MIN_VALUE, true, false)), equalTo(false));
+        // an empty range
+        assertThat(canMatch(NumericRangeQuery.newLongRange("lvalue", 15l, 15l, false, false)), equalTo(false));
+    }
+
+    @Test
+    public void testOpenRanges() throws Exception {
+        assertThat(canMatch(NumericRangeQuery.newLongRange("lvalue", 20l, null, true, true)), equalTo(true));
+        assertThat(canMatch(NumericRangeQuery.newLongRange("lvalue", 21l, null, true, true)), equalTo(false));
+        assertThat(canMatch(NumericRangeQuery.newLongRange("lvalue", null, -50l, true, true)), equalTo(true));
+        assertThat(canMatch(NumericRangeQuery.newLongRange("lvalue", null, -51l, true, true)), equalTo(false));
+        // open on both ends, no constraint is extracted
+        assertThat(canMatch(NumericRangeQuery.newLongRange("lvalue", null, null, true, true)), equalTo(true));
+    }
+
+    @Test
+    public void testIntAndFloatingPointRanges() throws Exception {
+        assertThat(canMatch(NumericRangeQuery.newIntRange("ivalue", 105, 200, true, true)), equalTo(true));
+        assertThat(canMatch(NumericRangeQuery.newIntRange("ivalue", 111, 200, true, true)), equalTo(false));
+        assertThat(canMatch(NumericRangeQuery.newDoubleRange("dvalue", 2.0, 3.0, true, true)), equalTo(true));
+        assertThat(canMatch(NumericRangeQuery.newDoubleRange("dvalue", 2.5, 3.0, true, true)), equalTo(true));
+        assertThat(canMatch(NumericRangeQuery.newDoubleRange("dvalue", 2.5, 3.0, false, true)), equalTo(false));
+        assertThat(canMatch(NumericRangeQuery.newDoubleRange("dvalue", -1.0, 1.0, true, true)), equalTo(false));
+    }
+
+    @Test
+    public void testMissingField() throws Exception {
+        assertThat(canMatch(NumericRangeQuery.newLongRange("other", 0l, 100l, true, true)), equalTo(false));
+    }
+
+    @Test
+    public void testOnlyRequiredClauses() throws Exception {
+        BooleanQuery mustQuery = new BooleanQuery();
+        mustQuery.add(new MatchAllDocsQuery(), BooleanClause.Occur.MUST);
+        mustQuery.add(NumericRangeQuery.newLongRange("lvalue", 21l, 30l, true, true), BooleanClause.Occur.MUST);
+        assertThat(canMatch(mustQuery), equalTo(false));
+
+        BooleanQuery shouldQuery = new BooleanQuery();
+        shouldQuery.add(new MatchAllDocsQuery(), BooleanClause.Occur.SHOULD);
+        shouldQuery.add(NumericRangeQuery.newLongRange("lvalue", 21l, 30l, true, true), BooleanClause.Occur.SHOULD);
+        assertThat(canMatch(shouldQuery), equalTo(true));
+
+        BooleanQuery mustNotQuery = new BooleanQuery();
+        mustNotQuery.add(new MatchAllDocsQuery(), BooleanClause.Occur.MUST);
+        mustNotQuery.add(NumericRangeQuery.newLongRange("lvalue", 10l, 20l, true, true), BooleanClause.Occur.MUST_NOT);
+        assertThat(canMatch(mustNotQuery), equalTo(true));
+    }
+
+    @Test
+    public void testFilters() throws Exception {
+        Filter noMatch = NumericRangeFilter.newLongRange("lvalue", 21l, 30l, true, true);
+        Filter match = NumericRangeFilter.newLongRange("lvalue", 10l, 20l, true, true);
+        assertThat(canMatch(new FilteredQuery(new MatchAllDocsQuery(), noMatch)), equalTo(false));
+        assertThat(canMatch(new FilteredQuery(new MatchAllDocsQuery(), match)), equalTo(true));
+        assertThat(canMatch(new ConstantScoreQuery(noMatch)), equalTo(false));
+        assertThat(canMatch(new MatchAllDocsQuery(), noMatch), equalTo(false));
+        assertThat(canMatch(new MatchAllDocsQuery(), match), equalTo(true));
+        // each range has values, but never within the same segment
+        Filter second = NumericRangeFilter.newLongRange("lvalue", -50l, -50l, true, true);
+        assertThat(canMatch(new MatchAllDocsQuery(), new AndFilter(ImmutableList.of(match, second))), equalTo(false));
+        assertThat(canMatch(new MatchAllDocsQuery(), new AndFilter(ImmutableList.of(match, NumericRangeFilter.newIntRange("ivalue", 100, 100, true, true)))), equalTo(true));
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.test.unit.search.facet;
+
+import gnu.trove.map.hash.TLongLongHashMap;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.io.stream.BytesStreamInput;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.search.facet.CompactFacetStreams;
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ *
+ */
+public class CompactFacetStreamsTests {
+
+    @Test
+    public void testCounts() throws Exception {
+        TLongLongHashMap counts = new TLongLongHashMap();
+        counts.put(-3600000, 5);
+        counts.put(0, 1);
+        counts.put(7200000, 1000000);
+        counts.put(3600000, 0);
+
+        BytesStreamOutput out = new BytesStreamOutput();
+        CompactFacetStreams.writeCounts(out, counts);
+
+        TLongLongHashMap read = new TLongLongHashMap();
+        CompactFacetStreams.readCounts(new BytesStreamInput(out.bytes().toBytes(), false), read);
+        assertThat(read, equalTo(counts));
+    }
+
+    @Test
+    public void testTerms() throws Exception {
+        testTerms(10);
+    }
+
+    @Test
+    public void testCompressedTerms() throws Exception {
+        // enough terms to go over the compression threshold
+        testTerms(5000);
+    }
+
+    private void testTerms(int size) throws Exception {
+        CompactFacetStreams.TermsWriter writer = new CompactFacetStreams.TermsWriter(true);
+        for (int i = 0; i < size; i++) {
+            writer.add(term(i), i * 3, i % 7);
+        }
+        BytesStreamOutput out = new BytesStreamOutput();
+        writer.writeTo(out);
+        out.writeVInt(42);
+
+        BytesStreamInput in = new BytesStreamInput(out.bytes().toBytes(), false);
+        CompactFacetStreams.TermsReader reader = CompactFacetStreams.TermsReader.readFrom(in);
+        // the block is read up front, but only decoded as the terms are consumed
+        assertThat(in.readVInt(), equalTo(42));
+        assertThat(reader.size(), equalTo(size));
+        BytesRef scratch = new BytesRef();
+        for (int i = 0; i < size; i++) {
+            assertThat(reader.next(), equalTo(true));
+            assertThat(reader.termBytes(scratch).utf8ToString(), equalTo(term(i)));
+            assertThat(reader.term(), equalTo(term(i)));
+            assertThat(reader.count(), equalTo((long) i * 3));
+            assertThat(reader.extra(), equalTo((long) i % 7));
+        }
+        assertThat(reader.next(), equalTo(false));
+    }
+
+    private static String term(int i) {
+        return "term_élément_" + String.format("%06d", i);
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.test.unit.search.facet;
+
+import org.elasticsearch.ElasticSearchIllegalArgumentException;
+import org.elasticsearch.common.MurmurHash;
+import org.elasticsearch.common.io.stream.BytesStreamInput;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.search.facet.cardinality.HyperLogLog;
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ *
+ */
+public class HyperLogLogTests {
+
+    @Test
+    public void testExactWhileSparse() {
+        HyperLogLog sketch = sketch(HyperLogLog.DEFAULT_PRECISION, 0, 1000);
+        // collecting the same values again doesn't change the count
+        collect(sketch, 0, 1000);
+        assertThat(sketch.cardinality(), equalTo(1000l));
+    }
+
+    @Test
+    public void testEstimateError() {
+        // about 4 standard errors, which is 0.81% at the default precision
+        assertEstimate(HyperLogLog.DEFAULT_PRECISION, 10000, 0.03);
+        assertEstimate(HyperLogLog.DEFAULT_PRECISION, 30000, 0.03);
+        assertEstimate(HyperLogLog.DEFAULT_PRECISION, 200000, 0.03);
+        assertEstimate(HyperLogLog.DEFAULT_PRECISION, 1000000, 0.03);
+        // 3.25% at precision 10
+        assertEstimate(10, 100000, 0.13);
+        // 26% at the min precision, with the small alpha correction
+        assertEstimate(HyperLogLog.MIN_PRECISION, 1000, 0.5);
+    }
+
+    private void assertEstimate(int precision, int cardinality, double relativeError) {
+        HyperLogLog sketch = sketch(precision, 0, cardinality);
+        assertThat("cardinality [" + cardinality + "] at precision [" + precision + "]",
+                (double) sketch.cardinality(), closeTo(cardinality, cardinality * relativeError));
+    }
+
+    @Test
+    public void testMerge() {
+        // both sparse
+        HyperLogLog merged = sketch(HyperLogLog.DEFAULT_PRECISION, 0, 1000);
+        merged.merge(sketch(HyperLogLog.DEFAULT_PRECISION, 500, 1500));
+        assertThat(merged.cardinality(), equalTo(1500l));
+
+        // sparse into dense, and dense into dense, are the same as collecting all the values into one sketch
+        HyperLogLog all = sketch(HyperLogLog.DEFAULT_PRECISION, 0, 100000);
+        merged = sketch(HyperLogLog.DEFAULT_PRECISION, 0, 60000);
+        merged.merge(sketch(HyperLogLog.DEFAULT_PRECISION, 30000, 99000));
+        merged.merge(sketch(HyperLogLog.DEFAULT_PRECISION, 99000, 100000));
+        assertThat(merged.cardinality(), equalTo(all.cardinality()));
+
+        // dense into sparse
+        merged = sketch(HyperLogLog.DEFAULT_PRECISION, 99000, 100000);
+        merged.merge(sketch(HyperLogLog.DEFAULT_PRECISION, 0, 99000));
+        assertThat(merged.cardinality(), equalTo(all.cardinality()));
+    }
+
+    @Test(expectedExceptions = ElasticSearchIllegalArgumentException.class)
+    public void testMergeDifferentPrecisions() {
+        sketch(10, 0, 10).merge(sketch(12, 0, 10));
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        HyperLogLog sparse = sketch(HyperLogLog.DEFAULT_PRECISION, 0, 1000);
+        HyperLogLog read = serialize(sparse);
+        assertThat(read.precision(), equalTo(HyperLogLog.DEFAULT_PRECISION));
+        assertThat(read.cardinality(), equalTo(1000l));
+
+        HyperLogLog dense = sketch(HyperLogLog.DEFAULT_PRECISION, 0, 100000);
+        read = serialize(dense);
+        assertThat(read.cardinality(), equalTo(dense.cardinality()));
+
+        // a read sketch keeps collecting and merging
+        collect(read, 100000, 200000);
+        read.merge(serialize(sparse));
+        collect(dense, 100000, 200000);
+        assertThat(read.cardinality(), equalTo(dense.cardinality()));
+    }
+
+    private static HyperLogLog serialize(HyperLogLog sketch) throws Exception {
+        BytesStreamOutput out = new BytesStreamOutput();
+        sketch.writeTo(out);
+        return HyperLogLog.readFrom(new BytesStreamInput(out.bytes().toBytes(), false));
+    }
+
+    private static HyperLogLog sketch(int precision, int from, int to) {
+        HyperLogLog sketch = new HyperLogLog(precision);
+        collect(sketch, from, to);
+        return sketch;
+    }
+
+    private static void collect(HyperLogLog sketch, int from, int to) {
+        for (int i = from; i < to; i++) {
+            sketch.collect(MurmurHash.hash64(i));
+        }
+    }
+}
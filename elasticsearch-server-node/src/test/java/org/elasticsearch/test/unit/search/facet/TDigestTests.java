@@ -0,0 +1,170 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.test.unit.search.facet;
+
+import org.elasticsearch.common.io.stream.BytesStreamInput;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.search.facet.percentiles.TDigest;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ *
+ */
+public class TDigestTests {
+
+    private static final double[] QUANTILES = new double[]{0.001, 0.01, 0.1, 0.25, 0.5, 0.75, 0.9, 0.99, 0.999};
+
+    enum Distribution {
+        UNIFORM {
+            @Override
+            double next(Random random) {
+                return random.nextDouble();
+            }
+        },
+        GAUSSIAN {
+            @Override
+            double next(Random random) {
+                return random.nextGaussian();
+            }
+        },
+        EXPONENTIAL {
+            @Override
+            double next(Random random) {
+                return -Math.log(1 - random.nextDouble());
+            }
+        };
+
+        abstract double next(Random random);
+    }
+
+    @Test
+    public void testAccuracy() {
+        for (Distribution distribution : Distribution.values()) {
+            Random random = new Random(42);
+            double[] values = new double[100000];
+            TDigest digest = new TDigest(TDigest.DEFAULT_COMPRESSION);
+            for (int i = 0; i < values.length; i++) {
+                values[i] = distribution.next(random);
+                digest.add(values[i]);
+            }
+            assertQuantiles(distribution.name(), digest, values);
+        }
+    }
+
+    @Test
+    public void testSequentialValues() {
+        TDigest digest = new TDigest(TDigest.DEFAULT_COMPRESSION);
+        for (int i = 1; i <= 100; i++) {
+            digest.add(i);
+        }
+        assertThat(digest.count(), equalTo(100l));
+        assertThat(digest.quantile(0), equalTo(1d));
+        assertThat(digest.quantile(0.25), closeTo(25, 1));
+        assertThat(digest.quantile(0.5), closeTo(50, 1));
+        assertThat(digest.quantile(0.99), closeTo(99, 1));
+        assertThat(digest.quantile(1), equalTo(100d));
+    }
+
+    @Test
+    public void testEmptyAndSingleValue() {
+        TDigest digest = new TDigest(TDigest.DEFAULT_COMPRESSION);
+        assertThat(digest.count(), equalTo(0l));
+        assertThat(Double.isNaN(digest.quantile(0.5)), equalTo(true));
+
+        digest.add(3);
+        assertThat(digest.quantile(0.1), equalTo(3d));
+        assertThat(digest.quantile(0.9), equalTo(3d));
+    }
+
+    @Test
+    public void testMerge() {
+        Random random = new Random(42);
+        double[] values = new double[100000];
+        TDigest[] digests = new TDigest[10];
+        for (int i = 0; i < digests.length; i++) {
+            digests[i] = new TDigest(TDigest.DEFAULT_COMPRESSION);
+        }
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextGaussian();
+            digests[i % digests.length].add(values[i]);
+        }
+        TDigest merged = new TDigest(TDigest.DEFAULT_COMPRESSION);
+        for (TDigest digest : digests) {
+            merged.merge(digest);
+        }
+        assertThat(merged.count(), equalTo((long) values.length));
+        assertQuantiles("merged", merged, values);
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        Random random = new Random(42);
+        TDigest digest = new TDigest(TDigest.DEFAULT_COMPRESSION);
+        for (int i = 0; i < 10000; i++) {
+            digest.add(random.nextGaussian());
+        }
+
+        BytesStreamOutput out = new BytesStreamOutput();
+        digest.writeTo(out);
+        TDigest read = TDigest.readFrom(new BytesStreamInput(out.bytes().toBytes(), false));
+
+        assertThat(read.compression(), equalTo(digest.compression()));
+        assertThat(read.count(), equalTo(digest.count()));
+        assertThat(read.min(), equalTo(digest.min()));
+        assertThat(read.max(), equalTo(digest.max()));
+        for (double q : QUANTILES) {
+            assertThat(read.quantile(q), equalTo(digest.quantile(q)));
+        }
+
+        // a read digest keeps accepting values
+        for (int i = 0; i < 10000; i++) {
+            read.add(random.nextGaussian());
+        }
+        assertThat(read.count(), equalTo(20000l));
+        assertThat(read.quantile(0.5), closeTo(0, 0.05));
+    }
+
+    /**
+     * Checks the rank of the estimated quantiles among the values, which is the error that t-digest bounds,
+     * more tightly on the tails.
+     */
+    private static void assertQuantiles(String name, TDigest digest, double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        assertThat(digest.quantile(0), equalTo(sorted[0]));
+        assertThat(digest.quantile(1), equalTo(sorted[sorted.length - 1]));
+        for (double q : QUANTILES) {
+            double estimate = digest.quantile(q);
+            int rank = 0;
+            while (rank < sorted.length && sorted[rank] <= estimate) {
+                rank++;
+            }
+            double error = q <= 0.01 || q >= 0.99 ? 0.001 : 0.005;
+            assertThat(name + " quantile [" + q + "]", (double) rank / sorted.length, closeTo(q, error));
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.test.unit.search.facet.datehistogram;
+
+import org.apache.lucene.document.NumericField;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.RAMDirectory;
+import org.elasticsearch.common.joda.TimeZoneRounding;
+import org.elasticsearch.common.lucene.Lucene;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.field.data.longs.LongFieldData;
+import org.elasticsearch.search.facet.datehistogram.DateHistogramBuckets;
+import org.testng.annotations.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.elasticsearch.common.lucene.DocumentBuilder.doc;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ *
+ */
+public class DateHistogramBucketsTests {
+
+    private static final long HOUR = TimeValue.timeValueHours(1).millis();
+
+    @Test
+    public void testBucketsAcrossSegments() throws Exception {
+        IndexWriter indexWriter = new IndexWriter(new RAMDirectory(), new IndexWriterConfig(Lucene.VERSION, Lucene.STANDARD_ANALYZER));
+        // first segment, hours 0, 1 (several values) and 5
+        long[] first = new long[]{10, HOUR, HOUR + 1, HOUR + 2, HOUR + 3, HOUR + 4, HOUR + 5, 2 * HOUR - 1, 5 * HOUR + 7};
+        for (long value : first) {
+            indexWriter.addDocument(doc().add(new NumericField("date").setLongValue(value)).build());
+        }
+        indexWriter.addDocument(doc().add(new NumericField("other").setLongValue(1)).build());
+        indexWriter.commit();
+        // second segment, hours 1, 3 and 5, sharing buckets with the first one
+        long[] second = new long[]{HOUR + 30, 3 * HOUR, 3 * HOUR + 1, 5 * HOUR};
+        for (long value : second) {
+            indexWriter.addDocument(doc().add(new NumericField("date").setLongValue(value)).build());
+        }
+        indexWriter.commit();
+
+        IndexReader reader = IndexReader.open(indexWriter, true);
+        IndexReader[] subReaders = reader.getSequentialSubReaders();
+        assertThat(subReaders.length, equalTo(2));
+
+        TimeZoneRounding tzRounding = TimeZoneRounding.builder(TimeValue.timeValueHours(1)).build();
+        DateHistogramBuckets buckets = new DateHistogramBuckets(tzRounding);
+        Map<Long, Integer> keyBuckets = new HashMap<Long, Integer>();
+        for (IndexReader subReader : subReaders) {
+            LongFieldData fieldData = LongFieldData.load(subReader, "date");
+            buckets.setNextReader(fieldData);
+            assertThat(buckets.bucket(0), equalTo(0));
+            long[] values = fieldData.values();
+            // ask in reverse order, the buckets are resolved lazily
+            for (int ordinal = values.length - 1; ordinal > 0; ordinal--) {
+                int bucket = buckets.bucket(ordinal);
+                long key = tzRounding.calc(values[ordinal]);
+                assertThat(buckets.key(bucket), equalTo(key));
+                Integer existing = keyBuckets.get(key);
+                if (existing == null) {
+                    keyBuckets.put(key, bucket);
+                } else {
+                    assertThat(bucket, equalTo(existing));
+                }
+            }
+        }
+        // hours 0, 1, 3 and 5, plus the bucket of the docs without a value
+        assertThat(keyBuckets.size(), equalTo(4));
+        assertThat(buckets.numberOfBuckets(), equalTo(5));
+        reader.close();
+        indexWriter.close();
+    }
+
+    @Test
+    public void testSingleValuePerBucket() throws Exception {
+        IndexWriter indexWriter = new IndexWriter(new RAMDirectory(), new IndexWriterConfig(Lucene.VERSION, Lucene.STANDARD_ANALYZER));
+        int numberOfValues = 100;
+        for (int i = 0; i < numberOfValues; i++) {
+            indexWriter.addDocument(doc().add(new NumericField("date").setLongValue(i * HOUR + i)).build());
+        }
+        IndexReader reader = IndexReader.open(indexWriter, true);
+
+        DateHistogramBuckets buckets = new DateHistogramBuckets(TimeZoneRounding.builder(TimeValue.timeValueHours(1)).build());
+        LongFieldData fieldData = LongFieldData.load(reader, "date");
+        buckets.setNextReader(fieldData);
+        long[] values = fieldData.values();
+        assertThat(values.length, equalTo(numberOfValues + 1));
+        for (int ordinal = 1; ordinal < values.length; ordinal++) {
+            assertThat(buckets.bucket(ordinal), equalTo(ordinal));
+            assertThat(buckets.key(ordinal), equalTo((ordinal - 1) * HOUR));
+        }
+        assertThat(buckets.numberOfBuckets(), equalTo(numberOfValues + 1));
+        reader.close();
+        indexWriter.close();
+    }
+
+    @Test
+    public void testAllValuesInOneBucket() throws Exception {
+        IndexWriter indexWriter = new IndexWriter(new RAMDirectory(), new IndexWriterConfig(Lucene.VERSION, Lucene.STANDARD_ANALYZER));
+        for (int i = 0; i < 1000; i++) {
+            indexWriter.addDocument(doc().add(new NumericField("date").setLongValue(2 * HOUR + i)).build());
+        }
+        IndexReader reader = IndexReader.open(indexWriter, true);
+
+        DateHistogramBuckets buckets = new DateHistogramBuckets(TimeZoneRounding.builder(TimeValue.timeValueHours(1)).build());
+        LongFieldData fieldData = LongFieldData.load(reader, "date");
+        buckets.setNextReader(fieldData);
+        for (int ordinal = 1; ordinal < fieldData.values().length; ordinal++) {
+            assertThat(buckets.bucket(ordinal), equalTo(1));
+        }
+        assertThat(buckets.key(1), equalTo(2 * HOUR));
+        assertThat(buckets.numberOfBuckets(), equalTo(2));
+        reader.close();
+        indexWriter.close();
+    }
+}
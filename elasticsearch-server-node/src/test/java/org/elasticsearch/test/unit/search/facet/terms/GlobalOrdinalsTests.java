@@ -0,0 +1,149 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.test.unit.search.facet.terms;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.RAMDirectory;
+import org.elasticsearch.common.lucene.Lucene;
+import org.elasticsearch.index.Index;
+import org.elasticsearch.index.cache.field.data.none.NoneFieldDataCache;
+import org.elasticsearch.index.cache.field.data.resident.ResidentFieldDataCache;
+import org.elasticsearch.index.cache.field.data.soft.SoftFieldDataCache;
+import org.elasticsearch.index.cache.field.data.support.AbstractConcurrentMapFieldDataCache;
+import org.elasticsearch.index.field.data.FieldDataType;
+import org.elasticsearch.index.settings.IndexSettingsService;
+import org.elasticsearch.search.facet.terms.strings.GlobalOrdinals;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.elasticsearch.common.lucene.DocumentBuilder.doc;
+import static org.elasticsearch.common.lucene.DocumentBuilder.field;
+import static org.elasticsearch.common.settings.ImmutableSettings.Builder.EMPTY_SETTINGS;
+import static org.elasticsearch.common.settings.ImmutableSettings.settingsBuilder;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ *
+ */
+public class GlobalOrdinalsTests {
+
+    private IndexWriter indexWriter;
+
+    private IndexReader reader;
+
+    @BeforeMethod
+    public void createIndex() throws Exception {
+        indexWriter = new IndexWriter(new RAMDirectory(), new IndexWriterConfig(Lucene.VERSION, Lucene.STANDARD_ANALYZER));
+        indexWriter.addDocument(doc().add(field("svalue", "bbb")).add(field("ovalue", "111")).build());
+        indexWriter.addDocument(doc().add(field("svalue", "ddd")).build());
+        indexWriter.commit();
+        indexWriter.addDocument(doc().add(field("svalue", "aaa")).add(field("ovalue", "222")).build());
+        indexWriter.addDocument(doc().add(field("svalue", "ddd")).build());
+        reader = IndexReader.open(indexWriter, true);
+    }
+
+    @AfterMethod
+    public void closeIndex() throws Exception {
+        reader.close();
+        indexWriter.close();
+    }
+
+    private GlobalOrdinals load(AbstractConcurrentMapFieldDataCache cache, String field) throws Exception {
+        return GlobalOrdinals.load(cache, FieldDataType.DefaultTypes.STRING, field, reader, reader.getSequentialSubReaders());
+    }
+
+    @Test
+    public void testGlobalOrdinals() throws Exception {
+        GlobalOrdinals globalOrdinals = load(new SoftFieldDataCache(new Index("test"), EMPTY_SETTINGS), "svalue");
+        assertThat(globalOrdinals.values(), arrayContaining(null, "aaa", "bbb", "ddd"));
+
+        IndexReader[] segments = reader.getSequentialSubReaders();
+        assertThat(segments.length, equalTo(2));
+        // segment ordinals: 0 for no value, then the sorted terms of the segment
+        int[] first = globalOrdinals.segmentOrdinals(segments[0]);
+        assertThat(first[1], equalTo(2));
+        assertThat(first[2], equalTo(3));
+        int[] second = globalOrdinals.segmentOrdinals(segments[1]);
+        assertThat(second[1], equalTo(1));
+        assertThat(second[2], equalTo(3));
+    }
+
+    @Test
+    public void testCachedPerReader() throws Exception {
+        SoftFieldDataCache cache = new SoftFieldDataCache(new Index("test"), EMPTY_SETTINGS);
+        GlobalOrdinals globalOrdinals = load(cache, "svalue");
+        assertThat(load(cache, "svalue"), sameInstance(globalOrdinals));
+
+        indexWriter.addDocument(doc().add(field("svalue", "ccc")).build());
+        IndexReader newReader = IndexReader.openIfChanged(reader, indexWriter, true);
+        try {
+            GlobalOrdinals newGlobalOrdinals = GlobalOrdinals.load(cache, FieldDataType.DefaultTypes.STRING, "svalue", newReader, newReader.getSequentialSubReaders());
+            assertThat(newGlobalOrdinals, not(sameInstance(globalOrdinals)));
+            assertThat(newGlobalOrdinals.values(), arrayContaining(null, "aaa", "bbb", "ccc", "ddd"));
+        } finally {
+            newReader.close();
+        }
+    }
+
+    @Test
+    public void testClear() throws Exception {
+        SoftFieldDataCache cache = new SoftFieldDataCache(new Index("test"), EMPTY_SETTINGS);
+
+        GlobalOrdinals globalOrdinals = load(cache, "svalue");
+        cache.clear("test");
+        GlobalOrdinals cleared = load(cache, "svalue");
+        assertThat(cleared, not(sameInstance(globalOrdinals)));
+
+        GlobalOrdinals other = load(cache, "ovalue");
+        cache.clear("test", "svalue");
+        assertThat(load(cache, "svalue"), not(sameInstance(cleared)));
+        assertThat(load(cache, "ovalue"), sameInstance(other));
+
+        // clearing the field data of a segment clears the values built from it
+        globalOrdinals = load(cache, "svalue");
+        cache.clear(reader.getSequentialSubReaders()[1]);
+        assertThat(load(cache, "svalue"), not(sameInstance(globalOrdinals)));
+        assertThat(load(cache, "ovalue"), not(sameInstance(other)));
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        // a single field per segment, loading the other field evicts the first one
+        ResidentFieldDataCache cache = new ResidentFieldDataCache(new Index("test"), settingsBuilder().put("index.cache.field.max_size", 1).build(),
+                new IndexSettingsService(new Index("test"), EMPTY_SETTINGS));
+
+        GlobalOrdinals globalOrdinals = load(cache, "svalue");
+        assertThat(load(cache, "svalue"), sameInstance(globalOrdinals));
+        load(cache, "ovalue");
+        assertThat(cache.evictions(), greaterThan(0l));
+        assertThat(load(cache, "svalue"), not(sameInstance(globalOrdinals)));
+    }
+
+    @Test
+    public void testNotCached() throws Exception {
+        NoneFieldDataCache cache = new NoneFieldDataCache(new Index("test"), EMPTY_SETTINGS);
+        GlobalOrdinals globalOrdinals = GlobalOrdinals.load(cache, FieldDataType.DefaultTypes.STRING, "svalue", reader, reader.getSequentialSubReaders());
+        assertThat(globalOrdinals.values(), arrayContaining(null, "aaa", "bbb", "ddd"));
+    }
+}
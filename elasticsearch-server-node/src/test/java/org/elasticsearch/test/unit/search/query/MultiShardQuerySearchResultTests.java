@@ -0,0 +1,66 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.test.unit.search.query;
+
+import org.elasticsearch.ElasticSearchIllegalArgumentException;
+import org.elasticsearch.common.io.stream.BytesStreamInput;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.search.query.MultiShardQuerySearchResult;
+import org.elasticsearch.transport.NotSerializableTransportException;
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ *
+ */
+public class MultiShardQuerySearchResultTests {
+
+    @Test
+    public void testFailuresKeepTheirType() throws Exception {
+        MultiShardQuerySearchResult result = new MultiShardQuerySearchResult(3);
+        result.failure(0, new ElasticSearchIllegalArgumentException("bad request"));
+        result.failure(1, new NotSerializableFailure("not serializable"));
+
+        BytesStreamOutput out = new BytesStreamOutput();
+        result.writeTo(out);
+        MultiShardQuerySearchResult read = new MultiShardQuerySearchResult();
+        read.readFrom(new BytesStreamInput(out.bytes().toBytes(), false));
+
+        assertThat(read.size(), equalTo(3));
+        assertThat(read.result(0), nullValue());
+        assertThat(read.failure(0), instanceOf(ElasticSearchIllegalArgumentException.class));
+        assertThat(read.failure(0).getMessage(), equalTo("bad request"));
+        assertThat(read.failure(1), instanceOf(NotSerializableTransportException.class));
+        assertThat(read.failure(1).getMessage(), containsString("not serializable"));
+        // a slot with neither a result nor a failure is still reported as a failure
+        assertThat(read.failure(2), instanceOf(IllegalStateException.class));
+    }
+
+    static class NotSerializableFailure extends RuntimeException {
+
+        final Object state = new Object();
+
+        NotSerializableFailure(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.test.unit.transport;
+
+import org.elasticsearch.transport.TransportActionStats;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ *
+ */
+public class LatencyHistogramTests {
+
+    @Test
+    public void testBuckets() {
+        TransportActionStats.LatencyHistogram histogram = new TransportActionStats.LatencyHistogram();
+        assertThat(histogram.percentileInMillis(50), equalTo(0l));
+
+        histogram.inc(TimeUnit.MICROSECONDS.toNanos(300));
+        histogram.inc(TimeUnit.MILLISECONDS.toNanos(1));
+        histogram.inc(TimeUnit.MILLISECONDS.toNanos(3));
+        histogram.inc(TimeUnit.MILLISECONDS.toNanos(4));
+        histogram.inc(TimeUnit.HOURS.toNanos(1));
+        assertThat(histogram.count(0), equalTo(1l));
+        assertThat(histogram.count(1), equalTo(1l));
+        assertThat(histogram.count(2), equalTo(1l));
+        assertThat(histogram.count(3), equalTo(1l));
+        assertThat(histogram.count(TransportActionStats.LatencyHistogram.BUCKETS - 1), equalTo(1l));
+    }
+
+    @Test
+    public void testPercentiles() {
+        TransportActionStats.LatencyHistogram histogram = new TransportActionStats.LatencyHistogram();
+        for (int i = 0; i < 98; i++) {
+            histogram.inc(TimeUnit.MILLISECONDS.toNanos(5));
+        }
+        histogram.inc(TimeUnit.MILLISECONDS.toNanos(100));
+        histogram.inc(TimeUnit.HOURS.toNanos(1));
+
+        assertThat(histogram.percentileInMillis(50), equalTo(8l));
+        assertThat(histogram.percentileInMillis(99), equalTo(128l));
+        assertThat(histogram.percentileInMillis(100), equalTo(1l << (TransportActionStats.LatencyHistogram.BUCKETS - 2)));
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.test.unit.transport.netty;
+
+import org.elasticsearch.transport.netty.TransportCompression;
+import org.testng.annotations.Test;
+
+import static org.elasticsearch.common.settings.ImmutableSettings.settingsBuilder;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ *
+ */
+public class TransportCompressionTests {
+
+    @Test
+    public void testRules() {
+        TransportCompression compression = new TransportCompression(settingsBuilder()
+                .put("transport.tcp.compress", true)
+                .put("transport.tcp.compress_threshold", "2kb")
+                .put("transport.tcp.compress_actions.recovery.prefix", "index/shard/recovery/")
+                .put("transport.tcp.compress_actions.recovery.threshold", 0)
+                .put("transport.tcp.compress_actions.recovery.type", "lzf")
+                .put("transport.tcp.compress_actions.chunks.prefix", "index/shard/recovery/fileChunk")
+                .put("transport.tcp.compress_actions.chunks.enabled", false)
+                .build());
+
+        TransportCompression.Rule rule = compression.rule("search/query");
+        assertThat(rule.enabled(), equalTo(true));
+        assertThat(rule.type(), nullValue());
+        assertThat(rule.compress(100), equalTo(false));
+        assertThat(rule.compress(2048), equalTo(true));
+
+        rule = compression.rule("index/shard/recovery/translogOps");
+        assertThat(rule.type(), equalTo("lzf"));
+        assertThat(rule.compress(1), equalTo(true));
+
+        // the longest prefix wins
+        rule = compression.rule("index/shard/recovery/fileChunk");
+        assertThat(rule.compress(1024 * 1024), equalTo(false));
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        TransportCompression compression = new TransportCompression(settingsBuilder().build());
+        assertThat(compression.rule("search/query").compress(1024 * 1024), equalTo(false));
+    }
+}
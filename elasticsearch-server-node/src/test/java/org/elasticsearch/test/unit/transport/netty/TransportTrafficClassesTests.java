@@ -0,0 +1,96 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.test.unit.transport.netty;
+
+import org.elasticsearch.transport.TransportRequestOptions;
+import org.elasticsearch.transport.netty.TransportTrafficClasses;
+import org.testng.annotations.Test;
+
+import static org.elasticsearch.common.settings.ImmutableSettings.settingsBuilder;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+
+/**
+ *
+ */
+public class TransportTrafficClassesTests {
+
+    @Test
+    public void testDefaultClasses() {
+        TransportTrafficClasses classes = new TransportTrafficClasses(settingsBuilder().build(), 2, 6, 1);
+
+        assertThat(classes.trafficClass("discovery/zen/fd/ping", TransportRequestOptions.Type.MED).name(), equalTo(TransportTrafficClasses.PING));
+        assertThat(classes.trafficClass("discovery/zen/publish", TransportRequestOptions.Type.MED).name(), equalTo(TransportTrafficClasses.STATE));
+        assertThat(classes.trafficClass("index/shard/recovery/fileChunk", TransportRequestOptions.Type.LOW).name(), equalTo(TransportTrafficClasses.RECOVERY));
+        assertThat(classes.trafficClass("bulk/shard/replica", TransportRequestOptions.Type.MED).name(), equalTo(TransportTrafficClasses.BULK));
+        assertThat(classes.trafficClass("search/phase/query", TransportRequestOptions.Type.MED).name(), equalTo(TransportTrafficClasses.SEARCH));
+
+        // actions not matching any class are picked based on their type
+        assertThat(classes.trafficClass("some/action", TransportRequestOptions.Type.HIGH).name(), equalTo(TransportTrafficClasses.PING));
+        assertThat(classes.trafficClass("some/action", TransportRequestOptions.Type.LOW).name(), equalTo(TransportTrafficClasses.BULK));
+        assertThat(classes.trafficClass("some/action", TransportRequestOptions.Type.MED).name(), equalTo(TransportTrafficClasses.SEARCH));
+
+        assertThat(classes.trafficClass("bulk/shard", TransportRequestOptions.Type.MED).connections(), equalTo(2));
+        assertThat(classes.trafficClass("search/phase/query", TransportRequestOptions.Type.MED).connections(), equalTo(6));
+        assertThat(classes.trafficClass("discovery/zen/publish", TransportRequestOptions.Type.MED).connections(), equalTo(1));
+    }
+
+    @Test
+    public void testConfiguredClasses() {
+        TransportTrafficClasses classes = new TransportTrafficClasses(settingsBuilder()
+                .putArray("transport.traffic_classes.recovery.actions", "index/shard/recovery/", "gateway/")
+                .put("transport.traffic_classes.recovery.connections", 3)
+                .put("transport.traffic_classes.recovery.workers", 2)
+                .put("transport.traffic_classes.recovery.max_bytes_per_sec", "40mb")
+                .putArray("transport.traffic_classes.search.actions", "search/", "gateway/local/allocate")
+                .build(), 2, 6, 1);
+
+        TransportTrafficClasses.TrafficClass recovery = classes.trafficClass("gateway/snapshot", TransportRequestOptions.Type.MED);
+        assertThat(recovery.name(), equalTo(TransportTrafficClasses.RECOVERY));
+        assertThat(recovery.connections(), equalTo(3));
+        assertThat(recovery.workers(), equalTo(2));
+        assertThat(recovery.maxBytesPerSec().mb(), equalTo(40l));
+
+        // the longest prefix wins
+        assertThat(classes.trafficClass("gateway/local/allocate_dangled", TransportRequestOptions.Type.LOW).name(), equalTo(TransportTrafficClasses.SEARCH));
+    }
+
+    @Test
+    public void testDelayedBytesBound() {
+        TransportTrafficClasses classes = new TransportTrafficClasses(settingsBuilder()
+                .put("transport.traffic_classes.bulk.max_bytes_per_sec", "1kb")
+                .build(), 2, 6, 1);
+        TransportTrafficClasses.TrafficClass bulk = classes.trafficClass("bulk/shard", TransportRequestOptions.Type.MED);
+        assertThat(bulk.maxDelayedBytes().bytes(), equalTo(1024l));
+
+        // the first second worth is sent right away, the next messages are delayed up to a second worth
+        assertThat(bulk.onMessage(1024), equalTo(0l));
+        assertThat(bulk.onMessage(512), greaterThan(0l));
+        assertThat(bulk.onMessage(512), greaterThan(0l));
+        assertThat(bulk.onMessage(1), equalTo(-1l));
+        assertThat(bulk.rejected(), equalTo(1l));
+        assertThat(bulk.messages(), equalTo(3l));
+
+        // once a delayed message is written, there is room again
+        bulk.onDelayedWrite(512);
+        assertThat(bulk.onMessage(1), greaterThan(0l));
+    }
+}
@@ -22,6 +22,7 @@ package org.elasticsearch.rest;
 import org.apache.lucene.util.UnicodeUtil;
 import org.elasticsearch.common.util.concurrent.ThreadLocals;
 import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentType;
 
 import java.io.IOException;
 import org.elasticsearch.rest.RestStatus;
@@ -57,7 +58,8 @@ public class XContentRestResponse extends AbstractRestResponse {
     public XContentRestResponse(RestRequest request, RestStatus status, XContentBuilder builder) throws IOException {
         this.builder = builder;
         this.status = status;
-        this.prefixUtf8Result = startJsonp(request);
+        // JSONP only wraps JSON, binary formats are sent as is
+        this.prefixUtf8Result = builder.contentType() == XContentType.JSON ? startJsonp(request) : null;
     }
 
     public XContentBuilder builder() {
@@ -0,0 +1,80 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.rest.action.admin.cluster.node.stats;
+
+import org.elasticsearch.client.ClusterAdminClient;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.rest.*;
+import org.elasticsearch.rest.action.support.RestXContentBuilder;
+import org.elasticsearch.transport.TransportService;
+
+import java.io.IOException;
+
+/**
+ * Renders the per action transport stats ({@link TransportService#actionStats()}) of the node handling the request.
+ */
+public class RestNodeTransportActionStatsAction extends BaseRestHandler<ClusterAdminClient> {
+
+    private final ClusterName clusterName;
+
+    private final ClusterService clusterService;
+
+    private final TransportService transportService;
+
+    @Inject
+    public RestNodeTransportActionStatsAction(Settings settings, ClusterAdminClient client, RestController controller,
+                                              ClusterName clusterName, ClusterService clusterService, TransportService transportService) {
+        super(settings, client);
+        this.clusterName = clusterName;
+        this.clusterService = clusterService;
+        this.transportService = transportService;
+        controller.registerHandler(RestRequest.Method.GET, "/_nodes/stats/transport/actions", this);
+        controller.registerHandler(RestRequest.Method.GET, "/_nodes/transport/actions/stats", this);
+    }
+
+    @Override
+    public void handleRequest(final RestRequest request, final RestChannel channel) {
+        try {
+            DiscoveryNode localNode = clusterService.state().nodes().localNode();
+            XContentBuilder builder = RestXContentBuilder.restContentBuilder(request);
+            builder.startObject();
+            builder.field("cluster_name", clusterName.value());
+            builder.startObject("nodes");
+            builder.startObject(localNode.id(), XContentBuilder.FieldCaseConversion.NONE);
+            builder.field("name", localNode.name(), XContentBuilder.FieldCaseConversion.NONE);
+            transportService.actionStats().toXContent(builder, request);
+            builder.endObject();
+            builder.endObject();
+            builder.endObject();
+            channel.sendResponse(new XContentRestResponse(request, RestStatus.OK, builder));
+        } catch (Exception e) {
+            try {
+                channel.sendResponse(new XContentThrowableRestResponse(request, e));
+            } catch (IOException e1) {
+                logger.error("Failed to send failure response", e1);
+            }
+        }
+    }
+}
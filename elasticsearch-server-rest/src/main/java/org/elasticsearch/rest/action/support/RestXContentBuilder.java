@@ -31,17 +31,7 @@ import java.io.IOException;
 public class RestXContentBuilder {
 
     public static XContentBuilder restContentBuilder(RestRequest request) throws IOException {
-        XContentType contentType = XContentType.fromRestContentType(request.param("format", request.header("Content-Type")));
-        if (contentType == null) {
-            // try and guess it from the body, if exists
-            if (request.hasContent()) {
-                contentType = XContentFactory.xContentType(request.content());
-            }
-        }
-        if (contentType == null) {
-            // default to JSON
-            contentType = XContentType.JSON;
-        }
+        XContentType contentType = responseContentType(request);
         BasicCachedStreamOutput.Entry cachedEntry = BasicCachedStreamOutput.popEntry();
         XContentBuilder builder = new XContentBuilder(XContentFactory.xContent(contentType), cachedEntry.bytes(), cachedEntry);
         if (request.paramAsBoolean("pretty", false)) {
@@ -58,4 +48,78 @@ public class RestXContentBuilder {
         return builder;
     }
 
+    /**
+     * The content type of the response to the request: the one set with the <tt>format</tt> parameter, or else the
+     * preferred one of the <tt>Accept</tt> header, or else the one of the request content, defaulting to JSON.
+     */
+    public static XContentType responseContentType(RestRequest request) {
+        XContentType contentType = XContentType.fromRestContentType(request.param("format"));
+        if (contentType == null) {
+            contentType = acceptedContentType(request.header("Accept"));
+        }
+        if (contentType == null) {
+            contentType = fromMediaType(request.header("Content-Type"));
+        }
+        if (contentType == null) {
+            // try and guess it from the body, if exists
+            if (request.hasContent()) {
+                contentType = XContentFactory.xContentType(request.content());
+            }
+        }
+        if (contentType == null) {
+            // default to JSON
+            contentType = XContentType.JSON;
+        }
+        return contentType;
+    }
+
+    /**
+     * The supported content type with the highest quality in the <tt>Accept</tt> header, the first listed one when
+     * several have the same quality, <tt>null</tt> if none is supported.
+     */
+    public static XContentType acceptedContentType(String accept) {
+        if (accept == null) {
+            return null;
+        }
+        XContentType accepted = null;
+        float acceptedQuality = 0;
+        for (String mediaRange : accept.split(",")) {
+            String[] parts = mediaRange.split(";");
+            XContentType contentType = XContentType.fromRestContentType(parts[0].trim());
+            if (contentType == null) {
+                continue;
+            }
+            float quality = 1;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        quality = Float.parseFloat(parameter.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            if (quality > acceptedQuality) {
+                accepted = contentType;
+                acceptedQuality = quality;
+            }
+        }
+        return accepted;
+    }
+
+    /**
+     * The content type of a media type, ignoring its parameters (such as <tt>charset</tt>).
+     */
+    public static XContentType fromMediaType(String mediaType) {
+        if (mediaType == null) {
+            return null;
+        }
+        int index = mediaType.indexOf(';');
+        if (index != -1) {
+            mediaType = mediaType.substring(0, index);
+        }
+        return XContentType.fromRestContentType(mediaType.trim());
+    }
+
 }
@@ -0,0 +1,57 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.test.unit.rest;
+
+import org.elasticsearch.common.xcontent.XContentType;
+import org.testng.annotations.Test;
+
+import static org.elasticsearch.rest.action.support.RestXContentBuilder.acceptedContentType;
+import static org.elasticsearch.rest.action.support.RestXContentBuilder.fromMediaType;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ *
+ */
+public class RestXContentBuilderTests {
+
+    @Test
+    public void testAcceptedContentType() {
+        assertThat(acceptedContentType(null), nullValue());
+        assertThat(acceptedContentType("*/*"), nullValue());
+        assertThat(acceptedContentType("text/html, application/xml"), nullValue());
+        assertThat(acceptedContentType("application/smile"), equalTo(XContentType.SMILE));
+        assertThat(acceptedContentType("application/smile, application/json"), equalTo(XContentType.SMILE));
+        assertThat(acceptedContentType("application/json, application/smile"), equalTo(XContentType.JSON));
+        assertThat(acceptedContentType("application/json;q=0.5, application/smile"), equalTo(XContentType.SMILE));
+        assertThat(acceptedContentType("text/html, application/smile;q=0.9, */*;q=0.1"), equalTo(XContentType.SMILE));
+        assertThat(acceptedContentType("application/smile;q=0"), nullValue());
+    }
+
+    @Test
+    public void testFromMediaType() {
+        assertThat(fromMediaType(null), nullValue());
+        assertThat(fromMediaType("application/json"), equalTo(XContentType.JSON));
+        assertThat(fromMediaType("application/json; charset=UTF-8"), equalTo(XContentType.JSON));
+        assertThat(fromMediaType("application/smile"), equalTo(XContentType.SMILE));
+        assertThat(fromMediaType("text/plain"), nullValue());
+    }
+}
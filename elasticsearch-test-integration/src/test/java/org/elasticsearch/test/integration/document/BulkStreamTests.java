@@ -0,0 +1,155 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.test.integration.document;
+
+import org.elasticsearch.action.bulk.BulkStream;
+import org.elasticsearch.action.bulk.BulkStreamLineTooLongException;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.test.integration.AbstractNodesTests;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.greaterThan;
+
+/**
+ *
+ */
+public class BulkStreamTests extends AbstractNodesTests {
+
+    private Client client;
+
+    @BeforeClass
+    public void startNodes() {
+        startNode("server1");
+        client = client("server1");
+    }
+
+    @AfterClass
+    public void closeNodes() {
+        client.close();
+        closeAllNodes();
+    }
+
+    @Test
+    public void testBulkStream() throws Exception {
+        client.admin().indices().prepareDelete().execute().actionGet();
+        client.admin().indices().prepareCreate("test").execute().actionGet();
+        client.admin().cluster().prepareHealth().setWaitForGreenStatus().execute().actionGet();
+
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            body.append("{ \"index\" : { \"_id\" : \"").append(i).append("\" } }\n");
+            body.append("{ \"field\" : \"value").append(i).append("\" }\n");
+        }
+        for (int i = 0; i < 10; i++) {
+            body.append("{ \"delete\" : { \"_id\" : \"").append(i).append("\" } }\n");
+        }
+        byte[] data = body.toString().getBytes("UTF-8");
+
+        final Semaphore resume = new Semaphore(0);
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        // small batches, so the stream gets executed in several of them, one at a time
+        BulkStream stream = new BulkStream(node("server1").ingestClient(), "test", "type1", null, null, true, 500, 1024, 1, 100, new BulkStream.Listener() {
+            @Override
+            public void onResume() {
+                resume.release();
+            }
+
+            @Override
+            public void onResponse(BulkStream stream) {
+                latch.countDown();
+            }
+
+            @Override
+            public void onFailure(Throwable e) {
+                failure.set(e);
+                latch.countDown();
+            }
+        });
+
+        // feed it in parts that don't align with the lines
+        for (int offset = 0; offset < data.length; offset += 7) {
+            if (!stream.add(data, offset, Math.min(7, data.length - offset))) {
+                assertThat(resume.tryAcquire(10, TimeUnit.SECONDS), equalTo(true));
+            }
+        }
+        stream.close();
+        assertThat(latch.await(10, TimeUnit.SECONDS), equalTo(true));
+        assertThat(failure.get(), equalTo(null));
+
+        assertThat(stream.items(), equalTo(110l));
+        assertThat(stream.failed(), equalTo(0l));
+        assertThat(stream.batches(), greaterThan(1l));
+
+        client.admin().indices().prepareRefresh().execute().actionGet();
+        assertThat(client.prepareCount("test").execute().actionGet().count(), equalTo(90l));
+        assertThat(client.prepareGet("test", "type1", "9").execute().actionGet().exists(), equalTo(false));
+        assertThat(client.prepareGet("test", "type1", "10").execute().actionGet().exists(), equalTo(true));
+    }
+
+    @Test
+    public void testLineTooLong() throws Exception {
+        client.admin().indices().prepareDelete().execute().actionGet();
+        client.admin().indices().prepareCreate("test").execute().actionGet();
+        client.admin().cluster().prepareHealth().setWaitForGreenStatus().execute().actionGet();
+
+        BulkStream stream = new BulkStream(node("server1").ingestClient(), "test", "type1", null, null, true, 500, 100, 1, 100, new BulkStream.Listener() {
+            @Override
+            public void onResume() {
+            }
+
+            @Override
+            public void onResponse(BulkStream stream) {
+            }
+
+            @Override
+            public void onFailure(Throwable e) {
+            }
+        });
+
+        // a complete action fits, the source that never ends doesn't
+        byte[] action = "{ \"index\" : { \"_id\" : \"1\" } }\n".getBytes("UTF-8");
+        assertThat(action.length, lessThanOrEqualTo(100));
+        stream.add(action, 0, action.length);
+        byte[] part = "{ \"field\" : \"value".getBytes("UTF-8");
+        int added = 0;
+        try {
+            while (added < 1000) {
+                stream.add(part, 0, part.length);
+                added += part.length;
+            }
+            assert false : "expected the stream to fail on a line longer than its max line size";
+        } catch (BulkStreamLineTooLongException e) {
+            // the unterminated line was never buffered beyond the max line size
+            assertThat(added, lessThanOrEqualTo(100));
+        }
+    }
+}
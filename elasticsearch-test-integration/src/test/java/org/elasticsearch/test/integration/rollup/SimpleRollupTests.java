@@ -0,0 +1,244 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.test.integration.rollup;
+
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.indices.rollup.RollupConfig;
+import org.elasticsearch.search.facet.datehistogram.DateHistogramFacet;
+import org.elasticsearch.search.facet.termsstats.TermsStatsFacet;
+import org.elasticsearch.test.integration.AbstractNodesTests;
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.ISODateTimeFormat;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import static org.elasticsearch.common.settings.ImmutableSettings.settingsBuilder;
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+import static org.elasticsearch.index.query.QueryBuilders.rangeQuery;
+import static org.elasticsearch.search.facet.FacetBuilders.dateHistogramFacet;
+import static org.elasticsearch.search.facet.FacetBuilders.termsStatsFacet;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class SimpleRollupTests extends AbstractNodesTests {
+
+    private Client client;
+
+    @BeforeClass
+    public void createNodes() throws Exception {
+        Settings settings = settingsBuilder()
+                .put("indices.rollup.interval", 200)
+                .put("index.number_of_shards", 2)
+                .put("index.number_of_replicas", 0)
+                .build();
+        startNode("node1", settings);
+        // a node that never rewrites searches to the rollup index, to compare with
+        startNode("node2", settingsBuilder().put(settings).put("action.search.rollup", false));
+        client = client("node1");
+    }
+
+    @AfterClass
+    public void closeNodes() {
+        client.close();
+        closeAllNodes();
+    }
+
+    @Test
+    public void testRollupAnswersFacets() throws Exception {
+        client.admin().indices().prepareDelete().execute().actionGet();
+
+        client.admin().indices().prepareCreate("events")
+                .addMapping("event", XContentFactory.jsonBuilder().startObject().startObject("event").startObject("properties")
+                        .startObject("timestamp").field("type", "date").endObject()
+                        .startObject("host").field("type", "string").field("index", "not_analyzed").endObject()
+                        .startObject("bytes").field("type", "long").endObject()
+                        .endObject().endObject().endObject())
+                .execute().actionGet();
+        client.admin().cluster().prepareHealth().setWaitForGreenStatus().execute().actionGet();
+
+        long base = ISODateTimeFormat.dateOptionalTimeParser().withZone(DateTimeZone.UTC).parseMillis("2012-01-01");
+        for (int i = 0; i < 60; i++) {
+            client.prepareIndex("events", "event", Integer.toString(i)).setSource(jsonBuilder().startObject()
+                    .field("timestamp", base + (i % 6) * 3600000l + i * 60000l)
+                    .field("host", i % 3 == 0 ? "b" : "a")
+                    .field("bytes", i)
+                    .endObject()).execute().actionGet();
+        }
+        // a doc without a host in each hour
+        for (int i = 60; i < 66; i++) {
+            client.prepareIndex("events", "event", Integer.toString(i)).setSource(jsonBuilder().startObject()
+                    .field("timestamp", base + (i - 60) * 3600000l + 1000)
+                    .field("bytes", i)
+                    .endObject()).execute().actionGet();
+        }
+        client.admin().indices().prepareRefresh().execute().actionGet();
+
+        logger.info("--> enabling the rollup");
+        client.admin().indices().prepareUpdateSettings("events").setSettings(settingsBuilder()
+                .put("index.rollup.timestamp_field", "timestamp")
+                .put("index.rollup.interval", "1h")
+                .put("index.rollup.dimensions", "host")
+                .put("index.rollup.metrics", "bytes")
+                .put("index.rollup.delay", "1s")
+        ).execute().actionGet();
+
+        long watermark = -1;
+        for (int i = 0; i < 100 && watermark < base + 24 * 3600000l; i++) {
+            Thread.sleep(100);
+            watermark = client.admin().cluster().prepareState().execute().actionGet().state().metaData().index("events")
+                    .settings().getAsLong("index.rollup.watermark", -1l);
+        }
+        assertThat(watermark, greaterThanOrEqualTo(base + 24 * 3600000l));
+        assertThat(client.prepareCount("events_rollup").execute().actionGet().count(), greaterThan(0l));
+
+        logger.info("--> searching a whole day, answered from the rollup");
+        SearchResponse searchResponse = client.prepareSearch("events")
+                .setSize(0)
+                .setQuery(rangeQuery("timestamp").from("2012-01-01T00:00:00").to("2012-01-02T00:00:00").includeUpper(false))
+                .addFacet(dateHistogramFacet("hours").field("timestamp").interval("hour"))
+                .addFacet(dateHistogramFacet("bytes").keyField("timestamp").valueField("bytes").interval("day"))
+                .addFacet(termsStatsFacet("hosts").keyField("host").valueField("bytes"))
+                .execute().actionGet();
+        assertThat(searchResponse.failedShards(), equalTo(0));
+        assertThat(searchResponse.facets().facet(RollupConfig.TOTAL_FACET), nullValue());
+        assertRolledUpFacets(searchResponse, base);
+
+        logger.info("--> the rewritten search counts the raw docs, like the same search without the rollup");
+        SearchResponse rawResponse = client("node2").prepareSearch("events")
+                .setSize(0)
+                .setQuery(rangeQuery("timestamp").from("2012-01-01T00:00:00").to("2012-01-02T00:00:00").includeUpper(false))
+                .addFacet(dateHistogramFacet("hours").field("timestamp").interval("hour"))
+                .addFacet(dateHistogramFacet("bytes").keyField("timestamp").valueField("bytes").interval("day"))
+                .addFacet(termsStatsFacet("hosts").keyField("host").valueField("bytes"))
+                .execute().actionGet();
+        assertThat(rawResponse.failedShards(), equalTo(0));
+        assertThat(rawResponse.hits().totalHits(), equalTo(66l));
+        assertThat(searchResponse.hits().totalHits(), equalTo(rawResponse.hits().totalHits()));
+        assertRolledUpFacets(rawResponse, base);
+
+        logger.info("--> searching a range not aligned on the rollup, answered from the raw docs");
+        searchResponse = client.prepareSearch("events")
+                .setSize(0)
+                .setQuery(rangeQuery("timestamp").from("2012-01-01T00:00:00").to("2012-01-01T23:59:59"))
+                .addFacet(dateHistogramFacet("hours").field("timestamp").interval("hour"))
+                .addFacet(dateHistogramFacet("bytes").keyField("timestamp").valueField("bytes").interval("day"))
+                .addFacet(termsStatsFacet("hosts").keyField("host").valueField("bytes"))
+                .execute().actionGet();
+        assertThat(searchResponse.failedShards(), equalTo(0));
+        assertThat(searchResponse.hits().totalHits(), equalTo(66l));
+        assertRolledUpFacets(searchResponse, base);
+    }
+
+    @Test
+    public void testPartialDimensionAnsweredFromRawDocs() throws Exception {
+        client.admin().indices().prepareDelete().execute().actionGet();
+
+        client.admin().indices().prepareCreate("events")
+                .addMapping("event", XContentFactory.jsonBuilder().startObject().startObject("event").startObject("properties")
+                        .startObject("timestamp").field("type", "date").endObject()
+                        .startObject("host").field("type", "string").field("index", "not_analyzed").endObject()
+                        .startObject("bytes").field("type", "long").endObject()
+                        .endObject().endObject().endObject())
+                .execute().actionGet();
+        client.admin().cluster().prepareHealth().setWaitForGreenStatus().execute().actionGet();
+
+        long base = ISODateTimeFormat.dateOptionalTimeParser().withZone(DateTimeZone.UTC).parseMillis("2012-01-01");
+        for (int i = 0; i < 30; i++) {
+            client.prepareIndex("events", "event", Integer.toString(i)).setSource(jsonBuilder().startObject()
+                    .field("timestamp", base + i * 60000l)
+                    .field("host", i % 3 == 0 ? "b" : "a")
+                    .field("bytes", i)
+                    .endObject()).execute().actionGet();
+        }
+        client.admin().indices().prepareRefresh().execute().actionGet();
+
+        logger.info("--> enabling the rollup of the top host only");
+        client.admin().indices().prepareUpdateSettings("events").setSettings(settingsBuilder()
+                .put("index.rollup.timestamp_field", "timestamp")
+                .put("index.rollup.interval", "1h")
+                .put("index.rollup.dimensions", "host")
+                .put("index.rollup.metrics", "bytes")
+                .put("index.rollup.max_terms", 1)
+                .put("index.rollup.delay", "1s")
+        ).execute().actionGet();
+
+        long watermark = -1;
+        for (int i = 0; i < 100 && watermark < base + 24 * 3600000l; i++) {
+            Thread.sleep(100);
+            watermark = client.admin().cluster().prepareState().execute().actionGet().state().metaData().index("events")
+                    .settings().getAsLong("index.rollup.watermark", -1l);
+        }
+        assertThat(watermark, greaterThanOrEqualTo(base + 24 * 3600000l));
+        String[] partialDimensions = client.admin().cluster().prepareState().execute().actionGet().state().metaData().index("events")
+                .settings().getAsArray("index.rollup.partial_dimensions");
+        assertThat(partialDimensions, arrayContaining("host"));
+
+        logger.info("--> searching a whole day, the terms stats of the host can't come from the rollup");
+        SearchResponse searchResponse = client.prepareSearch("events")
+                .setSize(0)
+                .setQuery(rangeQuery("timestamp").from("2012-01-01T00:00:00").to("2012-01-02T00:00:00").includeUpper(false))
+                .addFacet(termsStatsFacet("hosts").keyField("host").valueField("bytes"))
+                .execute().actionGet();
+        assertThat(searchResponse.failedShards(), equalTo(0));
+        assertThat(searchResponse.hits().totalHits(), equalTo(30l));
+        TermsStatsFacet hosts = searchResponse.facets().facet("hosts");
+        assertThat(hosts.entries().size(), equalTo(2));
+        assertThat(hosts.entries().get(0).term(), equalTo("a"));
+        assertThat(hosts.entries().get(0).count(), equalTo(20l));
+        assertThat(hosts.entries().get(1).term(), equalTo("b"));
+        assertThat(hosts.entries().get(1).count(), equalTo(10l));
+    }
+
+    private void assertRolledUpFacets(SearchResponse searchResponse, long base) {
+        DateHistogramFacet hours = searchResponse.facets().facet("hours");
+        assertThat(hours.entries().size(), equalTo(6));
+        for (int i = 0; i < 6; i++) {
+            assertThat(hours.entries().get(i).time(), equalTo(base + i * 3600000l));
+            assertThat(hours.entries().get(i).count(), equalTo(11l));
+        }
+
+        DateHistogramFacet bytes = searchResponse.facets().facet("bytes");
+        assertThat(bytes.entries().size(), equalTo(1));
+        assertThat(bytes.entries().get(0).count(), equalTo(66l));
+        assertThat(bytes.entries().get(0).totalCount(), equalTo(66l));
+        assertThat(bytes.entries().get(0).total(), equalTo(2145d));
+        assertThat(bytes.entries().get(0).min(), equalTo(0d));
+        assertThat(bytes.entries().get(0).max(), equalTo(65d));
+
+        TermsStatsFacet hosts = searchResponse.facets().facet("hosts");
+        assertThat(hosts.missingCount(), equalTo(6l));
+        assertThat(hosts.entries().size(), equalTo(2));
+        assertThat(hosts.entries().get(0).term(), equalTo("a"));
+        assertThat(hosts.entries().get(0).count(), equalTo(40l));
+        assertThat(hosts.entries().get(0).total(), equalTo(1200d));
+        assertThat(hosts.entries().get(0).min(), equalTo(1d));
+        assertThat(hosts.entries().get(0).max(), equalTo(59d));
+        assertThat(hosts.entries().get(1).term(), equalTo("b"));
+        assertThat(hosts.entries().get(1).count(), equalTo(20l));
+        assertThat(hosts.entries().get(1).total(), equalTo(570d));
+        assertThat(hosts.entries().get(1).min(), equalTo(0d));
+        assertThat(hosts.entries().get(1).max(), equalTo(57d));
+    }
+}
@@ -19,6 +19,7 @@
 
 package org.elasticsearch.test.integration.search.facet;
 
+import org.elasticsearch.action.search.SearchPhaseExecutionException;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.search.SearchType;
 import org.elasticsearch.action.search.ShardSearchFailure;
@@ -26,10 +27,17 @@ import org.elasticsearch.client.Client;
 import org.elasticsearch.common.settings.ImmutableSettings;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.search.facet.SampledFacetCollector;
+import org.elasticsearch.search.facet.buckets.BucketsFacet;
+import org.elasticsearch.search.facet.cardinality.CardinalityFacet;
 import org.elasticsearch.search.facet.datehistogram.DateHistogramFacet;
 import org.elasticsearch.search.facet.filter.FilterFacet;
 import org.elasticsearch.search.facet.histogram.HistogramFacet;
+import org.elasticsearch.search.facet.percentiles.PercentilesFacet;
 import org.elasticsearch.search.facet.query.QueryFacet;
 import org.elasticsearch.search.facet.range.RangeFacet;
 import org.elasticsearch.search.facet.statistical.StatisticalFacet;
@@ -39,7 +47,9 @@ import org.elasticsearch.search.facet.terms.doubles.InternalDoubleTermsFacet;
 import org.elasticsearch.search.facet.terms.ints.InternalIntTermsFacet;
 import org.elasticsearch.search.facet.terms.longs.InternalLongTermsFacet;
 import org.elasticsearch.search.facet.terms.shorts.InternalShortTermsFacet;
+import org.elasticsearch.search.facet.terms.strings.InternalStringTermsFacet;
 import org.elasticsearch.search.facet.termsstats.TermsStatsFacet;
+import org.elasticsearch.search.facet.tophits.TopHitsFacet;
 import org.elasticsearch.test.integration.AbstractNodesTests;
 import org.joda.time.DateTimeZone;
 import org.joda.time.format.ISODateTimeFormat;
@@ -47,6 +57,8 @@ import org.testng.annotations.AfterClass;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
@@ -65,7 +77,8 @@ public class SimpleFacetsTests extends AbstractNodesTests {
 
     @BeforeClass
     public void createNodes() throws Exception {
-        Settings settings = ImmutableSettings.settingsBuilder().put("index.number_of_shards", numberOfShards()).put("index.number_of_replicas", 0).build();
+        Settings settings = ImmutableSettings.settingsBuilder().put("index.number_of_shards", numberOfShards()).put("index.number_of_replicas", 0)
+                .put("search.facet.buckets.max_term_entries", 3).build();
         for (int i = 0; i < numberOfNodes(); i++) {
             startNode("node" + i, settings);
         }
@@ -813,6 +826,228 @@ public class SimpleFacetsTests extends AbstractNodesTests {
         }
     }
 
+    @Test
+    public void testTermsFacetsShardSize() throws Exception {
+        try {
+            client.admin().indices().prepareDelete("test").execute().actionGet();
+        } catch (Exception e) {
+            // ignore
+        }
+        client.admin().indices().prepareCreate("test").execute().actionGet();
+        client.admin().cluster().prepareHealth().setWaitForGreenStatus().execute().actionGet();
+
+        String[] tags = new String[]{"a", "a", "a", "a", "a", "b", "b", "b", "c", "c", "d"};
+        for (String tag : tags) {
+            client.prepareIndex("test", "type1").setSource(jsonBuilder().startObject()
+                    .field("tag", tag)
+                    .endObject()).execute().actionGet();
+        }
+        client.admin().indices().prepareRefresh().execute().actionGet();
+
+        for (int i = 0; i < numberOfRuns(); i++) {
+            SearchResponse searchResponse = client.prepareSearch()
+                    .setQuery(matchAllQuery())
+                    .addFacet(termsFacet("facet1").field("tag").size(2).shardSize(10))
+                    .addFacet(termsFacet("facet2").field("tag").size(2).shardSize(10).executionHint("map"))
+                    .execute().actionGet();
+
+            assertThat(searchResponse.failedShards(), equalTo(0));
+
+            for (String facetName : new String[]{"facet1", "facet2"}) {
+                InternalStringTermsFacet facet = searchResponse.facets().facet(facetName);
+                assertThat(facet.entries().size(), equalTo(2));
+                assertThat(facet.entries().get(0).term(), equalTo("a"));
+                assertThat(facet.entries().get(0).count(), equalTo(5));
+                assertThat(facet.entries().get(1).term(), equalTo("b"));
+                assertThat(facet.entries().get(1).count(), equalTo(3));
+                // every shard returned all of its terms
+                assertThat(facet.docCountErrorUpperBound(), equalTo(0l));
+                assertThat(facet.entries().get(0).docCountErrorUpperBound(), equalTo(0));
+            }
+        }
+    }
+
+    @Test
+    public void testSampledFacets() throws Exception {
+        try {
+            client.admin().indices().prepareDelete("test").execute().actionGet();
+        } catch (Exception e) {
+            // ignore
+        }
+        client.admin().indices().prepareCreate("test").execute().actionGet();
+        client.admin().cluster().prepareHealth().setWaitForGreenStatus().execute().actionGet();
+
+        for (int i = 0; i < 400; i++) {
+            client.prepareIndex("test", "type1").setSource(jsonBuilder().startObject()
+                    .field("tag", i % 4 == 0 ? "a" : "b")
+                    .field("num", i % 10)
+                    .endObject()).execute().actionGet();
+        }
+        client.admin().indices().prepareRefresh().execute().actionGet();
+
+        for (int i = 0; i < numberOfRuns(); i++) {
+            SearchResponse searchResponse = client.prepareSearch()
+                    .setQuery(matchAllQuery())
+                    .addFacet(termsFacet("terms").field("tag").sample(0.5))
+                    .addFacet(histogramFacet("histo").field("num").interval(5).sample(0.5))
+                    .addFacet(termsFacet("exact").field("tag"))
+                    .execute().actionGet();
+
+            assertThat(searchResponse.failedShards(), equalTo(0));
+
+            InternalStringTermsFacet terms = searchResponse.facets().facet("terms");
+            assertThat(terms.sampleRate(), equalTo(0.5));
+            assertThat(terms.entries().size(), equalTo(2));
+            assertThat(terms.entries().get(0).term(), equalTo("b"));
+            // the counts are estimates, scaled back up from about half of the docs
+            assertThat(terms.totalCount(), allOf(greaterThan(250l), lessThan(550l)));
+
+            HistogramFacet histo = searchResponse.facets().facet("histo");
+            assertThat(histo.entries().size(), equalTo(2));
+            assertThat(histo.entries().get(0).count(), allOf(greaterThan(100l), lessThan(300l)));
+            assertThat(histo.entries().get(1).count(), allOf(greaterThan(100l), lessThan(300l)));
+
+            InternalStringTermsFacet exact = searchResponse.facets().facet("exact");
+            assertThat(exact.sampleRate(), equalTo(1d));
+            assertThat(exact.totalCount(), equalTo(400l));
+
+            // the standard error of each estimate is rendered along with it
+            XContentBuilder builder = jsonBuilder().startObject();
+            terms.toXContent(builder, ToXContent.EMPTY_PARAMS);
+            exact.toXContent(builder, ToXContent.EMPTY_PARAMS);
+            builder.endObject();
+            Map<String, Object> rendered = XContentHelper.convertToMap(builder.bytes(), false).v2();
+            Map<String, Object> renderedTerms = (Map<String, Object>) rendered.get("terms");
+            assertThat(((Number) renderedTerms.get("sample_rate")).doubleValue(), equalTo(0.5));
+            List<Map<String, Object>> renderedEntries = (List<Map<String, Object>>) renderedTerms.get("terms");
+            assertThat(renderedEntries.size(), equalTo(2));
+            for (Map<String, Object> entry : renderedEntries) {
+                long count = ((Number) entry.get("count")).longValue();
+                long countError = ((Number) entry.get("count_error")).longValue();
+                assertThat(countError, equalTo(SampledFacetCollector.countError(count, 0.5)));
+                assertThat(countError, greaterThan(0l));
+            }
+            Map<String, Object> renderedExact = (Map<String, Object>) rendered.get("exact");
+            assertThat(renderedExact.containsKey("sample_rate"), equalTo(false));
+            for (Map<String, Object> entry : (List<Map<String, Object>>) renderedExact.get("terms")) {
+                assertThat(entry.containsKey("count_error"), equalTo(false));
+            }
+        }
+
+        // facets that can't be sampled are rejected when parsing the request
+        try {
+            client.prepareSearch()
+                    .setQuery(matchAllQuery())
+                    .addFacet(termsFacet("numbers").field("num").sample(0.5))
+                    .execute().actionGet();
+            assert false : "expected the search to fail on sampling a numeric terms facet";
+        } catch (SearchPhaseExecutionException e) {
+            assertThat(e.getMessage(), containsString("does not support [sample]"));
+        }
+    }
+
+    @Test
+    public void testTopHitsFacets() throws Exception {
+        try {
+            client.admin().indices().prepareDelete("test").execute().actionGet();
+        } catch (Exception e) {
+            // ignore
+        }
+        client.admin().indices().prepareCreate("test").execute().actionGet();
+        client.admin().cluster().prepareHealth().setWaitForGreenStatus().execute().actionGet();
+
+        for (int i = 0; i < 6; i++) {
+            client.prepareIndex("test", "type1", "a" + i).setSource(jsonBuilder().startObject()
+                    .field("tag", "a")
+                    .field("rank", i)
+                    .endObject()).execute().actionGet();
+        }
+        for (int i = 10; i < 14; i++) {
+            client.prepareIndex("test", "type1", "b" + i).setSource(jsonBuilder().startObject()
+                    .field("tag", "b")
+                    .field("rank", i)
+                    .endObject()).execute().actionGet();
+        }
+        client.prepareIndex("test", "type1", "c100").setSource(jsonBuilder().startObject()
+                .field("tag", "c")
+                .field("rank", 100)
+                .endObject()).execute().actionGet();
+        client.admin().indices().prepareRefresh().execute().actionGet();
+
+        for (int i = 0; i < numberOfRuns(); i++) {
+            SearchResponse searchResponse = client.prepareSearch()
+                    .setQuery(customScoreQuery(matchAllQuery()).script("doc['rank'].value"))
+                    .addFacet(topHitsFacet("facet1").field("tag").size(2).hitsSize(2))
+                    .execute().actionGet();
+
+            assertThat(searchResponse.failedShards(), equalTo(0));
+
+            TopHitsFacet facet = searchResponse.facets().facet("facet1");
+            assertThat(facet.name(), equalTo("facet1"));
+            assertThat(facet.entries().size(), equalTo(2));
+
+            assertThat(facet.entries().get(0).term(), equalTo("a"));
+            assertThat(facet.entries().get(0).count(), equalTo(6));
+            assertThat(facet.entries().get(0).hits().size(), equalTo(2));
+            assertThat(facet.entries().get(0).hits().get(0).id(), equalTo("a5"));
+            assertThat(facet.entries().get(0).hits().get(0).type(), equalTo("type1"));
+            assertThat(facet.entries().get(0).hits().get(0).score(), equalTo(5f));
+            assertThat(facet.entries().get(0).hits().get(0).sourceAsMap().get("tag"), equalTo((Object) "a"));
+            assertThat(facet.entries().get(0).hits().get(1).id(), equalTo("a4"));
+
+            assertThat(facet.entries().get(1).term(), equalTo("b"));
+            assertThat(facet.entries().get(1).count(), equalTo(4));
+            assertThat(facet.entries().get(1).hits().size(), equalTo(2));
+            assertThat(facet.entries().get(1).hits().get(0).id(), equalTo("b13"));
+            assertThat(facet.entries().get(1).hits().get(1).id(), equalTo("b12"));
+
+            // more hits asked for than the terms have docs
+            searchResponse = client.prepareSearch()
+                    .setQuery(customScoreQuery(matchAllQuery()).script("doc['rank'].value"))
+                    .addFacet(topHitsFacet("facet1").field("tag").size(10).hitsSize(10))
+                    .execute().actionGet();
+
+            assertThat(searchResponse.failedShards(), equalTo(0));
+
+            facet = searchResponse.facets().facet("facet1");
+            assertThat(facet.entries().size(), equalTo(3));
+            assertThat(facet.entries().get(0).hits().size(), equalTo(6));
+            assertThat(facet.entries().get(0).hits().get(5).id(), equalTo("a0"));
+            assertThat(facet.entries().get(1).hits().size(), equalTo(4));
+            assertThat(facet.entries().get(2).term(), equalTo("c"));
+            assertThat(facet.entries().get(2).hits().size(), equalTo(1));
+            assertThat(facet.entries().get(2).hits().get(0).id(), equalTo("c100"));
+        }
+
+        try {
+            client.prepareSearch()
+                    .setQuery(matchAllQuery())
+                    .addFacet(topHitsFacet("facet1").field("tag").hitsSize(101))
+                    .execute().actionGet();
+            assert false : "expected the search to fail on a [hits_size] above the limit";
+        } catch (SearchPhaseExecutionException e) {
+            // expected
+        }
+
+        // unknown parameters are rejected rather than ignored
+        try {
+            client.prepareSearch()
+                    .setQuery(matchAllQuery())
+                    .setFacets(XContentFactory.jsonBuilder().startObject()
+                            .startObject("facet1")
+                            .startObject("top_hits")
+                            .field("field", "tag")
+                            .field("hit_size", 2)
+                            .endObject()
+                            .endObject()
+                            .endObject().bytes())
+                    .execute().actionGet();
+            assert false : "expected the search to fail on [hit_size]";
+        } catch (SearchPhaseExecutionException e) {
+            assertThat(e.getMessage(), containsString("does not support [hit_size]"));
+        }
+    }
+
     @Test
     public void testStatsFacets() throws Exception {
         try {
@@ -912,6 +1147,319 @@ public class SimpleFacetsTests extends AbstractNodesTests {
         }
     }
 
+    @Test
+    public void testCardinalityFacets() throws Exception {
+        try {
+            client.admin().indices().prepareDelete("test").execute().actionGet();
+        } catch (Exception e) {
+            // ignore
+        }
+        client.admin().indices().prepareCreate("test").execute().actionGet();
+        client.admin().cluster().prepareHealth().setWaitForGreenStatus().execute().actionGet();
+
+        client.prepareIndex("test", "type1").setSource(jsonBuilder().startObject()
+                .field("num", 1)
+                .field("value", 1.5)
+                .startArray("tag").value("a").value("b").endArray()
+                .endObject()).execute().actionGet();
+        client.admin().indices().prepareFlush().setRefresh(true).execute().actionGet();
+
+        client.prepareIndex("test", "type1").setSource(jsonBuilder().startObject()
+                .field("num", 2)
+                .field("value", 1.5)
+                .startArray("tag").value("b").value("c").endArray()
+                .endObject()).execute().actionGet();
+        client.prepareIndex("test", "type1").setSource(jsonBuilder().startObject()
+                .field("num", 2)
+                .field("value", 2.5)
+                .startArray("tag").value("a").endArray()
+                .endObject()).execute().actionGet();
+        client.admin().indices().prepareRefresh().execute().actionGet();
+
+        for (int i = 0; i < numberOfRuns(); i++) {
+            SearchResponse searchResponse = client.prepareSearch()
+                    .setQuery(matchAllQuery())
+                    .addFacet(cardinalityFacet("card1").field("tag"))
+                    .addFacet(cardinalityFacet("card2").field("num"))
+                    .addFacet(cardinalityFacet("card3").field("value").precision(10))
+                    .addFacet(cardinalityFacet("card4").script("doc['num'].value * 2"))
+                    .execute().actionGet();
+
+            assertThat(searchResponse.failedShards(), equalTo(0));
+
+            CardinalityFacet facet = searchResponse.facets().facet("card1");
+            assertThat(facet.name(), equalTo("card1"));
+            assertThat(facet.count(), equalTo(3l));
+
+            facet = searchResponse.facets().facet("card2");
+            assertThat(facet.count(), equalTo(2l));
+
+            facet = searchResponse.facets().facet("card3");
+            assertThat(facet.count(), equalTo(2l));
+
+            facet = searchResponse.facets().facet("card4");
+            assertThat(facet.count(), equalTo(2l));
+
+            searchResponse = client.prepareSearch()
+                    .setQuery(termQuery("num", 2))
+                    .addFacet(cardinalityFacet("card1").field("tag"))
+                    .execute().actionGet();
+
+            facet = searchResponse.facets().facet("card1");
+            assertThat(facet.count(), equalTo(3l));
+
+            searchResponse = client.prepareSearch()
+                    .setQuery(termQuery("num", 1))
+                    .addFacet(cardinalityFacet("card1").field("tag"))
+                    .execute().actionGet();
+
+            facet = searchResponse.facets().facet("card1");
+            assertThat(facet.count(), equalTo(2l));
+        }
+    }
+
+    @Test
+    public void testPercentilesFacets() throws Exception {
+        try {
+            client.admin().indices().prepareDelete("test").execute().actionGet();
+        } catch (Exception e) {
+            // ignore
+        }
+        client.admin().indices().prepareCreate("test").execute().actionGet();
+        client.admin().cluster().prepareHealth().setWaitForGreenStatus().execute().actionGet();
+
+        for (int i = 1; i <= 100; i++) {
+            client.prepareIndex("test", "type1").setSource(jsonBuilder().startObject()
+                    .field("num", i)
+                    .endObject()).execute().actionGet();
+            if (i == 50) {
+                client.admin().indices().prepareFlush().setRefresh(true).execute().actionGet();
+            }
+        }
+        client.admin().indices().prepareRefresh().execute().actionGet();
+
+        for (int i = 0; i < numberOfRuns(); i++) {
+            SearchResponse searchResponse = client.prepareSearch()
+                    .setQuery(matchAllQuery())
+                    .addFacet(percentilesFacet("p1").field("num"))
+                    .addFacet(percentilesFacet("p2").field("num").percents(0, 50, 100))
+                    .addFacet(percentilesFacet("p3").script("doc['num'].value * 2").percents(50))
+                    .execute().actionGet();
+
+            assertThat(searchResponse.failedShards(), equalTo(0));
+
+            PercentilesFacet facet = searchResponse.facets().facet("p1");
+            assertThat(facet.name(), equalTo("p1"));
+            assertThat(facet.count(), equalTo(100l));
+            assertThat(facet.percents().length, equalTo(7));
+            assertThat(facet.percentile(25), closeTo(25, 2));
+            assertThat(facet.percentile(50), closeTo(50, 2));
+            assertThat(facet.percentile(99), closeTo(99, 2));
+
+            facet = searchResponse.facets().facet("p2");
+            assertThat(facet.percents().length, equalTo(3));
+            assertThat(facet.percentile(0), equalTo(1d));
+            assertThat(facet.percentile(50), closeTo(50, 2));
+            assertThat(facet.percentile(100), equalTo(100d));
+
+            facet = searchResponse.facets().facet("p3");
+            assertThat(facet.count(), equalTo(100l));
+            assertThat(facet.percentile(50), closeTo(100, 4));
+        }
+    }
+
+    @Test
+    public void testBucketsFacets() throws Exception {
+        try {
+            client.admin().indices().prepareDelete("test").execute().actionGet();
+        } catch (Exception e) {
+            // ignore
+        }
+        client.admin().indices().prepareCreate("test").execute().actionGet();
+        client.admin().cluster().prepareHealth().setWaitForGreenStatus().execute().actionGet();
+
+        client.prepareIndex("test", "type1").setSource(jsonBuilder().startObject()
+                .field("host", "a")
+                .field("user", "u1")
+                .field("num", 1)
+                .field("took", 10)
+                .endObject()).execute().actionGet();
+        client.prepareIndex("test", "type1").setSource(jsonBuilder().startObject()
+                .field("host", "a")
+                .field("user", "u2")
+                .field("num", 12)
+                .field("took", 20)
+                .endObject()).execute().actionGet();
+        client.admin().indices().prepareFlush().setRefresh(true).execute().actionGet();
+
+        client.prepareIndex("test", "type1").setSource(jsonBuilder().startObject()
+                .field("host", "b")
+                .field("user", "u1")
+                .field("num", 15)
+                .field("took", 30)
+                .endObject()).execute().actionGet();
+        client.prepareIndex("test", "type1").setSource(jsonBuilder().startObject()
+                .field("host", "a")
+                .field("user", "u1")
+                .field("num", 25)
+                .field("took", 40)
+                .endObject()).execute().actionGet();
+        client.admin().indices().prepareRefresh().execute().actionGet();
+
+        for (int i = 0; i < numberOfRuns(); i++) {
+            SearchResponse searchResponse = client.prepareSearch()
+                    .setQuery(matchAllQuery())
+                    .addFacet(bucketsFacet("by_host").terms("host", 10)
+                            .subFacet(statisticalFacet("took").field("took"))
+                            .subFacet(cardinalityFacet("users").field("user"))
+                            .subFacet(termsFacet("top_users").field("user").size(1)))
+                    .addFacet(bucketsFacet("by_num").histogram("num", 10)
+                            .subFacet(statisticalFacet("took").field("took")))
+                    .addFacet(bucketsFacet("by_range").range("num").addUnboundedTo(10).addUnboundedFrom(10)
+                            .subFacet(statisticalFacet("took").field("took")))
+                    .execute().actionGet();
+
+            assertThat(searchResponse.failedShards(), equalTo(0));
+
+            BucketsFacet facet = searchResponse.facets().facet("by_host");
+            assertThat(facet.name(), equalTo("by_host"));
+            assertThat(facet.buckets().size(), equalTo(2));
+            assertThat(facet.buckets().get(0).key(), equalTo("a"));
+            assertThat(facet.buckets().get(0).docCount(), equalTo(3l));
+            StatisticalFacet took = facet.buckets().get(0).facet("took");
+            assertThat(took.count(), equalTo(3l));
+            assertThat(took.total(), equalTo(70d));
+            assertThat(took.min(), equalTo(10d));
+            assertThat(took.max(), equalTo(40d));
+            CardinalityFacet users = facet.buckets().get(0).facet("users");
+            assertThat(users.count(), equalTo(2l));
+            TermsFacet topUsers = facet.buckets().get(0).facet("top_users");
+            assertThat(topUsers.entries().size(), equalTo(1));
+            assertThat(topUsers.entries().get(0).term(), equalTo("u1"));
+            assertThat(topUsers.entries().get(0).count(), equalTo(2));
+            assertThat(facet.buckets().get(1).key(), equalTo("b"));
+            assertThat(facet.buckets().get(1).docCount(), equalTo(1l));
+            took = facet.buckets().get(1).facet("took");
+            assertThat(took.total(), equalTo(30d));
+            users = facet.buckets().get(1).facet("users");
+            assertThat(users.count(), equalTo(1l));
+
+            facet = searchResponse.facets().facet("by_num");
+            assertThat(facet.buckets().size(), equalTo(3));
+            assertThat(facet.buckets().get(0).key(), equalTo("0"));
+            assertThat(facet.buckets().get(0).docCount(), equalTo(1l));
+            assertThat(facet.buckets().get(1).key(), equalTo("10"));
+            assertThat(facet.buckets().get(1).docCount(), equalTo(2l));
+            took = facet.buckets().get(1).facet("took");
+            assertThat(took.total(), equalTo(50d));
+            assertThat(facet.buckets().get(2).key(), equalTo("20"));
+            took = facet.buckets().get(2).facet("took");
+            assertThat(took.total(), equalTo(40d));
+
+            facet = searchResponse.facets().facet("by_range");
+            assertThat(facet.buckets().size(), equalTo(2));
+            assertThat(facet.buckets().get(0).docCount(), equalTo(1l));
+            took = facet.buckets().get(0).facet("took");
+            assertThat(took.total(), equalTo(10d));
+            assertThat(facet.buckets().get(1).docCount(), equalTo(3l));
+            took = facet.buckets().get(1).facet("took");
+            assertThat(took.total(), equalTo(90d));
+        }
+    }
+
+    @Test
+    public void testBucketsFacetsLimits() throws Exception {
+        try {
+            client.admin().indices().prepareDelete("test").execute().actionGet();
+        } catch (Exception e) {
+            // ignore
+        }
+        client.admin().indices().prepareCreate("test")
+                .setSettings(ImmutableSettings.settingsBuilder().put("index.number_of_shards", 1))
+                .execute().actionGet();
+        client.admin().cluster().prepareHealth().setWaitForGreenStatus().execute().actionGet();
+
+        for (int i = 0; i < 4; i++) {
+            client.prepareIndex("test", "type1").setSource(jsonBuilder().startObject()
+                    .field("user", "u" + (i % 2))
+                    .field("num", i * 10)
+                    .endObject()).execute().actionGet();
+        }
+        client.admin().indices().prepareRefresh().execute().actionGet();
+
+        // 2 (bucket, term) pairs fit the limit of 3
+        SearchResponse searchResponse = client.prepareSearch()
+                .setQuery(matchAllQuery())
+                .addFacet(bucketsFacet("by_num").histogram("num", 40)
+                        .subFacet(termsFacet("users").field("user")))
+                .addFacet(bucketsFacet("by_user").terms("user", 10)
+                        .subFacet(termsFacet("users").field("user")))
+                .execute().actionGet();
+        assertThat(searchResponse.failedShards(), equalTo(0));
+        BucketsFacet facet = searchResponse.facets().facet("by_num");
+        assertThat(facet.buckets().size(), equalTo(1));
+        TermsFacet users = facet.buckets().get(0).facet("users");
+        assertThat(users.entries().size(), equalTo(2));
+
+        // 4 pairs go above it
+        try {
+            client.prepareSearch()
+                    .setQuery(matchAllQuery())
+                    .addFacet(bucketsFacet("by_num").histogram("num", 10)
+                            .subFacet(termsFacet("users").field("user")))
+                    .execute().actionGet();
+            assert false : "expected the search to fail on too many (bucket, term) pairs";
+        } catch (SearchPhaseExecutionException e) {
+            // expected
+        }
+
+        // unknown parameters are rejected rather than ignored
+        try {
+            client.prepareSearch()
+                    .setQuery(matchAllQuery())
+                    .setFacets(XContentFactory.jsonBuilder().startObject()
+                            .startObject("by_num")
+                            .startObject("buckets")
+                            .startObject("date_histogram")
+                            .field("field", "num")
+                            .field("interval", "day")
+                            .field("time_zone", "+01:00")
+                            .endObject()
+                            .endObject()
+                            .endObject()
+                            .endObject().bytes())
+                    .execute().actionGet();
+            assert false : "expected the search to fail on [time_zone]";
+        } catch (SearchPhaseExecutionException e) {
+            // expected
+        }
+        try {
+            client.prepareSearch()
+                    .setQuery(matchAllQuery())
+                    .setFacets(XContentFactory.jsonBuilder().startObject()
+                            .startObject("by_user")
+                            .startObject("buckets")
+                            .startObject("terms")
+                            .field("field", "user")
+                            .endObject()
+                            .startObject("facets")
+                            .startObject("num")
+                            .startObject("statistical")
+                            .field("field", "num")
+                            .field("script", "doc.num.value")
+                            .endObject()
+                            .endObject()
+                            .endObject()
+                            .endObject()
+                            .endObject()
+                            .endObject().bytes())
+                    .execute().actionGet();
+            assert false : "expected the search to fail on [script]";
+        } catch (SearchPhaseExecutionException e) {
+            // expected
+        }
+    }
+
     @Test
     public void testHistoFacetEdge() throws Exception {
         try {
@@ -19,7 +19,9 @@
 
 package org.elasticsearch.test.integration.search.timeout;
 
+import org.elasticsearch.action.search.SearchPhaseExecutionException;
 import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchType;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.test.integration.AbstractNodesTests;
@@ -31,8 +33,11 @@ import static org.elasticsearch.common.settings.ImmutableSettings.settingsBuilde
 import static org.elasticsearch.index.query.FilterBuilders.scriptFilter;
 import static org.elasticsearch.index.query.QueryBuilders.filteredQuery;
 import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
+import static org.elasticsearch.index.query.QueryBuilders.termQuery;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.equalTo;
+import static org.testng.Assert.fail;
 
 /**
  */
@@ -44,6 +49,7 @@ public class SearchTimeoutTests extends AbstractNodesTests {
     public void createNodes() throws Exception {
         Settings settings = settingsBuilder().put("index.number_of_shards", 2).put("index.number_of_replicas", 0).build();
         startNode("node1", settings);
+        startNode("node2", settingsBuilder().put(settings).put("action.search.coordinator_timeout", "100ms"));
         client = client("node1");
     }
 
@@ -68,4 +74,57 @@ public class SearchTimeoutTests extends AbstractNodesTests {
                 .execute().actionGet();
         assertThat(searchResponse.timedOut(), equalTo(true));
     }
+
+    @Test
+    public void dfsTimeoutTest() throws Exception {
+        client.admin().indices().prepareDelete().execute().actionGet();
+
+        for (int i = 0; i < 10; i++) {
+            client.prepareIndex("test", "type", Integer.toString(i)).setSource("field", "value").execute().actionGet();
+        }
+        client.admin().indices().prepareRefresh().execute().actionGet();
+
+        SearchResponse searchResponse = client.prepareSearch("test")
+                .setSearchType(SearchType.DFS_QUERY_THEN_FETCH)
+                .setTimeout("1m")
+                .setQuery(termQuery("field", "value"))
+                .execute().actionGet();
+        assertThat(searchResponse.shardFailures().length, equalTo(0));
+        assertThat(searchResponse.timedOut(), equalTo(false));
+        assertThat(searchResponse.hits().totalHits(), equalTo(10l));
+
+        searchResponse = client.prepareSearch("test")
+                .setSearchType(SearchType.DFS_QUERY_THEN_FETCH)
+                .setTimeout("10ms")
+                .setQuery(filteredQuery(termQuery("field", "value"), scriptFilter("Thread.sleep(100); return true;")))
+                .execute().actionGet();
+        assertThat(searchResponse.shardFailures().length, equalTo(0));
+        assertThat(searchResponse.timedOut(), equalTo(true));
+    }
+
+    @Test
+    public void coordinatorTimeoutTest() throws Exception {
+        client.admin().indices().prepareDelete().execute().actionGet();
+
+        for (int i = 0; i < 10; i++) {
+            client.prepareIndex("test", "type", Integer.toString(i)).setSource("field", "value").execute().actionGet();
+        }
+        client.admin().indices().prepareRefresh().execute().actionGet();
+
+        try {
+            client("node2").prepareSearch("test")
+                    .setQuery(filteredQuery(matchAllQuery(), scriptFilter("Thread.sleep(100); return true;")))
+                    .execute().actionGet();
+            fail("the coordinating node should have given up on the search");
+        } catch (SearchPhaseExecutionException e) {
+            assertThat(e.getMessage(), containsString("coordinating node timed out"));
+        }
+
+        // searches that complete in time are not affected
+        SearchResponse searchResponse = client.prepareSearch("test")
+                .setQuery(termQuery("field", "value"))
+                .execute().actionGet();
+        assertThat(searchResponse.shardFailures().length, equalTo(0));
+        assertThat(searchResponse.hits().totalHits(), equalTo(10l));
+    }
 }
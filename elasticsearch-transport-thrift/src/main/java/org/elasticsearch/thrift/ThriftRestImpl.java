@@ -24,14 +24,16 @@ import org.elasticsearch.common.component.AbstractComponent;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.io.stream.CachedStreamOutput;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.rest.*;
 import org.elasticsearch.rest.RestResponse;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  */
@@ -39,57 +41,130 @@ public class ThriftRestImpl extends AbstractComponent implements Rest.Iface {
 
     private final RestController restController;
 
+    // the largest body buffer a worker thread keeps around, larger bodies are copied into a buffer of their own
+    private final int reusedBodySize;
+
     @Inject
     public ThriftRestImpl(Settings settings, RestController restController) {
         super(settings);
         this.restController = restController;
+        this.reusedBodySize = (int) componentSettings.getAsBytesSize("reused_body_size", new ByteSizeValue(64, ByteSizeUnit.KB)).bytes();
     }
 
+    /**
+     * The channel of each thrift worker thread. A worker waits for the response of a call and serializes it before
+     * moving to the next call, so the channel, and the thrift response it fills, are reused across calls.
+     */
+    private final ThreadLocal<ThriftRestChannel> channels = new ThreadLocal<ThriftRestChannel>() {
+        @Override
+        protected ThriftRestChannel initialValue() {
+            return new ThriftRestChannel();
+        }
+    };
+
     @Override
     public org.elasticsearch.thrift.RestResponse execute(RestRequest request) throws TException {
         if (logger.isTraceEnabled()) {
             logger.trace("thrift message {}", request);
         }
-        final CountDownLatch latch = new CountDownLatch(1);
-        final AtomicReference<org.elasticsearch.thrift.RestResponse> ref = new AtomicReference<org.elasticsearch.thrift.RestResponse>();
-        restController.dispatchRequest(new ThriftRestRequest(request), new RestChannel() {
-            @Override
-            public void sendResponse(RestResponse response) {
-                try {
-                    ref.set(convert(response));
-                } catch (IOException e) {
-                    // ignore, should not happen...
-                }
-                latch.countDown();
-            }
-        });
+        ThriftRestChannel channel = channels.get();
+        channel.reset();
+        restController.dispatchRequest(new ThriftRestRequest(request), channel);
         try {
-            latch.await();
-            return ref.get();
+            return channel.await();
+        } catch (InterruptedException e) {
+            // the response might still come, don't let a next call reuse the channel
+            channels.remove();
+            Thread.currentThread().interrupt();
+            throw new TException("interrupted while waiting for the response", e);
         } catch (Exception e) {
             throw new TException("failed to generate response", e);
         }
     }
 
-    private org.elasticsearch.thrift.RestResponse convert(RestResponse response) throws IOException {
-        org.elasticsearch.thrift.RestResponse tResponse = new org.elasticsearch.thrift.RestResponse(getStatus(response.status()));
-        if (response.contentLength() > 0) {
-            if (response.contentThreadSafe()) {
-                tResponse.setBody(ByteBuffer.wrap(response.content(), 0, response.contentLength()));
-            } else {
-                // argh!, we need to copy it over since we are not on the same thread...
-                byte[] body = new byte[response.contentLength()];
-                System.arraycopy(response.content(), 0, body, 0, response.contentLength());
-                tResponse.setBody(ByteBuffer.wrap(body));
-                if (response instanceof XContentRestResponse) {
-                    XContentBuilder builder = ((XContentRestResponse) response).builder();
-                    if (builder.payload() instanceof CachedStreamOutput.Entry) {
-                        CachedStreamOutput.pushEntry((CachedStreamOutput.Entry) builder.payload());
+    class ThriftRestChannel implements RestChannel {
+
+        private final org.elasticsearch.thrift.RestResponse tResponse = new org.elasticsearch.thrift.RestResponse();
+
+        private final Map<String, String> headers = new HashMap<String, String>();
+
+        private byte[] body = new byte[0];
+
+        private final Object mutex = new Object();
+
+        private boolean responded;
+
+        private IOException failure;
+
+        void reset() {
+            synchronized (mutex) {
+                responded = false;
+                failure = null;
+            }
+        }
+
+        org.elasticsearch.thrift.RestResponse await() throws InterruptedException, IOException {
+            synchronized (mutex) {
+                while (!responded) {
+                    mutex.wait();
+                }
+                if (failure != null) {
+                    throw failure;
+                }
+                return tResponse;
+            }
+        }
+
+        @Override
+        public void sendResponse(RestResponse response) {
+            IOException failure = null;
+            try {
+                convert(response);
+            } catch (IOException e) {
+                failure = e;
+            }
+            synchronized (mutex) {
+                this.failure = failure;
+                responded = true;
+                mutex.notifyAll();
+            }
+        }
+
+        private void convert(RestResponse response) throws IOException {
+            tResponse.setStatus(getStatus(response.status()));
+            headers.clear();
+            if (response.contentType() != null) {
+                headers.put("Content-Type", response.contentType());
+            }
+            tResponse.setHeaders(headers);
+            if (response.contentLength() > 0) {
+                if (response.contentThreadSafe()) {
+                    tResponse.setBody(ByteBuffer.wrap(response.content(), 0, response.contentLength()));
+                } else {
+                    // argh!, we need to copy it over since we are not on the same thread, at least into a reused buffer
+                    // when small enough, so a large response doesn't keep its buffer around for the thread's lifetime
+                    byte[] copy;
+                    if (response.contentLength() <= reusedBodySize) {
+                        if (body.length < response.contentLength()) {
+                            body = new byte[Math.min(reusedBodySize, response.contentLength() + (response.contentLength() >> 3))];
+                        }
+                        copy = body;
+                    } else {
+                        copy = new byte[response.contentLength()];
+                    }
+                    System.arraycopy(response.content(), 0, copy, 0, response.contentLength());
+                    tResponse.setBody(ByteBuffer.wrap(copy, 0, response.contentLength()));
+                    if (response instanceof XContentRestResponse) {
+                        XContentBuilder builder = ((XContentRestResponse) response).builder();
+                        if (builder.payload() instanceof CachedStreamOutput.Entry) {
+                            CachedStreamOutput.pushEntry((CachedStreamOutput.Entry) builder.payload());
+                        }
                     }
                 }
+            } else {
+                tResponse.unsetBody();
             }
         }
-        return tResponse;
     }
 
     private Status getStatus(RestStatus status) {
@@ -95,7 +95,8 @@ public class ThriftRestRequest extends AbstractRestRequest implements org.elasti
         if (!request.isSetBody()) {
             return BytesArray.EMPTY;
         }
-        return new ByteBufferBytesReference(request.bufferForBody());
+        // no copy, framed transports read the body as a view over the frame, duplicated so reading it does not consume it
+        return new ByteBufferBytesReference(request.bufferForBody().duplicate());
     }
 
     @Override
@@ -24,27 +24,46 @@ import org.apache.thrift.protocol.TCompactProtocol;
 import org.apache.thrift.protocol.TProtocolFactory;
 import org.apache.thrift.server.TServer;
 import org.apache.thrift.server.TThreadPoolServer;
+import org.apache.thrift.server.TThreadedSelectorServer;
 import org.apache.thrift.transport.TFramedTransport;
+import org.apache.thrift.transport.TNonblockingServerSocket;
+import org.apache.thrift.transport.TNonblockingSocket;
 import org.apache.thrift.transport.TServerSocket;
+import org.apache.thrift.transport.TTransportException;
 import org.apache.thrift.transport.TTransportFactory;
 import org.elasticsearch.ElasticSearchException;
+import org.elasticsearch.ElasticSearchIllegalArgumentException;
 import org.elasticsearch.common.component.AbstractLifecycleComponent;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.network.NetworkService;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.transport.PortsRange;
+import org.elasticsearch.common.unit.ByteSizeUnit;
 import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.util.concurrent.EsThreadPoolExecutor;
 import org.elasticsearch.node.service.NodeService;
 import org.elasticsearch.transport.BindTransportException;
 
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static org.elasticsearch.common.util.concurrent.EsExecutors.daemonThreadFactory;
 
 /**
+ * The thrift server, either a thread per connection server (<tt>thrift.type</tt> set to <tt>threaded</tt>, the
+ * default) or a non blocking one (<tt>selector</tt>), where selector threads read and write the frames of all the
+ * connections and a bounded pool of workers executes them. The non blocking server only accepts framed clients.
+ * <p/>
+ * The frames the non blocking server reads are buffered whole, all of them (being read, queued or executed) within
+ * <tt>thrift.max_read_buffer_size</tt>. A connection sending a frame larger than <tt>thrift.frame</tt> is closed
+ * before it gets buffered.
  */
 public class ThriftServer extends AbstractLifecycleComponent<ThriftServer> {
 
@@ -56,6 +75,18 @@ public class ThriftServer extends AbstractLifecycleComponent<ThriftServer> {
 
     final String publishHost;
 
+    final String type;
+
+    final int selectorThreads;
+
+    final int acceptQueueSize;
+
+    final int workers;
+
+    final int workerQueueSize;
+
+    final ByteSizeValue maxReadBufferSize;
+
     private final NetworkService networkService;
 
     private final NodeService nodeService;
@@ -78,6 +109,18 @@ public class ThriftServer extends AbstractLifecycleComponent<ThriftServer> {
         this.port = componentSettings.get("port", "9500-9600");
         this.bindHost = componentSettings.get("bind_host", settings.get("transport.bind_host", settings.get("transport.host")));
         this.publishHost = componentSettings.get("publish_host", settings.get("transport.publish_host", settings.get("transport.host")));
+        this.type = componentSettings.get("type", "threaded");
+        this.selectorThreads = componentSettings.getAsInt("selector_threads", 2);
+        this.acceptQueueSize = componentSettings.getAsInt("accept_queue_size", 4);
+        this.workers = componentSettings.getAsInt("workers", Runtime.getRuntime().availableProcessors() * 5);
+        this.workerQueueSize = componentSettings.getAsInt("worker_queue_size", 1000);
+        this.maxReadBufferSize = componentSettings.getAsBytesSize("max_read_buffer_size", new ByteSizeValue(100, ByteSizeUnit.MB));
+        if (!"threaded".equals(type) && !"selector".equals(type)) {
+            throw new ElasticSearchIllegalArgumentException("thrift type [" + type + "] not valid, should be either threaded or selector");
+        }
+        if ("selector".equals(type) && frame > maxReadBufferSize.bytes()) {
+            throw new ElasticSearchIllegalArgumentException("thrift frame [" + new ByteSizeValue(frame) + "] is larger than max_read_buffer_size [" + maxReadBufferSize + "]");
+        }
 
         if (componentSettings.get("protocol", "binary").equals("compact")) {
             protocolFactory = new TCompactProtocol.Factory();
@@ -105,25 +148,11 @@ public class ThriftServer extends AbstractLifecycleComponent<ThriftServer> {
                 try {
                     Rest.Processor processor = new Rest.Processor(client);
 
-                    // Bind and start to accept incoming connections.
-                    TServerSocket serverSocket = new TServerSocket(new InetSocketAddress(bindAddr, portNumber));
-
-                    TThreadPoolServer.Args args = new TThreadPoolServer.Args(serverSocket)
-                            .minWorkerThreads(16)
-                            .maxWorkerThreads(Integer.MAX_VALUE)
-                            .inputProtocolFactory(protocolFactory)
-                            .outputProtocolFactory(protocolFactory)
-                            .processor(processor);
-
-                    if (frame <= 0) {
-                        args.inputTransportFactory(new TTransportFactory());
-                        args.outputTransportFactory(new TTransportFactory());
+                    if ("selector".equals(type)) {
+                        server = newSelectorServer(processor, new InetSocketAddress(bindAddr, portNumber));
                     } else {
-                        args.inputTransportFactory(new TFramedTransport.Factory(frame));
-                        args.outputTransportFactory(new TFramedTransport.Factory(frame));
+                        server = newThreadedServer(processor, new InetSocketAddress(bindAddr, portNumber));
                     }
-
-                    server = new TThreadPoolServer(args);
                 } catch (Exception e) {
                     lastException.set(e);
                     return false;
@@ -134,7 +163,7 @@ public class ThriftServer extends AbstractLifecycleComponent<ThriftServer> {
         if (!success) {
             throw new BindTransportException("Failed to bind to [" + port + "]", lastException.get());
         }
-        logger.info("bound on port [{}]", portNumber);
+        logger.info("bound on port [{}], type [{}]", portNumber, type);
         try {
             nodeService.putNodeAttribute("thrift_address", new InetSocketAddress(networkService.resolvePublishHostAddress(publishHost), portNumber).toString());
         } catch (Exception e) {
@@ -149,6 +178,124 @@ public class ThriftServer extends AbstractLifecycleComponent<ThriftServer> {
         }).start();
     }
 
+    private TServer newThreadedServer(Rest.Processor processor, InetSocketAddress address) throws Exception {
+        // Bind and start to accept incoming connections.
+        TServerSocket serverSocket = new TServerSocket(address);
+
+        TThreadPoolServer.Args args = new TThreadPoolServer.Args(serverSocket)
+                .minWorkerThreads(16)
+                .maxWorkerThreads(Integer.MAX_VALUE)
+                .inputProtocolFactory(protocolFactory)
+                .outputProtocolFactory(protocolFactory)
+                .processor(processor);
+
+        if (frame <= 0) {
+            args.inputTransportFactory(new TTransportFactory());
+            args.outputTransportFactory(new TTransportFactory());
+        } else {
+            args.inputTransportFactory(new TFramedTransport.Factory(frame));
+            args.outputTransportFactory(new TFramedTransport.Factory(frame));
+        }
+
+        return new TThreadPoolServer(args);
+    }
+
+    private TServer newSelectorServer(Rest.Processor processor, InetSocketAddress address) throws Exception {
+        TNonblockingServerSocket serverSocket = frame > 0 ? new FrameLimitedServerSocket(address, frame) : new TNonblockingServerSocket(address);
+
+        // thrift closes the connection of frames the workers reject, but only handles the jdk rejection exception
+        ThreadPoolExecutor workerExecutor = new EsThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(workerQueueSize), daemonThreadFactory(settings, "thrift_worker"),
+                new ThreadPoolExecutor.AbortPolicy());
+
+        // the frames are read whole by the selector threads, the protocols read them with no extra framing
+        TThreadedSelectorServer.Args args = new TThreadedSelectorServer.Args(serverSocket)
+                .selectorThreads(selectorThreads)
+                .acceptQueueSizePerThread(acceptQueueSize)
+                .executorService(workerExecutor)
+                .protocolFactory(protocolFactory)
+                .processor(processor);
+        // the bytes buffered for the frames of all the connections, a frame that doesn't fit waits for the ones
+        // before it to be done (frames larger than it are refused)
+        args.maxReadBufferBytes = maxReadBufferSize.bytes();
+
+        return new TThreadedSelectorServer(args);
+    }
+
+    /**
+     * A non blocking server socket whose connections are closed when sending a frame larger than the given size,
+     * before the frame is buffered.
+     */
+    static class FrameLimitedServerSocket extends TNonblockingServerSocket {
+
+        private final int maxFrameSize;
+
+        FrameLimitedServerSocket(InetSocketAddress address, int maxFrameSize) throws TTransportException {
+            super(address);
+            this.maxFrameSize = maxFrameSize;
+        }
+
+        @Override
+        protected TNonblockingSocket acceptImpl() throws TTransportException {
+            TNonblockingSocket socket = super.acceptImpl();
+            if (socket == null) {
+                return null;
+            }
+            try {
+                return new FrameLimitedSocket(socket.getSocketChannel(), maxFrameSize);
+            } catch (IOException e) {
+                socket.close();
+                throw new TTransportException(e);
+            }
+        }
+    }
+
+    /**
+     * Follows the frames read from the connection (their 4 bytes size, then their content) and fails the read of
+     * the size of a frame larger than the max frame size. The server reads the size and the content of a frame into
+     * buffers of their exact size, so a read never spans two frames.
+     */
+    static class FrameLimitedSocket extends TNonblockingSocket {
+
+        private final int maxFrameSize;
+
+        private int sizeBytesRead;
+
+        private int frameSize;
+
+        private int frameRemaining;
+
+        FrameLimitedSocket(SocketChannel socketChannel, int maxFrameSize) throws IOException {
+            super(socketChannel);
+            this.maxFrameSize = maxFrameSize;
+        }
+
+        @Override
+        public int read(ByteBuffer buffer) throws IOException {
+            int start = buffer.position();
+            int read = super.read(buffer);
+            int end = start + read;
+            for (int i = start; i < end; ) {
+                if (frameRemaining > 0) {
+                    int content = Math.min(frameRemaining, end - i);
+                    frameRemaining -= content;
+                    i += content;
+                    continue;
+                }
+                frameSize = (frameSize << 8) | (buffer.get(i++) & 0xff);
+                if (++sizeBytesRead == 4) {
+                    if (frameSize > maxFrameSize) {
+                        throw new IOException("frame of [" + frameSize + "] bytes is larger than the max frame size [" + maxFrameSize + "]");
+                    }
+                    frameRemaining = frameSize;
+                    sizeBytesRead = 0;
+                    frameSize = 0;
+                }
+            }
+            return read;
+        }
+    }
+
     @Override
     protected void doStop() throws ElasticSearchException {
         nodeService.removeNodeAttribute("thrift_address");
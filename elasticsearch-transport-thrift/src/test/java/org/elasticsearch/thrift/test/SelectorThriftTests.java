@@ -0,0 +1,164 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.thrift.test;
+
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.transport.TFramedTransport;
+import org.apache.thrift.transport.TSocket;
+import org.apache.thrift.transport.TTransport;
+import org.apache.thrift.transport.TTransportException;
+import org.elasticsearch.common.network.NetworkUtils;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.node.Node;
+import org.elasticsearch.thrift.*;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import static org.elasticsearch.common.settings.ImmutableSettings.settingsBuilder;
+import static org.elasticsearch.node.NodeBuilder.nodeBuilder;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ *
+ */
+public class SelectorThriftTests {
+
+    private Node node;
+
+    private TTransport transport;
+
+    private Rest.Client client;
+
+    @BeforeMethod
+    public void setup() throws IOException, TTransportException {
+        node = nodeBuilder().settings(settingsBuilder()
+                .put("path.data", "target/data")
+                .put("cluster.name", "test-cluster-" + NetworkUtils.getLocalAddress())
+                .put("gateway.type", "none")
+                .put("thrift.type", "selector")
+                .put("thrift.frame", "64kb")
+                .put("thrift.workers", 1)
+                .put("thrift.worker_queue_size", 1)).node();
+        transport = new TFramedTransport(new TSocket("localhost", 9500));
+        client = new Rest.Client(new TBinaryProtocol(transport));
+        transport.open();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        transport.close();
+        node.close();
+    }
+
+    @Test
+    public void testSimpleApis() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            RestRequest request = new RestRequest(Method.PUT, "/test/type1/" + i);
+            request.setBody(ByteBuffer.wrap(XContentFactory.jsonBuilder().startObject()
+                    .field("field", "value" + i)
+                    .endObject().bytes().copyBytesArray().array()));
+            RestResponse response = client.execute(request);
+            Map<String, Object> map = parseBody(response);
+            assertThat(response.getStatus(), equalTo(Status.CREATED));
+            assertThat(map.get("_id").toString(), equalTo(Integer.toString(i)));
+        }
+
+        client.execute(new RestRequest(Method.POST, "/test/_refresh"));
+
+        for (int i = 0; i < 10; i++) {
+            RestResponse response = client.execute(new RestRequest(Method.GET, "/test/type1/" + i));
+            Map<String, Object> map = parseBody(response);
+            assertThat(response.getStatus(), equalTo(Status.OK));
+            assertThat(((Map) map.get("_source")).get("field").toString(), equalTo("value" + i));
+        }
+
+        RestResponse response = client.execute(new RestRequest(Method.GET, "/bogusindex"));
+        assertThat(response.getStatus(), equalTo(Status.BAD_REQUEST));
+    }
+
+    @Test
+    public void testOversizedFrameRefused() throws Exception {
+        RestRequest request = new RestRequest(Method.PUT, "/test/type1/1");
+        request.setBody(ByteBuffer.wrap(XContentFactory.jsonBuilder().startObject()
+                .field("field", new String(new char[100 * 1024]).replace('\0', 'a'))
+                .endObject().bytes().copyBytesArray().array()));
+        try {
+            client.execute(request);
+            assert false : "frame larger than thrift.frame should close the connection";
+        } catch (TTransportException e) {
+            // expected
+        }
+
+        // other connections are not affected
+        TTransport other = new TFramedTransport(new TSocket("localhost", 9500));
+        other.open();
+        try {
+            RestResponse response = new Rest.Client(new TBinaryProtocol(other)).execute(new RestRequest(Method.GET, "/"));
+            assertThat(response.getStatus(), equalTo(Status.OK));
+        } finally {
+            other.close();
+        }
+    }
+
+    @Test
+    public void testWorkerQueueFullRejected() throws Exception {
+        // the single worker waits for the health response (until it times out), the next frame is queued, and the
+        // one after it is rejected, closing its connection
+        TTransport queuedTransport = new TFramedTransport(new TSocket("localhost", 9500));
+        TTransport rejectedTransport = new TFramedTransport(new TSocket("localhost", 9500));
+        queuedTransport.open();
+        rejectedTransport.open();
+        try {
+            Rest.Client queued = new Rest.Client(new TBinaryProtocol(queuedTransport));
+            Rest.Client rejected = new Rest.Client(new TBinaryProtocol(rejectedTransport));
+
+            client.send_execute(new RestRequest(Method.GET, "/_cluster/health?wait_for_nodes=10&timeout=2s"));
+            Thread.sleep(300);
+            queued.send_execute(new RestRequest(Method.GET, "/_cluster/health?wait_for_nodes=10&timeout=2s"));
+            Thread.sleep(300);
+            rejected.send_execute(new RestRequest(Method.GET, "/"));
+            try {
+                rejected.recv_execute();
+                assert false : "frame over the worker queue size should close the connection";
+            } catch (TTransportException e) {
+                // expected
+            }
+
+            assertThat(client.recv_execute().getStatus(), equalTo(Status.OK));
+            assertThat(queued.recv_execute().getStatus(), equalTo(Status.OK));
+        } finally {
+            queuedTransport.close();
+            rejectedTransport.close();
+        }
+    }
+
+    private Map<String, Object> parseBody(RestResponse response) throws IOException {
+        // framed clients read the body as a view over the frame
+        ByteBuffer body = response.bufferForBody();
+        return XContentFactory.xContent(XContentType.JSON).createParser(body.array(), body.arrayOffset() + body.position(), body.remaining()).map();
+    }
+}
@@ -0,0 +1,307 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.wares;
+
+import org.elasticsearch.rest.RestChannel;
+import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.RestResponse;
+import org.elasticsearch.rest.support.RestUtils;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link NodeServlet} that never blocks a container thread: the request body is read and the response is
+ * written using servlet 3.1 non blocking IO, and the container thread is released while elasticsearch executes
+ * the request. Requires a servlet 3.1 container.
+ * <p/>
+ * <p>The following init parameters are supported:
+ * <ul>
+ * <li><tt>asyncTimeout</tt>: the async timeout (in milliseconds) of a request, the container default if not set.
+ * Requests timing out are cancelled, a <tt>504</tt> is sent back and their response is dropped once it comes.</li>
+ * <li><tt>maxInFlight</tt>: the maximum number of requests being executed at once, unbounded if not set. Requests
+ * above it are rejected with a <tt>503</tt> before their body is read.</li>
+ * <li><tt>maxContentLength</tt>: the maximum size (in bytes) of a request body, defaults to <tt>104857600</tt>
+ * (100mb), as <tt>http.max_content_length</tt>. Larger requests are rejected with a <tt>413</tt>.</li>
+ * <li><tt>writeChunkSize</tt>: the size (in bytes) of the chunks the response is written in, defaults to
+ * <tt>8192</tt>.</li>
+ * </ul>
+ */
+public class NonBlockingNodeServlet extends NodeServlet {
+
+    private long asyncTimeout = -1;
+
+    private int maxInFlight = -1;
+
+    private long maxContentLength = 100 * 1024 * 1024;
+
+    private int writeChunkSize = 8192;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    @Override
+    public void init() throws ServletException {
+        super.init();
+        if (getInitParameter("asyncTimeout") != null) {
+            asyncTimeout = Long.parseLong(getInitParameter("asyncTimeout"));
+        }
+        if (getInitParameter("maxInFlight") != null) {
+            maxInFlight = Integer.parseInt(getInitParameter("maxInFlight"));
+        }
+        if (getInitParameter("maxContentLength") != null) {
+            maxContentLength = Long.parseLong(getInitParameter("maxContentLength"));
+        }
+        if (getInitParameter("writeChunkSize") != null) {
+            writeChunkSize = Integer.parseInt(getInitParameter("writeChunkSize"));
+        }
+    }
+
+    /**
+     * The number of requests currently being executed.
+     */
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    @Override
+    protected void service(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        if (inFlight.incrementAndGet() > maxInFlight && maxInFlight >= 0) {
+            inFlight.decrementAndGet();
+            resp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "too many requests in flight");
+            return;
+        }
+        if (req.getContentLength() > maxContentLength) {
+            inFlight.decrementAndGet();
+            resp.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, "request body larger than [" + maxContentLength + "] bytes");
+            return;
+        }
+        AsyncContext asyncContext;
+        try {
+            asyncContext = req.startAsync();
+        } catch (RuntimeException e) {
+            inFlight.decrementAndGet();
+            throw e;
+        }
+        if (asyncTimeout >= 0) {
+            asyncContext.setTimeout(asyncTimeout);
+        }
+        NonBlockingRestChannel channel = new NonBlockingRestChannel(asyncContext);
+        asyncContext.addListener(channel);
+        req.getInputStream().setReadListener(new BodyReader(req, channel));
+    }
+
+    /**
+     * Reads the request body as it becomes available, and dispatches the request once it was fully read. A body
+     * going over <tt>maxContentLength</tt> (without a content length up front) fails the request with a <tt>413</tt>.
+     */
+    class BodyReader implements ReadListener {
+
+        final HttpServletRequest req;
+
+        final NonBlockingRestChannel channel;
+
+        final ByteArrayOutputStream body;
+
+        final byte[] buffer = new byte[8192];
+
+        boolean tooLarge;
+
+        BodyReader(HttpServletRequest req, NonBlockingRestChannel channel) {
+            this.req = req;
+            this.channel = channel;
+            this.body = new ByteArrayOutputStream(Math.max(req.getContentLength(), 0));
+        }
+
+        @Override
+        public void onDataAvailable() throws IOException {
+            ServletInputStream in = req.getInputStream();
+            int read;
+            while (!tooLarge && in.isReady() && (read = in.read(buffer)) != -1) {
+                if (body.size() + read > maxContentLength) {
+                    // the request is completed, the rest of the body is left to the container
+                    tooLarge = true;
+                    channel.fail(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+                    return;
+                }
+                body.write(buffer, 0, read);
+            }
+        }
+
+        @Override
+        public void onAllDataRead() throws IOException {
+            if (!tooLarge) {
+                channel.dispatch(new ServletRestRequest(req, body.toByteArray()));
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            channel.fail(HttpServletResponse.SC_BAD_REQUEST);
+        }
+    }
+
+    /**
+     * Writes the response once it is ready to be written, and completes (or cancels) the async request.
+     */
+    class NonBlockingRestChannel implements RestChannel, AsyncListener, WriteListener {
+
+        final AsyncContext asyncContext;
+
+        /**
+         * Set once a response was sent, or once the request was cancelled or failed, so only one of them
+         * ever touches the servlet response.
+         */
+        final AtomicBoolean done = new AtomicBoolean();
+
+        RestRequest restRequest;
+
+        // the response is written from its prefix, content and suffix, one after the other
+        final byte[][] segments = new byte[3][];
+
+        final int[] lengths = new int[3];
+
+        int segment;
+
+        int written;
+
+        NonBlockingRestChannel(AsyncContext asyncContext) {
+            this.asyncContext = asyncContext;
+        }
+
+        void dispatch(RestRequest restRequest) {
+            this.restRequest = restRequest;
+            try {
+                restController.dispatchRequest(restRequest, this);
+            } catch (Exception e) {
+                fail(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            }
+        }
+
+        void fail(int status) {
+            if (done.compareAndSet(false, true)) {
+                ((HttpServletResponse) asyncContext.getResponse()).setStatus(status);
+                asyncContext.complete();
+            }
+        }
+
+        @Override
+        public void sendResponse(RestResponse response) {
+            if (!done.compareAndSet(false, true)) {
+                // cancelled, the request timed out or failed
+                return;
+            }
+            HttpServletResponse resp = (HttpServletResponse) asyncContext.getResponse();
+            resp.setStatus(response.status().getStatus());
+            resp.setContentType(response.contentType());
+            if (RestUtils.isBrowser(restRequest.header("User-Agent"))) {
+                resp.addHeader("Access-Control-Allow-Origin", "*");
+                if (restRequest.method() == RestRequest.Method.OPTIONS) {
+                    // also add more access control parameters
+                    resp.addHeader("Access-Control-Max-Age", "1728000");
+                    resp.addHeader("Access-Control-Allow-Methods", "PUT, DELETE");
+                    resp.addHeader("Access-Control-Allow-Headers", "X-Requested-With");
+                }
+            }
+            String opaque = restRequest.header("X-Opaque-Id");
+            if (opaque != null) {
+                resp.addHeader("X-Opaque-Id", opaque);
+            }
+            try {
+                if (response.prefixContent() != null) {
+                    segments[0] = response.prefixContent();
+                    lengths[0] = response.prefixContentLength();
+                }
+                // the response is written on container threads, so its content is only copied if it can't be used
+                // by other threads
+                if (response.contentThreadSafe()) {
+                    segments[1] = response.content();
+                } else {
+                    segments[1] = Arrays.copyOf(response.content(), response.contentLength());
+                }
+                lengths[1] = response.contentLength();
+                if (response.suffixContent() != null) {
+                    segments[2] = response.suffixContent();
+                    lengths[2] = response.suffixContentLength();
+                }
+                resp.setContentLength(lengths[0] + lengths[1] + lengths[2]);
+                resp.getOutputStream().setWriteListener(this);
+            } catch (IOException e) {
+                resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                asyncContext.complete();
+            }
+        }
+
+        @Override
+        public void onWritePossible() throws IOException {
+            ServletOutputStream out = asyncContext.getResponse().getOutputStream();
+            while (out.isReady()) {
+                while (segment < segments.length && written == lengths[segment]) {
+                    segment++;
+                    written = 0;
+                }
+                if (segment == segments.length) {
+                    asyncContext.complete();
+                    return;
+                }
+                int length = Math.min(writeChunkSize, lengths[segment] - written);
+                out.write(segments[segment], written, length);
+                written += length;
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            // the client went away while writing the response
+            asyncContext.complete();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) throws IOException {
+            fail(HttpServletResponse.SC_GATEWAY_TIMEOUT);
+        }
+
+        @Override
+        public void onError(AsyncEvent event) throws IOException {
+            done.set(true);
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) throws IOException {
+            inFlight.decrementAndGet();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) throws IOException {
+        }
+    }
+}
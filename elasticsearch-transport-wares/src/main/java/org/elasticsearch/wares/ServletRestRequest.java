@@ -27,32 +27,52 @@ import org.elasticsearch.rest.support.RestUtils;
 
 import javax.servlet.http.HttpServletRequest;
 import java.io.IOException;
+import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeMap;
 
 /**
  *
  */
 public class ServletRestRequest extends AbstractRestRequest implements org.elasticsearch.rest.RestRequest {
 
-    private final HttpServletRequest servletRequest;
-
     private final Method method;
 
+    private final String rawPath;
+
+    private final String queryString;
+
+    private final Map<String, String> headers;
+
     private final Map<String, String> params;
 
     private final byte[] content;
 
     public ServletRestRequest(HttpServletRequest servletRequest) throws IOException {
-        this.servletRequest = servletRequest;
+        this(servletRequest, Streams.copyToByteArray(servletRequest.getInputStream()));
+    }
+
+    /**
+     * Creates a request which body was already read (for example using non blocking reads). The request line and
+     * headers are copied, so the request can still be used once the servlet request was recycled by the container.
+     */
+    public ServletRestRequest(HttpServletRequest servletRequest, byte[] content) {
         this.method = Method.valueOf(servletRequest.getMethod());
+        this.rawPath = servletRequest.getRequestURI().substring(servletRequest.getContextPath().length() + servletRequest.getServletPath().length());
+        this.queryString = servletRequest.getQueryString();
+        this.headers = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+        for (Enumeration<String> names = servletRequest.getHeaderNames(); names != null && names.hasMoreElements(); ) {
+            String name = names.nextElement();
+            headers.put(name, servletRequest.getHeader(name));
+        }
         this.params = new HashMap<String, String>();
 
-        if (servletRequest.getQueryString() != null) {
-            RestUtils.decodeQueryString(servletRequest.getQueryString(), 0, params);
+        if (queryString != null) {
+            RestUtils.decodeQueryString(queryString, 0, params);
         }
 
-        content = Streams.copyToByteArray(servletRequest.getInputStream());
+        this.content = content;
     }
 
     @Override
@@ -62,16 +82,15 @@ public class ServletRestRequest extends AbstractRestRequest implements org.elast
 
     @Override
     public String uri() {
-        String queryString = servletRequest.getQueryString();
         if (queryString != null && !queryString.trim().isEmpty()) {
-            return servletRequest.getRequestURI().substring(servletRequest.getContextPath().length() + servletRequest.getServletPath().length()) + "?" + queryString;
+            return rawPath + "?" + queryString;
         }
-        return servletRequest.getRequestURI().substring(servletRequest.getContextPath().length() + servletRequest.getServletPath().length());
+        return rawPath;
     }
 
     @Override
     public String rawPath() {
-        return servletRequest.getRequestURI().substring(servletRequest.getContextPath().length() + servletRequest.getServletPath().length());
+        return rawPath;
     }
 
     @Override
@@ -91,7 +110,7 @@ public class ServletRestRequest extends AbstractRestRequest implements org.elast
 
     @Override
     public String header(String name) {
-        return servletRequest.getHeader(name);
+        return headers.get(name);
     }
 
     @Override